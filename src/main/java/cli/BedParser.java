@@ -0,0 +1,110 @@
+package cli;
+
+import consensus.filters.IntervalIndex;
+import general.GZip;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Parses BED files, optionally gzipped, into an interval index per contig.
+ * BED intervals are 0-based and half-open, they are converted to the 1-based
+ * closed regions used everywhere else.
+ */
+public class BedParser {
+
+    /**
+     * Parses BED files into one index per contig, combining the intervals of all files.
+     *
+     * @param files the paths of the BED files.
+     * @return the indices, by contig name.
+     * @throws IOException if a file could not be read.
+     * @throws IllegalArgumentException if a line is not a valid BED interval.
+     */
+    public Map<String, IntervalIndex> parseBeds(List<String> files) throws IOException {
+        Map<String, IntervalIndex.Builder> builders = new LinkedHashMap<>();
+        for (String file : files) {
+            parseBed(new File(file), builders);
+        }
+        Map<String, IntervalIndex> indices = new HashMap<>();
+        for (Map.Entry<String, IntervalIndex.Builder> entry : builders.entrySet()) {
+            indices.put(entry.getKey(), entry.getValue().build());
+        }
+        return indices;
+    }
+
+    private void parseBed(File bed, Map<String, IntervalIndex.Builder> builders) throws IOException {
+        try (BufferedReader reader = openReader(bed)) {
+            int lineNumber = 0;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (isHeader(line)) {
+                    continue;
+                }
+                String[] columns = line.split("\\s+", 4);
+                if (columns.length < 3) {
+                    throw new IllegalArgumentException("BED line " + lineNumber + " of " + bed.getName()
+                            + " needs a contig, start and end: " + line);
+                }
+                int start;
+                int end;
+                try {
+                    start = Integer.parseInt(columns[1]);
+                    end = Integer.parseInt(columns[2]);
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("BED line " + lineNumber + " of " + bed.getName()
+                            + " has an invalid position: " + line);
+                }
+                if (start < 0 || end < start) {
+                    throw new IllegalArgumentException("BED line " + lineNumber + " of " + bed.getName()
+                            + " has an invalid interval: " + line);
+                }
+                // [start, end) 0-based is [start + 1, end] 1-based, an empty interval marks the base after it.
+                builders.computeIfAbsent(columns[0], k -> new IntervalIndex.Builder())
+                        .add(start + 1, Math.max(start + 1, end));
+            }
+        }
+    }
+
+    /**
+     * Opens a text file for reading, decompressing it if it is gzipped.
+     *
+     * @param file the file.
+     * @return a reader over the lines of the file.
+     * @throws IOException if the file does not exist or could not be opened.
+     */
+    static BufferedReader openReader(File file) throws IOException {
+        if (!file.exists()) {
+            throw new FileNotFoundException("Could not find the specified file: " + file.getAbsolutePath());
+        }
+        InputStream stream = new BufferedInputStream(new FileInputStream(file));
+        if (GZip.isGZipInputStream(stream)) {
+            stream = new GZIPInputStream(stream);
+        }
+        return new BufferedReader(new InputStreamReader(stream, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Checks if a line of a BED or similar file holds no data.
+     *
+     * @param line the line.
+     * @return true for empty lines, comments and track or browser lines.
+     */
+    static boolean isHeader(String line) {
+        return line.trim().isEmpty() || line.charAt(0) == '#'
+                || line.startsWith("track") || line.startsWith("browser");
+    }
+}
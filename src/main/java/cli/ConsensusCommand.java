@@ -5,7 +5,10 @@ import cli.options.ConsensusFilterOptions;
 import consensus.ConsensusGenerator;
 import consensus.encoders.IupacEncoder;
 import consensus.filters.ChromosomeFilter;
+import consensus.filters.FilterChain;
 import consensus.samplers.AlleleFrequencySampler;
+import consensus.samplers.DosageSampler;
+import consensus.samplers.HaplotypeSampler;
 import consensus.samplers.Sampler;
 import consensus.samplers.SimpleSampler;
 import fasta.FastaSequence;
@@ -15,6 +18,10 @@ import htsjdk.variant.variantcontext.filter.CompoundFilter;
 import htsjdk.variant.variantcontext.filter.VariantContextFilter;
 import logger.MultiLogger;
 import org.apache.commons.cli.Options;
+import vcf.GenotypeColumns;
+import vcf.VCFSorter;
+import vcf.iterator.UnsortedVCFException;
+import vcf.iterator.MergingVCFIterator;
 import vcf.iterator.VCFIterator;
 import vcf.iterator.VCFIteratorBuilder;
 
@@ -22,15 +29,26 @@ import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
 import static cli.options.ConsensusCommandOptions.*;
+import static cli.options.ConsensusFilterOptions.ADAPTIVE_FILTER_ORDER;
 import static cli.options.ConsensusFilterOptions.SKIP_FAILING_CONTEXT;
 
 /**
  * Class that implements the consensus command on the cli.
  */
 public class ConsensusCommand extends Command {
+    private List<String> sortedVCFFiles;
+    /**
+     * Whether the calls files are checked and sorted before they are read, as the output can not be written again
+     * if a file turns out not to be sorted while it is read.
+     */
+    private boolean sortFirst;
+
     /**
      * Create a Consensus command using a single String
      * that contains all command line parameters seperated by spaces.
@@ -82,30 +100,63 @@ public class ConsensusCommand extends Command {
             return 0;
         }
         int statusCode = 0;
+        sortFirst = !hasOption(OUTPUT_OPTION) || hasOption(STATS_TO_OUT) || hasOption(STATS_TO_ERR);
+        try {
+            try {
+                writeConsensus();
+            } catch (UnsortedVCFException e) {
+                MultiLogger.get().println(e.getMessage() + ", the consensus is written again from the sorted file.");
+                sortedVCFFiles = null;
+                sortFirst = true;
+                writeConsensus();
+            }
+        } catch (IllegalArgumentException | TribbleException | IOException e) {
+            System.out.println("Error interpreting command: " + e.getMessage() + " see log for more information.");
+            e.printStackTrace(MultiLogger.get());
+            MultiLogger.get().println(e.getClass() + ": " + e.getMessage()
+                    + ((e.getCause() == null) ? "" : (" caused by: " + e.getCause().getMessage())));
+
+            statusCode = 1;
+        }
+        return statusCode;
+    }
+
+    /**
+     * Writes the consensus of the command. The calls files are checked to be sorted while they are read,
+     * unless they were sorted first.
+     *
+     * @throws UnsortedVCFException if a calls file turned out not to be sorted, after which the output is incomplete.
+     * @throws IOException          if reading or writing failed.
+     */
+    private void writeConsensus() throws IOException {
         try (FastaSequence fastaSequence = createFastaSequence();
-             VCFIterator iterator = createVCFIterator();
-             FormattingOutputStream outputStream = determineOutputStream()) {
+             VCFIterator iterator = createVCFIterator()) {
 
             List<Region> regions = determineRegions(REGION, ANNOTATION);
             CompoundFilter filter = new ConsensusCommandFilterParser().createFilters(this);
 
-            String vcfFile = getVCFFile();
+            List<String> vcfFiles = getVCFFiles();
 
-            ConsensusGenerator generator = makeGenerator(filter, iterator, fastaSequence, vcfFile);
+            ConsensusGenerator generator = makeGenerator(filter, iterator, fastaSequence, vcfFiles.get(0));
+            if (vcfFiles.size() > 1 && !hasOption(COHORT)) {
+                generator.setMergedFiles(vcfFiles, getMergePrecedence());
+            }
+            FilterChain chain = new FilterChain(filter, hasOption(ADAPTIVE_FILTER_ORDER));
 
             generator.setUseFailingContextRef(!hasOption(SKIP_FAILING_CONTEXT));
-            writeRegions(generator, filter, regions, outputStream);
-
-
-        } catch (IllegalArgumentException | TribbleException | IOException e) {
-            System.out.println("Error interpreting command: " + e.getMessage() + " see log for more information.");
-            e.printStackTrace(MultiLogger.get());
-            MultiLogger.get().println(e.getClass() + ": " + e.getMessage()
-                    + ((e.getCause() == null) ? "" : (" caused by: " + e.getCause().getMessage())));
+            generator.setNormalize(hasOption(NORMALIZE));
+            generator.setTempDirectory(determineTempDirectory());
+            if (hasOption(COHORT)) {
+                writeCohort(generator, chain, regions);
+            } else if (hasOption(SAMPLES) || hasOption(HAPLOTYPES)) {
+                writeSamples(generator, chain, regions, iterator.getHeader().getSampleNamesInOrder());
+            } else {
+                try (FormattingOutputStream outputStream = determineOutputStream()) {
+                    writeRegions(generator, chain, regions, outputStream);
+                }
+            }
 
-            statusCode = 1;
         }
-        return statusCode;
     }
 
     private ConsensusGenerator makeGenerator(List<VariantContextFilter> filters, VCFIterator iterator,
@@ -130,18 +181,229 @@ public class ConsensusCommand extends Command {
         }
     }
 
-    private void writeRegions(ConsensusGenerator generator, CompoundFilter filter,
+    private void writeRegions(ConsensusGenerator generator, VariantContextFilter filter,
                               List<Region> regions, FormattingOutputStream outputStream) throws IOException {
-        OutputStream statsOut = hasOption(STATS_TO_ERR) ? System.err : hasOption(STATS_TO_OUT) ? System.out : null;
+        OutputStream statsOut = determineStatsOutput();
+        int tileSize = determineTileSize();
         for (Region region : regions) {
             outputStream.startFormatting();
-            generator.write(outputStream, region, filter, statsOut);
+            if (tileSize > 0) {
+                generator.writeTiles(outputStream, region, filter, statsOut, this::determineSampler, tileSize,
+                        determineThreads());
+            } else {
+                generator.write(outputStream, region, filter, statsOut);
+            }
             outputStream.stopFormatting();
             outputStream.write(System.lineSeparator().getBytes("UTF-8"));
         }
         generator.close();
     }
 
+    /**
+     * Get the output of the statistics.
+     *
+     * @return standard error or standard out if the statistics are requested there, otherwise null.
+     */
+    private OutputStream determineStatsOutput() {
+        return hasOption(STATS_TO_ERR) ? System.err : hasOption(STATS_TO_OUT) ? System.out : null;
+    }
+
+    /**
+     * Write the consensus of every requested sample, or of every haplotype of those samples,
+     * to its own file, in one pass over the calls per region. A sample is encoded by its dosage and a haplotype
+     * by its allele, so the encoders that pick the calls of the whole file can not be used with them.
+     *
+     * @param generator   the generator.
+     * @param filter      the filter of the calls.
+     * @param regions     the regions to write.
+     * @param sampleNames the names of all samples in the calls file.
+     * @throws IOException if the output could not be written.
+     */
+    private void writeSamples(ConsensusGenerator generator, VariantContextFilter filter, List<Region> regions,
+                              List<String> sampleNames) throws IOException {
+        if (getVCFFiles().size() > 1) {
+            throw new IllegalArgumentException("A consensus per sample can only be written from a single calls file.");
+        }
+        List<String> samples = hasOption(SAMPLES) ? determineSampleNames(sampleNames) : sampleNames;
+        int haplotypes = determineHaplotypes();
+        checkSampleEncoders(haplotypes);
+        double fraction = determineDosageFraction();
+        GenotypeColumns columns = new GenotypeColumns();
+        List<String> names = new ArrayList<>();
+        List<Sampler> samplers = new ArrayList<>();
+        for (String sample : samples) {
+            if (haplotypes == 0) {
+                names.add(sample);
+                samplers.add(new DosageSampler(fraction, sampleNames.indexOf(sample), columns));
+            }
+            for (int haplotype = 0; haplotype < haplotypes; haplotype++) {
+                names.add(sample + "_" + (haplotype + 1));
+                samplers.add(new HaplotypeSampler(sampleNames.indexOf(sample), haplotype, columns));
+            }
+        }
+        writeEach(generator, regions, names, (outputs, region) ->
+                generator.writeSamples(outputs, samplers, columns, region, filter, determineStatsOutput(),
+                        determineThreads()));
+    }
+
+    /**
+     * Check that no encoder is requested that the consensus per sample or haplotype would ignore.
+     *
+     * @param haplotypes the amount of haplotypes per sample, 0 to write the dosage of each sample.
+     */
+    private void checkSampleEncoders(int haplotypes) {
+        String samples = haplotypes == 0 ? "--" + SAMPLES : "--" + HAPLOTYPES;
+        if (hasOption(AF_ENCODER_OPTION) || hasOption(SAMPLE_ENCODER_OPTION)) {
+            throw new IllegalArgumentException(samples + " can not be used with --" + AF_ENCODER_OPTION
+                    + " or --" + SAMPLE_ENCODER_OPTION + ".");
+        }
+        if (haplotypes > 0 && hasOption(DOSAGE_ENCODER_OPTION)) {
+            throw new IllegalArgumentException(samples + " can not be used with --" + DOSAGE_ENCODER_OPTION + ".");
+        }
+    }
+
+    /**
+     * Write the consensus of every calls file to its own file, in one pass over the reference per region.
+     *
+     * @param generator the generator.
+     * @param filter    the filter of the calls.
+     * @param regions   the regions to write.
+     * @throws IOException if the output could not be written.
+     */
+    private void writeCohort(ConsensusGenerator generator, VariantContextFilter filter,
+                             List<Region> regions) throws IOException {
+        if (hasOption(SAMPLES) || hasOption(HAPLOTYPES)) {
+            throw new IllegalArgumentException("--" + COHORT + " can not be used with --" + SAMPLES
+                    + " or --" + HAPLOTYPES + ".");
+        }
+        List<String> names = new ArrayList<>();
+        List<Sampler> samplers = new ArrayList<>();
+        for (String vcfFile : getVCFFileNames()) {
+            String name = new File(vcfFile).getName().replaceFirst("\\.(vcf|bcf)(\\.gz)?$", "");
+            if (names.contains(name)) {
+                throw new IllegalArgumentException("Several calls files are named " + name
+                        + ", the consensus of each file is written to a file with its name.");
+            }
+            names.add(name);
+            samplers.add(determineSampler());
+        }
+        List<String> vcfFiles = getVCFFiles();
+        writeEach(generator, regions, names, (outputs, region) ->
+                generator.writeCohort(vcfFiles, outputs, samplers, region, filter, determineStatsOutput(),
+                        determineThreads()));
+    }
+
+    /**
+     * Write every region to a file per name, <name>.fasta in the output directory.
+     *
+     * @param generator the generator, closed afterwards.
+     * @param regions   the regions to write.
+     * @param names     the names of the files.
+     * @param writer    writes a region to all files.
+     * @throws IOException if the output could not be written.
+     */
+    private void writeEach(ConsensusGenerator generator, List<Region> regions, List<String> names,
+                           RegionWriter writer) throws IOException {
+        if (!hasOption(OUTPUT_OPTION)) {
+            throw new IllegalArgumentException("An output directory is needed to write a consensus per file.");
+        }
+        File directory = new File(getOptionValue(OUTPUT_OPTION));
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Could not create output directory " + directory);
+        }
+        List<FormattingOutputStream> outputs = new ArrayList<>();
+        try {
+            for (String name : names) {
+                outputs.add(new FormattingOutputStream(new FileOutputStream(new File(directory, name + ".fasta")), 70));
+            }
+            for (Region region : regions) {
+                writer.write(new ArrayList<>(outputs), region);
+                for (FormattingOutputStream output : outputs) {
+                    output.stopFormatting();
+                    output.write(System.lineSeparator().getBytes("UTF-8"));
+                }
+            }
+        } finally {
+            for (FormattingOutputStream output : outputs) {
+                output.close();
+            }
+            generator.close();
+        }
+    }
+
+    private List<String> determineSampleNames(List<String> sampleNames) {
+        String value = String.join(",", getOptionValues(SAMPLES));
+        if ("all".equals(value)) {
+            return sampleNames;
+        }
+        List<String> names = new ArrayList<>();
+        for (String name : value.split(",")) {
+            if (!sampleNames.contains(name.trim())) {
+                throw new IllegalArgumentException("The calls file has no sample " + name.trim());
+            }
+            names.add(name.trim());
+        }
+        return names;
+    }
+
+    private int determineHaplotypes() {
+        if (!hasOption(HAPLOTYPES)) {
+            return 0;
+        }
+        try {
+            int haplotypes = Integer.parseInt(getOptionValue(HAPLOTYPES));
+            if (haplotypes > 0) {
+                return haplotypes;
+            }
+        } catch (NumberFormatException ignore) {
+            // reported below
+        }
+        throw new IllegalArgumentException("--" + HAPLOTYPES + " needs a positive integer, the ploidy, as argument.");
+    }
+
+    private int determineThreads() {
+        if (!hasOption(THREADS)) {
+            return 1;
+        }
+        try {
+            return Math.max(1, Integer.parseInt(getOptionValue(THREADS)));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("--" + THREADS + " needs an integer as argument.");
+        }
+    }
+
+    /**
+     * Get the size of the tiles to write a region in.
+     *
+     * @return the size of the tiles, or 0 to write a region in one piece.
+     */
+    private int determineTileSize() {
+        if (!hasOption(TILE_SIZE)) {
+            return 0;
+        }
+        if (hasOption(COLOR_OPTION) && !hasOption(OUTPUT_OPTION)) {
+            throw new IllegalArgumentException("--" + TILE_SIZE + " can not be used with --" + COLOR_OPTION + ".");
+        }
+        try {
+            int tileSize = Integer.parseInt(getOptionValue(TILE_SIZE));
+            if (tileSize < 1) {
+                throw new IllegalArgumentException("--" + TILE_SIZE + " needs a positive integer as argument.");
+            }
+            return tileSize;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("--" + TILE_SIZE + " needs a positive integer as argument.");
+        }
+    }
+
+    private double determineDosageFraction() {
+        String fraction = hasOption(DOSAGE_ENCODER_OPTION) ? getOptionValue(DOSAGE_ENCODER_OPTION) : null;
+        try {
+            return fraction == null ? 0 : Double.parseDouble(fraction);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Dosage encoder expects a number as fraction");
+        }
+    }
+
     private Sampler determineSampler() {
         if (hasOption(AF_ENCODER_OPTION)) {
             String[] afOptions = getOptionValues(AF_ENCODER_OPTION);
@@ -159,6 +421,9 @@ public class ConsensusCommand extends Command {
             throw new IllegalArgumentException("AE encoder expects two numbers as values, usage: -ea <lower>-<upper>");
         }
 
+        if (hasOption(DOSAGE_ENCODER_OPTION)) {
+            return new DosageSampler(determineDosageFraction());
+        }
         if (hasOption(SAMPLE_ENCODER_OPTION)) {
             return new SimpleSampler();
         }
@@ -186,25 +451,93 @@ public class ConsensusCommand extends Command {
     }
 
     /**
-     * Create a vcfIterator from a file specified in the command line.
+     * Create a vcfIterator from the files specified in the command line, merged if there are several.
+     * The files of a cohort are read separately, so only the first is opened, for its header.
      *
-     * @return the fasta sequence.
+     * @return the vcf iterator.
      */
     private VCFIterator createVCFIterator() throws IOException {
-        String vcfFile = getVCFFile();
+        List<String> vcfFiles = hasOption(COHORT) ? getVCFFiles().subList(0, 1) : getVCFFiles();
         try {
-            return new VCFIteratorBuilder().open(vcfFile);
+            return new VCFIteratorBuilder().skipReferenceBlocks().checkOrder().open(vcfFiles, getMergePrecedence());
         } catch (IOException e) {
-            throw new IOException("Could not open file " + vcfFile + " : " + e.getMessage());
+            throw new IOException("Could not open file " + String.join(", ", vcfFiles) + " : " + e.getMessage());
+        }
+    }
+
+    private MergingVCFIterator.Precedence getMergePrecedence() {
+        return hasOption(MERGE_PRECEDENCE) ? MergingVCFIterator.Precedence.parse(getOptionValue(MERGE_PRECEDENCE))
+                : MergingVCFIterator.Precedence.FIRST;
+    }
+
+    /**
+     * Get the directory for temporary files, used for sorting and for caching the reverse of a region.
+     *
+     * @return the directory, or null for the temporary directory of the system.
+     */
+    private File determineTempDirectory() {
+        return hasOption(TEMP_DIRECTORY) ? new File(getOptionValue(TEMP_DIRECTORY)) : null;
+    }
+
+    /**
+     * Get the vcf files specified in the command line, each sorted into a temporary file if it is not sorted
+     * and the files are sorted first. Otherwise the files are checked while they are read.
+     *
+     * @return the paths of the sorted vcf files.
+     * @throws IOException if a file could not be read or sorted.
+     */
+    private List<String> getVCFFiles() throws IOException {
+        if (sortedVCFFiles != null) {
+            return sortedVCFFiles;
+        }
+        if (!sortFirst) {
+            sortedVCFFiles = getVCFFileNames();
+            return sortedVCFFiles;
         }
+        File tempDirectory = determineTempDirectory();
+        long memory = VCFSorter.DEFAULT_MEMORY;
+        if (hasOption(SORT_MEMORY)) {
+            try {
+                memory = Long.parseLong(getOptionValue(SORT_MEMORY)) << 20;
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("--" + SORT_MEMORY + " needs an integer as argument.");
+            }
+        }
+        VCFSorter sorter = new VCFSorter(tempDirectory, memory);
+        List<String> sorted = new ArrayList<>();
+        for (String vcfFile : getVCFFileNames()) {
+            sorted.add(sortIfNeeded(sorter, vcfFile));
+        }
+        sortedVCFFiles = sorted;
+        return sortedVCFFiles;
     }
 
-    private String getVCFFile() {
-        String vcfFile = getOptionValue(VCF_OPTION);
-        if (getOptionValues(VCF_OPTION).length > 1) {
-            vcfFile = String.join(" ", getOptionValues(VCF_OPTION));
+    /**
+     * Get the vcf files specified in the command line.
+     * Multiple values are one file if they form the path of an existing file with spaces.
+     *
+     * @return the paths of the vcf files.
+     */
+    private List<String> getVCFFileNames() {
+        List<String> vcfFiles = Arrays.asList(getOptionValues(VCF_OPTION));
+        String joined = String.join(" ", vcfFiles);
+        if (vcfFiles.size() > 1 && new File(joined).isFile()) {
+            vcfFiles = Collections.singletonList(joined);
+        }
+        return vcfFiles;
+    }
+
+    private static String sortIfNeeded(VCFSorter sorter, String vcfFile) throws IOException {
+        File vcf = new File(vcfFile);
+        if (!vcf.isFile()) {
+            // let opening the file report it.
+            return vcfFile;
         }
-        return vcfFile;
+        File sorted = sorter.sortIfNeeded(vcf);
+        if (sorted != vcf) {
+            MultiLogger.get().println("The vcf file " + vcfFile + " is not sorted, sorted it into " + sorted);
+        }
+        return sorted.getPath();
     }
 
 
@@ -267,4 +600,17 @@ public class ConsensusCommand extends Command {
         return new ConsensusGenerator(fasta, vcfFile, vcf, encoder, sampler);
     }
 
-}
\ No newline at end of file
+    /**
+     * Writes a region to several outputs at once.
+     */
+    private interface RegionWriter {
+        /**
+         * Writes a region.
+         *
+         * @param outputs the outputs.
+         * @param region  the region.
+         * @throws IOException if writing failed.
+         */
+        void write(List<OutputStream> outputs, Region region) throws IOException;
+    }
+}
@@ -5,6 +5,8 @@ import consensus.filters.*;
 import htsjdk.variant.variantcontext.filter.CompoundFilter;
 import htsjdk.variant.variantcontext.filter.VariantContextFilter;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
@@ -65,6 +67,10 @@ public class ConsensusCommandFilterParser {
             addIncludePositionOverlapFilter(cmd, filters);
         }
 
+        addSiteFilters(cmd, filters);
+        addExpressionFilters(cmd, filters);
+        addFormatFilters(cmd, filters);
+
         if (cmd.hasOption(ConsensusFilterOptions.KEEP_INDELS)) {
             filters.add(new FilterInverse(new IndelFilter()));
         }
@@ -202,23 +208,20 @@ public class ConsensusCommandFilterParser {
     }
 
     private void addExcludePositionFilter(Command cmd, ArrayList<VariantContextFilter> filters) {
-        List<Region> regions = getRegions(cmd, ConsensusFilterOptions.EXCLUDE_POSITION);
-        filters.add(new FilterInverse(new PositionFilter(regions, false)));
+        filters.add(new FilterInverse(makePositionFilter(cmd, ConsensusFilterOptions.EXCLUDE_POSITION, false)));
     }
 
     private void addExcludePositionOverlapFilter(Command cmd, ArrayList<VariantContextFilter> filters) {
-        List<Region> regions = getRegions(cmd, ConsensusFilterOptions.EXCLUDE_POSITION_OVERLAP);
-        filters.add(new FilterInverse(new PositionFilter(regions, true)));
+        filters.add(new FilterInverse(
+                makePositionFilter(cmd, ConsensusFilterOptions.EXCLUDE_POSITION_OVERLAP, true)));
     }
 
     private void addIncludePositionFilter(Command cmd, ArrayList<VariantContextFilter> filters) {
-        List<Region> regions = getRegions(cmd, ConsensusFilterOptions.INCLUDE_POSITION);
-        filters.add(new PositionFilter(regions, false));
+        filters.add(makePositionFilter(cmd, ConsensusFilterOptions.INCLUDE_POSITION, false));
     }
 
     private void addIncludePositionOverlapFilter(Command cmd, ArrayList<VariantContextFilter> filters) {
-        List<Region> regions = getRegions(cmd, ConsensusFilterOptions.INCLUDE_POSITION_OVERLAP);
-        filters.add(new PositionFilter(regions, true));
+        filters.add(makePositionFilter(cmd, ConsensusFilterOptions.INCLUDE_POSITION_OVERLAP, true));
     }
 
     private void addMinimumQualityFilter(Command cmd, ArrayList<VariantContextFilter> filters) {
@@ -233,14 +236,123 @@ public class ConsensusCommandFilterParser {
         }
     }
 
-    private List<Region> getRegions(Command cmd, String commandString) {
+    /**
+     * Creates a position filter from the values of an option.
+     * Values that are an existing file are read as BED files, all other values as regions.
+     *
+     * @param cmd           The user input.
+     * @param commandString The option to read the values of.
+     * @param overlap       true if variants only need to overlap with a region.
+     * @return the position filter.
+     */
+    private PositionFilter makePositionFilter(Command cmd, String commandString, boolean overlap) {
+        String[] values = cmd.getOptionValues(commandString);
+        if (values == null) {
+            throw new IllegalArgumentException("Could not make filter: no positions given with " + commandString);
+        }
+        List<String> regionStrings = new ArrayList<>();
+        List<String> bedFiles = new ArrayList<>();
+        for (String value : values) {
+            if (!value.matches("\\d+(-\\d*)?") && new File(value).isFile()) {
+                bedFiles.add(value);
+            } else {
+                regionStrings.add(value);
+            }
+        }
         RegionParser parser = new RegionParser();
-        List<Region> regions = null;
         try {
-            regions = parser.parseRegions(cmd.getOptionValues(commandString));
+            List<Region> regions = parser.parseRegions(regionStrings.toArray(new String[0]));
+            if (bedFiles.isEmpty()) {
+                return new PositionFilter(regions, overlap);
+            }
+            return new PositionFilter(regions, new BedParser().parseBeds(bedFiles), overlap);
+        } catch (IllegalArgumentException | IOException e) {
+            throw new IllegalArgumentException("Could not make filter: " + e.getMessage());
+        }
+    }
+
+    private void addFormatFilters(Command cmd, ArrayList<VariantContextFilter> filters) {
+        final String sample = cmd.hasOption(ConsensusFilterOptions.FORMAT_SAMPLE)
+                ? cmd.getOptionValue(ConsensusFilterOptions.FORMAT_SAMPLE) : null;
+        if (cmd.hasOption(ConsensusFilterOptions.MINIMUM_GENOTYPE_QUALITY)) {
+            int minGQ = parseIntOption(cmd, ConsensusFilterOptions.MINIMUM_GENOTYPE_QUALITY);
+            filters.add(new FormatFilter(sample, "GQ", minGQ, Integer.MAX_VALUE));
+        }
+
+        if (cmd.hasOption(ConsensusFilterOptions.MINIMUM_SAMPLE_DEPTH)
+                || cmd.hasOption(ConsensusFilterOptions.MAXIMUM_SAMPLE_DEPTH)) {
+            int minDepth = cmd.hasOption(ConsensusFilterOptions.MINIMUM_SAMPLE_DEPTH)
+                    ? parseIntOption(cmd, ConsensusFilterOptions.MINIMUM_SAMPLE_DEPTH) : 0;
+            int maxDepth = cmd.hasOption(ConsensusFilterOptions.MAXIMUM_SAMPLE_DEPTH)
+                    ? parseIntOption(cmd, ConsensusFilterOptions.MAXIMUM_SAMPLE_DEPTH) : Integer.MAX_VALUE;
+            if (minDepth > maxDepth) {
+                throw new IllegalArgumentException("minimum sample depth cannot be larger than maximum sample depth.");
+            }
+            filters.add(new FormatFilter(sample, "DP", minDepth, maxDepth));
+        }
+
+        if (cmd.hasOption(ConsensusFilterOptions.MINIMUM_ALT_DEPTH)) {
+            int minAltDepth = parseIntOption(cmd, ConsensusFilterOptions.MINIMUM_ALT_DEPTH);
+            filters.add(new FormatFilter(sample, "AD", minAltDepth, Integer.MAX_VALUE));
+        }
+    }
+
+    private int parseIntOption(Command cmd, String commandString) {
+        try {
+            return Integer.parseInt(cmd.getOptionValue(commandString));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("--" + commandString + " needs an integer as argument.");
+        }
+    }
+
+    private void addExpressionFilters(Command cmd, ArrayList<VariantContextFilter> filters) {
+        if (cmd.hasOption(ConsensusFilterOptions.INCLUDE_EXPRESSION)) {
+            filters.add(makeExpressionFilter(cmd, ConsensusFilterOptions.INCLUDE_EXPRESSION));
+        }
+
+        if (cmd.hasOption(ConsensusFilterOptions.EXCLUDE_EXPRESSION)) {
+            filters.add(new FilterInverse(makeExpressionFilter(cmd, ConsensusFilterOptions.EXCLUDE_EXPRESSION)));
+        }
+    }
+
+    private ExpressionFilter makeExpressionFilter(Command cmd, String commandString) {
+        String expression = cmd.getOptionValue(commandString);
+        if (expression == null) {
+            throw new IllegalArgumentException("missing --" + commandString + " value.");
+        }
+        try {
+            return ExpressionFilter.compile(expression);
         } catch (IllegalArgumentException e) {
             throw new IllegalArgumentException("Could not make filter: " + e.getMessage());
         }
-        return regions;
+    }
+
+    private void addSiteFilters(Command cmd, ArrayList<VariantContextFilter> filters) {
+        if (cmd.hasOption(ConsensusFilterOptions.INCLUDE_SITES)) {
+            filters.add(makeSiteFilter(cmd, ConsensusFilterOptions.INCLUDE_SITES));
+        }
+
+        if (cmd.hasOption(ConsensusFilterOptions.EXCLUDE_SITES)) {
+            filters.add(new FilterInverse(makeSiteFilter(cmd, ConsensusFilterOptions.EXCLUDE_SITES)));
+        }
+    }
+
+    /**
+     * Creates a site filter from the site lists given with an option.
+     *
+     * @param cmd           The user input.
+     * @param commandString The option to read the site lists of.
+     * @return the site filter.
+     */
+    private SiteFilter makeSiteFilter(Command cmd, String commandString) {
+        String[] values = cmd.getOptionValues(commandString);
+        if (values == null) {
+            throw new IllegalArgumentException("Could not make filter: no site lists given with " + commandString);
+        }
+        try {
+            return new SiteFilter(new SiteListParser().parseSiteLists(Arrays.asList(values)));
+        } catch (IllegalArgumentException | IOException e) {
+            throw new IllegalArgumentException("Could not make filter: " + e.getMessage());
+        }
     }
 }
@@ -4,10 +4,16 @@ import cli.options.CoverageCommandOptions;
 import coverage.Coverage;
 import coverage.CoverageArray;
 import coverage.CoverageGenerator;
+import coverage.RegionCoverage;
 import logger.MultiLogger;
 import org.apache.commons.cli.Options;
 
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
 import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
 import java.util.List;
 
 import static cli.options.CoverageCommandOptions.*;
@@ -69,18 +75,22 @@ class CoverageCommand extends Command {
 
         try {
             List<Region> regions = determineRegions(REGION, ANNOTATION);
-            Region region = regions.get(0);
             CoverageGenerator generator;
             if (hasOption(DEFAULT_SETTINGS)) {
                 generator = new CoverageGenerator();
             } else {
                 generator = getDefaultGenerator();
             }
+            if (hasOption(TEMP_DIRECTORY)) {
+                generator.setSpillDirectory(new File(getOptionValue(TEMP_DIRECTORY)));
+            }
 
-            if (hasOption(ARRAY_COVERAGE)) {
-                execArrayCoverage(generator, region);
+            if (regions.size() > 1 || hasOption(ANNOTATION)) {
+                execTableCoverage(generator, regions);
+            } else if (hasOption(ARRAY_COVERAGE) || hasOption(BEDGRAPH)) {
+                execArrayCoverage(generator, regions.get(0));
             } else {
-                execStandardCoverage(generator, region);
+                execStandardCoverage(generator, regions.get(0));
             }
         } catch (RuntimeException | IOException e) {
             System.out.println("Error interpreting command: " + e.getMessage() + " see log for more information.");
@@ -93,19 +103,74 @@ class CoverageCommand extends Command {
 
     private void execStandardCoverage(CoverageGenerator generator, Region region) throws IOException {
         Coverage c = generator.bamFileBasicCoverageThreads(
-                hasOption(AMOUNT_OF_THREADS) ? parseInt(getOptionValue(AMOUNT_OF_THREADS), 1) : 1,
+                getThreads(),
                 getOptionValue(BAM_OPTION),
                 getOptionValue(CHR_NAME),
-                region.getStart(), region.getEnd());
+                region.getStart(), getEnd(region));
         System.out.println(c.toString());
     }
 
     private void execArrayCoverage(CoverageGenerator generator, Region region) throws IOException {
-        CoverageArray c = generator.bamFileArrayCoverage(
+        CoverageArray c = generator.bamFileArrayCoverageThreads(
+                getThreads(),
                 getOptionValue(BAM_OPTION),
                 getOptionValue(CHR_NAME),
-                region.getStart(), region.getEnd());
+                region.getStart(), getEnd(region));
         System.out.println(c.coverageStatisticsOverview(4));
+        if (hasOption(BEDGRAPH)) {
+            try (Writer writer = new BufferedWriter(new FileWriter(getOptionValue(BEDGRAPH)))) {
+                c.writeBedGraph(writer);
+            }
+        }
+    }
+
+    /**
+     * Print a table with the coverage of every region, counted in one pass over the file.
+     *
+     * @param generator the generator to count with.
+     * @param regions   the regions.
+     * @throws IOException if reading failed.
+     */
+    private void execTableCoverage(CoverageGenerator generator, List<Region> regions) throws IOException {
+        List<int[]> bounds = new ArrayList<>();
+        for (Region region : regions) {
+            bounds.add(new int[]{region.getStart(), getEnd(region)});
+        }
+        List<RegionCoverage> coverages = generator.bamFileRegionsCoverage(
+                getOptionValue(BAM_OPTION), getOptionValue(CHR_NAME), bounds);
+        StringBuilder builder = new StringBuilder("region\tstart\tend\tmean depth\tcovered width");
+        for (int percentile : RegionCoverage.PERCENTILES) {
+            builder.append("\tP").append(percentile);
+        }
+        builder.append('\n');
+        for (int i = 0; i < regions.size(); i++) {
+            RegionCoverage c = coverages.get(i);
+            String name = regions.get(i).getName();
+            builder.append(name == null ? c.getStartPos() + "-" + c.getEndPos() : name)
+                    .append('\t').append(c.getStartPos())
+                    .append('\t').append(c.getEndPos())
+                    .append('\t').append((int) (c.getAverageDepth() * 1000.0) / 1000.0)
+                    .append('\t').append((int) (c.getCoveredWidth() * 1000.0) / 1000.0);
+            for (int p = 0; p < RegionCoverage.PERCENTILES.length; p++) {
+                builder.append('\t').append(c.getPercentileDepth(p));
+            }
+            builder.append('\n');
+        }
+        System.out.print(builder);
+    }
+
+    /**
+     * Get the end of a region, which is the end of the chromosome if it is not defined.
+     *
+     * @param region the region.
+     * @return the end.
+     */
+    private static int getEnd(Region region) {
+        return region.getEnd() < 0 ? Integer.MAX_VALUE : region.getEnd();
+    }
+
+    private int getThreads() {
+        return hasOption(AMOUNT_OF_THREADS) ? parseInt(getOptionValue(AMOUNT_OF_THREADS), 1) : 1;
     }
 
     private CoverageGenerator getDefaultGenerator() {
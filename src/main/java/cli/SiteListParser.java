@@ -0,0 +1,69 @@
+package cli;
+
+import consensus.filters.SiteBitmap;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Parses site lists, optionally gzipped, into a bitmap of positions per contig.
+ * A site list is either a BED file, of which every base is a site, or a file with the
+ * contig and the 1-based position in the first two columns, like a VCF file.
+ * Lines in the form contig:position are also accepted.
+ */
+public class SiteListParser {
+
+    /**
+     * Parses site lists into one bitmap per contig, combining the sites of all files.
+     *
+     * @param files the paths of the site lists.
+     * @return the sites, by contig name.
+     * @throws IOException if a file could not be read.
+     * @throws IllegalArgumentException if a line is not a valid site.
+     */
+    public Map<String, SiteBitmap> parseSiteLists(List<String> files) throws IOException {
+        Map<String, SiteBitmap> sites = new HashMap<>();
+        for (String file : files) {
+            parseSiteList(new File(file), sites);
+        }
+        return sites;
+    }
+
+    private void parseSiteList(File file, Map<String, SiteBitmap> sites) throws IOException {
+        final boolean bed = file.getName().replaceFirst("\\.gz$", "").endsWith(".bed");
+        try (BufferedReader reader = BedParser.openReader(file)) {
+            int lineNumber = 0;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (BedParser.isHeader(line)) {
+                    continue;
+                }
+                String[] columns = line.split("\\s+", bed ? 4 : 3);
+                if (columns.length == 1) {
+                    columns = line.trim().split(":");
+                }
+                if (columns.length < (bed ? 3 : 2)) {
+                    throw new IllegalArgumentException("Line " + lineNumber + " of " + file.getName()
+                            + " is not a valid site: " + line);
+                }
+                SiteBitmap bitmap = sites.computeIfAbsent(columns[0], k -> new SiteBitmap());
+                try {
+                    if (bed) {
+                        // BED is 0-based and half-open, sites are 1-based.
+                        bitmap.addRange(Integer.parseInt(columns[1]) + 1, Integer.parseInt(columns[2]));
+                    } else {
+                        bitmap.add(Integer.parseInt(columns[1]));
+                    }
+                } catch (IllegalArgumentException e) {
+                    throw new IllegalArgumentException("Line " + lineNumber + " of " + file.getName()
+                            + " has an invalid position: " + line);
+                }
+            }
+        }
+    }
+}
@@ -29,6 +29,10 @@ public class ConsensusCommandOptions {
      * String used for sample encoder option and display in help message.
      */
     public static final String SAMPLE_ENCODER_OPTION = "sample-encoder";
+    /**
+     * String used for dosage encoder option and display in help message.
+     */
+    public static final String DOSAGE_ENCODER_OPTION = "dosage-encoder";
     /**
      * String used for color option and display in help message.
      */
@@ -58,6 +62,51 @@ public class ConsensusCommandOptions {
      */
     public static final String STATS_TO_OUT = "stats-to-out";
 
+    /**
+     * String used for the temporary directory option and display in help message.
+     */
+    public static final String TEMP_DIRECTORY = "temp-dir";
+
+    /**
+     * String used for the merge precedence option and display in help message.
+     */
+    public static final String MERGE_PRECEDENCE = "merge-precedence";
+
+    /**
+     * String used for the sort memory option and display in help message.
+     */
+    public static final String SORT_MEMORY = "sort-memory";
+
+    /**
+     * String used for the samples option and display in help message.
+     */
+    public static final String SAMPLES = "samples";
+
+    /**
+     * String used for the amount of threads option and display in help message.
+     */
+    public static final String THREADS = "threads";
+
+    /**
+     * String used for the cohort option and display in help message.
+     */
+    public static final String COHORT = "cohort";
+
+    /**
+     * String used for the haplotypes option and display in help message.
+     */
+    public static final String HAPLOTYPES = "haplotypes";
+
+    /**
+     * String used for the tile size option and display in help message.
+     */
+    public static final String TILE_SIZE = "tile-size";
+
+    /**
+     * String used for the normalize option and display in help message.
+     */
+    public static final String NORMALIZE = "normalize";
+
     /**
      * Adds the non-filter related options to the consensus-command.
      *
@@ -75,6 +124,58 @@ public class ConsensusCommandOptions {
         defineHelpOption(options);
         defineStatsToOutOption(options);
         defineStatsOption(options);
+        defineSortOptions(options);
+        defineSamplesOptions(options);
+    }
+
+    private void defineSamplesOptions(Options options) {
+        Option samplesOption = Option.builder()
+                .required(false).hasArg(true).longOpt(SAMPLES)
+                .desc("Write the consensus of each sample, separated by commas or \"all\", "
+                        + "from the GT fields in one pass over the calls, to <sample>.fasta in the out directory. "
+                        + "Only the dosage encoder can be used with it")
+                .build();
+        Option threadsOption = Option.builder("t")
+                .required(false).hasArg(true).longOpt(THREADS)
+                .desc("use a variable amount of threads to write the consensus of several samples or files"
+                        + " (Default: 1)")
+                .build();
+        Option cohortOption = Option.builder()
+                .required(false).hasArg(false).longOpt(COHORT)
+                .desc("Write the consensus of each calls file, reading the reference once for all files, "
+                        + "to <file name>.fasta in the out directory")
+                .build();
+        Option haplotypesOption = Option.builder()
+                .required(false).hasArg(true).longOpt(HAPLOTYPES)
+                .desc("Write the consensus of each of the given amount of haplotypes of the phased genotypes "
+                        + "of the samples, to <sample>_<haplotype>.fasta in the out directory. "
+                        + "Can not be used with an encoder")
+                .build();
+        Option tileSizeOption = Option.builder()
+                .required(false).hasArg(true).longOpt(TILE_SIZE)
+                .desc("Write each region in tiles of at least this many bases on the threads of --" + THREADS
+                        + ", cut between overlapping calls and read from the index of the calls file")
+                .build();
+        options.addOption(samplesOption)
+                .addOption(threadsOption)
+                .addOption(tileSizeOption)
+                .addOption(cohortOption)
+                .addOption(haplotypesOption);
+    }
+
+    private void defineSortOptions(Options options) {
+        Option tempDirectoryOption = Option.builder()
+                .required(false).hasArg(true).longOpt(TEMP_DIRECTORY)
+                .desc("Directory for the temporary files used to sort an unsorted vcf file, "
+                        + "and to reverse a region on the minus strand that can not be read from an index. "
+                        + "(Default: the temporary directory of the system)")
+                .build();
+        Option sortMemoryOption = Option.builder()
+                .required(false).hasArg(true).longOpt(SORT_MEMORY)
+                .desc("Megabytes of records to keep in memory while sorting an unsorted vcf file. (Default: 256)")
+                .build();
+        options.addOption(tempDirectoryOption)
+                .addOption(sortMemoryOption);
     }
 
     private void defineStatsOption(Options options) {
@@ -120,7 +221,13 @@ public class ConsensusCommandOptions {
                 .desc("Use an encoder based on the sample field. "
                         + "The default encoder also works based on the sample.")
                 .build();
-        options.addOption(sampleEncoderOption);
+        Option dosageEncoderOption = Option.builder("ed")
+                .required(false).hasArg(true).optionalArg(true).longOpt(DOSAGE_ENCODER_OPTION)
+                .desc("Use an encoder based on the dosage of the alleles in the GT fields, for any ploidy. "
+                        + "Alleles below the given fraction of the dosage are left out. (Default fraction: 0)")
+                .build();
+        options.addOption(sampleEncoderOption)
+                .addOption(dosageEncoderOption);
     }
 
     private void defineAFEncoderOption(Options options) {
@@ -176,8 +283,18 @@ public class ConsensusCommandOptions {
     private static void defineCallOptions(Options options) {
         Option callOption = Option.builder("c")
                 .required(true).hasArg(true).longOpt(VCF_OPTION)
-                .desc("vcf file that contains the calls").build();
-        options.addOption(callOption);
+                .desc("vcf file that contains the calls, give it multiple times to merge several files").build();
+        Option precedenceOption = Option.builder()
+                .required(false).hasArg(true).longOpt(MERGE_PRECEDENCE)
+                .desc("Which calls to keep when merged vcf files have calls on the same position: "
+                        + "first, quality or all. (Default: first)").build();
+        Option normalizeOption = Option.builder()
+                .required(false).hasArg(false).longOpt(NORMALIZE)
+                .desc("Split calls with several alternative alleles and left-align indels against the reference "
+                        + "while the calls are read").build();
+        options.addOption(callOption)
+                .addOption(precedenceOption)
+                .addOption(normalizeOption);
     }
 
     private static void defineFastaOption(Options options) {
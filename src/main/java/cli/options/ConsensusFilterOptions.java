@@ -64,6 +64,51 @@ public class ConsensusFilterOptions {
      */
     public static final String INCLUDE_POSITION_OVERLAP = "positions-overlap";
 
+    /**
+     * Option name.
+     */
+    public static final String INCLUDE_SITES = "sites";
+
+    /**
+     * Option name.
+     */
+    public static final String EXCLUDE_SITES = "exclude-sites";
+
+    /**
+     * Option name.
+     */
+    public static final String INCLUDE_EXPRESSION = "include-expression";
+
+    /**
+     * Option name.
+     */
+    public static final String EXCLUDE_EXPRESSION = "exclude-expression";
+
+    /**
+     * Option name.
+     */
+    public static final String FORMAT_SAMPLE = "format-sample";
+
+    /**
+     * Option name.
+     */
+    public static final String MINIMUM_GENOTYPE_QUALITY = "min-gq";
+
+    /**
+     * Option name.
+     */
+    public static final String MINIMUM_SAMPLE_DEPTH = "min-sample-dp";
+
+    /**
+     * Option name.
+     */
+    public static final String MAXIMUM_SAMPLE_DEPTH = "max-sample-dp";
+
+    /**
+     * Option name.
+     */
+    public static final String MINIMUM_ALT_DEPTH = "min-alt-ad";
+
     /**
      * Option name.
      */
@@ -94,6 +139,11 @@ public class ConsensusFilterOptions {
      */
     public static final String SKIP_FAILING_CONTEXT = "skip-failing-calls";
 
+    /**
+     * String used for the adaptive filter order option and display in help message.
+     */
+    public static final String ADAPTIVE_FILTER_ORDER = "adaptive-filter-order";
+
     /**
      * Defines the filter options for the consensus command.
      *
@@ -112,7 +162,78 @@ public class ConsensusFilterOptions {
         addPositionFilterOptions(options);
         addFilterFilterOptions(options);
         addIndelFilterOptions(options);
+        addExpressionFilterOptions(options);
+        addFormatFilterOptions(options);
         addFailOption(options);
+        addAdaptiveOrderOption(options);
+    }
+
+    private void addFormatFilterOptions(Options options) {
+        Option formatSampleOption = Option.builder()
+                .required(false)
+                .hasArg()
+                .longOpt(FORMAT_SAMPLE)
+                .desc("The sample of which the FORMAT fields are filtered, the first sample by default")
+                .build();
+        Option minimumGenotypeQualityOption = Option.builder()
+                .required(false)
+                .hasArg()
+                .longOpt(MINIMUM_GENOTYPE_QUALITY)
+                .desc("Include only sites where the GQ of the sample is greater than or equal to this value")
+                .build();
+        Option minimumSampleDepthOption = Option.builder()
+                .required(false)
+                .hasArg()
+                .longOpt(MINIMUM_SAMPLE_DEPTH)
+                .desc("Include only sites where the FORMAT DP of the sample is greater than or equal to this value")
+                .build();
+        Option maximumSampleDepthOption = Option.builder()
+                .required(false)
+                .hasArg()
+                .longOpt(MAXIMUM_SAMPLE_DEPTH)
+                .desc("Include only sites where the FORMAT DP of the sample is less than or equal to this value")
+                .build();
+        Option minimumAltDepthOption = Option.builder()
+                .required(false)
+                .hasArg()
+                .longOpt(MINIMUM_ALT_DEPTH)
+                .desc("Include only sites where the sample has at least this many reads supporting"
+                        + " an alternate allele, according to its AD field")
+                .build();
+        options.addOption(formatSampleOption)
+                .addOption(minimumGenotypeQualityOption)
+                .addOption(minimumSampleDepthOption)
+                .addOption(maximumSampleDepthOption)
+                .addOption(minimumAltDepthOption);
+    }
+
+    private void addExpressionFilterOptions(Options options) {
+        Option includeExpressionOption = Option.builder()
+                .required(false)
+                .hasArg()
+                .longOpt(INCLUDE_EXPRESSION)
+                .desc("Include only variants for which this expression is true, "
+                        + "for example 'QUAL>30 && DP>10 && (TYPE==\"snp\" || AF>0.2)'. "
+                        + "A comparison with a field of several values is true if it is true for any value")
+                .build();
+        Option excludeExpressionOption = Option.builder()
+                .required(false)
+                .hasArg()
+                .longOpt(EXCLUDE_EXPRESSION)
+                .desc("Exclude all variants for which this expression is true")
+                .build();
+        options.addOption(includeExpressionOption)
+                .addOption(excludeExpressionOption);
+    }
+
+    private void addAdaptiveOrderOption(Options options) {
+        Option adaptiveOrderOption = Option.builder()
+                .required(false)
+                .longOpt(ADAPTIVE_FILTER_ORDER)
+                .desc("Reorder the filters while running, so filters that reject many calls"
+                        + " at a low cost are tested first.")
+                .build();
+        options.addOption(adaptiveOrderOption);
     }
 
     private void addFailOption(Options options) {
@@ -195,31 +316,49 @@ public class ConsensusFilterOptions {
                 .required(false)
                 .hasArgs()
                 .longOpt(INCLUDE_POSITION)
-                .desc("Include only variants on these positions")
+                .desc("Include only variants on these positions, given as regions or BED files")
                 .build();
         Option excludePositionOption = Option.builder()
                 .required(false)
                 .hasArgs()
                 .longOpt(EXCLUDE_POSITION)
-                .desc("Exclude all variants on these positions")
+                .desc("Exclude all variants on these positions, given as regions or BED files")
                 .build();
         Option positionOverlapOption = Option.builder()
                 .required(false)
                 .hasArgs()
                 .longOpt(INCLUDE_POSITION_OVERLAP)
-                .desc("Include only variants overlapping with these positions")
+                .desc("Include only variants overlapping with these positions, given as regions or BED files")
                 .build();
         Option excludePositionOverlapOption = Option.builder()
                 .required(false)
                 .hasArgs()
                 .longOpt(EXCLUDE_POSITION_OVERLAP)
-                .desc("Exclude all variants overlapping with these positions")
+                .desc("Exclude all variants overlapping with these positions, given as regions or BED files")
                 .build();
 
         options.addOption(excludePositionOption)
                 .addOption(excludePositionOverlapOption)
                 .addOption(positionOption)
                 .addOption(positionOverlapOption);
+        addSiteFilterOptions(options);
+    }
+
+    private void addSiteFilterOptions(Options options) {
+        Option sitesOption = Option.builder()
+                .required(false)
+                .hasArgs()
+                .longOpt(INCLUDE_SITES)
+                .desc("Include only variants starting on the sites in these VCF, BED or position files")
+                .build();
+        Option excludeSitesOption = Option.builder()
+                .required(false)
+                .hasArgs()
+                .longOpt(EXCLUDE_SITES)
+                .desc("Exclude all variants starting on the sites in these VCF, BED or position files")
+                .build();
+        options.addOption(sitesOption)
+                .addOption(excludeSitesOption);
     }
 
     private void addFilterFilterOptions(Options options) {
@@ -56,6 +56,14 @@ public class CoverageCommandOptions {
      * String used for giving region with annotations.
      */
     public static final String ANNOTATION = "annotation";
+    /**
+     * String used for bedGraph output option reference and display in help message.
+     */
+    public static final String BEDGRAPH = "bedgraph";
+    /**
+     * String used for the temporary directory option and display in help message.
+     */
+    public static final String TEMP_DIRECTORY = "temp-dir";
 
     /**
      * Add the coverage options.
@@ -65,6 +73,7 @@ public class CoverageCommandOptions {
         determineBamOption(options);
         determineChrOption(options);
         determineArrayCoverage(options);
+        determineBedGraphOption(options);
         determineCoverageOption(options);
         determineMappingOption(options);
         determineDuplicateOptions(options);
@@ -99,6 +108,19 @@ public class CoverageCommandOptions {
         options.addOption(arrayCoverageOption);
     }
 
+    private void determineBedGraphOption(Options options) {
+        Option bedGraphOption = Option.builder()
+                .required(false).hasArg(true).longOpt(BEDGRAPH)
+                .desc("write the depth of every base of the region to a bedGraph file, implies array coverage")
+                .build();
+        Option tempDirectoryOption = Option.builder()
+                .required(false).hasArg(true).longOpt(TEMP_DIRECTORY)
+                .desc("directory in which the depths of a long region are kept in a memory-mapped file "
+                        + "(Default: the depths are kept in memory)")
+                .build();
+        options.addOption(bedGraphOption).addOption(tempDirectoryOption);
+    }
+
     private void determineCoverageOption(Options options) {
         Option coverageOption = Option.builder("m")
                 .required(false).hasArg(true).longOpt(MINIMAL_COVERAGE)
@@ -159,20 +181,22 @@ public class CoverageCommandOptions {
         Option threadOption = Option.builder("t")
                 .required(false).hasArg(true).longOpt(AMOUNT_OF_THREADS)
                 .desc("use a variable amount of threads to speed up analysis,"
-                        + " only available for basic coverage (for now)")
+                        + " only used for indexed BAM files")
                 .build();
         options.addOption(threadOption);
     }
 
     private void determineRegionOption(Options options) {
-        Option regionOption = Option.builder("r").required(false).hasArg(true)
-                .longOpt(REGION).desc("region description of chromosome to analyse")
+        Option regionOption = Option.builder("r").required(false).hasArgs()
+                .longOpt(REGION).valueSeparator(' ')
+                .desc("regions of the chromosome to analyse, as [start]-[end] or [position], separated by spaces;"
+                        + " several regions are printed as a table")
                 .build();
         Option annotationsOption = Option.builder("a")
                 .required(false)
-                .hasArg(true)
+                .hasArgs()
                 .longOpt(ANNOTATION)
-                .desc("Uses an annotation file and a name to determine the regions to print.")
+                .desc("Uses an annotation file and names to determine the regions to print as a table.")
                 .build();
         OptionGroup regionGroup = new OptionGroup();
         //Not required since the region can also be in the config.
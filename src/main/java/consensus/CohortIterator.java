@@ -0,0 +1,71 @@
+package consensus;
+
+import htsjdk.samtools.util.PeekableIterator;
+import htsjdk.variant.variantcontext.VariantContext;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+
+/**
+ * Merges the calls of the files of a cohort on position, remembering the file of every call.
+ * The next call is taken from a heap ordered on the position of the next call of every file and the index of the file,
+ * so the calls of k files are read in one pass with log k work per call.
+ */
+class CohortIterator implements Iterator<VariantContext> {
+    private final List<PeekableIterator<VariantContext>> sources = new ArrayList<>();
+    private final PriorityQueue<Integer> heap;
+    private int source = -1;
+
+    /**
+     * Creates a merging iterator.
+     *
+     * @param calls the calls of every file, sorted on position.
+     */
+    CohortIterator(List<? extends Iterator<VariantContext>> calls) {
+        this.heap = new PriorityQueue<>(Math.max(1, calls.size()),
+                Comparator.comparingInt((Integer i) -> sources.get(i).peek().getStart()).thenComparingInt(i -> i));
+        for (int i = 0; i < calls.size(); i++) {
+            sources.add(new PeekableIterator<>(calls.get(i)));
+            if (sources.get(i).hasNext()) {
+                heap.add(i);
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean hasNext() {
+        return !heap.isEmpty();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public VariantContext next() {
+        if (heap.isEmpty()) {
+            throw new NoSuchElementException();
+        }
+        source = heap.poll();
+        final VariantContext call = sources.get(source).next();
+        if (sources.get(source).hasNext()) {
+            heap.add(source);
+        }
+        return call;
+    }
+
+    /**
+     * Get the file of the last call.
+     *
+     * @return the index of the file the last returned call was read from.
+     */
+    int getSource() {
+        return source;
+    }
+}
@@ -5,7 +5,7 @@ import general.FormattingOutputStream;
 
 import java.io.IOException;
 import java.io.OutputStream;
-import java.util.List;
+import java.util.Iterator;
 import java.util.concurrent.atomic.AtomicInteger;
 
 /**
@@ -26,13 +26,14 @@ public class ConsensusByteArrayOut {
 
     /**
      * Writes the consensuses to the underlying output stream.
-     * @param consensusList The consensuses to write.
+     * Only the levels of the previous consensus are kept, so consensuses can be reused by the iterator.
+     * @param consensuses   The consensuses to write.
      * @param encoder       The encoder to use.
      * @param stats         The statistics tracker.
      * @return              The amount of nucleotides written.
      * @throws IOException  If the underlying stream throws an exception.
      */
-    public int writeConsensus(List<VariantMerger.Consensus> consensusList,
+    public int writeConsensus(Iterator<VariantMerger.Consensus> consensuses,
                                IupacEncoder encoder,
                                ConsensusGenerator.ConsensusStatistics stats)
             throws IOException {
@@ -44,7 +45,8 @@ public class ConsensusByteArrayOut {
         int heteroDeletionLevel = 0;
         int heteroInsertionLevel = 0;
         int lastOpenType = 0; //0 = nothing, 1 = insertion, 2 = deletion
-        for (VariantMerger.Consensus consensus : consensusList) {
+        while (consensuses.hasNext()) {
+            final VariantMerger.Consensus consensus = consensuses.next();
             lastOpenType = writeBracketsBefore(delOpenBrackets, insOpenBrackets,
                     heteroDeletionLevel, heteroInsertionLevel, lastOpenType, consensus);
             if (!consensus.isDeleted() || consensus.getHeteroLevel() > 0) {
@@ -4,24 +4,33 @@ import cli.Region;
 import consensus.encoders.InversionEncoder;
 import consensus.encoders.IupacEncoder;
 import consensus.filters.ChromosomeFilter;
+import consensus.filters.FilterChain;
 import consensus.samplers.Sampler;
 import fasta.FastaSequence;
 import general.CachedReversingStream;
 import general.FormattingOutputStream;
 import htsjdk.samtools.util.CloseableIterator;
+import htsjdk.tribble.TribbleException;
 import htsjdk.variant.variantcontext.VariantContext;
 import htsjdk.variant.variantcontext.filter.FilteringIterator;
 import htsjdk.variant.variantcontext.filter.VariantContextFilter;
 import htsjdk.variant.vcf.VCFContigHeaderLine;
 import lombok.Setter;
+import vcf.GenotypeColumns;
+import vcf.VCF;
+import vcf.iterator.MergingVCFIterator;
+import vcf.iterator.NormalizingIterator;
 import vcf.iterator.VCFIterator;
+import vcf.iterator.UnsortedVCFException;
 import vcf.iterator.VCFIteratorBuilder;
 
 import java.io.Closeable;
+import java.io.File;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
 import java.util.*;
+import java.util.function.Supplier;
 
 /**
  * The class that sequences a chromosome.
@@ -29,6 +38,14 @@ import java.util.*;
 public class ConsensusGenerator implements Closeable {
     //TODO create a better way to set a default writeAlt length.
     private static final int DEFAULT_WRITE_LENGTH = 1000;
+    /**
+     * The length of the tiles in which the reverse of a region is written.
+     */
+    private static final int REVERSE_TILE_SIZE = 1 << 20;
+    /**
+     * The least amount of bytes the reversing stream of a sample keeps in memory, when several samples are written.
+     */
+    private static final int MIN_REVERSE_BLOCK_SIZE = 1 << 16;
 
     private VCFIterator vcfIterator;
     private final FastaSequence fasta;
@@ -37,11 +54,35 @@ public class ConsensusGenerator implements Closeable {
     private Sampler sampler;
     private final String vcfFile;
 
+    /**
+     * The files that are merged into the calls, or null if the calls are read from the vcf file alone.
+     */
+    private List<String> mergedFiles;
+    private MergingVCFIterator.Precedence mergePrecedence;
+
     private int lastEnd;
 
     @Setter
     private boolean useFailingContextRef;
 
+    /**
+     * Whether the calls are split into biallelic calls and left-aligned while they are read.
+     */
+    @Setter
+    private boolean normalize;
+    private NormalizingIterator normalizer;
+
+    /**
+     * The directory for the files in which the reverse of a region is cached and the calls are indexed for tiles,
+     * or null for that of the system.
+     */
+    @Setter
+    private File tempDirectory;
+    /**
+     * The index of the calls file made for writing in tiles, if the file had no index that is up to date.
+     */
+    private File temporaryIndex;
+
     /**
      * Creates a new ConsensusGenerator from the given Fasta sequence and the VCF file.
      *
@@ -79,6 +120,17 @@ public class ConsensusGenerator implements Closeable {
         this.useFailingContextRef = true;
     }
 
+    /**
+     * Reads the calls from several files, merged on position, when the calls are read again.
+     *
+     * @param files      the sorted vcf files, in order of precedence.
+     * @param precedence the rule for records of different files on the same position.
+     */
+    public void setMergedFiles(List<String> files, MergingVCFIterator.Precedence precedence) {
+        this.mergedFiles = new ArrayList<>(files);
+        this.mergePrecedence = precedence;
+    }
+
     private OutputStream initWriting(OutputStream destination, Region region) throws IOException {
         modifyRegionEnd(region);
 
@@ -94,6 +146,8 @@ public class ConsensusGenerator implements Closeable {
     /**
      * Write the consensus region and header to output stream.
      * Applies the correct filters of course.
+     * The reverse complement of a region on the minus strand is written from the end of the region to its start,
+     * in tiles read with index queries, if the calls allow it.
      *
      * @param destination The output to writeAlt to.
      * @param region      The region to writeAlt.
@@ -105,11 +159,110 @@ public class ConsensusGenerator implements Closeable {
                       OutputStream statsOut) throws IOException {
         destination = initWriting(destination, region);
         writeHeader(destination, region);
-        if (!region.getStrandedness()) {
-            destination = new CachedReversingStream(destination, (region.getEnd() - region.getStart()) + 1);
-            encoder = new InversionEncoder(encoder);
+        if (region.getStrandedness()) {
+            writeConsensus(destination, region.getStart(), region.getEnd(), filters, statsOut);
+            return;
         }
-        writeConsensus(destination, region.getStart(), region.getEnd(), filters, statsOut);
+        final ConsensusTiles tiles = reverseTiles(filters);
+        if (tiles != null) {
+            ConsensusStatistics stats = new ConsensusStatistics();
+            tiles.writeReversed(destination, region.getStart(), region.getEnd(), REVERSE_TILE_SIZE, 1, stats);
+            writeStatistics(statsOut, stats, filters);
+            return;
+        }
+        final IupacEncoder forward = encoder;
+        encoder = new InversionEncoder(forward);
+        try {
+            writeConsensus(new CachedReversingStream(destination, CachedReversingStream.DEFAULT_BLOCK_SIZE,
+                    tempDirectory), region.getStart(), region.getEnd(), filters, statsOut);
+        } finally {
+            encoder = forward;
+        }
+    }
+
+    /**
+     * Get the tiles from which the reverse of a region is written, from its end to its start, without keeping
+     * the region in memory. That is possible if the calls are read from one VCF file that is not normalized
+     * and that has an index which is up to date. Otherwise the region is written forward and reversed afterwards,
+     * as a read-only command does not index the file itself.
+     *
+     * @param filters the filters to use.
+     * @return the tiles, or null if the calls can only be read as a stream.
+     */
+    private ConsensusTiles reverseTiles(VariantContextFilter filters) {
+        if (vcfFile == null || chromosome == null || mergedFiles != null || normalize
+                || !(vcfIterator instanceof VCFIteratorBuilder.VCFReaderIterator)) {
+            return null;
+        }
+        final File index = VCF.findIndex(new File(vcfFile));
+        if (index == null) {
+            return null;
+        }
+        return new ConsensusTiles(vcfFile, index, chromosome, fasta, new InversionEncoder(encoder), () -> sampler,
+                filters, useFailingContextRef);
+    }
+
+    /**
+     * Get the index of the calls file for writing in tiles: the index next to the file if it is up to date,
+     * otherwise an index made once in the temporary directory, which is removed when the generator is closed.
+     *
+     * @return the index file.
+     * @throws IOException if the calls file could not be indexed.
+     */
+    private File tileIndex() throws IOException {
+        final File index = VCF.findIndex(new File(vcfFile));
+        if (index != null) {
+            return index;
+        }
+        if (temporaryIndex == null) {
+            final File file = File.createTempFile("index", ".tbi", tempDirectory);
+            file.deleteOnExit();
+            try {
+                temporaryIndex = VCF.createIndex(new File(vcfFile), file.getAbsolutePath(), true);
+            } catch (TribbleException.MalformedFeatureFile e) {
+                // the indexer only accepts a sorted file.
+                throw new UnsortedVCFException(e.getMessage());
+            }
+        }
+        return temporaryIndex;
+    }
+
+    /**
+     * Write the consensus region and header to output stream, writing tiles of the region on a pool of threads.
+     * The tiles are cut between the groups of overlapping calls and read their calls with index queries
+     * on the calls file, which is indexed in the temporary directory if it has no index that is up to date.
+     * The tiles are written to the destination in order,
+     * so the result is the same as that of {@link #write(OutputStream, Region, VariantContextFilter, OutputStream)}.
+     *
+     * @param destination The output to write to.
+     * @param region      The region to write.
+     * @param filters     The filters to use, tested by one tile at a time.
+     * @param statsOut    The output stream for statistics, or null.
+     * @param samplers    Creates the sampler of each tile, as samplers are not shared between threads.
+     * @param tileSize    The length the tiles have at least.
+     * @param threads     The amount of threads to write with.
+     * @throws IOException if reading or writing failed.
+     */
+    public void writeTiles(OutputStream destination, Region region, VariantContextFilter filters,
+                           OutputStream statsOut, Supplier<Sampler> samplers, int tileSize, int threads)
+            throws IOException {
+        if (mergedFiles != null || normalize) {
+            throw new IllegalArgumentException("Only the calls of a single file that are not normalized "
+                    + "can be written in tiles.");
+        }
+        destination = initWriting(destination, region);
+        writeHeader(destination, region);
+        final File index = tileIndex();
+        ConsensusStatistics stats = new ConsensusStatistics();
+        if (region.getStrandedness()) {
+            new ConsensusTiles(vcfFile, index, chromosome, fasta, encoder, samplers, filters, useFailingContextRef)
+                    .write(destination, region.getStart(), region.getEnd(), tileSize, Math.max(1, threads), stats);
+        } else {
+            new ConsensusTiles(vcfFile, index, chromosome, fasta, new InversionEncoder(encoder), samplers, filters,
+                    useFailingContextRef).writeReversed(destination, region.getStart(), region.getEnd(), tileSize,
+                    Math.max(1, threads), stats);
+        }
+        writeStatistics(statsOut, stats, filters);
     }
 
     /**
@@ -146,7 +299,9 @@ public class ConsensusGenerator implements Closeable {
         if (vcfIterator != null) {
             vcfIterator.close();
         }
-        this.vcfIterator = new VCFIteratorBuilder().open(this.vcfFile);
+        final VCFIteratorBuilder builder = new VCFIteratorBuilder().skipReferenceBlocks().checkOrder();
+        this.vcfIterator = mergedFiles == null ? builder.open(this.vcfFile)
+                : builder.open(mergedFiles, mergePrecedence);
     }
 
     private void modifyRegionEnd(Region region) {
@@ -173,193 +328,198 @@ public class ConsensusGenerator implements Closeable {
      */
     private void writeConsensus(OutputStream destination, int begin, int end,
                                 VariantContextFilter filters, OutputStream statsOut) throws IOException {
-        if (useFailingContextRef) {
-            filters = new ReturningFilterWrapper(filters);
-        }
-        CloseableIterator<VariantContext> filteredVCFIterator =
-                new FilteringIterator(vcfIterator, filters);
-        if (this.chromosome != null) {
-            filteredVCFIterator = new FilteringIterator(filteredVCFIterator, new ChromosomeFilter(this.chromosome));
-        }
+        // when failing calls fall back to the reference, the loop tests the filters itself,
+        // so the verdict travels next to the record instead of being written into it.
+        final VariantContextFilter failFilter = useFailingContextRef ? filters : null;
+        CloseableIterator<VariantContext> filteredVCFIterator = filterCalls(vcfIterator, filters);
         ConsensusStatistics stats = new ConsensusStatistics();
-        writeVcfLoop(destination, filteredVCFIterator, begin, end, stats);
+        writeVcfLoop(destination, filteredVCFIterator, failFilter, begin, end, stats);
         destination.flush();
+        writeStatistics(statsOut, stats, filters);
+    }
 
+    private static void writeStatistics(OutputStream statsOut, ConsensusStatistics stats,
+                                        VariantContextFilter filters) throws IOException {
         if (statsOut != null) {
             statsOut.write(stats.toWriteAbleBytes());
+            if (filters instanceof FilterChain) {
+                statsOut.write(((FilterChain) filters).statisticsReport().getBytes("UTF-8"));
+            }
         }
     }
 
     /**
-     * Write from VCF iterator to destination. Use fasta file if needed and possible.
+     * Get the calls of the chromosome, without the calls that fail the filters unless those are written as reference.
      *
-     * @param destination         The destination to writeAlt to.
-     * @param filteredVCFIterator The iterator to read from.
-     * @param begin               The index to start generating output.
-     * @param end                 The index to stop generating output.
-     * @throws IOException if destination or any input fails.
+     * @param calls   the calls.
+     * @param filters the filters.
+     * @return the calls.
      */
-    private void writeVcfLoop(OutputStream destination, Iterator<VariantContext> filteredVCFIterator,
-                              int begin, int end, ConsensusStatistics statistics) throws IOException {
-        LinkedList<VariantContext> relatedContexts = new LinkedList<>();
+    private CloseableIterator<VariantContext> filterCalls(VCFIterator calls, VariantContextFilter filters) {
+        if (normalize) {
+            calls = normalize(calls);
+        }
+        CloseableIterator<VariantContext> filteredVCFIterator =
+                useFailingContextRef ? calls : new FilteringIterator(calls, filters);
+        if (this.chromosome != null) {
+            filteredVCFIterator = new FilteringIterator(filteredVCFIterator, new ChromosomeFilter(this.chromosome));
+        }
+        return filteredVCFIterator;
+    }
 
-        int currentWriteIndex = begin;
-        VariantContext currentVariantContext;
-        while (currentWriteIndex <= end && filteredVCFIterator.hasNext()) {
-            currentVariantContext = filteredVCFIterator.next();
-            lastEnd = currentVariantContext.getStart() + currentVariantContext.getReference().length() - 1;
+    /**
+     * Get the normalizing iterator of the calls, the same one for every region read from the same calls,
+     * so the calls in its buffer are not lost between regions.
+     *
+     * @param calls the calls.
+     * @return the normalized calls.
+     */
+    private VCFIterator normalize(VCFIterator calls) {
+        if (calls != vcfIterator) {
+            return new NormalizingIterator(calls, fasta, chromosome);
+        }
+        if (normalizer == null || normalizer.getSource() != calls) {
+            normalizer = new NormalizingIterator(calls, fasta, chromosome);
+        }
+        return normalizer;
+    }
 
-            final int startChangePos = currentVariantContext.getStart();
-            if (startChangePos < begin) {
-                continue;
-            }
-            if (startChangePos > end) {
-                break;
+    /**
+     * Writes the consensus of several samples in one pass over the calls.
+     * Every sample has its own destination and sampler. The calls are read, filtered and indexed once,
+     * in batches, after which each batch is added to the consensus of every sample on a pool of threads.
+     *
+     * @param destinations The outputs, one per sample.
+     * @param samplers     The samplers, one per sample, which may read the shared column index.
+     * @param columns      The index of the sample columns, filled for every batch.
+     * @param region       The region to write.
+     * @param filters      The filters to apply.
+     * @param statsOut     The output stream for the statistics of all samples together, or null.
+     * @param threads      The amount of threads to write with.
+     * @throws IOException if reading or writing failed.
+     */
+    public void writeSamples(List<OutputStream> destinations, List<Sampler> samplers, GenotypeColumns columns,
+                             Region region, VariantContextFilter filters, OutputStream statsOut, int threads)
+            throws IOException {
+        initWriting(null, region);
+        ConsensusStreams streams = openStreams(destinations, samplers, columns, region);
+        streams.write(filterCalls(vcfIterator, filters), null, useFailingContextRef ? filters : null, threads);
+        if (streams.getLastEnd() != -1) {
+            lastEnd = streams.getLastEnd();
+        }
+        writeStatistics(statsOut, streams.getStatistics(), filters);
+    }
+
+    /**
+     * Writes the consensus of every calls file of a cohort in one pass over the reference.
+     * Every file has its own destination and sampler. The calls of the files are merged on position and read
+     * in batches, after which the calls of each file are added to its consensus on a pool of threads.
+     * The reference is read and encoded once for the whole cohort.
+     *
+     * @param vcfFiles     The sorted calls files, one per consensus.
+     * @param destinations The outputs, one per file.
+     * @param samplers     The samplers, one per file.
+     * @param region       The region to write.
+     * @param filters      The filters to apply.
+     * @param statsOut     The output stream for the statistics of all files together, or null.
+     * @param threads      The amount of threads to write with.
+     * @throws IOException if reading or writing failed.
+     */
+    public void writeCohort(List<String> vcfFiles, List<OutputStream> destinations, List<Sampler> samplers,
+                            Region region, VariantContextFilter filters, OutputStream statsOut, int threads)
+            throws IOException {
+        initWriting(null, region);
+        List<VCFIterator> iterators = new ArrayList<>();
+        try {
+            List<Iterator<VariantContext>> calls = new ArrayList<>();
+            for (String file : vcfFiles) {
+                VCFIterator iterator = new VCFIteratorBuilder().skipReferenceBlocks().checkOrder().open(file);
+                iterators.add(iterator);
+                calls.add(filterCalls(iterator, filters));
             }
-            if (addRelatedContextsToList(currentVariantContext, relatedContexts)) {
-                //if added to 'relatedContexts' continue cause maybe we haven't found all related yet.
-                continue;
+            CohortIterator cohort = new CohortIterator(calls);
+            ConsensusStreams streams = openStreams(destinations, samplers, null, region);
+            streams.write(cohort, cohort, useFailingContextRef ? filters : null, threads);
+            writeStatistics(statsOut, streams.getStatistics(), filters);
+        } finally {
+            for (VCFIterator iterator : iterators) {
+                iterator.close();
             }
-            currentWriteIndex = writeRelatedContexts(destination,
-                    currentWriteIndex, end, relatedContexts, statistics);
-            //it wrote the old ones, now add new one to (new) list
-            relatedContexts = new LinkedList<>();
-            relatedContexts.add(currentVariantContext);
-        }
-        if (!relatedContexts.isEmpty()) {
-            currentWriteIndex = writeRelatedContexts(destination,
-                    currentWriteIndex, end, relatedContexts, statistics);
         }
-        writeFastaUntilPos(destination, currentWriteIndex, end, statistics);
     }
 
     /**
-     * Add variant to the list in case it is related to the other ones in the list.
-     * Also adds the current variant in case the list was empty.
-     * If it has been added, return true, otherwise return false.
+     * Writes the headers and creates a stream for every destination, on the strand of the region.
      *
-     * @param current         the current context, to maybe add to the list.
-     * @param relatedContexts the list of contexts to add the current one to.
-     * @return true in case the current context was added.
+     * @param destinations The outputs.
+     * @param samplers     The samplers, one per output.
+     * @param columns      The index of the sample columns, or null.
+     * @param region       The region to write.
+     * @return the streams.
+     * @throws IOException if writing a header failed.
      */
-    private boolean addRelatedContextsToList(VariantContext current, List<VariantContext> relatedContexts) {
-        if (relatedContexts.isEmpty()) {
-            relatedContexts.add(current);
-            return true;
-        }
-
-        final int startChangePos = current.getStart();
-        for (VariantContext context : relatedContexts) {
-            if (startChangePos <= (context.getStart() + context.getReference().length() - 1)) {
-                //so we had 10, which was 2 long
-                //now we have 11, these are related!
-                relatedContexts.add(current);
-                return true;
+    private ConsensusStreams openStreams(List<OutputStream> destinations, List<Sampler> samplers,
+                                         GenotypeColumns columns, Region region) throws IOException {
+        final IupacEncoder streamEncoder = region.getStrandedness() ? encoder : new InversionEncoder(encoder);
+        final ReferenceWindow window = fasta == null ? null : new ReferenceWindow(fasta, streamEncoder);
+        final ConsensusStreams streams = new ConsensusStreams(window, columns, region.getStart(), region.getEnd());
+        for (int i = 0; i < destinations.size(); i++) {
+            OutputStream destination = destinations.get(i);
+            writeHeader(destination, region);
+            if (!region.getStrandedness()) {
+                destination = new CachedReversingStream(destination, Math.max(MIN_REVERSE_BLOCK_SIZE,
+                        CachedReversingStream.DEFAULT_BLOCK_SIZE / destinations.size()), tempDirectory);
             }
+            streams.add(destination, streamEncoder, samplers.get(i));
         }
-        return false;
+        return streams;
     }
 
     /**
-     * This should be where all the magic happens.
-     * Write a list of related variant contexts to the output.
-     * Return the current writeAlt index, which you will get back next time this method is called.
-     * The input 'related contexts' list of this method will never be null and never be empty!
-     * This method makes the consensus generator very easily extensible.
+     * Writes encoded bases of the fasta file.
      *
-     * @param destination       the destination to writeAlt to.
-     * @param currentWriteIndex the current writeAlt index.
-     * @param end               the end index to stop writing at.
-     * @param relatedContexts   the related contexts.
-     * @return the new current writeAlt index after writing.
-     * @throws IOException in case writing failed.
+     * @param destination the destination to write to.
+     * @param startIndex  the 0-based index of the first base.
+     * @param length      the amount of bases.
+     * @return the amount of bases written.
+     * @throws IOException if writing failed.
      */
-    private int writeRelatedContexts(OutputStream destination, int currentWriteIndex,
-                                     int end, List<VariantContext> relatedContexts,
-                                     ConsensusStatistics statistics) throws IOException {
-        int minStart = Integer.MAX_VALUE;
-        int maxEnd = -1;
-        List<Sampler.Sample> samples = new ArrayList<>();
-        ConsensusByteArrayOut consensusByteArray = new ConsensusByteArrayOut(destination);
-
-        for (VariantContext context : relatedContexts) {
-            minStart = Math.min(minStart, context.getStart());
-            maxEnd = Math.max(maxEnd, context.getStart() + context.getReference().length() - 1);
-            samples.addAll(sampler.sample(context));
-        }
-
-        writeFastaUntilPos(destination,
-                currentWriteIndex, Math.min(minStart - 1, end), statistics);
-
-        VariantMerger merger = new VariantMerger(samples);
-        List<VariantMerger.Consensus> consensuses = merger.mergeVariants(minStart, maxEnd, statistics);
-        int lenToWrite = consensusByteArray.writeConsensus(consensuses, encoder, statistics);
-        statistics.totalNucleotides += lenToWrite;
-        return maxEnd + 1;
+    private int writeReference(OutputStream destination, int startIndex, int length) throws IOException {
+        byte[] bytes = encoder.encodeReferenceBytes(fasta.read(startIndex, length));
+        destination.write(bytes, 0, bytes.length);
+        return bytes.length;
     }
 
     /**
-     * Write from the fasta file or writeAlt dots in case there is no
-     * fasta file to writeAlt from at some point.
+     * Write from VCF iterator to destination. Use fasta file if needed and possible.
      *
-     * @param destination       The destination to writeAlt to.
-     * @param currentWriteIndex The current writeAlt index to start.
-     * @param pos               Stop position.
-     * @return the new current writeAlt index, which is always 1 after either end of untilPos.
-     * @throws IOException in case the output stream of fasta reader failed.
+     * @param destination         The destination to writeAlt to.
+     * @param filteredVCFIterator The iterator to read from.
+     * @param failFilter          The filters of which failing calls are written as reference, or null.
+     * @param begin               The index to start generating output.
+     * @param end                 The index to stop generating output.
+     * @throws IOException if destination or any input fails.
      */
-    private int writeFastaUntilPos(OutputStream destination, int currentWriteIndex,
-                                   int pos, ConsensusStatistics statistics) throws IOException {
-        //writeAlt from FASTA until we are at the right position. Or until the end of the region.
-        //writeAlt a ton of '.' in case fasta does not have a record of this position.
-        //in case we are already further than we needed to writeAlt until, return.
-        if (currentWriteIndex > pos) {
-            return currentWriteIndex;
-        }
-
-        if (fasta != null) {
-            //writeAlt from currentWriteIndex - 1
-            int lenToWrite = pos - currentWriteIndex + 1;
-            int toWriteAfterLoop = lenToWrite;
-            for (int writtenInForLoop = 0; writtenInForLoop < lenToWrite; writtenInForLoop += 8192) {
-                byte[] fastaBlock = fasta.read(currentWriteIndex - 1
-                        + writtenInForLoop, Math.min(8192, lenToWrite));
-                byte[] bytes = encoder.encodeReferenceBytes(fastaBlock);
-                writeBytesFormat(destination, bytes, true, bytes.length);
-                statistics.fastaReferenceNucleotides += bytes.length;
-                statistics.totalNucleotides += bytes.length;
-                currentWriteIndex += fastaBlock.length;
-                toWriteAfterLoop -= fastaBlock.length;
-            }
-            byte[] fastaBlock = fasta.read(currentWriteIndex - 1, toWriteAfterLoop);
-            byte[] bytes = encoder.encodeReferenceBytes(fastaBlock);
-            writeBytesFormat(destination, bytes, true, bytes.length);
-            statistics.fastaReferenceNucleotides += bytes.length;
-            statistics.totalNucleotides += bytes.length;
-            currentWriteIndex += fastaBlock.length;
-        }
-        //fasta wasn't long enough maybe or something idk
-        for (; currentWriteIndex <= pos; currentWriteIndex++) {
-            //this writeAlt is fine because this is ref anyway
-            destination.write('.');
-            statistics.unknown++;
-            statistics.totalNucleotides++;
-        }
-        return currentWriteIndex;
-    }
+    private void writeVcfLoop(OutputStream destination, Iterator<VariantContext> filteredVCFIterator,
+                              VariantContextFilter failFilter, int begin, int end,
+                              ConsensusStatistics statistics) throws IOException {
+        ConsensusStream stream = new ConsensusStream(destination, fasta == null ? null : this::writeReference,
+                encoder, sampler, begin, end, statistics);
+        VariantContext currentVariantContext;
+        while (!stream.isDone() && filteredVCFIterator.hasNext()) {
+            currentVariantContext = filteredVCFIterator.next();
+            lastEnd = currentVariantContext.getStart() + currentVariantContext.getReference().length() - 1;
 
-    private void writeBytesFormat(OutputStream stream, byte[] bytes, boolean ref, int len) throws IOException {
-        if (ref) {
-            stream.write(bytes, 0, len);
-            return;
-        }
-        //alt:
-        if (stream instanceof FormattingOutputStream) {
-            //writeAlt in color method
-            ((FormattingOutputStream) stream).writeAlt(bytes, 0, len);
-        } else {
-            stream.write(bytes, 0, len);
+            final int startChangePos = currentVariantContext.getStart();
+            if (startChangePos < begin) {
+                continue;
+            }
+            if (startChangePos > end) {
+                break;
+            }
+            stream.add(currentVariantContext, failFilter == null || failFilter.test(currentVariantContext));
         }
+        stream.finish();
     }
 
     /**
@@ -412,6 +572,9 @@ public class ConsensusGenerator implements Closeable {
         if (vcfIterator != null) {
             vcfIterator.close();
         }
+        if (temporaryIndex != null && temporaryIndex.delete()) {
+            temporaryIndex = null;
+        }
     }
 
     /**
@@ -432,6 +595,35 @@ public class ConsensusGenerator implements Closeable {
         private int deletions = 0;
         private int deletionSize = 0;
 
+        /**
+         * Adds written nucleotides to the statistics tracker.
+         *
+         * @param n The amount of nucleotides.
+         */
+        void addTotalNucleotides(int n) {
+            totalNucleotides += n;
+        }
+
+        /**
+         * Adds nucleotides written from the fasta file to the statistics tracker.
+         *
+         * @param n The amount of nucleotides.
+         */
+        void addFastaReferenceNucleotides(int n) {
+            fastaReferenceNucleotides += n;
+            totalNucleotides += n;
+        }
+
+        /**
+         * Adds unknown nucleotides, written as dots, to the statistics tracker.
+         *
+         * @param n The amount of nucleotides.
+         */
+        void addUnknown(int n) {
+            unknown += n;
+            totalNucleotides += n;
+        }
+
         /**
          * Adds reference nucleotides to the statistics tracker.
          *
@@ -479,6 +671,23 @@ public class ConsensusGenerator implements Closeable {
             deletionSize += size;
         }
 
+        /**
+         * Adds the statistics of another tracker, like that of a part of the region.
+         *
+         * @param other the other tracker.
+         */
+        void add(ConsensusStatistics other) {
+            totalNucleotides += other.totalNucleotides;
+            fastaReferenceNucleotides += other.fastaReferenceNucleotides;
+            referenceNucleotides += other.referenceNucleotides;
+            alternativeNucleotides += other.alternativeNucleotides;
+            heteroNucleotides += other.heteroNucleotides;
+            unknown += other.unknown;
+            insertions += other.insertions;
+            insertionSize += other.insertionSize;
+            deletions += other.deletions;
+            deletionSize += other.deletionSize;
+        }
 
         private byte[] toWriteAbleBytes() throws UnsupportedEncodingException {
             final String n = System.lineSeparator();
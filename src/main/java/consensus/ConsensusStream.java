@@ -0,0 +1,240 @@
+package consensus;
+
+import consensus.encoders.IupacEncoder;
+import consensus.samplers.SampleBuffer;
+import consensus.samplers.Sampler;
+import htsjdk.variant.variantcontext.VariantContext;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Iterator;
+
+/**
+ * The state of writing one consensus sequence: the calls are added in order of position,
+ * overlapping calls are grouped and each group is merged and written, with the reference written in between.
+ * A call is sampled when it is added and a group is kept as its samples, the start of its first call and the
+ * running maximum end of its calls, so adding a call takes constant time however long a chain of overlapping calls is.
+ * A group of too many samples, like in a long repeat, is split before the next call that
+ * starts after the group start: the positions before that call are written and only the samples that reach past
+ * them are kept. The merged output only differs from that of the whole group in that heterozygous events that span
+ * the split are bracketed on both sides of it.
+ * The reading of the calls is left to the caller, so several streams can be fed from one pass over the calls.
+ */
+class ConsensusStream {
+    private static final int REFERENCE_BLOCK = 8192;
+    /**
+     * The amount of samples a group holds before it is split.
+     */
+    private static final int MAX_GROUP_SAMPLES = 1 << 16;
+
+    private final OutputStream destination;
+    private final ConsensusByteArrayOut consensusOut;
+    private final Reference reference;
+    private final IupacEncoder encoder;
+    private final Sampler sampler;
+    private final ConsensusGenerator.ConsensusStatistics statistics;
+    private final int end;
+
+    private final SampleBuffer samples = new SampleBuffer();
+    private final VariantMerger merger = new VariantMerger(samples);
+    private boolean grouping;
+    private int groupStart;
+    private int groupEnd;
+    private int groupLimit = MAX_GROUP_SAMPLES;
+    private int currentWriteIndex;
+
+    /**
+     * Creates a stream.
+     *
+     * @param destination The destination to write to.
+     * @param reference   The encoded reference to write between the calls, or null to write dots.
+     * @param encoder     The encoder to use.
+     * @param sampler     The allele sampler.
+     * @param begin       The index (1-index) to start writing.
+     * @param end         The index (1-index) to stop writing at (inclusive).
+     * @param statistics  The statistics tracker.
+     */
+    ConsensusStream(OutputStream destination, Reference reference, IupacEncoder encoder, Sampler sampler,
+                    int begin, int end, ConsensusGenerator.ConsensusStatistics statistics) {
+        this.destination = destination;
+        this.consensusOut = new ConsensusByteArrayOut(destination);
+        this.reference = reference;
+        this.encoder = encoder;
+        this.sampler = sampler;
+        this.statistics = statistics;
+        this.end = end;
+        this.currentWriteIndex = begin;
+    }
+
+    /**
+     * Checks whether the whole region is written, so later calls are not needed.
+     *
+     * @return true if the stream is past its end.
+     */
+    boolean isDone() {
+        return currentWriteIndex > end;
+    }
+
+    /**
+     * Get the index the stream writes next, all earlier positions are written.
+     *
+     * @return the current write index.
+     */
+    int getCurrentWriteIndex() {
+        return currentWriteIndex;
+    }
+
+    /**
+     * Adds the next call, within the region, and writes the previous group if the call is not related to it.
+     *
+     * @param context The call.
+     * @param passed  false if the call did not pass the filters and is written as the reference.
+     * @throws IOException if writing failed.
+     */
+    void add(VariantContext context, boolean passed) throws IOException {
+        final int start = context.getStart();
+        if (grouping && start > groupEnd) {
+            flush();
+        } else if (grouping && samples.size() >= groupLimit && start > groupStart) {
+            splitGroup(start);
+        }
+        if (!grouping) {
+            grouping = true;
+            groupStart = start;
+            groupEnd = -1;
+        }
+        groupEnd = Math.max(groupEnd, Sampler.getEnd(context));
+        sampler.sample(context, passed, samples);
+    }
+
+    /**
+     * Writes the last group and the reference until the end of the region.
+     *
+     * @throws IOException if writing failed.
+     */
+    void finish() throws IOException {
+        flush();
+        writeReference(end);
+    }
+
+    /**
+     * Writes the last group, after which only the reference is left to write.
+     *
+     * @throws IOException if writing failed.
+     */
+    void flush() throws IOException {
+        if (grouping) {
+            currentWriteIndex = writeGroup(groupStart, groupEnd);
+            samples.clear();
+            grouping = false;
+            groupLimit = MAX_GROUP_SAMPLES;
+        }
+    }
+
+    /**
+     * Writes the reference until a position, within the region, after the last group is flushed.
+     *
+     * @param pos the last position (1-index) to write.
+     * @throws IOException if writing failed.
+     */
+    void writeReference(int pos) throws IOException {
+        currentWriteIndex = writeReferenceUntilPos(currentWriteIndex, Math.min(pos, end));
+    }
+
+    /**
+     * Writes the reference until a position, knowing no later call starts at or before it.
+     * A group that ends before the position is written first, as the next call could not join it, while the
+     * reference is only written until an open group that may still grow. This lets a stream that gets few calls
+     * keep up with the others, writing nothing that later calls would change.
+     *
+     * @param pos the last position (1-index) to write.
+     * @throws IOException if writing failed.
+     */
+    void writeReferenceBefore(int pos) throws IOException {
+        if (grouping && groupEnd <= pos) {
+            flush();
+        }
+        writeReference(grouping ? Math.min(pos, groupStart - 1) : pos);
+    }
+
+    /**
+     * Writes the positions of the group before a call and keeps the samples that reach the call,
+     * so they are merged again with the next calls.
+     *
+     * @param start the start of the call.
+     * @throws IOException if writing failed.
+     */
+    private void splitGroup(int start) throws IOException {
+        currentWriteIndex = writeGroup(groupStart, start - 1);
+        samples.retainEndingFrom(start);
+        groupStart = start;
+        // when most samples reach past the split, wait for the group to double, so splitting stays linear
+        groupLimit = Math.max(MAX_GROUP_SAMPLES, 2 * samples.size());
+    }
+
+    /**
+     * Write the merged samples of the group to the output, after the reference before it.
+     *
+     * @param from the first position (1-index) of the group to write.
+     * @param to   the last position (1-index) of the group to write.
+     * @return the new current write index after writing.
+     * @throws IOException in case writing failed.
+     */
+    private int writeGroup(int from, int to) throws IOException {
+        writeReferenceUntilPos(currentWriteIndex, Math.min(from - 1, end));
+
+        Iterator<VariantMerger.Consensus> consensuses = merger.mergeVariants(from, to, statistics);
+        int lenToWrite = consensusOut.writeConsensus(consensuses, encoder, statistics);
+        statistics.addTotalNucleotides(lenToWrite);
+        return to + 1;
+    }
+
+    /**
+     * Write from the reference or write dots in case there is no
+     * reference to write from at some point.
+     *
+     * @param writeIndex The current write index to start.
+     * @param pos        Stop position.
+     * @return the new current write index, which is always 1 after either end of untilPos.
+     * @throws IOException in case the output stream of the reference failed.
+     */
+    private int writeReferenceUntilPos(int writeIndex, int pos) throws IOException {
+        if (writeIndex > pos) {
+            return writeIndex;
+        }
+        if (reference != null) {
+            while (writeIndex <= pos) {
+                int written = reference.write(destination, writeIndex - 1,
+                        Math.min(REFERENCE_BLOCK, pos - writeIndex + 1));
+                if (written == 0) {
+                    break;
+                }
+                statistics.addFastaReferenceNucleotides(written);
+                writeIndex += written;
+            }
+        }
+        //the reference wasn't long enough maybe
+        for (; writeIndex <= pos; writeIndex++) {
+            //this write is fine because this is ref anyway
+            destination.write('.');
+            statistics.addUnknown(1);
+        }
+        return writeIndex;
+    }
+
+    /**
+     * The encoded reference bases of the chromosome.
+     */
+    interface Reference {
+        /**
+         * Writes encoded reference bases.
+         *
+         * @param destination the destination to write to.
+         * @param startIndex  the 0-based index of the first base.
+         * @param length      the amount of bases.
+         * @return the amount of bases written, fewer if the reference ends.
+         * @throws IOException if writing failed.
+         */
+        int write(OutputStream destination, int startIndex, int length) throws IOException;
+    }
+}
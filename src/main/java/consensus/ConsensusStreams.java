@@ -0,0 +1,293 @@
+package consensus;
+
+import consensus.encoders.IupacEncoder;
+import consensus.samplers.Sampler;
+import htsjdk.variant.variantcontext.VariantContext;
+import htsjdk.variant.variantcontext.filter.VariantContextFilter;
+import vcf.GenotypeColumns;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Several consensus streams of one region, written in one pass over the calls and the reference.
+ * The calls are read, filtered and indexed in batches on the calling thread, after which each batch is added
+ * to the streams on a pool of threads. Every stream is used by one thread at a time, and the shared reference
+ * window and column index are only changed between batches.
+ * A call is added to every stream, or, for a cohort, only to the stream of the file it was read from.
+ */
+class ConsensusStreams {
+    /**
+     * The amount of calls read before they are written to the streams in parallel.
+     */
+    private static final int BATCH = 1024;
+    /**
+     * The amount of reference bases read at a time, between calls that are far apart and after the last call.
+     */
+    private static final int REFERENCE_STEP = 1 << 20;
+
+    private final ReferenceWindow window;
+    private final GenotypeColumns columns;
+    private final int begin;
+    private final int end;
+    private final List<OutputStream> outputs = new ArrayList<>();
+    private final List<ConsensusStream> streams = new ArrayList<>();
+    private final List<ConsensusGenerator.ConsensusStatistics> statistics = new ArrayList<>();
+
+    private final List<VariantContext> batch = new ArrayList<>(BATCH);
+    private final int[] targets = new int[BATCH];
+    private final BitSet passed = new BitSet();
+    private int lastEnd = -1;
+
+    /**
+     * Creates an empty group of streams.
+     *
+     * @param window  the shared reference window, or null to write dots.
+     * @param columns the index of the sample columns, filled for every batch, or null.
+     * @param begin   the index (1-index) to start writing.
+     * @param end     the index (1-index) to stop writing at (inclusive).
+     */
+    ConsensusStreams(ReferenceWindow window, GenotypeColumns columns, int begin, int end) {
+        this.window = window;
+        this.columns = columns;
+        this.begin = begin;
+        this.end = end;
+    }
+
+    /**
+     * Adds a stream.
+     *
+     * @param destination the destination to write to.
+     * @param encoder     the encoder to use.
+     * @param sampler     the allele sampler, used by this stream only.
+     */
+    void add(OutputStream destination, IupacEncoder encoder, Sampler sampler) {
+        final ConsensusGenerator.ConsensusStatistics streamStatistics = new ConsensusGenerator.ConsensusStatistics();
+        outputs.add(destination);
+        statistics.add(streamStatistics);
+        streams.add(new ConsensusStream(destination, window, encoder, sampler, begin, end, streamStatistics));
+    }
+
+    /**
+     * Get the statistics of all streams together.
+     *
+     * @return the sum of the statistics of every stream.
+     */
+    ConsensusGenerator.ConsensusStatistics getStatistics() {
+        final ConsensusGenerator.ConsensusStatistics total = new ConsensusGenerator.ConsensusStatistics();
+        statistics.forEach(total::add);
+        return total;
+    }
+
+    /**
+     * Get the end of the last call that was read.
+     *
+     * @return the last position (1-index) of the last call, or -1 if no call was read.
+     */
+    int getLastEnd() {
+        return lastEnd;
+    }
+
+    /**
+     * Writes all streams until the end of the region and flushes them.
+     *
+     * @param calls      the calls, sorted on position.
+     * @param cohort     the calls if they are merged from the files of a cohort, one per stream, or null
+     *                   to add every call to every stream.
+     * @param failFilter the filters of which failing calls are written as reference, or null.
+     * @param threads    the amount of threads to write with.
+     * @throws IOException if writing failed.
+     */
+    void write(Iterator<VariantContext> calls, CohortIterator cohort, VariantContextFilter failFilter,
+               int threads) throws IOException {
+        final ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, threads));
+        try {
+            writeBatches(calls, cohort, failFilter, executor, Math.max(1, threads));
+            writeReferenceSteps(executor, Math.max(1, threads), end);
+        } finally {
+            executor.shutdownNow();
+        }
+        for (OutputStream output : outputs) {
+            output.flush();
+        }
+    }
+
+    private void writeBatches(Iterator<VariantContext> calls, CohortIterator cohort, VariantContextFilter failFilter,
+                              ExecutorService executor, int threads) throws IOException {
+        boolean reading = true;
+        while (reading) {
+            batch.clear();
+            passed.clear();
+            if (columns != null) {
+                columns.clear();
+            }
+            reading = readBatch(calls, cohort, failFilter) && !allDone();
+            if (columns != null) {
+                batch.forEach(columns::index);
+            }
+            int from = 0;
+            while (from < batch.size()) {
+                final int first = from;
+                final int last = segmentEnd(from);
+                if (window != null) {
+                    writeReferenceSteps(executor, threads, Math.min(batch.get(first).getStart() - 1, end));
+                    window.move(minWriteIndex(), Math.min(batch.get(last - 1).getStart() - 1, end));
+                }
+                runOnStreams(executor, threads, (index, stream) -> {
+                    for (int i = first; i < last && !stream.isDone(); i++) {
+                        if (targets[i] == -1 || targets[i] == index) {
+                            stream.add(batch.get(i), passed.get(i));
+                        }
+                    }
+                });
+                from = last;
+            }
+            if (!reading) {
+                runOnStreams(executor, threads, (index, stream) -> stream.flush());
+            }
+        }
+    }
+
+    /**
+     * Finds the end of a segment of the batch, of which the calls start within a step of the reference,
+     * so the window never reads more than about a step at once, however far apart the calls are.
+     *
+     * @param from the index in the batch of the first call of the segment.
+     * @return the index after the last call of the segment.
+     */
+    private int segmentEnd(int from) {
+        final long limit = (long) batch.get(from).getStart() + REFERENCE_STEP;
+        int to = from + 1;
+        while (to < batch.size() && batch.get(to).getStart() <= limit) {
+            to++;
+        }
+        return to;
+    }
+
+    /**
+     * Reads the next calls within the region.
+     *
+     * @param calls      the calls.
+     * @param cohort     the calls if they are merged from a cohort, or null.
+     * @param failFilter the filters of which failing calls are written as reference, or null.
+     * @return true if the batch is full, false if the calls in the region are finished.
+     */
+    private boolean readBatch(Iterator<VariantContext> calls, CohortIterator cohort,
+                              VariantContextFilter failFilter) {
+        while (batch.size() < BATCH && calls.hasNext()) {
+            final VariantContext call = calls.next();
+            lastEnd = call.getStart() + call.getReference().length() - 1;
+            if (call.getStart() < begin) {
+                continue;
+            }
+            if (call.getStart() > end) {
+                return false;
+            }
+            targets[batch.size()] = cohort == null ? -1 : cohort.getSource();
+            passed.set(batch.size(), failFilter == null || failFilter.test(call));
+            batch.add(call);
+        }
+        return batch.size() == BATCH;
+    }
+
+    /**
+     * Writes the reference of every stream until a position, or until its open group, reading at most a step of
+     * the reference at a time. Streams that get no calls for a long stretch, like the files of a cohort without
+     * calls there, are moved along with the others, so the window does not hold the stretch since their last call.
+     *
+     * @param executor the threads.
+     * @param threads  the amount of threads.
+     * @param target   the last position (1-index) to write.
+     * @throws IOException if writing failed.
+     */
+    private void writeReferenceSteps(ExecutorService executor, int threads, int target) throws IOException {
+        int written = minWriteIndex() - 1;
+        while (written < target) {
+            final int to = (int) Math.min(target, (long) written + REFERENCE_STEP);
+            if (window != null) {
+                window.move(minWriteIndex(), to);
+            }
+            runOnStreams(executor, threads, (index, stream) -> stream.writeReferenceBefore(to));
+            written = to;
+        }
+    }
+
+    private boolean allDone() {
+        for (ConsensusStream stream : streams) {
+            if (!stream.isDone()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int minWriteIndex() {
+        int min = Integer.MAX_VALUE;
+        for (ConsensusStream stream : streams) {
+            min = Math.min(min, stream.getCurrentWriteIndex());
+        }
+        return min;
+    }
+
+    /**
+     * Runs a task on every stream, splitting the streams over the threads.
+     * Every stream is used by one thread at a time.
+     *
+     * @param executor the threads.
+     * @param threads  the amount of threads.
+     * @param task     the task.
+     * @throws IOException if the task failed with an IOException.
+     */
+    private void runOnStreams(ExecutorService executor, int threads, StreamTask task) throws IOException {
+        final List<Future<Void>> futures = new ArrayList<>();
+        final int parts = Math.min(threads, streams.size());
+        for (int part = 0; part < parts; part++) {
+            final int from = part * streams.size() / parts;
+            final int to = (part + 1) * streams.size() / parts;
+            futures.add(executor.submit(() -> {
+                for (int i = from; i < to; i++) {
+                    task.run(i, streams.get(i));
+                }
+                return null;
+            }));
+        }
+        for (Future<Void> future : futures) {
+            try {
+                future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while writing the consensus streams.");
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof IOException) {
+                    throw (IOException) e.getCause();
+                }
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                throw new IllegalStateException(e.getCause());
+            }
+        }
+    }
+
+    /**
+     * Work on one consensus stream.
+     */
+    private interface StreamTask {
+        /**
+         * Runs the work.
+         *
+         * @param index  the index of the stream.
+         * @param stream the stream.
+         * @throws IOException if writing failed.
+         */
+        void run(int index, ConsensusStream stream) throws IOException;
+    }
+}
@@ -0,0 +1,317 @@
+package consensus;
+
+import consensus.encoders.IupacEncoder;
+import consensus.samplers.Sampler;
+import fasta.FastaSequence;
+import general.ReversingStream;
+import htsjdk.samtools.util.CloseableIterator;
+import htsjdk.tribble.AbstractFeatureReader;
+import htsjdk.tribble.FeatureReader;
+import htsjdk.variant.variantcontext.VariantContext;
+import htsjdk.variant.variantcontext.filter.VariantContextFilter;
+import vcf.iterator.IupacVCFCodec;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
+
+/**
+ * The consensus of one region, written in tiles on a pool of threads.
+ * The region is cut into tiles of about a given length. Every cut is moved on to the first position that no group of
+ * overlapping calls crosses, so each group is written whole by one tile and the tiles give the same sequence as one
+ * pass over the region. Every tile reads its calls with an index query and is written into its own buffer, after
+ * which the buffers are written to the destination in order. A formatting destination therefore wraps the lines
+ * across the seams as if the region was written in one piece. At most two tiles per thread are kept in memory.
+ * The reverse of a region is written by walking the tiles from the end of the region to its start and reversing
+ * every buffer in place, so the memory does not grow with the length of the region either.
+ * The calls are decoded like those of a stream, with their IUPAC codes kept and the reference blocks skipped.
+ * The samplers are not shared between tiles, the reference and the filters are used by one tile at a time.
+ */
+class ConsensusTiles {
+    private final File vcfFile;
+    private final File indexFile;
+    private final String chromosome;
+    private final FastaSequence fasta;
+    private final IupacEncoder encoder;
+    private final Supplier<Sampler> samplers;
+    private final VariantContextFilter filters;
+    private final boolean failingAsReference;
+    private final Queue<FeatureReader<VariantContext>> readers = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Creates the tiles of an indexed calls file.
+     *
+     * @param vcfFile            the sorted calls.
+     * @param indexFile          the index of the calls, which must be up to date.
+     * @param chromosome         the chromosome of the region.
+     * @param fasta              the reference, or null to write dots.
+     * @param encoder            the encoder to use.
+     * @param samplers           creates the sampler of each tile.
+     * @param filters            the filters of the calls.
+     * @param failingAsReference true to write the calls that fail the filters as the reference, false to skip them.
+     */
+    ConsensusTiles(String vcfFile, File indexFile, String chromosome, FastaSequence fasta, IupacEncoder encoder,
+                   Supplier<Sampler> samplers, VariantContextFilter filters, boolean failingAsReference) {
+        if (chromosome == null) {
+            throw new IllegalArgumentException("The chromosome must be known to write a region in tiles.");
+        }
+        this.vcfFile = new File(vcfFile);
+        this.indexFile = indexFile;
+        this.chromosome = chromosome;
+        this.fasta = fasta;
+        this.encoder = encoder;
+        this.samplers = samplers;
+        this.filters = filters;
+        this.failingAsReference = failingAsReference;
+    }
+
+    /**
+     * Writes a region in tiles.
+     *
+     * @param destination the destination to write to.
+     * @param begin       the index (1-index) to start writing.
+     * @param end         the index (1-index) to stop writing at (inclusive).
+     * @param tileSize    the length the tiles have at least, unless the region ends.
+     * @param threads     the amount of threads to write with.
+     * @param statistics  the statistics tracker, to which the statistics of every tile are added.
+     * @throws IOException if reading or writing failed.
+     */
+    void write(OutputStream destination, int begin, int end, int tileSize, int threads,
+               ConsensusGenerator.ConsensusStatistics statistics) throws IOException {
+        write(destination, begin, end, tileSize, threads, statistics, false);
+    }
+
+    /**
+     * Writes the reverse of a region in tiles, from the last tile to the first.
+     * Every tile is reversed in place, with its brackets turned, so the result is the same as that of a
+     * {@link ReversingStream} over the whole region. The encoder gives the complement if that is needed.
+     *
+     * @param destination the destination to write to.
+     * @param begin       the index (1-index) at which the region starts, which is written last.
+     * @param end         the index (1-index) at which the region ends (inclusive), which is written first.
+     * @param tileSize    the length the tiles have at least, unless the region ends.
+     * @param threads     the amount of threads to write with.
+     * @param statistics  the statistics tracker, to which the statistics of every tile are added.
+     * @throws IOException if reading or writing failed.
+     */
+    void writeReversed(OutputStream destination, int begin, int end, int tileSize, int threads,
+                       ConsensusGenerator.ConsensusStatistics statistics) throws IOException {
+        write(destination, begin, end, tileSize, threads, statistics, true);
+    }
+
+    private void write(OutputStream destination, int begin, int end, int tileSize, int threads,
+                       ConsensusGenerator.ConsensusStatistics statistics, boolean reversed) throws IOException {
+        final List<int[]> tiles = new ArrayList<>();
+        final List<Integer> starts = cut(begin, end, tileSize);
+        for (int i = 0; i < starts.size(); i++) {
+            tiles.add(new int[]{starts.get(i), i + 1 < starts.size() ? starts.get(i + 1) - 1 : end});
+        }
+        if (reversed) {
+            Collections.reverse(tiles);
+        }
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        final Deque<Future<Tile>> pending = new ArrayDeque<>();
+        try {
+            int next = 0;
+            while (next < tiles.size() || !pending.isEmpty()) {
+                while (next < tiles.size() && pending.size() < 2 * threads) {
+                    final int[] bounds = tiles.get(next);
+                    pending.add(executor.submit(() -> writeTile(bounds[0], bounds[1])));
+                    next++;
+                }
+                final Tile tile = get(pending.poll());
+                if (reversed) {
+                    tile.output.reverse();
+                }
+                tile.output.writeTo(destination);
+                statistics.add(tile.statistics);
+            }
+        } finally {
+            executor.shutdownNow();
+            for (FeatureReader<VariantContext> reader : readers) {
+                reader.close();
+            }
+            readers.clear();
+        }
+        destination.flush();
+    }
+
+    /**
+     * Cuts a region into tiles.
+     *
+     * @param begin    the first position (1-index) of the region.
+     * @param end      the last position (1-index) of the region.
+     * @param tileSize the length the tiles have at least.
+     * @return the first position of every tile.
+     * @throws IOException if the calls could not be read.
+     */
+    List<Integer> cut(int begin, int end, int tileSize) throws IOException {
+        if (tileSize < 1) {
+            throw new IllegalArgumentException("The tiles must be at least 1 base long.");
+        }
+        final List<Integer> starts = new ArrayList<>();
+        starts.add(begin);
+        final FeatureReader<VariantContext> reader = takeReader();
+        try {
+            long nominal = (long) begin + tileSize;
+            while (nominal <= end) {
+                final int cut = gapFrom(reader, (int) nominal, end);
+                if (cut > end) {
+                    break;
+                }
+                starts.add(cut);
+                nominal = (long) cut + tileSize;
+            }
+        } finally {
+            readers.add(reader);
+        }
+        return starts;
+    }
+
+    /**
+     * Finds the first position from which no group of overlapping calls started before it.
+     *
+     * @param reader the calls.
+     * @param from   the first position to try.
+     * @param end    the end of the region.
+     * @return the position, which is beyond the region if the region ends in a group.
+     * @throws IOException if the calls could not be read.
+     */
+    private int gapFrom(FeatureReader<VariantContext> reader, int from, int end) throws IOException {
+        int cut = from;
+        try (CloseableIterator<VariantContext> calls = reader.query(chromosome, from, end)) {
+            while (calls.hasNext()) {
+                final VariantContext call = calls.next();
+                if (call.getStart() >= cut) {
+                    break;
+                }
+                cut = Math.max(cut, Sampler.getEnd(call) + 1);
+            }
+        }
+        return cut;
+    }
+
+    /**
+     * Writes one tile into a buffer.
+     *
+     * @param from the first position (1-index) of the tile.
+     * @param to   the last position (1-index) of the tile.
+     * @return the written tile.
+     * @throws IOException if writing failed.
+     */
+    private Tile writeTile(int from, int to) throws IOException {
+        final Tile tile = new Tile();
+        final ConsensusStream stream = new ConsensusStream(tile.output, fasta == null ? null : this::writeReference,
+                encoder, samplers.get(), from, to, tile.statistics);
+        final FeatureReader<VariantContext> reader = takeReader();
+        try (CloseableIterator<VariantContext> calls = reader.query(chromosome, from, to)) {
+            while (!stream.isDone() && calls.hasNext()) {
+                final VariantContext call = calls.next();
+                if (call.getStart() < from) {
+                    continue;
+                }
+                if (call.getStart() > to) {
+                    break;
+                }
+                final boolean passed = test(call);
+                if (passed || failingAsReference) {
+                    stream.add(call, passed);
+                }
+            }
+        } finally {
+            readers.add(reader);
+        }
+        stream.finish();
+        return tile;
+    }
+
+    private boolean test(VariantContext call) {
+        synchronized (filters) {
+            return filters.test(call);
+        }
+    }
+
+    /**
+     * Writes encoded bases of the reference.
+     *
+     * @param destination the destination to write to.
+     * @param startIndex  the 0-based index of the first base.
+     * @param length      the amount of bases.
+     * @return the amount of bases written.
+     * @throws IOException if writing failed.
+     */
+    private int writeReference(OutputStream destination, int startIndex, int length) throws IOException {
+        final byte[] bases;
+        synchronized (fasta) {
+            bases = fasta.read(startIndex, length);
+        }
+        final byte[] bytes = encoder.encodeReferenceBytes(bases);
+        destination.write(bytes, 0, bytes.length);
+        return bytes.length;
+    }
+
+    /**
+     * Takes an open reader of the calls, or opens one, which is added back after use.
+     *
+     * @return the reader.
+     */
+    private FeatureReader<VariantContext> takeReader() {
+        final FeatureReader<VariantContext> reader = readers.poll();
+        return reader != null ? reader : AbstractFeatureReader.getFeatureReader(vcfFile.getAbsolutePath(),
+                indexFile.getAbsolutePath(), new IupacVCFCodec(true), true);
+    }
+
+    private static Tile get(Future<Tile> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while writing the tiles.");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * The written bases of a tile.
+     */
+    private static final class Tile {
+        private final TileOutput output = new TileOutput();
+        private final ConsensusGenerator.ConsensusStatistics statistics = new ConsensusGenerator.ConsensusStatistics();
+    }
+
+    /**
+     * The buffer of a tile, which can be reversed without copying it.
+     */
+    private static final class TileOutput extends ByteArrayOutputStream {
+        /**
+         * Reverses the written bytes in place, turning the brackets around.
+         */
+        private void reverse() {
+            for (int i = 0, j = count - 1; i <= j; i++, j--) {
+                final byte first = ReversingStream.reverseBracket(buf[i]);
+                buf[i] = ReversingStream.reverseBracket(buf[j]);
+                buf[j] = first;
+            }
+        }
+    }
+}
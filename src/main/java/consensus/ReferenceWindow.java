@@ -0,0 +1,91 @@
+package consensus;
+
+import consensus.encoders.IupacEncoder;
+import fasta.Fasta;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * A window of encoded reference bases shared by several consensus streams.
+ * The window is moved forward by one thread, reading and encoding the fasta file sequentially,
+ * after which the streams write from it on any thread until it is moved again.
+ * So the reference is read and encoded once, however many streams write it.
+ */
+class ReferenceWindow implements ConsensusStream.Reference {
+    private final Fasta fasta;
+    private final IupacEncoder encoder;
+    private byte[] bases = new byte[0];
+    private int start = -1;
+    private int length;
+    private boolean ended;
+
+    /**
+     * Creates a window on a fasta file.
+     *
+     * @param fasta   the fasta file, read forward only.
+     * @param encoder the encoder of the reference bases.
+     */
+    ReferenceWindow(Fasta fasta, IupacEncoder encoder) {
+        this.fasta = fasta;
+        this.encoder = encoder;
+    }
+
+    /**
+     * Moves the window, dropping the bases before the first position and reading the bases until the last.
+     *
+     * @param from the first position (1-index) that is still read, never before the previous first position.
+     * @param to   the last position (1-index) that is read.
+     */
+    void move(int from, int to) {
+        if (start == -1) {
+            start = from - 1;
+        }
+        final int drop = Math.min(length, Math.max(0, from - 1 - start));
+        if (drop > 0) {
+            System.arraycopy(bases, drop, bases, 0, length - drop);
+            length -= drop;
+            start += drop;
+        }
+        if (length == 0 && start < from - 1) {
+            start = from - 1;
+        }
+        final int missing = to - (start + length);
+        if (missing <= 0 || ended) {
+            return;
+        }
+        final byte[] read = encoder.encodeReferenceBytes(fasta.read(start + length, missing));
+        if (read.length < missing) {
+            ended = true;
+        }
+        if (length + read.length > bases.length) {
+            bases = Arrays.copyOf(bases, Math.max(bases.length * 2, length + read.length));
+        }
+        System.arraycopy(read, 0, bases, length, read.length);
+        length += read.length;
+    }
+
+    /**
+     * Get the amount of bases the window has room for, which never shrinks.
+     *
+     * @return the largest amount of bases the window held so far, rounded up by its growth.
+     */
+    int capacity() {
+        return bases.length;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int write(OutputStream destination, int startIndex, int amount) throws IOException {
+        if (startIndex < start) {
+            throw new IllegalStateException("Reference position " + (startIndex + 1) + " is before the window.");
+        }
+        final int offset = Math.min(startIndex - start, length);
+        final int available = Math.max(0, Math.min(amount, length - offset));
+        destination.write(bases, offset, available);
+        return available;
+    }
+}
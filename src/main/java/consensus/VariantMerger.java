@@ -1,203 +1,333 @@
 package consensus;
 
+import consensus.samplers.SampleBuffer;
 import consensus.samplers.Sampler;
 import lombok.Getter;
-import lombok.Setter;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
 
 /**
- * This class takes a list of samples and creates a position oriented collection of Consensuses by merging the samples.
+ * This class takes a buffer of samples and merges them into the consensus of every position, one position at a time.
+ * The consensus of a position is made while the consensuses are iterated, from the samples that cover it,
+ * and one consensus object is reused for all positions. So the memory use depends on the amount of samples
+ * and not on the length of the merged region: a long deletion is a span of positions marked as deleted,
+ * and the bases of a long insertion are read from the allele of its sample.
+ * The arrays that describe the samples of a merge are kept by the merger and only grown when a group has more
+ * samples than any group before it, so one merger is reused for all groups of a stream.
  */
 class VariantMerger {
-    private List<Sampler.Sample> samples;
-
+    private static final int NONE = 0;
+    private static final int DELETION = 1;
+    private static final int POLYMORPHISM = 2;
+    private static final int REFERENCE = 3;
+    private static final int INSERTION = 4;
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private SampleBuffer samples;
+    private int[] kinds = new int[INITIAL_CAPACITY];
+    private boolean[] hetero = new boolean[INITIAL_CAPACITY];
+    private int[] insertionLevels = new int[INITIAL_CAPACITY];
+    private int[] active = new int[INITIAL_CAPACITY];
+    private int[] byStart = new int[INITIAL_CAPACITY];
+    private long[] startKeys = new long[INITIAL_CAPACITY];
 
     /**
      * Creates a new VariantMerger.
      *
      * @param samples The samples to be used in merging.
      */
-    VariantMerger(List<Sampler.Sample> samples) {
+    VariantMerger(SampleBuffer samples) {
         this.samples = samples;
     }
 
     /**
-     * Merges the given samples into a list consensuses.
+     * Merges the samples into the consensus of every position, including the inserted positions.
+     * The returned consensus is only valid until the next one is taken from the iterator,
+     * and the iterator is only valid until the next merge of this merger.
      *
      * @param startPosition Smallest start position in this sample list.
      * @param endPosition   Greatest end position in this sample list.
      * @param stats         A statistics tracker
-     * @return A list of consensuses.
+     * @return An iterator over the consensuses.
      */
-    List<Consensus> mergeVariants(int startPosition, int endPosition,
-                                         ConsensusGenerator.ConsensusStatistics stats) {
-        ReferenceConsensus[] consensuses = new ReferenceConsensus[endPosition + 1 - startPosition];
-
-        consensuses[0] = new ReferenceConsensus(startPosition, false);
+    Iterator<Consensus> mergeVariants(int startPosition, int endPosition,
+                                      ConsensusGenerator.ConsensusStatistics stats) {
+        return new Merge(startPosition, endPosition, stats);
+    }
 
-        for (int i = 1; i < consensuses.length; i++) {
-            consensuses[i] = new ReferenceConsensus(i + startPosition, false);
-            consensuses[i - 1].setNextConsensus(consensuses[i]);
+    /**
+     * Makes the arrays hold at least the given amount of samples, without keeping their content.
+     *
+     * @param size the amount of samples.
+     */
+    private void ensureCapacity(int size) {
+        if (size <= kinds.length) {
+            return;
         }
+        final int capacity = Math.max(size, kinds.length * 2);
+        kinds = new int[capacity];
+        hetero = new boolean[capacity];
+        insertionLevels = new int[capacity];
+        active = new int[capacity];
+        byStart = new int[capacity];
+        startKeys = new long[capacity];
+    }
 
-        for (Sampler.Sample sample : samples) {
-            boolean hetero = sample.getSampleType() == Sampler.SampleType.HETERO;
-            int index = sample.getStart() - startPosition;
-
-            if (sample.getVariantType() == Sampler.VariantType.SIMPLE_DEL) {
-                applyDeletion(consensuses, sample, hetero, index, stats);
-            }
-
-            if (sample.getVariantType() == Sampler.VariantType.MNP) {
-                applyMNP(consensuses, sample, hetero, index);
-            }
+    /**
+     * Determines how a sample changes the positions it covers.
+     *
+     * @param sample the index of the sample.
+     * @return the kind of change.
+     */
+    private int kindOf(int sample) {
+        final int refLength = samples.getEnd(sample) + 1 - samples.getStart(sample);
+        switch (samples.getVariantType(sample)) {
+            case SIMPLE_DEL:
+                return DELETION;
+            case COMPLEX_INDEL:
+                return samples.getAlleleLength(sample) > refLength ? INSERTION : DELETION;
+            case INSERTION:
+                return INSERTION;
+            case SNP:
+            case MNP:
+                return POLYMORPHISM;
+            case NO_CHANGE:
+                return samples.getSampleType(sample) == Sampler.SampleType.REFERENCE ? REFERENCE : POLYMORPHISM;
+            default:
+                return NONE;
+        }
+    }
 
-            if (sample.getVariantType() == Sampler.VariantType.NO_CHANGE) {
-                applyNoChange(consensuses, sample, hetero, index);
-            }
+    /**
+     * The iteration over the merged positions.
+     * The samples that cover the current position are kept active, in the order of the buffer,
+     * which is the order in which they are applied to a position.
+     */
+    private final class Merge implements Iterator<Consensus> {
+        private final int endPosition;
+        private final int size;
+        private int activeSize;
+        private int nextStart;
 
-            if (sample.getVariantType() == Sampler.VariantType.SNP) {
-                applySNP(consensuses, sample, hetero, index);
-            }
+        private final Consensus consensus = new Consensus();
+        private int position;
+        private int relative;
+        private int insertionLength;
+        private int anchorLevel;
+        private boolean anchorDeleted;
 
-            if (sample.getVariantType() == Sampler.VariantType.INSERTION) {
-                applyInsertion(consensuses, sample, hetero, index, stats);
+        /**
+         * Prepares the merge and adds the deletions and insertions that start in it to the statistics.
+         *
+         * @param startPosition the first position.
+         * @param endPosition   the last position.
+         * @param stats         the statistics tracker.
+         */
+        private Merge(int startPosition, int endPosition, ConsensusGenerator.ConsensusStatistics stats) {
+            this.endPosition = endPosition;
+            size = samples.size();
+            ensureCapacity(size);
+            for (int sample = 0; sample < size; sample++) {
+                kinds[sample] = kindOf(sample);
+                hetero[sample] = samples.getSampleType(sample) == Sampler.SampleType.HETERO;
+                insertionLevels[sample] = 0;
+                // the start in the high bits sorts by start, the sample in the low bits keeps the buffer order
+                startKeys[sample] = (long) samples.getStart(sample) << Integer.SIZE | sample;
+                final int refLength = samples.getEnd(sample) + 1 - samples.getStart(sample);
+                final int alleleLength = samples.getAlleleLength(sample);
+                if (samples.getStart(sample) < startPosition) {
+                    // kept from the part of a split group that is already written and counted
+                    continue;
+                }
+                if (kinds[sample] == DELETION) {
+                    stats.addDeletion(Math.max(alleleLength, refLength) - alleleLength);
+                } else if (kinds[sample] == INSERTION) {
+                    stats.addInsertion(alleleLength - refLength);
+                }
             }
-
-            if (sample.getVariantType() == Sampler.VariantType.COMPLEX_INDEL) {
-                applyComplexIndel(consensuses, sample, hetero, index, stats);
+            Arrays.sort(startKeys, 0, size);
+            for (int i = 0; i < size; i++) {
+                byStart[i] = (int) startKeys[i];
             }
+            position = startPosition - 1;
         }
 
-        List<Consensus> consensusList = new ArrayList<>();
-        Consensus consensus = consensuses[0];
-        while (consensus.getNextConsensus() != null) {
-            consensusList.add(consensus);
-            consensus = consensus.getNextConsensus();
-        }
-        consensusList.add(consensus);
-
-        return consensusList;
-    }
-
-    private void applySNP(ReferenceConsensus[] consensuses, Sampler.Sample sample, boolean hetero, int index) {
-        applyPolymorphism(consensuses, sample, hetero, index);
-    }
-
-    private void applyNoChange(ReferenceConsensus[] consensuses, Sampler.Sample sample, boolean hetero, int index) {
-        if (sample.getSampleType() == Sampler.SampleType.REFERENCE) {
-            for (int i = 0; i < sample.getAllele().length; i++) {
-                consensuses[index + i].setRef(sample.getAllele()[i]);
-            }
-        } else {
-            applyPolymorphism(consensuses, sample, hetero, index);
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public boolean hasNext() {
+            return relative < insertionLength || position < endPosition;
         }
-    }
-
-    private void applyMNP(ReferenceConsensus[] consensuses, Sampler.Sample sample, boolean hetero, int index) {
-        applyPolymorphism(consensuses, sample, hetero, index);
-    }
 
-    private void applyDeletion(ReferenceConsensus[] consensuses, Sampler.Sample sample, boolean hetero, int index,
-                               ConsensusGenerator.ConsensusStatistics stats) {
-        int i = 0;
-        for (; i < sample.getAllele().length; i++) {
-            consensuses[index + i].addVariation(sample.getAllele()[i]);
-            if (hetero) {
-                consensuses[index + i].setHeteroLevel(Math.max(consensuses[index + i].getHeteroLevel(), 1));
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public Consensus next() {
+            if (relative < insertionLength) {
+                relative++;
+                mergeInsertion();
+            } else if (position < endPosition) {
+                position++;
+                relative = 0;
+                mergePosition();
+            } else {
+                throw new NoSuchElementException();
             }
+            return consensus;
         }
 
-        for (; i <= sample.getEnd() - sample.getStart(); i++) {
-            if (hetero) {
-                consensuses[index + i].setHeteroLevel(consensuses[index + i].getHeteroLevel() + 1);
+        /**
+         * Merges the samples that cover the next reference position.
+         */
+        private void mergePosition() {
+            updateActive();
+            consensus.reset(position, 0);
+            insertionLength = 0;
+            for (int i = 0; i < activeSize; i++) {
+                final int sample = active[i];
+                final int k = position - samples.getStart(sample);
+                final boolean inAllele = k < samples.getAlleleLength(sample);
+                switch (kinds[sample]) {
+                    case DELETION:
+                        if (inAllele) {
+                            consensus.addVariation(samples.getAlleleBase(sample, k));
+                            raiseToHetero(sample);
+                        } else {
+                            if (hetero[sample]) {
+                                consensus.setHeteroLevel(consensus.getHeteroLevel() + 1);
+                            }
+                            consensus.setDeleted();
+                        }
+                        break;
+                    case POLYMORPHISM:
+                        raiseToHetero(sample);
+                        if (inAllele) {
+                            consensus.addVariation(samples.getAlleleBase(sample, k));
+                        }
+                        break;
+                    case REFERENCE:
+                        if (inAllele) {
+                            consensus.setRef(samples.getAlleleBase(sample, k));
+                        }
+                        break;
+                    case INSERTION:
+                        raiseToHetero(sample);
+                        if (inAllele) {
+                            consensus.addVariation(samples.getAlleleBase(sample, k));
+                        }
+                        if (position == samples.getEnd(sample)) {
+                            insertionLevels[sample] = hetero[sample] ? consensus.getHeteroLevel() + 1 : -1;
+                            insertionLength = Math.max(insertionLength, samples.getAlleleLength(sample) - k - 1);
+                        }
+                        break;
+                    default:
+                        break;
+                }
             }
-            consensuses[index + i].setDeleted();
-        }
-        stats.addDeletion(i - sample.getAllele().length);
-    }
-
-    private void applyInsertion(ReferenceConsensus[] consensuses, Sampler.Sample sample, boolean hetero,
-                                int index, ConsensusGenerator.ConsensusStatistics stats) {
-        int i = 0;
-        for (; i < sample.getEnd() + 1 - sample.getStart(); i++) {
-            if (hetero) {
-                consensuses[index + i].setHeteroLevel(Math.max(consensuses[index + i].getHeteroLevel(), 1));
+            if (consensus.getRef() == 0 && consensus.getConsensus().isEmpty()) {
+                // no sample gives the base, like inside a symbolic deletion
+                consensus.setRef((byte) 'N');
             }
-            consensuses[index + i].addVariation(sample.getAllele()[i]);
+            anchorLevel = consensus.getHeteroLevel();
+            anchorDeleted = consensus.isDeleted();
         }
 
-        int refIndex = index + i - 1;
-        stats.addInsertion(sample.getAllele().length - i);
-
-        Consensus previousConsensus = consensuses[refIndex];
-        for (; i < sample.getAllele().length; i++) {
-            InsertionConsensus nextConsensus;
-
-            if (previousConsensus.getNextConsensus() == null
-                    || previousConsensus.getNextConsensus().getRelativePosition() == 0) {
-                nextConsensus = new InsertionConsensus(previousConsensus);
-                nextConsensus.setNextConsensus(previousConsensus.getNextConsensus());
-                previousConsensus.setNextConsensus(nextConsensus);
-            } else {
-                nextConsensus = (InsertionConsensus) previousConsensus.getNextConsensus();
+        /**
+         * Merges the samples inserted at the next inserted position after the current reference position.
+         * The hetero level is that of the last heterozygous insertion that reaches this far,
+         * and at least that of the position before it.
+         */
+        private void mergeInsertion() {
+            final int previousLevel = relative == 1 ? anchorLevel : consensus.getHeteroLevel();
+            consensus.reset(position, relative);
+            if (anchorDeleted) {
+                consensus.setDeleted();
             }
-
-            nextConsensus.addVariation(sample.getAllele()[i]);
-            if (hetero) {
-                nextConsensus.setHeteroLevel(consensuses[refIndex].getHeteroLevel() + 1);
+            int level = 0;
+            for (int i = 0; i < activeSize; i++) {
+                final int sample = active[i];
+                if (kinds[sample] != INSERTION || samples.getEnd(sample) != position) {
+                    continue;
+                }
+                final int base = samples.getEnd(sample) - samples.getStart(sample) + relative;
+                if (base < samples.getAlleleLength(sample)) {
+                    consensus.addVariation(samples.getAlleleBase(sample, base));
+                    if (insertionLevels[sample] != -1) {
+                        level = insertionLevels[sample];
+                    }
+                }
             }
-
-            previousConsensus = nextConsensus;
+            consensus.setHeteroLevel(Math.max(level, previousLevel));
         }
-    }
-
-    private void applyComplexIndel(ReferenceConsensus[] consensuses, Sampler.Sample sample, boolean hetero,
-                                   int index, ConsensusGenerator.ConsensusStatistics stats) {
-        int refLength = sample.getEnd() + 1 - sample.getStart();
-        int sampleLength = sample.getAllele().length;
 
-        if (sampleLength > refLength) {
-            applyInsertion(consensuses, sample, hetero, index, stats);
-        } else {
-            applyDeletion(consensuses, sample, hetero, index, stats);
+        private void raiseToHetero(int sample) {
+            if (hetero[sample]) {
+                consensus.setHeteroLevel(Math.max(consensus.getHeteroLevel(), 1));
+            }
         }
-    }
 
-    private void applyPolymorphism(ReferenceConsensus[] consensuses, Sampler.Sample sample, boolean hetero, int index) {
-        for (int i = 0; i <= sample.getEnd() - sample.getStart(); i++) {
-            if (hetero) {
-                consensuses[index + i].setHeteroLevel(Math.max(consensuses[index + i].getHeteroLevel(), 1));
+        /**
+         * Removes the samples that end before the current position and adds the samples that start on it,
+         * keeping the active samples in the order of the buffer.
+         */
+        private void updateActive() {
+            int kept = 0;
+            for (int i = 0; i < activeSize; i++) {
+                if (samples.getEnd(active[i]) >= position) {
+                    active[kept++] = active[i];
+                }
+            }
+            activeSize = kept;
+            while (nextStart < size && samples.getStart(byStart[nextStart]) <= position) {
+                final int sample = byStart[nextStart++];
+                if (samples.getEnd(sample) < position) {
+                    continue;
+                }
+                int i = activeSize++;
+                while (i > 0 && active[i - 1] > sample) {
+                    active[i] = active[i - 1];
+                    i--;
+                }
+                active[i] = sample;
             }
-            consensuses[index + i].addVariation(sample.getAllele()[i]);
         }
     }
 
     /**
      * Represents a location on the consensus sequence, with the reported variant on that location.
      */
-    public abstract class Consensus {
-        private List<Byte> consensus;
+    public static final class Consensus {
+        private final List<Byte> consensus = new ArrayList<>();
         @Getter
-        @Setter
         private byte ref;
-
         @Getter
-        @Setter
         private int heteroLevel;
-
         @Getter
-        @Setter
-        private Consensus nextConsensus = null;
+        private int refPosition;
+        @Getter
+        private int relativePosition;
+        private boolean deleted;
 
         /**
-         * Creates a new consensus.
+         * Clears the consensus for a new location.
+         *
+         * @param refPosition      the position in the reference, or of the reference base before an insertion.
+         * @param relativePosition the distance to that reference base.
          */
-        Consensus() {
-            consensus = new ArrayList<>();
+        private void reset(int refPosition, int relativePosition) {
+            consensus.clear();
+            ref = 0;
             heteroLevel = 0;
+            deleted = false;
+            this.refPosition = refPosition;
+            this.relativePosition = relativePosition;
         }
 
         /**
@@ -205,7 +335,7 @@ class VariantMerger {
          *
          * @param b The variant to add.
          */
-        void addVariation(Byte b) {
+        private void addVariation(byte b) {
             consensus.add(b);
         }
 
@@ -218,99 +348,26 @@ class VariantMerger {
             return consensus;
         }
 
-        /**
-         * Returns the position in the original reference genome this base would occupy,
-         * or the position of the first preceding base that has a position in the reference genome.
-         *
-         * @return The position.
-         */
-        public abstract int getRefPosition();
-
-        /**
-         * Returns the position distance to the first preceding base that has a position in the reference genome.
-         * Is 0 if this position was in the original genome.
-         *
-         * @return The relative position.
-         */
-        abstract int getRelativePosition();
-
-        /**
-         * Returns whether or not this base has been deleted in a variant.
-         *
-         * @return Whether this base has been deleted in a variant.
-         */
-        public abstract boolean isDeleted();
-    }
-
-    /**
-     * A base with a reference position.
-     */
-    private class ReferenceConsensus extends Consensus {
-        private int position;
-        private boolean deleted;
-
-        ReferenceConsensus(int position, boolean deleted) {
-            this.position = position;
-            this.deleted = deleted;
+        private void setRef(byte ref) {
+            this.ref = ref;
         }
 
-        @Override
-        public int getRefPosition() {
-            return position;
+        private void setHeteroLevel(int heteroLevel) {
+            this.heteroLevel = heteroLevel;
         }
 
-        @Override
-        public int getRelativePosition() {
-            return 0;
-        }
-
-        @Override
-        public boolean isDeleted() {
-            return deleted;
-        }
-
-        /**
-         * Marks this base as deleted in at least one variant.
-         */
         private void setDeleted() {
             deleted = true;
         }
-    }
-
-    /**
-     * A base that has no position in the original reference, but is inserted between reference bases.
-     */
-    private class InsertionConsensus extends Consensus {
-        @Getter
-        private Consensus previousConsensus;
-
-        @Getter
-        @Setter
-        private Consensus nextConsensus = null;
-
-        InsertionConsensus(Consensus previousConsensus) {
-            super();
-            this.previousConsensus = previousConsensus;
-        }
-
-        @Override
-        public int getRefPosition() {
-            return previousConsensus.getRefPosition();
-        }
-
-        @Override
-        public int getRelativePosition() {
-            return previousConsensus.getRelativePosition() + 1;
-        }
 
-        @Override
+        /**
+         * Returns whether or not this base has been deleted in a variant.
+         * An inserted base is deleted if the reference base before it is.
+         *
+         * @return Whether this base has been deleted in a variant.
+         */
         public boolean isDeleted() {
-            return previousConsensus.isDeleted();
-        }
-
-        @Override
-        public int getHeteroLevel() {
-            return Math.max(super.getHeteroLevel(), previousConsensus.getHeteroLevel());
+            return deleted;
         }
     }
-}
\ No newline at end of file
+}
@@ -1,14 +1,14 @@
 package consensus.filters;
 
 import htsjdk.variant.variantcontext.VariantContext;
-import htsjdk.variant.variantcontext.filter.VariantContextFilter;
 import lombok.EqualsAndHashCode;
+import vcf.RecordView;
 
 /**
  * The allele count filter.
  */
 @EqualsAndHashCode
-public class AlleleCountFilter implements VariantContextFilter {
+public class AlleleCountFilter implements CostedFilter {
 
     private final int max;
     private final int min;
@@ -35,17 +35,25 @@ public class AlleleCountFilter implements VariantContextFilter {
      */
     @Override
     public boolean test(VariantContext record) {
-        final Object ac = record.getAttribute("AC");
-        if (ac instanceof String) {
-            String[] values = ((String) ac).split(",");
-            for (String value : values) {
-                int count = Integer.parseInt((String) value);
-                if ((count < this.min || count > this.max) == matchAll) {
-                    return !matchAll;
-                }
+        final RecordView view = RecordView.of(record);
+        final int size = view.getAlleleCountSize();
+        if (size == 0) {
+            return false;
+        }
+        for (int i = 0; i < size; i++) {
+            int count = view.getAlleleCount(i);
+            if ((count < this.min || count > this.max) == matchAll) {
+                return !matchAll;
             }
-            return matchAll;
         }
-        return false;
+        return matchAll;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getCost() {
+        return COST_PARSE;
     }
 }
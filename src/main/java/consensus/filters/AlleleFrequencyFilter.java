@@ -1,14 +1,14 @@
 package consensus.filters;
 
 import htsjdk.variant.variantcontext.VariantContext;
-import htsjdk.variant.variantcontext.filter.VariantContextFilter;
 import lombok.EqualsAndHashCode;
+import vcf.RecordView;
 
 /**
  * The allele frequency filter.
  */
 @EqualsAndHashCode
-public class AlleleFrequencyFilter implements VariantContextFilter {
+public class AlleleFrequencyFilter implements CostedFilter {
     private final double max;
     private final double min;
     private final boolean matchAll;
@@ -34,17 +34,25 @@ public class AlleleFrequencyFilter implements VariantContextFilter {
      */
     @Override
     public boolean test(VariantContext record) {
-        final Object af = record.getAttribute("AF");
-        if (af instanceof String) {
-            String[] values = ((String) af).split(",");
-            for (String value : values) {
-                double count = Double.parseDouble((String) value);
-                if ((count < this.min || count > this.max) == matchAll) {
-                    return !matchAll;
-                }
+        final RecordView view = RecordView.of(record);
+        final int size = view.getAlleleFrequencySize();
+        if (size == 0) {
+            return false;
+        }
+        for (int i = 0; i < size; i++) {
+            double frequency = view.getAlleleFrequency(i);
+            if ((frequency < this.min || frequency > this.max) == matchAll) {
+                return !matchAll;
             }
-            return matchAll;
         }
-        return false;
+        return matchAll;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getCost() {
+        return COST_PARSE;
     }
 }
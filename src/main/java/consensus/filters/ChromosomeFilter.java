@@ -1,14 +1,13 @@
 package consensus.filters;
 
 import htsjdk.variant.variantcontext.VariantContext;
-import htsjdk.variant.variantcontext.filter.VariantContextFilter;
 import lombok.EqualsAndHashCode;
 
 /**
  * The allele count filter.
  */
 @EqualsAndHashCode
-public class ChromosomeFilter implements VariantContextFilter {
+public class ChromosomeFilter implements CostedFilter {
 
     private final String chromosome;
 
@@ -32,4 +31,12 @@ public class ChromosomeFilter implements VariantContextFilter {
         final Object name = record.getContig();
         return chromosome.equals(name);
     }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getCost() {
+        return COST_DECODED;
+    }
 }
@@ -0,0 +1,36 @@
+package consensus.filters;
+
+import htsjdk.variant.variantcontext.filter.VariantContextFilter;
+
+/**
+ * A filter that can estimate how expensive it is to test a record.
+ * The {@link FilterChain} uses this estimate to run cheap filters first.
+ */
+public interface CostedFilter extends VariantContextFilter {
+    /**
+     * Cost of a field that is already decoded, like the position or QUAL.
+     */
+    int COST_DECODED = 1;
+
+    /**
+     * Cost of a lookup in a small collection, like the FILTER column or the alleles.
+     */
+    int COST_LOOKUP = 3;
+
+    /**
+     * Cost of parsing an INFO attribute.
+     */
+    int COST_PARSE = 5;
+
+    /**
+     * Cost of a search in a large collection.
+     */
+    int COST_SEARCH = 8;
+
+    /**
+     * Estimated relative cost of testing one record, in arbitrary units.
+     *
+     * @return the estimated cost.
+     */
+    int getCost();
+}
@@ -1,14 +1,14 @@
 package consensus.filters;
 
 import htsjdk.variant.variantcontext.VariantContext;
-import htsjdk.variant.variantcontext.filter.VariantContextFilter;
 import lombok.EqualsAndHashCode;
+import vcf.RecordView;
 
 /**
  * The allele depth filter.
  */
 @EqualsAndHashCode
-public class DepthFilter implements VariantContextFilter {
+public class DepthFilter implements CostedFilter {
 
     private final int max;
     private final int min;
@@ -32,11 +32,19 @@ public class DepthFilter implements VariantContextFilter {
      */
     @Override
     public boolean test(VariantContext record) {
-        final Object ac = record.getAttribute("DP");
-        if (ac instanceof String) {
-            int count = Integer.parseInt((String) ac);
+        final RecordView view = RecordView.of(record);
+        if (view.hasDepth()) {
+            int count = view.getDepth();
             return count >= this.min && count <= this.max;
         }
         return false;
     }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getCost() {
+        return COST_PARSE;
+    }
 }
@@ -0,0 +1,436 @@
+package consensus.filters;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import htsjdk.variant.variantcontext.VariantContext;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static consensus.filters.ExpressionFilter.*;
+
+/**
+ * Compiles a filter expression into a program for the {@link ExpressionFilter}.
+ * The grammar, from loosest to tightest binding, is:
+ * <pre>
+ * or         := and (('||' | '|') and)*
+ * and        := not (('&amp;&amp;' | '&amp;') not)*
+ * not        := '!' not | comparison
+ * comparison := sum (('==' | '=' | '!=' | '&lt;' | '&lt;=' | '&gt;' | '&gt;=') sum)?
+ *             | name ('==' | '=' | '!=') string
+ * sum        := product (('+' | '-') product)*
+ * product    := unary (('*' | '/') unary)*
+ * unary      := '-' unary | number | name | '(' or ')'
+ * </pre>
+ * Names are QUAL, POS, N_ALT, DP, AF, AC, INFO/key or any other INFO key.
+ * TYPE and FILTER can only be compared to a string.
+ */
+final class ExpressionCompiler {
+    private static final Map<String, VariantContext.Type> TYPES = new HashMap<>();
+
+    static {
+        TYPES.put("ref", VariantContext.Type.NO_VARIATION);
+        TYPES.put("snp", VariantContext.Type.SNP);
+        TYPES.put("snps", VariantContext.Type.SNP);
+        TYPES.put("mnp", VariantContext.Type.MNP);
+        TYPES.put("mnps", VariantContext.Type.MNP);
+        TYPES.put("indel", VariantContext.Type.INDEL);
+        TYPES.put("indels", VariantContext.Type.INDEL);
+        TYPES.put("mixed", VariantContext.Type.MIXED);
+        TYPES.put("symbolic", VariantContext.Type.SYMBOLIC);
+    }
+
+    private final String source;
+    private final List<Token> tokens = new ArrayList<>();
+    private int position;
+
+    private int[] code = new int[16];
+    private int[] operands = new int[16];
+    private int size;
+    private final List<Double> constants = new ArrayList<>();
+    private final List<String> names = new ArrayList<>();
+    private final List<VariantContext.Type> types = new ArrayList<>();
+    private int depth;
+    private int maxStack;
+    private int cost = CostedFilter.COST_DECODED;
+
+    /**
+     * Creates a compiler for an expression.
+     *
+     * @param source the expression.
+     */
+    ExpressionCompiler(String source) {
+        this.source = source;
+    }
+
+    /**
+     * Parses and compiles the expression.
+     *
+     * @return the program.
+     * @throws IllegalArgumentException if the expression is not valid.
+     */
+    Program compile() {
+        tokenize();
+        parseOr();
+        if (peek().kind != Kind.END) {
+            throw error(peek(), "unexpected '" + peek().text + "'");
+        }
+        double[] constantArray = new double[constants.size()];
+        for (int i = 0; i < constantArray.length; i++) {
+            constantArray[i] = constants.get(i);
+        }
+        return new Program(Arrays.copyOf(code, size), Arrays.copyOf(operands, size), constantArray,
+                names.toArray(new String[0]), types.toArray(new VariantContext.Type[0]), maxStack, cost);
+    }
+
+    private void parseOr() {
+        parseAnd();
+        while (match("||") || match("|")) {
+            final int jump = emit(OR_JUMP, 0, -1);
+            parseAnd();
+            emit(TO_BOOL, 0, 0);
+            operands[jump] = size;
+        }
+    }
+
+    private void parseAnd() {
+        parseNot();
+        while (match("&&") || match("&")) {
+            final int jump = emit(AND_JUMP, 0, -1);
+            parseNot();
+            emit(TO_BOOL, 0, 0);
+            operands[jump] = size;
+        }
+    }
+
+    private void parseNot() {
+        if (match("!")) {
+            parseNot();
+            emit(NOT, 0, 0);
+        } else {
+            parseComparison();
+        }
+    }
+
+    private void parseComparison() {
+        if (peek().kind == Kind.NAME && isEquality(peek(1)) && peek(2).kind == Kind.STRING) {
+            parseStringComparison();
+            return;
+        }
+        parseSum();
+        final Token token = peek();
+        final int op = comparisonOf(token);
+        if (op != -1) {
+            position++;
+            parseSum();
+            emit(op, 0, -1);
+        }
+    }
+
+    private void parseStringComparison() {
+        final Token name = next();
+        final boolean negate = next().text.equals("!=");
+        final Token string = next();
+        if (name.text.equals("TYPE")) {
+            VariantContext.Type type = TYPES.get(string.text.toLowerCase());
+            if (type == null) {
+                throw error(string, "unknown TYPE \"" + string.text + "\", use one of " + TYPES.keySet());
+            }
+            types.add(type);
+            emitLoad(TYPE_IS, types.size() - 1, CostedFilter.COST_LOOKUP);
+        } else if (name.text.equals("FILTER")) {
+            names.add(string.text);
+            emitLoad(FILTER_IS, names.size() - 1, CostedFilter.COST_LOOKUP);
+        } else {
+            names.add(infoKey(name.text));
+            names.add(string.text);
+            emitLoad(INFO_IS, names.size() - 2, CostedFilter.COST_PARSE);
+        }
+        if (negate) {
+            emit(NOT, 0, 0);
+        }
+    }
+
+    private void parseSum() {
+        parseProduct();
+        while (peek().text.equals("+") || peek().text.equals("-")) {
+            final int op = next().text.equals("+") ? ADD : SUB;
+            parseProduct();
+            emit(op, 0, -1);
+        }
+    }
+
+    private void parseProduct() {
+        parseUnary();
+        while (peek().text.equals("*") || peek().text.equals("/")) {
+            final int op = next().text.equals("*") ? MUL : DIV;
+            parseUnary();
+            emit(op, 0, -1);
+        }
+    }
+
+    private void parseUnary() {
+        final Token token = next();
+        if (token.kind == Kind.OPERATOR && token.text.equals("-")) {
+            parseUnary();
+            emit(NEG, 0, 0);
+        } else if (token.kind == Kind.OPERATOR && token.text.equals("(")) {
+            parseOr();
+            if (!match(")")) {
+                throw error(peek(), "expected ')'");
+            }
+        } else if (token.kind == Kind.NUMBER) {
+            constants.add(Double.parseDouble(token.text));
+            emitLoad(PUSH, constants.size() - 1, CostedFilter.COST_DECODED);
+        } else if (token.kind == Kind.NAME) {
+            parseName(token);
+        } else if (token.kind == Kind.STRING) {
+            throw error(token, "a string can only be compared to TYPE, FILTER or an INFO field");
+        } else {
+            throw error(token, token.kind == Kind.END ? "unexpected end" : "unexpected '" + token.text + "'");
+        }
+    }
+
+    private void parseName(Token token) {
+        switch (token.text) {
+            case "QUAL":
+                emitLoad(LOAD_QUAL, 0, CostedFilter.COST_DECODED);
+                break;
+            case "POS":
+                emitLoad(LOAD_POS, 0, CostedFilter.COST_DECODED);
+                break;
+            case "N_ALT":
+                emitLoad(LOAD_N_ALT, 0, CostedFilter.COST_DECODED);
+                break;
+            case "TYPE":
+            case "FILTER":
+                throw error(token, token.text + " can only be compared to a string");
+            default:
+                parseInfoName(infoKey(token.text));
+        }
+    }
+
+    private void parseInfoName(String key) {
+        switch (key) {
+            case "DP":
+                emitLoad(LOAD_DP, 0, CostedFilter.COST_PARSE);
+                break;
+            case "AF":
+                emitLoad(LOAD_AF, 0, CostedFilter.COST_PARSE);
+                break;
+            case "AC":
+                emitLoad(LOAD_AC, 0, CostedFilter.COST_PARSE);
+                break;
+            default:
+                names.add(key);
+                emitLoad(LOAD_INFO, names.size() - 1, CostedFilter.COST_PARSE);
+        }
+    }
+
+    private static String infoKey(String name) {
+        return name.startsWith("INFO/") ? name.substring("INFO/".length()) : name;
+    }
+
+    private void emitLoad(int op, int operand, int loadCost) {
+        cost = Math.max(cost, loadCost);
+        emit(op, operand, 1);
+    }
+
+    /**
+     * Appends an instruction to the program.
+     *
+     * @param op         the instruction.
+     * @param operand    the operand.
+     * @param stackDelta how much the instruction grows the stack.
+     * @return the index of the instruction.
+     */
+    private int emit(int op, int operand, int stackDelta) {
+        if (size == code.length) {
+            code = Arrays.copyOf(code, size * 2);
+            operands = Arrays.copyOf(operands, size * 2);
+        }
+        code[size] = op;
+        operands[size] = operand;
+        depth += stackDelta;
+        maxStack = Math.max(maxStack, depth);
+        return size++;
+    }
+
+    private static int comparisonOf(Token token) {
+        if (token.kind != Kind.OPERATOR) {
+            return -1;
+        }
+        switch (token.text) {
+            case "==":
+            case "=":
+                return EQ;
+            case "!=":
+                return NE;
+            case "<":
+                return LT;
+            case "<=":
+                return LE;
+            case ">":
+                return GT;
+            case ">=":
+                return GE;
+            default:
+                return -1;
+        }
+    }
+
+    private static boolean isEquality(Token token) {
+        return token.kind == Kind.OPERATOR
+                && (token.text.equals("==") || token.text.equals("=") || token.text.equals("!="));
+    }
+
+    private boolean match(String operator) {
+        if (peek().kind == Kind.OPERATOR && peek().text.equals(operator)) {
+            position++;
+            return true;
+        }
+        return false;
+    }
+
+    private Token peek() {
+        return peek(0);
+    }
+
+    private Token peek(int ahead) {
+        return tokens.get(Math.min(position + ahead, tokens.size() - 1));
+    }
+
+    private Token next() {
+        final Token token = peek();
+        if (token.kind != Kind.END) {
+            position++;
+        }
+        return token;
+    }
+
+    private IllegalArgumentException error(Token token, String message) {
+        return new IllegalArgumentException("Invalid expression at position " + (token.offset + 1)
+                + ", " + message + ": " + source);
+    }
+
+    /**
+     * Splits the source into tokens, ending with an END token.
+     */
+    private void tokenize() {
+        int i = 0;
+        while (i < source.length()) {
+            final char c = source.charAt(i);
+            if (Character.isWhitespace(c)) {
+                i++;
+            } else if (Character.isDigit(c) || c == '.') {
+                i = tokenizeNumber(i);
+            } else if (c == '"' || c == '\'') {
+                final int close = source.indexOf(c, i + 1);
+                if (close == -1) {
+                    throw error(new Token(Kind.STRING, "", i), "unterminated string");
+                }
+                tokens.add(new Token(Kind.STRING, source.substring(i + 1, close), i));
+                i = close + 1;
+            } else if (Character.isLetter(c) || c == '_') {
+                i = tokenizeName(i);
+            } else {
+                i = tokenizeOperator(i);
+            }
+        }
+        tokens.add(new Token(Kind.END, "", source.length()));
+    }
+
+    private int tokenizeNumber(int start) {
+        int i = start;
+        while (i < source.length() && (Character.isDigit(source.charAt(i)) || source.charAt(i) == '.')) {
+            i++;
+        }
+        if (i < source.length() && (source.charAt(i) == 'e' || source.charAt(i) == 'E')) {
+            i++;
+            if (i < source.length() && (source.charAt(i) == '+' || source.charAt(i) == '-')) {
+                i++;
+            }
+            while (i < source.length() && Character.isDigit(source.charAt(i))) {
+                i++;
+            }
+        }
+        final String text = source.substring(start, i);
+        try {
+            Double.parseDouble(text);
+        } catch (NumberFormatException e) {
+            throw error(new Token(Kind.NUMBER, text, start), "invalid number '" + text + "'");
+        }
+        tokens.add(new Token(Kind.NUMBER, text, start));
+        return i;
+    }
+
+    private int tokenizeName(int start) {
+        int i = nameEnd(start);
+        // INFO/DP is one name, anywhere else '/' is a division.
+        if (source.startsWith("INFO/", start) && i == start + "INFO".length()) {
+            i = nameEnd(i + 1);
+        }
+        tokens.add(new Token(Kind.NAME, source.substring(start, i), start));
+        return i;
+    }
+
+    private int nameEnd(int start) {
+        int i = start;
+        while (i < source.length() && (Character.isLetterOrDigit(source.charAt(i)) || source.charAt(i) == '_')) {
+            i++;
+        }
+        return i;
+    }
+
+    private int tokenizeOperator(int start) {
+        for (String operator : new String[]{"&&", "||", "==", "!=", "<=", ">="}) {
+            if (source.startsWith(operator, start)) {
+                tokens.add(new Token(Kind.OPERATOR, operator, start));
+                return start + 2;
+            }
+        }
+        final char c = source.charAt(start);
+        if ("&|=<>!+-*/()".indexOf(c) == -1) {
+            throw error(new Token(Kind.OPERATOR, String.valueOf(c), start), "unexpected '" + c + "'");
+        }
+        tokens.add(new Token(Kind.OPERATOR, String.valueOf(c), start));
+        return start + 1;
+    }
+
+    /**
+     * The kinds of tokens.
+     */
+    private enum Kind {
+        NUMBER, STRING, NAME, OPERATOR, END
+    }
+
+    /**
+     * A token of the expression.
+     */
+    @AllArgsConstructor
+    private static final class Token {
+        private final Kind kind;
+        private final String text;
+        private final int offset;
+    }
+
+    /**
+     * A compiled expression.
+     */
+    @Getter
+    @AllArgsConstructor
+    @SuppressFBWarnings("EI")
+    static final class Program {
+        private final int[] code;
+        private final int[] operands;
+        private final double[] constants;
+        private final String[] names;
+        private final VariantContext.Type[] types;
+        private final int maxStack;
+        private final int cost;
+    }
+}
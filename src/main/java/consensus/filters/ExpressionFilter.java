@@ -0,0 +1,418 @@
+package consensus.filters;
+
+import htsjdk.variant.variantcontext.VariantContext;
+import lombok.EqualsAndHashCode;
+import vcf.RecordView;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A filter defined by an expression, like {@code QUAL>30 && INFO/DP>10 && (TYPE=="snp" || AF>0.2)}.
+ * The expression is parsed once by the {@link ExpressionCompiler} into a flat program for a small stack machine,
+ * so testing a record is a single loop over an int array instead of a call through a tree of filter objects.
+ * Numbers are doubles, a missing value is NaN and every comparison with a missing value is false,
+ * except for !=. A value is true if it is a number other than 0.
+ * AF, AC and INFO fields with several values are vectors, like in bcftools: arithmetic works on every element,
+ * and a comparison or a test of truth passes if any element passes. Each thread evaluates on its own stack.
+ */
+@EqualsAndHashCode(of = "expression")
+public final class ExpressionFilter implements CostedFilter {
+    // instructions of the compiled program, the ones below NOT push a value.
+    static final int PUSH = 0;
+    static final int LOAD_QUAL = 1;
+    static final int LOAD_POS = 2;
+    static final int LOAD_DP = 3;
+    static final int LOAD_AF = 4;
+    static final int LOAD_AC = 5;
+    static final int LOAD_N_ALT = 6;
+    static final int LOAD_INFO = 7;
+    static final int TYPE_IS = 8;
+    static final int FILTER_IS = 9;
+    static final int INFO_IS = 10;
+    static final int NOT = 11;
+    static final int NEG = 12;
+    static final int ADD = 13;
+    static final int SUB = 14;
+    static final int MUL = 15;
+    static final int DIV = 16;
+    static final int EQ = 17;
+    static final int NE = 18;
+    static final int LT = 19;
+    static final int LE = 20;
+    static final int GT = 21;
+    static final int GE = 22;
+    static final int AND_JUMP = 23;
+    static final int OR_JUMP = 24;
+    static final int TO_BOOL = 25;
+
+    private final String expression;
+    private final int[] code;
+    private final int[] operands;
+    private final double[] constants;
+    private final String[] names;
+    private final VariantContext.Type[] types;
+    private final ThreadLocal<Stack> stacks;
+    private final int cost;
+
+    /**
+     * Creates a filter from a compiled program.
+     *
+     * @param expression the source of the program.
+     * @param program    the compiled program.
+     */
+    ExpressionFilter(String expression, ExpressionCompiler.Program program) {
+        this.expression = expression;
+        this.code = program.getCode();
+        this.operands = program.getOperands();
+        this.constants = program.getConstants();
+        this.names = program.getNames();
+        this.types = program.getTypes();
+        final int depth = Math.max(1, program.getMaxStack());
+        this.stacks = ThreadLocal.withInitial(() -> new Stack(depth));
+        this.cost = program.getCost();
+    }
+
+    /**
+     * Parses and compiles an expression into a filter.
+     *
+     * @param expression the expression.
+     * @return the filter.
+     * @throws IllegalArgumentException if the expression is not valid.
+     */
+    public static ExpressionFilter compile(String expression) {
+        return new ExpressionFilter(expression, new ExpressionCompiler(expression).compile());
+    }
+
+    /**
+     * Tests if the record is included in the current filter.
+     *
+     * @param record The variant context.
+     * @return true if the expression is true for the record.
+     */
+    @Override
+    public boolean test(VariantContext record) {
+        final Stack s = stacks.get();
+        int sp = -1;
+        int pc = 0;
+        while (pc < code.length) {
+            final int op = code[pc];
+            final int operand = operands[pc];
+            pc++;
+            if (op < NOT) {
+                sp++;
+                load(op, operand, record, s, sp);
+            } else if (op == AND_JUMP || op == OR_JUMP) {
+                // short circuit: if the left side decides the result, keep it and skip the right side.
+                final boolean value = s.truth(sp);
+                if (value == (op == OR_JUMP)) {
+                    s.set(sp, bool(value));
+                    pc = operand;
+                } else {
+                    sp--;
+                }
+            } else if (op == NEG) {
+                s.negate(sp);
+            } else if (op == NOT || op == TO_BOOL) {
+                s.set(sp, bool(s.truth(sp) == (op == TO_BOOL)));
+            } else {
+                sp--;
+                s.binary(op, sp);
+            }
+        }
+        return s.truth(0);
+    }
+
+    /**
+     * Executes an instruction that pushes a value.
+     *
+     * @param op      the instruction.
+     * @param operand the operand of the instruction.
+     * @param record  the record.
+     * @param s       the stack.
+     * @param sp      the place on the stack of the value.
+     */
+    private void load(int op, int operand, VariantContext record, Stack s, int sp) {
+        switch (op) {
+            case PUSH:
+                s.set(sp, constants[operand]);
+                break;
+            case LOAD_QUAL:
+                s.set(sp, record.hasLog10PError() ? record.getPhredScaledQual() : Double.NaN);
+                break;
+            case LOAD_POS:
+                s.set(sp, record.getStart());
+                break;
+            case LOAD_DP:
+                s.set(sp, loadDepth(record));
+                break;
+            case LOAD_AF:
+                loadAlleleFrequencies(record, s, sp);
+                break;
+            case LOAD_AC:
+                loadAlleleCounts(record, s, sp);
+                break;
+            case LOAD_N_ALT:
+                s.set(sp, record.getAlternateAlleles().size());
+                break;
+            case LOAD_INFO:
+                loadInfo(record, names[operand], s, sp);
+                break;
+            case TYPE_IS:
+                s.set(sp, bool(record.getType() == types[operand]));
+                break;
+            case FILTER_IS:
+                s.set(sp, bool(hasFilter(record.getFilters(), names[operand])));
+                break;
+            case INFO_IS:
+                s.set(sp, bool(infoEquals(record, names[operand], names[operand + 1])));
+                break;
+            default:
+                throw new IllegalStateException("Unknown load instruction " + op);
+        }
+    }
+
+    private static double arithmetic(int op, double left, double right) {
+        switch (op) {
+            case ADD:
+                return left + right;
+            case SUB:
+                return left - right;
+            case MUL:
+                return left * right;
+            case DIV:
+                return left / right;
+            default:
+                throw new IllegalStateException("Unknown arithmetic instruction " + op);
+        }
+    }
+
+    private static boolean compare(int op, double left, double right) {
+        switch (op) {
+            case EQ:
+                return left == right;
+            case NE:
+                return left != right;
+            case LT:
+                return left < right;
+            case LE:
+                return left <= right;
+            case GT:
+                return left > right;
+            case GE:
+                return left >= right;
+            default:
+                throw new IllegalStateException("Unknown comparison instruction " + op);
+        }
+    }
+
+    private static double bool(boolean value) {
+        return value ? 1 : 0;
+    }
+
+    private static boolean truth(double value) {
+        return value != 0 && !Double.isNaN(value);
+    }
+
+    private static double loadDepth(VariantContext record) {
+        final RecordView view = RecordView.of(record);
+        return view.hasDepth() ? view.getDepth() : Double.NaN;
+    }
+
+    private static void loadAlleleFrequencies(VariantContext record, Stack s, int sp) {
+        final RecordView view = RecordView.of(record);
+        final double[] values = s.reserve(sp, view.getAlleleFrequencySize());
+        for (int i = 0; i < view.getAlleleFrequencySize(); i++) {
+            values[i] = view.getAlleleFrequency(i);
+        }
+    }
+
+    private static void loadAlleleCounts(VariantContext record, Stack s, int sp) {
+        final RecordView view = RecordView.of(record);
+        final double[] values = s.reserve(sp, view.getAlleleCountSize());
+        for (int i = 0; i < view.getAlleleCountSize(); i++) {
+            values[i] = view.getAlleleCount(i);
+        }
+    }
+
+    /**
+     * Get every value of any INFO field as a number.
+     *
+     * @param record the record.
+     * @param key    the INFO key.
+     * @param s      the stack.
+     * @param sp     the place on the stack of the values.
+     */
+    private static void loadInfo(VariantContext record, String key, Stack s, int sp) {
+        final Object value = record.getAttribute(key);
+        if (value instanceof List) {
+            final List<?> list = (List<?>) value;
+            final double[] values = s.reserve(sp, list.size());
+            for (int i = 0; i < list.size(); i++) {
+                values[i] = toNumber(list.get(i));
+            }
+        } else if (value instanceof String && ((String) value).indexOf(',') != -1) {
+            final String[] split = ((String) value).split(",");
+            final double[] values = s.reserve(sp, split.length);
+            for (int i = 0; i < split.length; i++) {
+                values[i] = toNumber(split[i]);
+            }
+        } else {
+            s.set(sp, toNumber(value));
+        }
+    }
+
+    /**
+     * Get a single INFO value as a number.
+     *
+     * @param value the value.
+     * @return the value, 1 for a flag, or NaN if it is missing or not a number.
+     */
+    private static double toNumber(Object value) {
+        if (value instanceof Number) {
+            return ((Number) value).doubleValue();
+        }
+        if (value instanceof Boolean) {
+            return bool((Boolean) value);
+        }
+        if (value instanceof String) {
+            try {
+                return Double.parseDouble((String) value);
+            } catch (NumberFormatException e) {
+                return Double.NaN;
+            }
+        }
+        return Double.NaN;
+    }
+
+    private static boolean hasFilter(Set<String> filters, String name) {
+        if (filters.isEmpty()) {
+            return "PASS".equalsIgnoreCase(name);
+        }
+        for (String filter : filters) {
+            if (filter.equalsIgnoreCase(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean infoEquals(VariantContext record, String key, String expected) {
+        final Object value = record.getAttribute(key);
+        if (value instanceof List) {
+            for (Object element : (List<?>) value) {
+                if (expected.equals(String.valueOf(element))) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        return value != null && expected.equals(String.valueOf(value));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getCost() {
+        return cost;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return "ExpressionFilter(" + expression + ")";
+    }
+
+    /**
+     * The values of an evaluation, each a vector of one or more numbers.
+     * The vectors are kept between records and only grown for a longer value, so evaluating does not allocate.
+     */
+    private static final class Stack {
+        private final double[][] values;
+        private final int[] sizes;
+
+        /**
+         * Creates a stack.
+         *
+         * @param depth the amount of values the program needs at most.
+         */
+        private Stack(int depth) {
+            values = new double[depth][1];
+            sizes = new int[depth];
+        }
+
+        /**
+         * Makes room for a vector on the stack, a vector without elements is a missing value.
+         *
+         * @param sp   the place on the stack.
+         * @param size the amount of elements.
+         * @return the array to write the elements to.
+         */
+        private double[] reserve(int sp, int size) {
+            if (size == 0) {
+                set(sp, Double.NaN);
+                return values[sp];
+            }
+            if (values[sp].length < size) {
+                values[sp] = new double[Math.max(size, values[sp].length * 2)];
+            }
+            sizes[sp] = size;
+            return values[sp];
+        }
+
+        private void set(int sp, double value) {
+            values[sp][0] = value;
+            sizes[sp] = 1;
+        }
+
+        private boolean truth(int sp) {
+            for (int i = 0; i < sizes[sp]; i++) {
+                if (ExpressionFilter.truth(values[sp][i])) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private void negate(int sp) {
+            for (int i = 0; i < sizes[sp]; i++) {
+                values[sp][i] = -values[sp][i];
+            }
+        }
+
+        /**
+         * Combines a value with the value above it, element by element. A single number is combined with every
+         * element of a vector and of two vectors only the elements of the shorter length are combined.
+         *
+         * @param op the instruction.
+         * @param sp the place on the stack of the left value, where the result is put.
+         */
+        private void binary(int op, int sp) {
+            final int leftSize = sizes[sp];
+            final int rightSize = sizes[sp + 1];
+            final int size = leftSize == 1 ? rightSize : rightSize == 1 ? leftSize : Math.min(leftSize, rightSize);
+            final double[] right = values[sp + 1];
+            final double firstLeft = values[sp][0];
+            if (op >= EQ && op <= GE) {
+                boolean any = false;
+                for (int i = 0; i < size && !any; i++) {
+                    any = compare(op, leftSize == 1 ? firstLeft : values[sp][i], right[rightSize == 1 ? 0 : i]);
+                }
+                set(sp, bool(any));
+                return;
+            }
+            if (values[sp].length < size) {
+                values[sp] = Arrays.copyOf(values[sp], Math.max(size, values[sp].length * 2));
+            }
+            final double[] left = values[sp];
+            for (int i = 0; i < size; i++) {
+                left[i] = arithmetic(op, leftSize == 1 ? firstLeft : left[i], right[rightSize == 1 ? 0 : i]);
+            }
+            sizes[sp] = size;
+        }
+    }
+}
@@ -0,0 +1,210 @@
+package consensus.filters;
+
+import htsjdk.variant.variantcontext.VariantContext;
+import htsjdk.variant.variantcontext.filter.VariantContextFilter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * A compiled list of filters which all need to pass.
+ * Inverted filters are unwrapped into a negated stage, and the stages are ordered
+ * so that the cheapest filters are tested first. Testing stops at the first stage that rejects.
+ * In adaptive mode the stages are periodically reordered on their measured cost per rejection,
+ * so that cheap filters that reject a lot of records move to the front.
+ * It also keeps statistics on how many records every stage rejected and how long it took.
+ */
+public class FilterChain implements VariantContextFilter {
+    /**
+     * Cost of filters that do not tell their cost.
+     */
+    private static final int DEFAULT_COST = 10;
+
+    /**
+     * Only every 16th record is timed, to keep the overhead of measuring low.
+     */
+    private static final long TIMING_MASK = 15;
+
+    /**
+     * Amount of records after which an adaptive chain reorders its stages.
+     */
+    private static final long REORDER_INTERVAL = 8192;
+
+    private final Stage[] stages;
+    private final boolean adaptive;
+    private long records;
+
+    /**
+     * Compiles a list of filters into a chain.
+     *
+     * @param filters  The filters which all need to pass.
+     * @param adaptive true to reorder the filters on their observed cost and rejection rate.
+     */
+    public FilterChain(List<? extends VariantContextFilter> filters, boolean adaptive) {
+        List<Stage> stageList = new ArrayList<>();
+        for (VariantContextFilter filter : filters) {
+            stageList.add(compile(filter, false));
+        }
+        this.stages = stageList.toArray(new Stage[0]);
+        // a stable sort, so filters with the same cost keep the order they were given in.
+        Arrays.sort(this.stages, Comparator.comparingInt(s -> s.cost));
+        this.adaptive = adaptive;
+    }
+
+    /**
+     * Get the estimated cost of any filter.
+     *
+     * @param filter The filter.
+     * @return the cost of the filter, or a default if the filter does not know its cost.
+     */
+    static int costOf(VariantContextFilter filter) {
+        if (filter instanceof CostedFilter) {
+            return ((CostedFilter) filter).getCost();
+        }
+        return DEFAULT_COST;
+    }
+
+    private static Stage compile(VariantContextFilter filter, boolean negate) {
+        if (filter instanceof FilterInverse) {
+            return compile(((FilterInverse) filter).getFilter(), !negate);
+        }
+        return new Stage(filter, negate);
+    }
+
+    /**
+     * Tests a record against all filters, stopping at the first filter that rejects it.
+     *
+     * @param record The variant context.
+     * @return true if all filters pass.
+     */
+    @Override
+    public boolean test(VariantContext record) {
+        final long n = records++;
+        if (adaptive && n > 0 && n % REORDER_INTERVAL == 0) {
+            reorder();
+        }
+        if ((n & TIMING_MASK) == 0) {
+            return testTimed(record);
+        }
+        final Stage[] chain = stages;
+        for (Stage stage : chain) {
+            stage.evaluated++;
+            if (stage.filter.test(record) == stage.negate) {
+                stage.rejected++;
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean testTimed(VariantContext record) {
+        final Stage[] chain = stages;
+        for (Stage stage : chain) {
+            stage.evaluated++;
+            stage.timed++;
+            long begin = System.nanoTime();
+            boolean result = stage.filter.test(record);
+            stage.nanos += System.nanoTime() - begin;
+            if (result == stage.negate) {
+                stage.rejected++;
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Reorders the stages on their expected cost per rejected record, lowest first.
+     */
+    private void reorder() {
+        for (Stage stage : stages) {
+            double cost = stage.timed > 0 ? stage.nanos / (double) stage.timed : stage.cost;
+            double rejectRate = stage.evaluated > 0 ? stage.rejected / (double) stage.evaluated : 0;
+            stage.rank = cost / Math.max(rejectRate, 0.001);
+        }
+        Arrays.sort(stages, Comparator.comparingDouble(s -> s.rank));
+    }
+
+    /**
+     * Get the amount of filters in this chain.
+     *
+     * @return the amount of stages.
+     */
+    public int size() {
+        return stages.length;
+    }
+
+    /**
+     * Get the filter that is currently tested at a given place in the chain.
+     *
+     * @param i the place in the chain.
+     * @return the filter, without the inversion if it was inverted.
+     */
+    public VariantContextFilter getFilter(int i) {
+        return stages[i].filter;
+    }
+
+    /**
+     * Get the amount of records a filter at a given place in the chain rejected.
+     *
+     * @param i the place in the chain.
+     * @return the amount of rejected records.
+     */
+    public long getRejected(int i) {
+        return stages[i].rejected;
+    }
+
+    /**
+     * Creates a report on the rejections and timings of every filter, and resets these statistics.
+     *
+     * @return the report, or an empty string if there are no filters.
+     */
+    public String statisticsReport() {
+        if (stages.length == 0) {
+            return "";
+        }
+        final String n = System.lineSeparator();
+        StringBuilder builder = new StringBuilder(n).append("Filter Statistics:").append(n);
+        for (Stage stage : stages) {
+            builder.append('\t').append(stage.negate ? "not " : "")
+                    .append(stage.filter.getClass().getSimpleName())
+                    .append(": tested ").append(stage.evaluated)
+                    .append(", rejected ").append(stage.rejected)
+                    .append(", ").append(stage.timed > 0 ? stage.nanos / stage.timed : 0)
+                    .append(" ns/record").append(n);
+            stage.evaluated = 0;
+            stage.rejected = 0;
+            stage.timed = 0;
+            stage.nanos = 0;
+        }
+        return builder.toString();
+    }
+
+    /**
+     * One filter in the chain, with its statistics.
+     */
+    private static final class Stage {
+        private final VariantContextFilter filter;
+        private final boolean negate;
+        private final int cost;
+        private long evaluated;
+        private long rejected;
+        private long timed;
+        private long nanos;
+        private double rank;
+
+        /**
+         * Creates a stage.
+         *
+         * @param filter The filter.
+         * @param negate true if the filter passes when the underlying filter fails.
+         */
+        private Stage(VariantContextFilter filter, boolean negate) {
+            this.filter = filter;
+            this.negate = negate;
+            this.cost = costOf(filter);
+        }
+    }
+}
@@ -1,7 +1,6 @@
 package consensus.filters;
 
 import htsjdk.variant.variantcontext.VariantContext;
-import htsjdk.variant.variantcontext.filter.VariantContextFilter;
 import lombok.EqualsAndHashCode;
 
 import java.util.List;
@@ -12,7 +11,7 @@ import java.util.stream.Collectors;
  * A class that filters on the "filter" column in the VCF file.
  */
 @EqualsAndHashCode
-public class FilterInclude implements VariantContextFilter {
+public class FilterInclude implements CostedFilter {
 
     private final List<String> filters;
     private final boolean matchAll;
@@ -40,8 +39,7 @@ public class FilterInclude implements VariantContextFilter {
      */
     @Override
     public boolean test(VariantContext variantContext) {
-        final Set<String> filterSet = variantContext.getFilters().stream()
-                .map(String::toLowerCase).collect(Collectors.toSet());
+        final Set<String> filterSet = variantContext.getFilters();
         if (this.matchAll) {
             return testMatchAll(filterSet);
         }
@@ -55,11 +53,11 @@ public class FilterInclude implements VariantContextFilter {
      * @return if included in the filter.
      */
     private boolean testMatchAny(Set<String> filterSet) {
-        if (filterSet.size() == 0) {
+        if (filterSet.isEmpty()) {
             return this.filters.contains("pass");
         }
-        for (String s : this.filters) {
-            if (filterSet.contains(s)) {
+        for (String s : filterSet) {
+            if (indexOfIgnoreCase(s) != -1) {
                 return true;
             }
         }
@@ -73,14 +71,53 @@ public class FilterInclude implements VariantContextFilter {
      * @return if included in the filter.
      */
     private boolean testMatchAll(Set<String> filterSet) {
-        if (filterSet.size() == 0) {
+        if (filterSet.isEmpty()) {
             return this.filters.contains("pass") && this.filters.size() == 1;
         }
-        for (String s : this.filters) {
-            if (!filterSet.contains(s)) {
+        for (int i = 0; i < this.filters.size(); i++) {
+            if (!containsIgnoreCase(filterSet, this.filters.get(i))) {
                 return false;
             }
         }
         return true;
     }
+
+    /**
+     * Checks if a set of filter flags contains a lower cased flag, without lower casing the set.
+     *
+     * @param filterSet The filters of the VariantContext.
+     * @param flag      The lower cased flag.
+     * @return true if one of the flags equals the given flag, ignoring case.
+     */
+    private static boolean containsIgnoreCase(Set<String> filterSet, String flag) {
+        for (String s : filterSet) {
+            if (s.equalsIgnoreCase(flag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Finds a filter flag in the lower cased flags of this filter, without lower casing it.
+     *
+     * @param flag The flag of a VariantContext.
+     * @return the index of the flag, or -1 if it is not present.
+     */
+    private int indexOfIgnoreCase(String flag) {
+        for (int i = 0; i < this.filters.size(); i++) {
+            if (this.filters.get(i).equalsIgnoreCase(flag)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getCost() {
+        return COST_LOOKUP;
+    }
 }
@@ -2,15 +2,18 @@ package consensus.filters;
 
 import htsjdk.variant.variantcontext.VariantContext;
 import htsjdk.variant.variantcontext.filter.VariantContextFilter;
+import lombok.AccessLevel;
 import lombok.EqualsAndHashCode;
+import lombok.Getter;
 
 /**
  * This filter receives another filter as attribute.
  * This filter will succeed IFF the passed filter does not succeed.
  */
 @EqualsAndHashCode
-public class FilterInverse implements VariantContextFilter {
+public class FilterInverse implements CostedFilter {
 
+    @Getter(AccessLevel.PACKAGE)
     private final VariantContextFilter filter;
 
     /**
@@ -32,4 +35,12 @@ public class FilterInverse implements VariantContextFilter {
     public boolean test(VariantContext variantContext) {
         return !this.filter.test(variantContext);
     }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getCost() {
+        return FilterChain.costOf(filter);
+    }
 }
@@ -1,14 +1,13 @@
 package consensus.filters;
 
 import htsjdk.variant.variantcontext.VariantContext;
-import htsjdk.variant.variantcontext.filter.VariantContextFilter;
 import lombok.EqualsAndHashCode;
 
 /**
  * A filter for the quality of the VariantContext.
  */
 @EqualsAndHashCode
-public class FilterQuality implements VariantContextFilter {
+public class FilterQuality implements CostedFilter {
 
     private final double min;
     private final double max;
@@ -46,4 +45,12 @@ public class FilterQuality implements VariantContextFilter {
         double qual = variantContext.getPhredScaledQual();
         return qual >= min && qual <= max;
     }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getCost() {
+        return COST_DECODED;
+    }
 }
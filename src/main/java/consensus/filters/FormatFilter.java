@@ -0,0 +1,121 @@
+package consensus.filters;
+
+import htsjdk.variant.variantcontext.GenotypesContext;
+import htsjdk.variant.variantcontext.VariantContext;
+import lombok.EqualsAndHashCode;
+import vcf.GenotypeFieldReader;
+import vcf.iterator.IupacVCFCodec;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The per sample filter on an integer FORMAT field, like GQ or DP.
+ * For AD the sum of the depths of the alternate alleles is tested, of which missing depths are left out.
+ * Only the field of the one sample is read, see {@link GenotypeFieldReader}.
+ */
+@EqualsAndHashCode(of = {"sample", "key", "min", "max"})
+public class FormatFilter implements CostedFilter {
+
+    private final String sample;
+    private final String key;
+    private final int min;
+    private final int max;
+    private final GenotypeFieldReader reader;
+    private final Map<String, Integer> sampleIndices = new HashMap<>();
+
+    /**
+     * Creates a new FORMAT filter.
+     *
+     * @param sample The name of the sample to test, or null for the first sample.
+     * @param key    The FORMAT key.
+     * @param min    The minimum value.
+     * @param max    The maximum value.
+     */
+    public FormatFilter(String sample, String key, int min, int max) {
+        this.sample = sample;
+        this.key = key;
+        this.min = min;
+        this.max = max;
+        this.reader = new GenotypeFieldReader(key);
+    }
+
+    /**
+     * Tests if the record is included in the current filter.
+     *
+     * @param record The variant context.
+     * @return true if the field of the sample is between the minimum and maximum, false if it is missing.
+     */
+    @Override
+    public boolean test(VariantContext record) {
+        final int size = reader.read(record, sampleIndex(record));
+        if (size == 0) {
+            return false;
+        }
+        int value = reader.getValue(0);
+        if ("AD".equals(key)) {
+            value = 0;
+            boolean known = size == 1;
+            for (int i = 1; i < size; i++) {
+                if (reader.getValue(i) != GenotypeFieldReader.MISSING) {
+                    value += reader.getValue(i);
+                    known = true;
+                }
+            }
+            if (!known) {
+                return false;
+            }
+        } else if (value == GenotypeFieldReader.MISSING) {
+            return false;
+        }
+        return value >= min && value <= max;
+    }
+
+    /**
+     * Finds the column of the sample. Records of merged files have the columns of their own file, so the column
+     * is kept per file, which is known from the source of the records without decoding their genotypes.
+     * The genotypes of records of which the file is not known are decoded to find the sample.
+     *
+     * @param record the record.
+     * @return the index of the sample.
+     * @throws IllegalArgumentException if the sample is not in the file.
+     */
+    private int sampleIndex(VariantContext record) {
+        if (sample == null) {
+            return 0;
+        }
+        final String source = record.getSource();
+        final Integer known = source == null ? null : sampleIndices.get(source);
+        if (known != null) {
+            return known;
+        }
+        final List<String> names = IupacVCFCodec.getSampleNames(record);
+        if (names == null) {
+            return findSample(record.getGenotypes());
+        }
+        final int index = names.indexOf(sample);
+        if (index == -1) {
+            throw new IllegalArgumentException("Sample " + sample + " is not in the VCF file.");
+        }
+        sampleIndices.put(source, index);
+        return index;
+    }
+
+    private int findSample(GenotypesContext genotypes) {
+        for (int i = 0; i < genotypes.size(); i++) {
+            if (sample.equals(genotypes.get(i).getSampleName())) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("Sample " + sample + " is not in the VCF file.");
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getCost() {
+        return COST_PARSE;
+    }
+}
@@ -1,12 +1,14 @@
 package consensus.filters;
 
+import htsjdk.variant.variantcontext.Allele;
 import htsjdk.variant.variantcontext.VariantContext;
-import htsjdk.variant.variantcontext.filter.VariantContextFilter;
+
+import java.util.List;
 
 /**
  * This will filter out all variants that alter the reference length.
  */
-public class IndelFilter implements VariantContextFilter {
+public class IndelFilter implements CostedFilter {
 
     /**
      * Test if the current variant is part of the filter.
@@ -15,6 +17,21 @@ public class IndelFilter implements VariantContextFilter {
      */
     @Override
     public boolean test(VariantContext record) {
-        return record.getAlternateAlleles().stream().allMatch(a -> a.length() == record.getReference().length());
+        final int refLength = record.getReference().length();
+        final List<Allele> alternates = record.getAlternateAlleles();
+        for (int i = 0; i < alternates.size(); i++) {
+            if (alternates.get(i).length() != refLength) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getCost() {
+        return COST_LOOKUP;
     }
 }
@@ -0,0 +1,154 @@
+package consensus.filters;
+
+import cli.Region;
+import lombok.EqualsAndHashCode;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * An immutable index over a set of closed intervals.
+ * The intervals are kept in primitive arrays sorted on their start, together with the
+ * running maximum of their ends. This answers whether any interval overlaps or contains
+ * a query interval with a single binary search, so in O(log n) for n intervals.
+ */
+@EqualsAndHashCode
+public final class IntervalIndex {
+    private final int[] starts;
+    private final int[] ends;
+    private final int[] maxEnds;
+
+    /**
+     * Creates an index from sorted and distinct intervals.
+     *
+     * @param starts the starts of the intervals.
+     * @param ends   the ends of the intervals.
+     */
+    private IntervalIndex(int[] starts, int[] ends) {
+        this.starts = starts;
+        this.ends = ends;
+        this.maxEnds = new int[ends.length];
+        int max = Integer.MIN_VALUE;
+        for (int i = 0; i < ends.length; i++) {
+            max = Math.max(max, ends[i]);
+            maxEnds[i] = max;
+        }
+    }
+
+    /**
+     * Creates an index over regions. A region with end -1 is open ended.
+     *
+     * @param regions the regions.
+     * @return the index.
+     */
+    public static IntervalIndex of(List<Region> regions) {
+        Builder builder = new Builder();
+        for (Region region : regions) {
+            builder.add(region.getStart(), region.getEnd() == -1 ? Integer.MAX_VALUE : region.getEnd());
+        }
+        return builder.build();
+    }
+
+    /**
+     * Get the amount of distinct intervals in this index.
+     *
+     * @return the amount of intervals.
+     */
+    public int size() {
+        return starts.length;
+    }
+
+    /**
+     * Checks if any interval overlaps [start, end].
+     *
+     * @param start the start of the query, inclusive.
+     * @param end   the end of the query, inclusive.
+     * @return true if an interval shares at least one position with the query.
+     */
+    public boolean overlaps(int start, int end) {
+        int last = lastStartingAtOrBefore(end);
+        return last >= 0 && maxEnds[last] >= start;
+    }
+
+    /**
+     * Checks if any interval contains [start, end] completely.
+     *
+     * @param start the start of the query, inclusive.
+     * @param end   the end of the query, inclusive.
+     * @return true if an interval contains every position of the query.
+     */
+    public boolean contains(int start, int end) {
+        int last = lastStartingAtOrBefore(start);
+        return last >= 0 && maxEnds[last] >= end;
+    }
+
+    /**
+     * Binary search for the last interval with a start smaller than or equal to a position.
+     *
+     * @param position the position.
+     * @return the index of that interval, or -1 if every interval starts after the position.
+     */
+    private int lastStartingAtOrBefore(int position) {
+        int low = 0;
+        int high = starts.length - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (starts[mid] <= position) {
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return high;
+    }
+
+    /**
+     * Collects intervals in primitive arrays, to build an index without an object per interval.
+     */
+    public static final class Builder {
+        private long[] intervals = new long[16];
+        private int size;
+
+        /**
+         * Adds an interval. Starts and ends must not be negative.
+         *
+         * @param start the start, inclusive.
+         * @param end   the end, inclusive.
+         * @return this builder.
+         */
+        public Builder add(int start, int end) {
+            if (start < 0 || end < 0) {
+                throw new IllegalArgumentException("Interval positions cannot be negative: " + start + "-" + end);
+            }
+            if (size == intervals.length) {
+                intervals = Arrays.copyOf(intervals, size * 2);
+            }
+            // packing the interval in a long makes sorting on start, then end, a primitive sort.
+            intervals[size++] = ((long) start << 32) | end;
+            return this;
+        }
+
+        /**
+         * Sorts the collected intervals, removes duplicates and builds the index.
+         *
+         * @return the index.
+         */
+        public IntervalIndex build() {
+            long[] sorted = Arrays.copyOf(intervals, size);
+            Arrays.sort(sorted);
+            int distinct = 0;
+            for (int i = 0; i < sorted.length; i++) {
+                if (i == 0 || sorted[i] != sorted[i - 1]) {
+                    sorted[distinct++] = sorted[i];
+                }
+            }
+            int[] starts = new int[distinct];
+            int[] ends = new int[distinct];
+            for (int i = 0; i < distinct; i++) {
+                starts[i] = (int) (sorted[i] >>> 32);
+                ends[i] = (int) sorted[i];
+            }
+            return new IntervalIndex(starts, ends);
+        }
+    }
+}
@@ -2,19 +2,20 @@ package consensus.filters;
 
 import cli.Region;
 import htsjdk.variant.variantcontext.VariantContext;
-import htsjdk.variant.variantcontext.filter.VariantContextFilter;
 
-import java.io.Serializable;
-import java.util.Comparator;
+import java.util.Collections;
 import java.util.List;
-import java.util.Set;
-import java.util.TreeSet;
+import java.util.Map;
 
 /**
  * This filter filters position out that are not in a specified region.
+ * The regions are kept in an {@link IntervalIndex}, so a record is tested in logarithmic time
+ * in the amount of regions. Regions can apply to every contig, or to a single contig when
+ * they are loaded from a BED file.
  */
-public class PositionFilter implements VariantContextFilter {
-    private final Set<Region> positions;
+public class PositionFilter implements CostedFilter {
+    private final IntervalIndex positions;
+    private final Map<String, IntervalIndex> contigPositions;
     private final boolean overlap;
 
     /**
@@ -32,11 +33,8 @@ public class PositionFilter implements VariantContextFilter {
 
         PositionFilter that = (PositionFilter) o;
 
-        if (overlap != that.overlap) {
-            return false;
-        }
-
-        return positions != null ? positions.equals(that.positions) : that.positions == null;
+        return overlap == that.overlap && positions.equals(that.positions)
+                && contigPositions.equals(that.contigPositions);
     }
 
     /**
@@ -44,33 +42,12 @@ public class PositionFilter implements VariantContextFilter {
      */
     @Override
     public int hashCode() {
-        int result = positions != null ? positions.hashCode() : 0;
+        int result = positions.hashCode();
+        result = 31 * result + contigPositions.hashCode();
         result = 31 * result + (overlap ? 1 : 0);
         return result;
     }
 
-    /**
-     * The comparator class for the tree set used in the VariantContext.
-     */
-    private static class PositionComparator implements Comparator<Region>, Serializable {
-
-        /**
-         * @inheritDocs
-         */
-        @Override
-        public int compare(Region p1, Region p2) {
-            if (p1.getStart() - p2.getStart() == 0) {
-                if (p1.getEnd() == -1) {
-                    return p2.getEnd() == -1 ? 0 : 1;
-                }
-
-                return p2.getEnd() == -1 ? -1 : p1.getEnd() - p2.getEnd();
-            }
-
-            return p1.getStart() - p2.getStart();
-        }
-    }
-
     /**
      * Creates a new PositionFilter based on the lists of positions and whether the regions
      * are allowed to overlap.
@@ -81,8 +58,20 @@ public class PositionFilter implements VariantContextFilter {
      *                  If this is true it will check if the variant context overlaps the region.
      */
     public PositionFilter(List<Region> positions, boolean overlap) {
-        this.positions = new TreeSet<>(new PositionComparator());
-        this.positions.addAll(positions);
+        this(positions, Collections.emptyMap(), overlap);
+    }
+
+    /**
+     * Creates a new PositionFilter based on regions for every contig and regions for single contigs.
+     *
+     * @param positions       The regions that apply to every contig.
+     * @param contigPositions The regions that only apply to one contig, by contig name.
+     * @param overlap         Set this to false if the entire variant context must be included in one of the regions.
+     *                        If this is true it will check if the variant context overlaps the region.
+     */
+    public PositionFilter(List<Region> positions, Map<String, IntervalIndex> contigPositions, boolean overlap) {
+        this.positions = IntervalIndex.of(positions);
+        this.contigPositions = contigPositions;
         this.overlap = overlap;
     }
 
@@ -94,22 +83,27 @@ public class PositionFilter implements VariantContextFilter {
      */
     @Override
     public boolean test(VariantContext record) {
-        for (Region position : positions) {
-            if (testPosition(record.getStart(), record.getReference().length(), position)) {
-                return true;
-            }
+        final int start = record.getStart();
+        final int end = start + record.getReference().length() - 1;
+        if (testPosition(positions, start, end)) {
+            return true;
+        }
+        if (contigPositions.isEmpty()) {
+            return false;
         }
-        return false;
+        IntervalIndex index = contigPositions.get(record.getContig());
+        return index != null && testPosition(index, start, end);
     }
 
-    private boolean testPosition(int variantStart, int variantLength, Region position) {
-        final boolean hasEnd = position.getEnd() != -1;
-        if (overlap) {
-            return variantStart + (variantLength - 1) >= position.getStart()
-                    && (variantStart <= position.getEnd() || !hasEnd);
-        } else {
-            return variantStart >= position.getStart()
-                    && (variantStart + (variantLength - 1) <= position.getEnd() || !hasEnd);
-        }
+    private boolean testPosition(IntervalIndex index, int start, int end) {
+        return overlap ? index.overlaps(start, end) : index.contains(start, end);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getCost() {
+        return COST_SEARCH;
     }
 }
@@ -0,0 +1,209 @@
+package consensus.filters;
+
+import java.util.Arrays;
+
+/**
+ * A compressed set of positions on one contig.
+ * Positions are split in chunks of 65536 on their upper 16 bits, every chunk is stored in a container
+ * that fits its density, like a Roaring bitmap: a sorted array of the lower 16 bits for sparse chunks,
+ * and a plain bitmap for dense chunks. This takes at most 16 bits per position for sparse sites and
+ * less for dense sites, while a lookup is one array index and a search in at most 4096 entries.
+ */
+public final class SiteBitmap {
+    /**
+     * Size above which an array container is converted to a bitmap, where both take 8 kB.
+     */
+    private static final int ARRAY_LIMIT = 4096;
+
+    /**
+     * Amount of longs in a bitmap container.
+     */
+    private static final int BITMAP_LONGS = 1 << 10;
+
+    private char[][] arrays = new char[0][];
+    private int[] sizes = new int[0];
+    private long[][] bitmaps = new long[0][];
+    private long cardinality;
+
+    /**
+     * Adds a position.
+     *
+     * @param position the position, cannot be negative.
+     * @return this bitmap.
+     */
+    public SiteBitmap add(int position) {
+        if (position < 0) {
+            throw new IllegalArgumentException("Site position cannot be negative: " + position);
+        }
+        final int high = position >>> 16;
+        final char low = (char) position;
+        ensureChunk(high);
+        if (bitmaps[high] != null) {
+            addToBitmap(high, low);
+        } else {
+            addToArray(high, low);
+        }
+        return this;
+    }
+
+    /**
+     * Adds every position in a closed range.
+     *
+     * @param start the first position.
+     * @param end   the last position.
+     * @return this bitmap.
+     */
+    public SiteBitmap addRange(int start, int end) {
+        for (long position = start; position <= end; position++) {
+            add((int) position);
+        }
+        return this;
+    }
+
+    /**
+     * Checks if a position is in this set.
+     *
+     * @param position the position.
+     * @return true if the position was added.
+     */
+    public boolean contains(int position) {
+        final int high = position >>> 16;
+        if (high >= sizes.length) {
+            return false;
+        }
+        final char low = (char) position;
+        final long[] bitmap = bitmaps[high];
+        if (bitmap != null) {
+            return (bitmap[low >>> 6] & (1L << low)) != 0;
+        }
+        return sizes[high] > 0 && Arrays.binarySearch(arrays[high], 0, sizes[high], low) >= 0;
+    }
+
+    /**
+     * Get the amount of distinct positions in this set.
+     *
+     * @return the amount of positions.
+     */
+    public long getCardinality() {
+        return cardinality;
+    }
+
+    /**
+     * Compares the positions of two sets. A chunk is an array or a bitmap depending only on its amount of
+     * positions, so equal sets have the same containers, apart from their spare capacity and empty chunks.
+     *
+     * @param o the other object.
+     * @return true if it is a set with the same positions.
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof SiteBitmap)) {
+            return false;
+        }
+        final SiteBitmap other = (SiteBitmap) o;
+        if (cardinality != other.cardinality) {
+            return false;
+        }
+        for (int high = 0; high < Math.max(sizes.length, other.sizes.length); high++) {
+            if (!chunkEquals(other, high)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean chunkEquals(SiteBitmap other, int high) {
+        final long[] bitmap = high < bitmaps.length ? bitmaps[high] : null;
+        final long[] otherBitmap = high < other.bitmaps.length ? other.bitmaps[high] : null;
+        if (bitmap != null || otherBitmap != null) {
+            return Arrays.equals(bitmap, otherBitmap);
+        }
+        final int size = high < sizes.length ? sizes[high] : 0;
+        final int otherSize = high < other.sizes.length ? other.sizes[high] : 0;
+        return size == otherSize && (size == 0 || Arrays.equals(
+                Arrays.copyOf(arrays[high], size), Arrays.copyOf(other.arrays[high], size)));
+    }
+
+    /**
+     * Hashes the positions of this set, consistent with {@link #equals(Object)}.
+     *
+     * @return the hash code.
+     */
+    @Override
+    public int hashCode() {
+        int hash = Long.hashCode(cardinality);
+        for (int high = 0; high < sizes.length; high++) {
+            if (bitmaps[high] != null) {
+                hash = 31 * hash + high;
+                hash = 31 * hash + Arrays.hashCode(bitmaps[high]);
+            } else if (sizes[high] > 0) {
+                hash = 31 * hash + high;
+                for (int i = 0; i < sizes[high]; i++) {
+                    hash = 31 * hash + arrays[high][i];
+                }
+            }
+        }
+        return hash;
+    }
+
+    private void ensureChunk(int high) {
+        if (high >= sizes.length) {
+            int length = Math.max(high + 1, sizes.length * 2);
+            arrays = Arrays.copyOf(arrays, length);
+            sizes = Arrays.copyOf(sizes, length);
+            bitmaps = Arrays.copyOf(bitmaps, length);
+        }
+    }
+
+    private void addToBitmap(int high, char low) {
+        final long[] bitmap = bitmaps[high];
+        final long bit = 1L << low;
+        if ((bitmap[low >>> 6] & bit) == 0) {
+            bitmap[low >>> 6] |= bit;
+            cardinality++;
+        }
+    }
+
+    private void addToArray(int high, char low) {
+        char[] array = arrays[high];
+        final int size = sizes[high];
+        int index;
+        // sites are mostly added in sorted order, so check for an append first.
+        if (size == 0 || array[size - 1] < low) {
+            index = size;
+        } else {
+            index = Arrays.binarySearch(array, 0, size, low);
+            if (index >= 0) {
+                return;
+            }
+            index = -index - 1;
+        }
+        if (size == ARRAY_LIMIT) {
+            toBitmap(high);
+            addToBitmap(high, low);
+            return;
+        }
+        if (array == null || size == array.length) {
+            array = Arrays.copyOf(array == null ? new char[0] : array, Math.min(ARRAY_LIMIT, Math.max(4, size * 2)));
+            arrays[high] = array;
+        }
+        System.arraycopy(array, index, array, index + 1, size - index);
+        array[index] = low;
+        sizes[high] = size + 1;
+        cardinality++;
+    }
+
+    private void toBitmap(int high) {
+        final long[] bitmap = new long[BITMAP_LONGS];
+        final char[] array = arrays[high];
+        for (int i = 0; i < sizes[high]; i++) {
+            bitmap[array[i] >>> 6] |= 1L << array[i];
+        }
+        bitmaps[high] = bitmap;
+        arrays[high] = null;
+        sizes[high] = 0;
+    }
+}
@@ -0,0 +1,45 @@
+package consensus.filters;
+
+import htsjdk.variant.variantcontext.VariantContext;
+import lombok.EqualsAndHashCode;
+
+import java.util.Map;
+
+/**
+ * The site list filter, which includes variants that start on one of a set of known sites.
+ * The sites are kept in a {@link SiteBitmap} per contig.
+ */
+@EqualsAndHashCode
+public class SiteFilter implements CostedFilter {
+
+    private final Map<String, SiteBitmap> sites;
+
+    /**
+     * Creates a new site filter.
+     *
+     * @param sites The sites, by contig name.
+     */
+    public SiteFilter(Map<String, SiteBitmap> sites) {
+        this.sites = sites;
+    }
+
+    /**
+     * Tests if the record starts on one of the sites.
+     *
+     * @param record The variant context.
+     * @return true if it is included in the current filter.
+     */
+    @Override
+    public boolean test(VariantContext record) {
+        final SiteBitmap contigSites = sites.get(record.getContig());
+        return contigSites != null && contigSites.contains(record.getStart());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getCost() {
+        return COST_LOOKUP;
+    }
+}
@@ -1,9 +1,7 @@
 package consensus.samplers;
 
 import htsjdk.variant.variantcontext.VariantContext;
-
-import java.util.ArrayList;
-import java.util.List;
+import vcf.RecordView;
 
 /**
  * Class to determine which alleles to consider based on the allele frequency.
@@ -27,25 +25,23 @@ public class AlleleFrequencySampler extends Sampler {
     }
 
     /**
-     * Encode the variantContext to a byte array.
+     * Samples the variantContext into the buffer.
      *
      * @param variantContext the variant context.
-     * @return the byte array result.
+     * @param out            the buffer to append the samples to.
      */
     @Override
-    protected List<Sample> getSample(VariantContext variantContext) {
+    void getSample(VariantContext variantContext, SampleBuffer out) {
         double af = getAlleleFrequency(variantContext);
         if (af < lowerBound) {
             //it is the reference
-            List<Sample> samples = new ArrayList<Sample>();
-            samples.add(getRef(variantContext, SampleType.REFERENCE));
-            return samples;
-        }
-        if (af > upperBound) {
+            addRef(variantContext, SampleType.REFERENCE, out);
+        } else if (af > upperBound) {
             //it is the alternative
-            return getAlt(variantContext, SampleType.ALTERNATIVE);
+            addAlt(variantContext, SampleType.ALTERNATIVE, out);
+        } else {
+            addHetero(variantContext, out);
         }
-        return getHetero(variantContext);
     }
 
     /**
@@ -56,14 +52,11 @@ public class AlleleFrequencySampler extends Sampler {
      */
     private double getAlleleFrequency(VariantContext context) {
         try {
-            Object o = context.getAttribute("AF");
-            if (o instanceof String) {
-                return Double.parseDouble((String) o);
-            }
-            if (o instanceof Double) {
-                return (Double) o;
+            RecordView view = RecordView.of(context);
+            if (view.getAlleleFrequencySize() == 1) {
+                return view.getAlleleFrequency(0);
             }
-        } catch (Exception ignore) {
+        } catch (NumberFormatException ignore) {
         }
         return -1;
     }
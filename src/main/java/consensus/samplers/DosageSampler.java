@@ -0,0 +1,112 @@
+package consensus.samplers;
+
+import htsjdk.variant.variantcontext.VariantContext;
+import vcf.GenotypeColumns;
+import vcf.GenotypeFieldReader;
+
+/**
+ * Samples the alleles based on their dosage, the amount of times an allele is in the GT fields of the samples.
+ * This works for any ploidy, like the hexaploid genotype 0/0/1/1/1/2, and reads the GT bytes directly,
+ * so no genotype objects are created and sampling does not allocate.
+ * Alleles with a dosage below a minimum fraction of all counted alleles are left out, the other alleles are
+ * the reference, the alternative or, if there are several, encoded together as a heterozygous call.
+ */
+public class DosageSampler extends Sampler {
+    private final double minFraction;
+    private final int sample;
+    private final GenotypeFieldReader reader;
+    private int[] dosages = new int[4];
+
+    /**
+     * Creates a sampler that keeps every allele in the genotypes.
+     */
+    public DosageSampler() {
+        this(0);
+    }
+
+    /**
+     * Creates a sampler.
+     *
+     * @param minFraction the minimum fraction of the counted alleles an allele needs to be used.
+     */
+    public DosageSampler(double minFraction) {
+        this(minFraction, -1, null);
+    }
+
+    /**
+     * Creates a sampler that only counts the alleles of one sample.
+     *
+     * @param minFraction the minimum fraction of the counted alleles an allele needs to be used.
+     * @param sample      the index of the sample in the genotype columns, or -1 for all samples.
+     * @param columns     the shared index of the sample columns, or null.
+     */
+    public DosageSampler(double minFraction, int sample, GenotypeColumns columns) {
+        if (minFraction < 0 || minFraction > 1) {
+            throw new IllegalArgumentException("Dosage encoder expects a fraction between 0 and 1");
+        }
+        this.minFraction = minFraction;
+        this.sample = sample;
+        this.reader = new GenotypeFieldReader("GT", columns);
+    }
+
+    /**
+     * Appends the alleles with enough dosage of a context.
+     * A context without called genotypes is sampled as heterozygous.
+     *
+     * @param context The context to extract samples from.
+     * @param out     The buffer to append the samples to.
+     */
+    @Override
+    void getSample(VariantContext context, SampleBuffer out) {
+        final int alleles = context.getNAlleles();
+        if (dosages.length < alleles) {
+            dosages = new int[alleles];
+        }
+        for (int i = 0; i < alleles; i++) {
+            dosages[i] = 0;
+        }
+        final int total = sample == -1 ? reader.readDosages(context, dosages)
+                : reader.readDosages(context, sample, dosages);
+        if (total == 0) {
+            addHetero(context, out);
+            return;
+        }
+        final int threshold = threshold(total, alleles);
+        final boolean reference = dosages[0] > 0 && dosages[0] >= threshold;
+        int alternatives = 0;
+        for (int i = 1; i < alleles; i++) {
+            if (dosages[i] > 0 && dosages[i] >= threshold) {
+                alternatives++;
+            }
+        }
+        if (alternatives == 0) {
+            addRef(context, SampleType.REFERENCE, out);
+            return;
+        }
+        final SampleType type = reference || alternatives > 1 ? SampleType.HETERO : SampleType.ALTERNATIVE;
+        final byte[] ref = getOriginalAllele(context.getReference().getBases(), context, "RIU");
+        for (int i = 1; i < alleles; i++) {
+            if (dosages[i] > 0 && dosages[i] >= threshold) {
+                addAlt(context, ref, context.getAlternateAllele(i - 1), type, out);
+            }
+        }
+        if (reference) {
+            addRef(context, type, out);
+        }
+    }
+
+    /**
+     * Get the dosage an allele needs, never more than the highest dosage so there is always an allele left.
+     *
+     * @param total   the amount of counted alleles.
+     * @param alleles the amount of alleles of the context.
+     * @return the minimum dosage.
+     */
+    private int threshold(int total, int alleles) {
+        int max = 0;
+        for (int i = 0; i < alleles; i++) {
+            max = Math.max(max, dosages[i]);
+        }
+        return Math.min(max, (int) Math.ceil(minFraction * total));
+    }
+}
@@ -0,0 +1,62 @@
+package consensus.samplers;
+
+import htsjdk.variant.variantcontext.VariantContext;
+import vcf.GenotypeColumns;
+import vcf.GenotypeFieldReader;
+
+/**
+ * Samples the allele of one haplotype of a sample from its phased genotype.
+ * For the phased tetraploid genotype 0|1|1|0 the haplotypes 0 to 3 are the reference, the alternative,
+ * the alternative and the reference. Several samplers, one per haplotype, give the sequence of every haplotype
+ * from one pass over the calls. The GT bytes are read directly, so sampling does not allocate.
+ * A genotype that is not phased can not be split into haplotypes, so its alleles are encoded together as in
+ * the {@link DosageSampler}. A missing allele, or a haplotype beyond the ploidy of the genotype, is sampled
+ * as heterozygous.
+ */
+public class HaplotypeSampler extends Sampler {
+    private final int sample;
+    private final int haplotype;
+    private final GenotypeFieldReader reader;
+    private final DosageSampler unphased;
+
+    /**
+     * Creates a sampler.
+     *
+     * @param sample    the index of the sample in the genotype columns.
+     * @param haplotype the index of the haplotype in the genotype, starting at 0.
+     * @param columns   the shared index of the sample columns, or null.
+     */
+    public HaplotypeSampler(int sample, int haplotype, GenotypeColumns columns) {
+        if (haplotype < 0) {
+            throw new IllegalArgumentException("The haplotype index can not be negative.");
+        }
+        this.sample = sample;
+        this.haplotype = haplotype;
+        this.reader = new GenotypeFieldReader("GT", columns);
+        this.unphased = new DosageSampler(0, sample, columns);
+    }
+
+    /**
+     * Appends the allele of the haplotype of a context.
+     *
+     * @param context The context to extract samples from.
+     * @param out     The buffer to append the samples to.
+     */
+    @Override
+    void getSample(VariantContext context, SampleBuffer out) {
+        final int ploidy = reader.readGenotype(context, sample);
+        if (!reader.isPhased()) {
+            unphased.getSample(context, out);
+            return;
+        }
+        final int allele = haplotype < ploidy ? reader.getValue(haplotype) : -1;
+        if (allele == -1 || allele >= context.getNAlleles()) {
+            addHetero(context, out);
+        } else if (allele == 0) {
+            addRef(context, SampleType.REFERENCE, out);
+        } else {
+            final byte[] ref = getOriginalAllele(context.getReference().getBases(), context, "RIU");
+            addAlt(context, ref, context.getAlternateAllele(allele - 1), SampleType.ALTERNATIVE, out);
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package consensus.samplers;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A reusable list of samples, filled by {@link Sampler#sample(htsjdk.variant.variantcontext.VariantContext,
+ * boolean, SampleBuffer)}.
+ * The fields of the samples are kept in primitive arrays and the alleles are copied into one byte pool,
+ * so once the arrays are large enough, adding samples does not allocate.
+ * The caller owns the buffer and clears it before sampling the next group of calls.
+ */
+public final class SampleBuffer {
+    private static final int INITIAL_CAPACITY = 16;
+
+    private int size;
+    private int[] starts = new int[INITIAL_CAPACITY];
+    private int[] ends = new int[INITIAL_CAPACITY];
+    private int[] alleleOffsets = new int[INITIAL_CAPACITY];
+    private int[] alleleLengths = new int[INITIAL_CAPACITY];
+    private Sampler.SampleType[] sampleTypes = new Sampler.SampleType[INITIAL_CAPACITY];
+    private Sampler.VariantType[] variantTypes = new Sampler.VariantType[INITIAL_CAPACITY];
+    private byte[] alleles = new byte[INITIAL_CAPACITY * 4];
+    private int allelesSize;
+
+    /**
+     * Removes all samples, keeping the memory for the next ones.
+     */
+    public void clear() {
+        size = 0;
+        allelesSize = 0;
+    }
+
+    /**
+     * Removes the samples that end before a position, keeping the order of the others.
+     * The alleles of the kept samples are moved to the front of the pool, so the memory can be reused.
+     *
+     * @param position the first position the kept samples have to reach.
+     */
+    public void retainEndingFrom(int position) {
+        int kept = 0;
+        int keptAlleles = 0;
+        for (int i = 0; i < size; i++) {
+            if (ends[i] < position) {
+                continue;
+            }
+            System.arraycopy(alleles, alleleOffsets[i], alleles, keptAlleles, alleleLengths[i]);
+            alleleOffsets[kept] = keptAlleles;
+            alleleLengths[kept] = alleleLengths[i];
+            sampleTypes[kept] = sampleTypes[i];
+            variantTypes[kept] = variantTypes[i];
+            starts[kept] = starts[i];
+            ends[kept] = ends[i];
+            keptAlleles += alleleLengths[i];
+            kept++;
+        }
+        size = kept;
+        allelesSize = keptAlleles;
+    }
+
+    /**
+     * Get the amount of samples.
+     *
+     * @return the amount of samples.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Adds a sample, copying the allele.
+     *
+     * @param allele      The genetic data this sample encodes.
+     * @param sampleType  The type of sample.
+     * @param variantType The type of variation.
+     * @param start       Where this sample starts in the reference.
+     * @param end         Where this sample ends in the reference.
+     */
+    public void add(byte[] allele, Sampler.SampleType sampleType, Sampler.VariantType variantType,
+                    int start, int end) {
+        if (size == starts.length) {
+            final int capacity = size * 2;
+            starts = Arrays.copyOf(starts, capacity);
+            ends = Arrays.copyOf(ends, capacity);
+            alleleOffsets = Arrays.copyOf(alleleOffsets, capacity);
+            alleleLengths = Arrays.copyOf(alleleLengths, capacity);
+            sampleTypes = Arrays.copyOf(sampleTypes, capacity);
+            variantTypes = Arrays.copyOf(variantTypes, capacity);
+        }
+        if (allelesSize + allele.length > alleles.length) {
+            alleles = Arrays.copyOf(alleles, Math.max(alleles.length * 2, allelesSize + allele.length));
+        }
+        System.arraycopy(allele, 0, alleles, allelesSize, allele.length);
+        alleleOffsets[size] = allelesSize;
+        alleleLengths[size] = allele.length;
+        allelesSize += allele.length;
+        sampleTypes[size] = sampleType;
+        variantTypes[size] = variantType;
+        starts[size] = start;
+        ends[size] = end;
+        size++;
+    }
+
+    /**
+     * Get the start of a sample.
+     *
+     * @param i the index of the sample.
+     * @return where the sample starts in the reference.
+     */
+    public int getStart(int i) {
+        return starts[i];
+    }
+
+    /**
+     * Get the end of a sample.
+     *
+     * @param i the index of the sample.
+     * @return where the sample ends in the reference.
+     */
+    public int getEnd(int i) {
+        return ends[i];
+    }
+
+    /**
+     * Get the type of a sample.
+     *
+     * @param i the index of the sample.
+     * @return the type of the sample.
+     */
+    public Sampler.SampleType getSampleType(int i) {
+        return sampleTypes[i];
+    }
+
+    /**
+     * Get the type of variation of a sample.
+     *
+     * @param i the index of the sample.
+     * @return the type of variation.
+     */
+    public Sampler.VariantType getVariantType(int i) {
+        return variantTypes[i];
+    }
+
+    /**
+     * Get the length of the allele of a sample.
+     *
+     * @param i the index of the sample.
+     * @return the amount of bases of the allele.
+     */
+    public int getAlleleLength(int i) {
+        return alleleLengths[i];
+    }
+
+    /**
+     * Get a base of the allele of a sample.
+     *
+     * @param i    the index of the sample.
+     * @param base the index of the base in the allele.
+     * @return the base.
+     */
+    public byte getAlleleBase(int i, int base) {
+        return alleles[alleleOffsets[i] + base];
+    }
+
+    /**
+     * Copies the samples into sample objects.
+     *
+     * @return a new list of the samples.
+     */
+    public List<Sampler.Sample> toSamples() {
+        List<Sampler.Sample> samples = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            byte[] allele = Arrays.copyOfRange(alleles, alleleOffsets[i], alleleOffsets[i] + alleleLengths[i]);
+            samples.add(new Sampler.Sample(allele, sampleTypes[i], variantTypes[i], starts[i], ends[i]));
+        }
+        return samples;
+    }
+}
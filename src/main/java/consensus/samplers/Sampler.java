@@ -6,13 +6,18 @@ import htsjdk.variant.variantcontext.VariantContext;
 import lombok.Getter;
 
 import java.io.UnsupportedEncodingException;
-import java.util.ArrayList;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 import java.util.List;
 
 /**
  * Created by regiv on 13/06/2018.
  */
 public abstract class Sampler {
+    /**
+     * The INFO key of the inserted sequence of a symbolic insertion.
+     */
+    private static final String INSERTED_SEQUENCE = "SVINSSEQ";
 
     /**
      * Extracts the applicable samples from a context.
@@ -21,61 +26,152 @@ public abstract class Sampler {
      * @return A list of the applicable samples.
      */
     public List<Sample> sample(VariantContext context) {
-        if (context.hasAttribute("FILTER_FAIL")) {
-            List<Sample> retList = new ArrayList<>();
-            retList.add(getRef(context, SampleType.REFERENCE));
-            return retList;
-        } else {
-            return getSample(context);
+        return sample(context, true);
+    }
+
+    /**
+     * Extracts the applicable samples from a context, or only the reference if it did not pass the filters.
+     *
+     * @param context The context to extract samples from.
+     * @param passed  false if the context did not pass the filters.
+     * @return A list of the applicable samples.
+     */
+    public List<Sample> sample(VariantContext context, boolean passed) {
+        SampleBuffer buffer = new SampleBuffer();
+        sample(context, passed, buffer);
+        return buffer.toSamples();
+    }
+
+    /**
+     * Appends the applicable samples of a context to a buffer, or only the reference if it did not pass the filters.
+     * This does not allocate once the buffer is large enough, so the buffer should be reused.
+     *
+     * @param context The context to extract samples from.
+     * @param passed  false if the context did not pass the filters.
+     * @param out     The buffer to append the samples to.
+     */
+    public void sample(VariantContext context, boolean passed, SampleBuffer out) {
+        if (!passed) {
+            addRef(context, SampleType.REFERENCE, out);
+            return;
         }
+        getSample(context, out);
     }
 
     /**
-     * Extracts the applicable samples from a context.
+     * Appends the applicable samples of a context to a buffer.
      * Gets called from sample().
      *
      * @param context The context to extract samples from.
-     * @return A list of the applicable samples.
+     * @param out     The buffer to append the samples to.
      */
-    abstract List<Sample> getSample(VariantContext context);
+    abstract void getSample(VariantContext context, SampleBuffer out);
 
     /**
-     * Get the alternative samples.
+     * Appends the alternative samples.
      *
      * @param variantContext the context.
      * @param type           The type of variation
-     * @return the alternative as byte array.
+     * @param out            the buffer to append to.
      */
-    List<Sample> getAlt(VariantContext variantContext, SampleType type) {
-        List<Sample> alts = new ArrayList<>();
+    void addAlt(VariantContext variantContext, SampleType type, SampleBuffer out) {
         byte[] ref = variantContext.getReference().getBases();
         ref = getOriginalAllele(ref, variantContext, "RIU");
 
         if (variantContext.getAlternateAlleles().size() < 1) {
-            alts.add(new Sample(ref, type, VariantType.NO_CHANGE, variantContext.getStart(),
-                    variantContext.getStart() + variantContext.getReference().length() - 1));
-            return alts;
+            out.add(ref, type, VariantType.NO_CHANGE, variantContext.getStart(),
+                    variantContext.getStart() + variantContext.getReference().length() - 1);
+            return;
         }
 
+        for (int i = 0; i < variantContext.getAlternateAlleles().size(); i++) {
+            addAlt(variantContext, ref, variantContext.getAlternateAllele(i), type, out);
+        }
+    }
+
+    /**
+     * Appends the sample of one alternative allele.
+     *
+     * @param variantContext the context.
+     * @param ref            the original reference bases.
+     * @param allele         the alternative allele.
+     * @param type           The type of variation
+     * @param out            the buffer to append to.
+     */
+    void addAlt(VariantContext variantContext, byte[] ref, Allele allele, SampleType type, SampleBuffer out) {
+        if (allele.isSymbolic()) {
+            addSymbolic(variantContext, ref, allele, type, out);
+            return;
+        }
+        byte[] alt = getOriginalAllele(allele.getBases(), variantContext, "AIU");
+        VariantType variantType = determineVariantType(ref, alt);
+        out.add(alt, type, variantType, variantContext.getStart(),
+                variantContext.getStart() + variantContext.getReference().length() - 1);
+    }
+
+    /**
+     * Appends the sample of a symbolic allele, which has no bases of its own.
+     * A deletion, like &lt;DEL&gt;, keeps the first reference base and deletes the bases until the END of the call.
+     * An insertion, like &lt;INS&gt;, inserts the sequence of the SVINSSEQ attribute if the call has one.
+     * Other structural variants and breakends can not be written as a sequence, so the reference is kept.
+     *
+     * @param variantContext the context.
+     * @param ref            the original reference bases.
+     * @param allele         the symbolic allele.
+     * @param type           The type of variation
+     * @param out            the buffer to append to.
+     */
+    private void addSymbolic(VariantContext variantContext, byte[] ref, Allele allele, SampleType type,
+                             SampleBuffer out) {
+        final int start = variantContext.getStart();
+        final int refEnd = start + variantContext.getReference().length() - 1;
+        final Object sequence = variantContext.getAttribute(INSERTED_SEQUENCE);
+        if (isSymbolicDeletion(allele) && ref.length > 0) {
+            out.add(Arrays.copyOf(ref, 1), type, VariantType.SIMPLE_DEL, start, getEnd(variantContext));
+        } else if (allele.getDisplayString().startsWith("<INS") && sequence instanceof String && ref.length > 0) {
+            final byte[] inserted = ((String) sequence).getBytes(StandardCharsets.UTF_8);
+            final byte[] alt = Arrays.copyOf(ref, ref.length + inserted.length);
+            System.arraycopy(inserted, 0, alt, ref.length, inserted.length);
+            out.add(alt, type, VariantType.INSERTION, start, refEnd);
+        } else {
+            out.add(ref, type, VariantType.NO_CHANGE, start, refEnd);
+        }
+    }
+
+    /**
+     * Get the last reference position a call replaces.
+     * This is the end of the reference allele, or the END of the call if it has a symbolic deletion.
+     *
+     * @param variantContext the context.
+     * @return the last position (1-index).
+     */
+    public static int getEnd(VariantContext variantContext) {
+        final int end = variantContext.getStart() + variantContext.getReference().length() - 1;
+        if (variantContext.getEnd() <= end) {
+            return end;
+        }
         for (Allele allele : variantContext.getAlternateAlleles()) {
-            byte[] alt = getOriginalAllele(allele.getBases(), variantContext, "AIU");
-            VariantType variantType = determineVariantType(ref, alt);
-            alts.add(new Sample(alt, type, variantType, variantContext.getStart(),
-                    variantContext.getStart() + variantContext.getReference().length() - 1));
+            if (isSymbolicDeletion(allele)) {
+                return variantContext.getEnd();
+            }
         }
-        return alts;
+        return end;
+    }
+
+    private static boolean isSymbolicDeletion(Allele allele) {
+        return allele.isSymbolic() && allele.getDisplayString().startsWith("<DEL");
     }
 
     /**
-     * Get the reference bases.
+     * Appends the reference sample.
      *
      * @param variantContext the context.
      * @param type           The type of variation.
-     * @return the reference as byte array.
+     * @param out            the buffer to append to.
      */
-    Sample getRef(VariantContext variantContext, SampleType type) {
+    void addRef(VariantContext variantContext, SampleType type, SampleBuffer out) {
         byte[] ref = getOriginalAllele(variantContext.getReference().getBases(), variantContext, "RIU");
-        return new Sample(ref, type, VariantType.NO_CHANGE, variantContext.getStart(),
+        out.add(ref, type, VariantType.NO_CHANGE, variantContext.getStart(),
                 variantContext.getStart() + variantContext.getReference().length() - 1);
     }
 
@@ -89,7 +185,7 @@ public abstract class Sampler {
      * @param attribute      The attribute (RIU for reference AIU for alternate)
      * @return the original alle.
      */
-    private byte[] getOriginalAllele(byte[] bases, VariantContext variantContext, String attribute) {
+    byte[] getOriginalAllele(byte[] bases, VariantContext variantContext, String attribute) {
         if (!variantContext.hasAttribute(attribute)) {
             return bases;
         }
@@ -105,16 +201,15 @@ public abstract class Sampler {
     }
 
     /**
-     * Get the Iupac encoded version of the reference + alternative.
+     * Appends the Iupac encoded version of the reference + alternative.
      * As if they are heterozygous.
      *
      * @param variantContext the context.
-     * @return the byte array of the new heterozygous thing.
+     * @param out            the buffer to append to.
      */
-    List<Sample> getHetero(VariantContext variantContext) {
-        List<Sample> samples = getAlt(variantContext, SampleType.HETERO);
-        samples.add(getRef(variantContext, SampleType.HETERO));
-        return samples;
+    void addHetero(VariantContext variantContext, SampleBuffer out) {
+        addAlt(variantContext, SampleType.HETERO, out);
+        addRef(variantContext, SampleType.HETERO, out);
     }
 
     /**
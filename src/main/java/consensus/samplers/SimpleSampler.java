@@ -6,7 +6,6 @@ import htsjdk.variant.variantcontext.Genotype;
 import htsjdk.variant.variantcontext.VariantContext;
 import logger.MultiLogger;
 
-import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -15,24 +14,23 @@ import java.util.List;
 public class SimpleSampler extends Sampler {
 
     @Override
-    protected List<Sample> getSample(VariantContext context) {
+    void getSample(VariantContext context, SampleBuffer out) {
         try {
             for (Genotype g : context.getGenotypes().iterateInSampleNameOrder()) {
                 if (equalAlleles(g.getAlleles())) {
                     if (g.getAllele(0).equals(context.getReference(), true)) {
-                        List<Sample> samples = new ArrayList<>();
-                        samples.add(getRef(context, SampleType.REFERENCE));
-                        return samples;
+                        addRef(context, SampleType.REFERENCE, out);
                     } else {
-                        return getAlt(context, SampleType.ALTERNATIVE);
+                        addAlt(context, SampleType.ALTERNATIVE, out);
                     }
+                    return;
                 }
             }
         } catch (TribbleException e) {
             MultiLogger.get().println("Found error in VCF, assumed call to be hetero! '"
                     + e.getMessage() + "'" + " - Context: " + context.toString());
         }
-        return getHetero(context);
+        addHetero(context, out);
     }
 
     /**
@@ -1,14 +1,19 @@
 package coverage;
 
+import java.io.IOException;
+import java.io.Writer;
+
 /**
- * Coverage including an array which has the coverage per base.
+ * Coverage including the coverage per base.
+ * The depths are kept as runs of bases with the same depth, so the coverage of a whole chromosome takes
+ * little memory, and the statistics are counted from the runs instead of from every base.
  */
 public class CoverageArray extends Coverage {
     /**
-     * Array containing the coverage depth per base index.
+     * The coverage depth per base index, as runs.
      * Where index 0 is the from position, and the last index is the end position.
      */
-    private int[] coveragePerBase;
+    private final CoverageRuns coveragePerBase;
 
     /**
      * Constructor initializing fields.
@@ -19,10 +24,10 @@ public class CoverageArray extends Coverage {
      * @param totalDepth      the total depth of coverage over all bases.
      * @param totalCovered    the total amount of bases covered in the interval.
      * @param minimalCoverage the minimal covered after which we consider a base covered.
-     * @param coveragePerBase the coverage per base, represented as array.
+     * @param coveragePerBase the coverage per base, represented as runs.
      */
     CoverageArray(String chr, int from, int to, long totalDepth,
-                  int totalCovered, int minimalCoverage, int[] coveragePerBase) {
+                  int totalCovered, int minimalCoverage, CoverageRuns coveragePerBase) {
         super(chr, from, to, totalDepth, totalCovered, minimalCoverage);
         this.coveragePerBase = coveragePerBase;
     }
@@ -35,7 +40,7 @@ public class CoverageArray extends Coverage {
      * @return the depth at that base.
      */
     public int coverageAtBase(int i) {
-        return coveragePerBase[i];
+        return coveragePerBase.depthAt(i);
     }
 
     /**
@@ -44,13 +49,7 @@ public class CoverageArray extends Coverage {
      * @return the lowest found coverage in the array.
      */
     public int lowestCoverage() {
-        int lowest = Integer.MAX_VALUE;
-        for (int i : coveragePerBase) {
-            if (i < lowest) {
-                lowest = i;
-            }
-        }
-        return lowest;
+        return coveragePerBase.lowest();
     }
 
     /**
@@ -59,13 +58,7 @@ public class CoverageArray extends Coverage {
      * @return the highest found coverage in the array.
      */
     public int highestCoverage() {
-        int highest = Integer.MIN_VALUE;
-        for (int i : coveragePerBase) {
-            if (i > highest) {
-                highest = i;
-            }
-        }
-        return highest;
+        return coveragePerBase.highest();
     }
 
     /**
@@ -75,13 +68,43 @@ public class CoverageArray extends Coverage {
      * @return the amount of bases with that given minimal coverage.
      */
     public int totalBasesWithMinimalCoverage(int minimal) {
-        int total = 0;
-        for (int i : coveragePerBase) {
-            if (i >= minimal) {
-                total++;
+        return totalBasesWithMinimalCoverage(new int[]{minimal})[0];
+    }
+
+    /**
+     * Get the amount of bases with each of several given coverages or higher, in one pass over the runs.
+     *
+     * @param minimals the minimal coverages of a base to be counted.
+     * @return the amount of bases with each given minimal coverage.
+     */
+    private int[] totalBasesWithMinimalCoverage(int[] minimals) {
+        final int[] totals = new int[minimals.length];
+        for (int run = 0; run < coveragePerBase.runs(); run++) {
+            final int depth = coveragePerBase.depth(run);
+            final int bases = coveragePerBase.end(run) - coveragePerBase.start(run);
+            for (int i = 0; i < minimals.length; i++) {
+                if (depth >= minimals[i]) {
+                    totals[i] += bases;
+                }
             }
         }
-        return total;
+        return totals;
+    }
+
+    /**
+     * Write the coverage as a bedGraph, with a line for every run of bases with the same depth.
+     * The positions of a bedGraph start at 0 and the end of a line is exclusive.
+     *
+     * @param writer the writer to write to.
+     * @throws IOException if writing failed.
+     */
+    public void writeBedGraph(Writer writer) throws IOException {
+        final long offset = getStartPos() - 1L;
+        for (int run = 0; run < coveragePerBase.runs(); run++) {
+            writer.write(getChromosome() + "\t" + (offset + coveragePerBase.start(run))
+                    + "\t" + (offset + coveragePerBase.end(run)) + "\t" + coveragePerBase.depth(run) + "\n");
+        }
+        writer.flush();
     }
 
     /**
@@ -105,12 +128,17 @@ public class CoverageArray extends Coverage {
                 .append(" - Covered width: ")
                 .append((int) (getCoveredWidth() * 1000.0) / 1000.0)
                 .append("\n");
+        int[] minis = new int[intervals];
+        for (int i = 0; i < intervals; i++) {
+            minis[i] = low + (int) (high * ((i + 1) / (double) intervals)) - 5;
+        }
+        int[] amounts = totalBasesWithMinimalCoverage(minis);
         for (int i = 0; i < intervals; i++) {
-            int mini = low + (int) (high * ((i + 1) / (double) intervals)) - 5;
+            int mini = minis[i];
             if (mini < 0) {
                 continue;
             }
-            int amount = totalBasesWithMinimalCoverage(mini);
+            int amount = amounts[i];
             double percentCoverage = ((int) (((amount / (double)
                     getTotalBases()) * 100) * 100.0)) / 100.0;
             builder.append("At least ").append(mini)
@@ -1,24 +1,44 @@
 package coverage;
 
+import htsjdk.samtools.SAMSequenceRecord;
 import htsjdk.samtools.SamReader;
 import htsjdk.samtools.SamReaderFactory;
 import htsjdk.samtools.ValidationStringency;
 import htsjdk.samtools.filter.*;
-import htsjdk.samtools.util.Interval;
-import htsjdk.samtools.util.IntervalList;
-import htsjdk.samtools.util.SamLocusIterator;
-import logger.MultiLogger;
 import lombok.Getter;
 import lombok.Setter;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
 
 /**
  * Class for generating coverage over BAM files.
  */
 public class CoverageGenerator {
+    /**
+     * The length of the windows of the linear BAM index, on which the partitions of an interval end.
+     */
+    static final int INDEX_WINDOW = 1 << 14;
+    /**
+     * The longest partition, of which the depths are counted at once, a multiple of the index windows.
+     */
+    static final int MAX_PARTITION = 1 << 18;
+    private static final int PARTITIONS_PER_THREAD = 4;
 
     /**
      * Variable used to describe the minimal depth to
@@ -28,6 +48,14 @@ public class CoverageGenerator {
     @Setter
     private int minCoverage;
 
+    /**
+     * The directory in which the depths of an array coverage are kept in a memory-mapped file once they have many
+     * runs, or null to keep them on the heap.
+     */
+    @Getter
+    @Setter
+    private File spillDirectory;
+
     /**
      * List of SAM record filters to use.
      */
@@ -67,46 +95,6 @@ public class CoverageGenerator {
         }
     }
 
-    /**
-     * Create a SamLocusIterator over a given file, chromosome, and interval.
-     *
-     * @param file the file to create the iterator over.
-     * @param chr  the chromosome to consider.
-     * @param from the start of the interval.
-     * @param to   the end of the interval.
-     * @return a iterator over that interval in the given chromosome.
-     */
-    private SamLocusIterator samLocusIterator(File file, String chr, int from, int to) {
-        SamReader samReader = SamReaderFactory.makeDefault()
-                .validationStringency(ValidationStringency.LENIENT)
-                .open(file);
-
-        // Loci to sample (could be a single position):
-        IntervalList il = new IntervalList(samReader.getFileHeader());
-        il.add(new Interval(chr, from, to));
-
-        // Start iterating through loci: The last parameter was true, but changed to hasIndex
-        SamLocusIterator iterator = new SamLocusIterator(samReader, il, samReader.hasIndex());
-        iterator.setSamFilters(filterList); // Optional list of List<SamRecordFilter>
-        return iterator;
-    }
-
-    /**
-     * Get the length of a sequence in a BAM/SAM file.
-     * @param file the file to get the length of.
-     * @param chr the chromosome to get the length of.
-     * @return the length, as integer amount of bases.
-     * @throws IOException if close reader failed.
-     */
-    private int getSequenceLength(File file, String chr) throws IOException {
-        SamReader samReader = SamReaderFactory.makeDefault()
-                .validationStringency(ValidationStringency.LENIENT)
-                .open(file);
-        int len = samReader.getFileHeader().getSequence(chr).getSequenceLength();
-        samReader.close();
-        return len;
-    }
-
     /**
      * Generate basic coverage over a bam file, chromosome and interval.
      *
@@ -118,26 +106,7 @@ public class CoverageGenerator {
      * @throws IOException if reader fails.
      */
     public Coverage bamFileBasicCoverage(String bamFile, String chr, int from, int to) throws IOException {
-        File file = new File(bamFile);
-        int seqLen = getSequenceLength(file, chr);
-        if (to > seqLen) {
-            to = seqLen;
-        }
-
-        long totalDepth = 0;
-        int totalCovered = 0;
-
-        SamLocusIterator samLocusIterator = samLocusIterator(file, chr, from, to);
-        for (SamLocusIterator.LocusInfo locusInfo : samLocusIterator) {
-            int depth = locusInfo.getRecordAndPositions().size();
-            totalDepth += depth;
-            if (depth > minCoverage) {
-                totalCovered++;
-            }
-        }
-
-        samLocusIterator.close();
-        return new Coverage(chr, from, to, totalDepth, totalCovered, minCoverage);
+        return bamFileBasicCoverageThreads(1, bamFile, chr, from, to);
     }
 
     /**
@@ -152,115 +121,267 @@ public class CoverageGenerator {
      * @throws IOException if reader fails.
      */
     public CoverageArray bamFileArrayCoverage(String bamFile, String chr, int from, int to) throws IOException {
-        File file = new File(bamFile);
-        int seqLen = getSequenceLength(file, chr);
-        if (to > seqLen) {
-            to = seqLen;
-        }
-
-        long totalDepth = 0;
-        int totalCovered = 0;
-        int len = to > from ? (to - from) : (from - to);
-        // + 1 because both the start and end are inclusive.
-        int[] arrayCovered = new int[len + 1];
-
-        SamLocusIterator samLocusIterator = samLocusIterator(file, chr, from, to);
-        for (SamLocusIterator.LocusInfo locusInfo : samLocusIterator) {
-            int depth = locusInfo.getRecordAndPositions().size();
-            int pos = locusInfo.getPosition();
-            totalDepth += depth;
-            if (depth > minCoverage) {
-                totalCovered++;
-            }
-            arrayCovered[pos - from] = depth;
-        }
-
-        samLocusIterator.close();
-        return new CoverageArray(chr, from, to, totalDepth, totalCovered, minCoverage, arrayCovered);
+        return bamFileArrayCoverageThreads(1, bamFile, chr, from, to);
     }
 
     /**
      * Generate basic coverage over a bam file, chromosome and interval on multiple threads.
      *
-     * @param threadNum  the amount of threads to run on.
-     * @param bamFile the file to create the iterator over.
-     * @param chr     the chromosome to consider.
-     * @param from    the start of the interval.
-     * @param to      the end of the interval.
+     * @param threadNum the amount of threads to run on.
+     * @param bamFile   the file to create the iterator over.
+     * @param chr       the chromosome to consider.
+     * @param from      the start of the interval.
+     * @param to        the end of the interval.
      * @return basic coverage, giving the total depth and breath coverage.
      * @throws IOException if reader fails.
      */
     public Coverage bamFileBasicCoverageThreads(
             int threadNum, String bamFile, String chr,
             int from, int to) throws IOException {
-        if (threadNum <= 1) {
-            return bamFileBasicCoverage(bamFile, chr, from, to);
-        }
-        File file = new File(bamFile);
-        int seqLen = getSequenceLength(file, chr);
-        if (to > seqLen) {
-            to = seqLen;
-        }
+        return count(threadNum, bamFile, chr, from, to, false);
+    }
 
-        final Coverage result = new Coverage(chr, from, to, 0, 0, minCoverage);
+    /**
+     * Generate array coverage over a bam file, chromosome and interval on multiple threads.
+     *
+     * @param threadNum the amount of threads to run on.
+     * @param bamFile   the file to create the iterator over.
+     * @param chr       the chromosome to consider.
+     * @param from      the start of the interval.
+     * @param to        the end of the interval.
+     * @return array coverage, giving the total depth and breath coverage,
+     * as well as an array for coverage over each base
+     * @throws IOException if reader fails.
+     */
+    public CoverageArray bamFileArrayCoverageThreads(
+            int threadNum, String bamFile, String chr,
+            int from, int to) throws IOException {
+        return (CoverageArray) count(threadNum, bamFile, chr, from, to, true);
+    }
 
-        int amountOfBases = 1 + (to > from ? (to - from) : (from - to));
-        Thread[] threads = new Thread[threadNum];
-        int[] parts = splitIntoParts(amountOfBases, threadNum);
+    /**
+     * Generate the coverage of several regions of a chromosome in one pass over a bam file.
+     * The regions are sorted and those that overlap or touch are joined, of which the depths are counted once
+     * and shared by their regions. The groups are counted in order and forgotten as soon as their regions are
+     * summarized, so only the depths of the groups the reads are in are kept in memory.
+     *
+     * @param bamFile the file to count in.
+     * @param chr     the chromosome to consider.
+     * @param regions the start and end (inclusive) of every region, an end of -1 or beyond the chromosome
+     *                for the end of the chromosome.
+     * @return the coverage of every region, in the order of the regions.
+     * @throws IOException if reader fails.
+     */
+    public List<RegionCoverage> bamFileRegionsCoverage(String bamFile, String chr, List<int[]> regions)
+            throws IOException {
+        try (SamReader reader = openReader(new File(bamFile))) {
+            final SAMSequenceRecord sequence = reader.getFileHeader().getSequence(chr);
+            if (sequence == null) {
+                throw new IllegalArgumentException("The chromosome " + chr + " is not in " + bamFile);
+            }
+            final List<int[]> bounds = new ArrayList<>();
+            for (int[] region : regions) {
+                final int end = region[1] < 0 ? sequence.getSequenceLength()
+                        : Math.min(region[1], sequence.getSequenceLength());
+                if (region[0] < 1 || end < region[0]) {
+                    throw new IllegalArgumentException("The region " + region[0] + "-" + region[1]
+                            + " is not on the " + sequence.getSequenceLength() + " bases of " + chr);
+                }
+                bounds.add(new int[]{region[0], end});
+            }
+            final List<Integer> order = new ArrayList<>();
+            for (int i = 0; i < bounds.size(); i++) {
+                order.add(i);
+            }
+            order.sort(Comparator.comparingInt(i -> bounds.get(i)[0]));
+            final List<int[]> groups = new ArrayList<>();
+            final List<List<Integer>> members = new ArrayList<>();
+            for (int i : order) {
+                final int[] region = bounds.get(i);
+                if (groups.isEmpty() || region[0] > groups.get(groups.size() - 1)[1] + 1) {
+                    groups.add(new int[]{region[0], region[1]});
+                    members.add(new ArrayList<>());
+                }
+                final int[] group = groups.get(groups.size() - 1);
+                group[1] = Math.max(group[1], region[1]);
+                members.get(members.size() - 1).add(i);
+            }
+            final RegionCoverage[] result = new RegionCoverage[bounds.size()];
+            new DepthAccumulator(filterList).sweep(reader, chr, groups, (group, depths) -> {
+                for (int i : members.get(group)) {
+                    final int[] region = bounds.get(i);
+                    result[i] = new RegionCoverage(chr, region[0], region[1], minCoverage, depths,
+                            region[0] - groups.get(group)[0]);
+                }
+            });
+            return Arrays.asList(result);
+        }
+    }
 
-        int lastStart = 0;
-        for (int i = 0; i < threadNum; i++) {
-            int goUntil = lastStart + parts[i] - 1;
-            if (i == threadNum - 1) {
-                goUntil++;
+    /**
+     * Count the coverage of an interval in partitions.
+     * The partitions end on the windows of the BAM index and are at most {@link #MAX_PARTITION} long, so the depths
+     * of only a few partitions are in memory at once. Those of an indexed file are counted on a pool of threads,
+     * with a reader per worker that is reused for the next partition. A file without index would be read from the
+     * start for every query, so its partitions are counted in one pass over the file.
+     * The totals of the partitions are added without locks, the depths of the bases are added to the runs in order.
+     *
+     * @param threadNum the amount of threads to run on.
+     * @param bamFile   the file to count in.
+     * @param chr       the chromosome to consider.
+     * @param from      the start of the interval.
+     * @param to        the end of the interval, which is cut off at the end of the chromosome.
+     * @param array     true to keep the depth of every base.
+     * @return the coverage, a {@link CoverageArray} if the depths are kept.
+     * @throws IOException if reading failed.
+     */
+    private Coverage count(int threadNum, String bamFile, String chr, int from, int to, boolean array)
+            throws IOException {
+        final File file = new File(bamFile);
+        final Queue<SamReader> readers = new ConcurrentLinkedQueue<>();
+        final SamReader first = openReader(file);
+        readers.add(first);
+        try {
+            final SAMSequenceRecord sequence = first.getFileHeader().getSequence(chr);
+            if (sequence == null) {
+                throw new IllegalArgumentException("The chromosome " + chr + " is not in " + bamFile);
+            }
+            final int end = Math.min(to, sequence.getSequenceLength());
+            final boolean indexed = first.hasIndex();
+            final int threads = indexed ? Math.max(1, threadNum) : 1;
+            final long length = Math.max(0L, (long) end - from + 1);
+            final List<int[]> partitions = partitions(from, end,
+                    (int) Math.max(threads * PARTITIONS_PER_THREAD, (length + MAX_PARTITION - 1) / MAX_PARTITION));
+            final LongAdder totalDepth = new LongAdder();
+            final LongAdder totalCovered = new LongAdder();
+            final CoverageRuns.Builder runs = array ? new CoverageRuns.Builder(spillDirectory) : null;
+            final DepthAccumulator accumulator = new DepthAccumulator(filterList);
+            if (indexed) {
+                countPartitions(threads, partitions, runs, partition -> () -> {
+                    final SamReader reader = takeReader(readers, file);
+                    try {
+                        final int[] depths = accumulator.depths(reader, chr, partition[0], partition[1]);
+                        addTotals(depths, totalDepth, totalCovered);
+                        return depths;
+                    } finally {
+                        readers.add(reader);
+                    }
+                });
+            } else {
+                accumulator.sweep(first, chr, partitions, (partition, depths) -> {
+                    addTotals(depths, totalDepth, totalCovered);
+                    if (runs != null) {
+                        runs.add(depths);
+                    }
+                });
+            }
+            return array
+                    ? new CoverageArray(chr, from, end, totalDepth.sum(), totalCovered.intValue(), minCoverage,
+                    runs.build())
+                    : new Coverage(chr, from, end, totalDepth.sum(), totalCovered.intValue(), minCoverage);
+        } finally {
+            for (SamReader reader : readers) {
+                reader.close();
             }
+        }
+    }
 
-            int finalLastStart = lastStart;
-            int finalGoUntil = goUntil;
-            threads[i] = new Thread(() -> {
-                try {
-                    Coverage v = bamFileBasicCoverage(bamFile, chr, finalLastStart, finalGoUntil);
-                    result.addToTotalCovered(v.getTotalCovered());
-                    result.addToTotalDepth(v.getTotalDepth());
-                } catch (IOException e) {
-                    MultiLogger.get().println("!e IOException when creating basic coverage!");
+    /**
+     * Count partitions on a pool of threads, of which at most two per thread are waiting to be added to the runs.
+     *
+     * @param threads    the amount of threads.
+     * @param partitions the partitions, in order.
+     * @param runs       the runs to add the depths of the partitions to in order, or null to drop the depths.
+     * @param tasks      makes the task that counts the depths of a partition.
+     * @throws IOException if counting failed.
+     */
+    private static void countPartitions(int threads, List<int[]> partitions, CoverageRuns.Builder runs,
+                                        Function<int[], Callable<int[]>> tasks) throws IOException {
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        final Deque<Future<int[]>> pending = new ArrayDeque<>();
+        try {
+            int next = 0;
+            while (next < partitions.size() || !pending.isEmpty()) {
+                while (next < partitions.size() && pending.size() < 2 * threads) {
+                    pending.add(executor.submit(tasks.apply(partitions.get(next++))));
                 }
-            });
-            threads[i].setName("Coverage Thread " + i + "/" + threadNum);
-            threads[i].start();
-            lastStart += parts[i];
+                final int[] depths = get(pending.poll());
+                if (runs != null) {
+                    runs.add(depths);
+                }
+            }
+        } finally {
+            executor.shutdownNow();
         }
+    }
 
-        for (int i = 0; i < threadNum; i++) {
-            try {
-                threads[i].join();
-            } catch (InterruptedException e) {
-                MultiLogger.get().println("!w Wait for '" + threads[i].getName() + "' join interrupted.");
+    /**
+     * Adds the depths of a partition to the totals.
+     *
+     * @param depths       the depths of the bases.
+     * @param totalDepth   the total depth.
+     * @param totalCovered the amount of covered bases.
+     */
+    private void addTotals(int[] depths, LongAdder totalDepth, LongAdder totalCovered) {
+        long depth = 0;
+        int covered = 0;
+        for (int d : depths) {
+            depth += d;
+            if (d > minCoverage) {
+                covered++;
             }
         }
-        return result;
+        totalDepth.add(depth);
+        totalCovered.add(covered);
     }
 
     /**
-     * Split a number in to relatively equal parts.
-     * So 20, 4 would be [5, 5, 5, 5].
+     * Split an interval into partitions that end on the windows of the BAM index, except the last.
+     * There are about as many partitions as asked for, each at least one window long.
      *
-     * @param whole the number.
-     * @param parts the amount of parts.
-     * @return the parts.
+     * @param from  the start of the interval.
+     * @param to    the end of the interval.
+     * @param parts the amount of partitions to aim for.
+     * @return the start and end (inclusive) of every partition.
      */
-    private int[] splitIntoParts(int whole, int parts) {
-        //lets say we do 8 parts.
-        int[] arr = new int[parts];
-        int lastStart = 0;
-        //make parts 1-7 okay-ish
-        for (int i = 0; i < parts - 1; i++) {
-            int sizeToDo = whole / (parts);
-            arr[i] = sizeToDo;
-            lastStart += sizeToDo;
+    static List<int[]> partitions(int from, int to, int parts) {
+        final List<int[]> partitions = new ArrayList<>();
+        long span = ((long) to - from + parts) / parts;
+        span = Math.max(1, (span + INDEX_WINDOW - 1) / INDEX_WINDOW) * INDEX_WINDOW;
+        long start = from;
+        while (start <= to) {
+            final long end = Math.min(to, (start - 1 + span) / INDEX_WINDOW * INDEX_WINDOW);
+            partitions.add(new int[]{(int) start, (int) end});
+            start = end + 1;
+        }
+        return partitions;
+    }
+
+    private static SamReader openReader(File file) {
+        return SamReaderFactory.makeDefault()
+                .validationStringency(ValidationStringency.LENIENT)
+                .open(file);
+    }
+
+    private static SamReader takeReader(Queue<SamReader> readers, File file) {
+        final SamReader reader = readers.poll();
+        return reader != null ? reader : openReader(file);
+    }
+
+    private static <T> T get(Future<T> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while counting the coverage.");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IOException(e.getCause());
         }
-        //make sure part 8 does the rest
-        arr[parts - 1] = whole - lastStart;
-        return arr;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,286 @@
+package coverage;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * The depths of an interval as runs of neighbouring bases with the same depth.
+ * Every run is kept as a pair of its end (the offset after its last base) and its depth, so a region with an even
+ * coverage takes a few bytes instead of four per base. The run of every 4096th base is sampled, so the depth of a
+ * base is found with a binary search between two samples. The runs are kept in memory, or once there are many of
+ * them in a temporary file, which is mapped into memory in chunks and is not counted against the heap.
+ */
+class CoverageRuns {
+    /**
+     * The base of every 2^SAMPLE_SHIFT bases of which the run is sampled.
+     */
+    static final int SAMPLE_SHIFT = 12;
+    private static final int MEMORY_CHUNK_SHIFT = 30;
+    private static final int FILE_CHUNK_SHIFT = 26;
+
+    private final IntBuffer[] chunks;
+    private final int chunkShift;
+    private final int runs;
+    private final int length;
+    private final int[] samples;
+    private final int lowest;
+    private final int highest;
+
+    private CoverageRuns(IntBuffer[] chunks, int chunkShift, int runs, int length, int[] samples,
+                         int lowest, int highest) {
+        this.chunks = chunks;
+        this.chunkShift = chunkShift;
+        this.runs = runs;
+        this.length = length;
+        this.samples = samples;
+        this.lowest = lowest;
+        this.highest = highest;
+    }
+
+    /**
+     * Get the amount of runs.
+     *
+     * @return the amount of runs.
+     */
+    int runs() {
+        return runs;
+    }
+
+    /**
+     * Get the amount of bases.
+     *
+     * @return the amount of bases of all runs together.
+     */
+    int length() {
+        return length;
+    }
+
+    /**
+     * Get the offset of the first base of a run.
+     *
+     * @param run the index of the run.
+     * @return the offset, 0 for the first base of the interval.
+     */
+    int start(int run) {
+        return run == 0 ? 0 : end(run - 1);
+    }
+
+    /**
+     * Get the offset after the last base of a run.
+     *
+     * @param run the index of the run.
+     * @return the offset after the run.
+     */
+    int end(int run) {
+        return chunks[run >>> chunkShift].get((run & ((1 << chunkShift) - 1)) << 1);
+    }
+
+    /**
+     * Get the depth of a run.
+     *
+     * @param run the index of the run.
+     * @return the depth of every base of the run.
+     */
+    int depth(int run) {
+        return chunks[run >>> chunkShift].get(((run & ((1 << chunkShift) - 1)) << 1) + 1);
+    }
+
+    /**
+     * Get the depth of a base.
+     *
+     * @param index the offset of the base, 0 for the first base of the interval.
+     * @return the depth.
+     */
+    int depthAt(int index) {
+        if (index < 0 || index >= length) {
+            throw new IndexOutOfBoundsException("Base " + index + " is not in the " + length + " bases.");
+        }
+        final int sample = index >>> SAMPLE_SHIFT;
+        int low = samples[sample];
+        int high = sample + 1 < samples.length ? samples[sample + 1] : runs - 1;
+        while (low < high) {
+            final int middle = (low + high) >>> 1;
+            if (end(middle) <= index) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return depth(low);
+    }
+
+    /**
+     * Get the lowest depth.
+     *
+     * @return the lowest depth of a base, or 0 if there are no bases.
+     */
+    int lowest() {
+        return lowest;
+    }
+
+    /**
+     * Get the highest depth.
+     *
+     * @return the highest depth of a base, or 0 if there are no bases.
+     */
+    int highest() {
+        return highest;
+    }
+
+    /**
+     * Builds the runs from depths that are added in order.
+     */
+    static final class Builder {
+        /**
+         * The amount of runs that is kept in memory before the runs are spilled to a file.
+         */
+        static final int MEMORY_RUNS = 1 << 20;
+
+        private final File spillDirectory;
+        private final int memoryRuns;
+        private int[] pairs = new int[64];
+        private int count;
+        private int spilled;
+        private int[] samples = new int[16];
+        private int sampleCount;
+        private int length;
+        private int runDepth;
+        private int runLength;
+        private int lowest = Integer.MAX_VALUE;
+        private int highest = Integer.MIN_VALUE;
+        private File file;
+        private FileChannel channel;
+
+        /**
+         * Creates a builder.
+         *
+         * @param spillDirectory the directory in which the runs are spilled to a temporary file once there are
+         *                       many, or null to keep all runs in memory.
+         */
+        Builder(File spillDirectory) {
+            this(spillDirectory, MEMORY_RUNS);
+        }
+
+        /**
+         * Creates a builder.
+         *
+         * @param spillDirectory the directory in which the runs are spilled to a temporary file, or null to keep
+         *                       all runs in memory.
+         * @param memoryRuns     the amount of runs kept in memory before they are spilled.
+         */
+        Builder(File spillDirectory, int memoryRuns) {
+            if (memoryRuns < 1) {
+                throw new IllegalArgumentException("At least one run must be kept in memory.");
+            }
+            this.spillDirectory = spillDirectory;
+            this.memoryRuns = memoryRuns;
+        }
+
+        /**
+         * Adds the depths of the next bases.
+         *
+         * @param depths the depths.
+         * @throws IOException if the runs could not be spilled.
+         */
+        void add(int[] depths) throws IOException {
+            for (int depth : depths) {
+                if (runLength > 0 && depth != runDepth) {
+                    commit();
+                }
+                runDepth = depth;
+                runLength++;
+            }
+        }
+
+        /**
+         * Builds the runs. The builder can not be used afterwards.
+         *
+         * @return the runs.
+         * @throws IOException if the spilled runs could not be mapped.
+         */
+        CoverageRuns build() throws IOException {
+            if (runLength > 0) {
+                commit();
+            }
+            final int[] sampled = Arrays.copyOf(samples, sampleCount);
+            final int low = length == 0 ? 0 : lowest;
+            final int high = length == 0 ? 0 : highest;
+            if (channel == null) {
+                return new CoverageRuns(new IntBuffer[]{IntBuffer.wrap(pairs)}, MEMORY_CHUNK_SHIFT, count, length,
+                        sampled, low, high);
+            }
+            spill();
+            final int runs = spilled;
+            final long chunkBytes = 8L << FILE_CHUNK_SHIFT;
+            final IntBuffer[] chunks = new IntBuffer[(int) ((8L * runs + chunkBytes - 1) / chunkBytes)];
+            try {
+                for (int i = 0; i < chunks.length; i++) {
+                    final long position = i * chunkBytes;
+                    chunks[i] = channel.map(FileChannel.MapMode.READ_ONLY, position,
+                            Math.min(chunkBytes, 8L * runs - position)).asIntBuffer();
+                }
+            } finally {
+                channel.close();
+                // a mapping stays valid after its file is deleted, except on systems that refuse the deletion.
+                if (!file.delete()) {
+                    file.deleteOnExit();
+                }
+            }
+            return new CoverageRuns(chunks, FILE_CHUNK_SHIFT, runs, length, sampled, low, high);
+        }
+
+        /**
+         * Ends the current run, samples the run of the sampled bases in it and spills the runs if there are many.
+         *
+         * @throws IOException if the runs could not be spilled.
+         */
+        private void commit() throws IOException {
+            final int run = spilled + count;
+            final int end = length + runLength;
+            while (((long) sampleCount << SAMPLE_SHIFT) < end) {
+                if (sampleCount == samples.length) {
+                    samples = Arrays.copyOf(samples, 2 * samples.length);
+                }
+                samples[sampleCount++] = run;
+            }
+            if (2 * count == pairs.length) {
+                pairs = Arrays.copyOf(pairs, 2 * pairs.length);
+            }
+            pairs[2 * count] = end;
+            pairs[2 * count + 1] = runDepth;
+            count++;
+            length = end;
+            lowest = Math.min(lowest, runDepth);
+            highest = Math.max(highest, runDepth);
+            runLength = 0;
+            if (spillDirectory != null && count == memoryRuns) {
+                spill();
+            }
+        }
+
+        /**
+         * Appends the runs in memory to the temporary file.
+         *
+         * @throws IOException if the file could not be written.
+         */
+        private void spill() throws IOException {
+            if (channel == null) {
+                file = File.createTempFile("coverage", ".tmp", spillDirectory);
+                file.deleteOnExit();
+                channel = FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+            }
+            final ByteBuffer bytes = ByteBuffer.allocate(8 * count);
+            bytes.asIntBuffer().put(pairs, 0, 2 * count);
+            while (bytes.hasRemaining()) {
+                channel.write(bytes, channel.size());
+            }
+            spilled += count;
+            count = 0;
+        }
+    }
+}
@@ -0,0 +1,204 @@
+package coverage;
+
+import htsjdk.samtools.AlignmentBlock;
+import htsjdk.samtools.QueryInterval;
+import htsjdk.samtools.SAMFileHeader;
+import htsjdk.samtools.SAMRecord;
+import htsjdk.samtools.SAMRecordIterator;
+import htsjdk.samtools.SamReader;
+import htsjdk.samtools.filter.AggregateFilter;
+import htsjdk.samtools.filter.SamRecordFilter;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Counts the depth of every base of an interval by walking over the reads once.
+ * Every aligned block of a read that passes the filters adds one at the first base it covers and removes one
+ * after the last, in a difference array over the interval, of which the prefix sum gives the depths.
+ * Like the locus iterator of htsjdk, only the aligned bases of a read are counted, so deletions, skipped regions
+ * and clipped bases are not, and the bases of overlapping mates are counted for both mates.
+ */
+class DepthAccumulator {
+    private final SamRecordFilter filter;
+
+    /**
+     * Creates an accumulator.
+     *
+     * @param filters the filters of the reads, of which the reads that are filtered out are not counted.
+     */
+    DepthAccumulator(List<SamRecordFilter> filters) {
+        this.filter = new AggregateFilter(filters);
+    }
+
+    /**
+     * Counts the depths of an interval.
+     * The reads are queried through the index if there is one, otherwise the file is read from the start,
+     * until the reads of a coordinate sorted file are past the interval.
+     *
+     * @param reader the reads.
+     * @param chr    the chromosome of the interval.
+     * @param from   the first position (1-index) of the interval.
+     * @param to     the last position (1-index) of the interval, inclusive.
+     * @return the depth of every position, the first position at index 0, or no depths if the interval is empty.
+     * @throws IOException if the depths could not be handed out.
+     */
+    int[] depths(SamReader reader, String chr, int from, int to) throws IOException {
+        if (to < from) {
+            return new int[0];
+        }
+        final int[][] result = new int[1][];
+        sweep(reader, chr, Collections.singletonList(new int[]{from, to}), (cluster, depths) -> result[0] = depths);
+        return result[0];
+    }
+
+    /**
+     * Counts the depths of several intervals in one pass over the reads.
+     * The intervals must be sorted and must not overlap, so a read is added to the intervals it overlaps,
+     * which are found with a binary search. The reads are queried through the index for all intervals at once
+     * if there is one, otherwise the file is read from the start. The reads of a coordinate sorted file are read
+     * in order, so an interval is handed out and forgotten as soon as the reads start past it, and the reading
+     * stops after the last interval. Otherwise the intervals are handed out after all reads are read.
+     *
+     * @param reader    the reads.
+     * @param chr       the chromosome of the intervals.
+     * @param intervals the first and last position (1-index, inclusive) of every interval, none of them empty.
+     * @param consumer  receives the index of every interval with its depths, in the order of the intervals.
+     * @throws IOException if the consumer failed.
+     */
+    void sweep(SamReader reader, String chr, List<int[]> intervals, DepthConsumer consumer) throws IOException {
+        final SAMFileHeader header = reader.getFileHeader();
+        final int referenceIndex = header.getSequenceIndex(chr);
+        final boolean sorted = header.getSortOrder() == SAMFileHeader.SortOrder.coordinate;
+        final int[][] differences = new int[intervals.size()][];
+        int first = 0;
+        try (SAMRecordIterator records = query(reader, referenceIndex, intervals)) {
+            while (first < intervals.size() && records.hasNext()) {
+                final SAMRecord record = records.next();
+                if (record.getReadUnmappedFlag() || record.getReferenceIndex() != referenceIndex) {
+                    if (sorted && record.getReferenceIndex() > referenceIndex) {
+                        break;
+                    }
+                    continue;
+                }
+                final int start = record.getAlignmentStart();
+                while (sorted && first < intervals.size() && intervals.get(first)[1] < start) {
+                    finish(intervals, differences, first++, consumer);
+                }
+                int i = firstEndingFrom(intervals, first, start);
+                if (i < intervals.size() && intervals.get(i)[0] <= record.getAlignmentEnd()
+                        && !filter.filterOut(record)) {
+                    for (; i < intervals.size() && intervals.get(i)[0] <= record.getAlignmentEnd(); i++) {
+                        final int[] interval = intervals.get(i);
+                        if (differences[i] == null) {
+                            differences[i] = new int[interval[1] - interval[0] + 1];
+                        }
+                        addBlocks(differences[i], record, interval[0], interval[1]);
+                    }
+                }
+            }
+        }
+        while (first < intervals.size()) {
+            finish(intervals, differences, first++, consumer);
+        }
+    }
+
+    /**
+     * Queries the reads of the intervals through the index, or iterates over all reads if there is no index.
+     *
+     * @param reader         the reads.
+     * @param referenceIndex the index of the chromosome.
+     * @param intervals      the sorted intervals.
+     * @return the reads.
+     */
+    private static SAMRecordIterator query(SamReader reader, int referenceIndex, List<int[]> intervals) {
+        if (!reader.hasIndex() || referenceIndex < 0) {
+            return reader.iterator();
+        }
+        final QueryInterval[] queries = new QueryInterval[intervals.size()];
+        for (int i = 0; i < queries.length; i++) {
+            queries[i] = new QueryInterval(referenceIndex, intervals.get(i)[0], intervals.get(i)[1]);
+        }
+        return reader.queryOverlapping(QueryInterval.optimizeIntervals(queries));
+    }
+
+    /**
+     * Finds the first interval from an index that ends at or after a position.
+     *
+     * @param intervals the sorted intervals, of which the ends are sorted as well.
+     * @param from      the index to search from.
+     * @param position  the position.
+     * @return the index of the interval, or the amount of intervals if all end before the position.
+     */
+    private static int firstEndingFrom(List<int[]> intervals, int from, int position) {
+        int low = from;
+        int high = intervals.size();
+        while (low < high) {
+            final int middle = (low + high) >>> 1;
+            if (intervals.get(middle)[1] < position) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Turns the difference array of an interval into its depths and hands them out.
+     *
+     * @param intervals   the intervals.
+     * @param differences the difference arrays, of which that of the interval is dropped.
+     * @param index       the index of the interval.
+     * @param consumer    receives the depths.
+     * @throws IOException if the consumer failed.
+     */
+    private static void finish(List<int[]> intervals, int[][] differences, int index,
+                               DepthConsumer consumer) throws IOException {
+        int[] depths = differences[index];
+        differences[index] = null;
+        if (depths == null) {
+            depths = new int[intervals.get(index)[1] - intervals.get(index)[0] + 1];
+        }
+        for (int i = 1; i < depths.length; i++) {
+            depths[i] += depths[i - 1];
+        }
+        consumer.accept(index, depths);
+    }
+
+    /**
+     * Adds the aligned blocks of a read to the difference array.
+     *
+     * @param differences the difference array.
+     * @param record      the read.
+     * @param from        the first position of the interval.
+     * @param to          the last position of the interval.
+     */
+    private static void addBlocks(int[] differences, SAMRecord record, int from, int to) {
+        for (AlignmentBlock block : record.getAlignmentBlocks()) {
+            final int start = Math.max(block.getReferenceStart(), from);
+            final int end = Math.min(block.getReferenceStart() + block.getLength() - 1, to);
+            if (start <= end) {
+                differences[start - from]++;
+                if (end < to) {
+                    differences[end + 1 - from]--;
+                }
+            }
+        }
+    }
+
+    /**
+     * Receives the depths of the intervals of a sweep.
+     */
+    interface DepthConsumer {
+        /**
+         * Receives the depths of an interval.
+         *
+         * @param interval the index of the interval.
+         * @param depths   the depth of every position of the interval.
+         * @throws IOException if the depths could not be used.
+         */
+        void accept(int interval, int[] depths) throws IOException;
+    }
+}
@@ -0,0 +1,69 @@
+package coverage;
+
+/**
+ * Coverage of one region of a table, which keeps the percentiles of the depths instead of the depth of every base.
+ */
+public class RegionCoverage extends Coverage {
+    /**
+     * The percentiles that are kept of the depths.
+     */
+    public static final int[] PERCENTILES = {5, 25, 50, 75, 95};
+
+    /**
+     * The depth at every percentile of {@link #PERCENTILES}.
+     */
+    private final int[] percentileDepths;
+
+    /**
+     * Constructor counting the totals and percentiles of a slice of depths.
+     *
+     * @param chr             the chromosome string we looked at.
+     * @param from            the start coverage index inclusive.
+     * @param to              the end coverage index inclusive.
+     * @param minimalCoverage the minimal covered after which we consider a base covered.
+     * @param depths          the depths, of which those of the region are used.
+     * @param offset          the index in the depths of the start of the region.
+     */
+    RegionCoverage(String chr, int from, int to, int minimalCoverage, int[] depths, int offset) {
+        super(chr, from, to, 0, 0, minimalCoverage);
+        final int length = to - from + 1;
+        int highest = 0;
+        for (int i = offset; i < offset + length; i++) {
+            highest = Math.max(highest, depths[i]);
+        }
+        // a histogram of the depths, from which the percentiles are read without sorting.
+        final int[] counts = new int[highest + 1];
+        long totalDepth = 0;
+        int totalCovered = 0;
+        for (int i = offset; i < offset + length; i++) {
+            counts[depths[i]]++;
+            totalDepth += depths[i];
+            if (depths[i] > minimalCoverage) {
+                totalCovered++;
+            }
+        }
+        addToTotalDepth(totalDepth);
+        addToTotalCovered(totalCovered);
+        percentileDepths = new int[PERCENTILES.length];
+        int depth = 0;
+        long seen = counts[0];
+        for (int i = 0; i < PERCENTILES.length; i++) {
+            // the nearest rank: the lowest depth of which at least the percentile of the bases has at most that depth.
+            final long rank = Math.max(1, (PERCENTILES[i] * (long) length + 99) / 100);
+            while (seen < rank) {
+                seen += counts[++depth];
+            }
+            percentileDepths[i] = depth;
+        }
+    }
+
+    /**
+     * Get the depth at a percentile.
+     *
+     * @param index the index of the percentile in {@link #PERCENTILES}.
+     * @return the lowest depth of which at least that percentile of the bases has at most that depth.
+     */
+    public int getPercentileDepth(int index) {
+        return percentileDepths[index];
+    }
+}
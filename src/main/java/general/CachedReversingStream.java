@@ -3,64 +3,78 @@ package general;
 import logger.MultiLogger;
 import lombok.NonNull;
 
-import java.io.*;
-import java.util.LinkedList;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
 
 /**
- * This class is used to writeAlt large blocks to an underlying output stream.
- * It will writeAlt to temporary files if needed.
- * Once you flush this stream, everything that was written up until now will
- * be reversely written to the underlying output stream.
+ * This class is used to write large blocks to an underlying output stream in reverse.
+ * It keeps at most one block in memory. A full block is reversed in place and appended to a temporary file,
+ * so the file holds a series of reversed blocks. Once you flush this stream, everything that was written up
+ * until now is written reversely to the underlying output stream: first the block in memory, then the blocks
+ * of the file from the last to the first, each copied in one channel transfer instead of byte by byte.
+ * Brackets are turned around, like in a {@link ReversingStream}.
  */
 public class CachedReversingStream extends OutputStream {
+    /**
+     * The size of the blocks if none is given, 64 MiB.
+     */
+    public static final int DEFAULT_BLOCK_SIZE = 1 << 26;
+    private static final int INITIAL_BUFFER_SIZE = 1 << 13;
 
     private final OutputStream stream;
     private final int blockSize;
+    private final File tempDirectory;
+    private byte[] buffer;
     private int counter;
-    private ReversingStream reversingStream;
-    private LinkedList<File> fileList;
+    private File file;
+    private FileChannel channel;
 
     /**
-     * Calculate a block size that fits in the current free memory.
-     * The block size can be at most the value of {@link Integer#MAX_VALUE}.
-     * Otherwise it will use 0.8 times the free space as block size.
+     * Creates a new stream with the underlying outputstream, with blocks of the default size.
      *
-     * @return the block size.
+     * @param stream The outputstream.
      */
-    private static int getBlockSize() {
-        long free = Runtime.getRuntime().freeMemory();
-        if (free * 8 / 10 > Integer.MAX_VALUE) {
-            return Integer.MAX_VALUE;
-        }
-        return Math.toIntExact(free * 8 / 10);
+    public CachedReversingStream(OutputStream stream) {
+        this(stream, DEFAULT_BLOCK_SIZE);
     }
 
     /**
      * Creates a new stream with the underlying outputstream.
+     * It will write to files in blocks of at most block size, to avoid having too large
+     * chunks in memory. The files are made in the temporary directory of the system.
      *
-     * @param stream The outputstream.
+     * @param stream    The underlying outputstream.
+     * @param blockSize The block size.
      */
-    public CachedReversingStream(OutputStream stream) {
-        this(stream, CachedReversingStream.getBlockSize());
+    public CachedReversingStream(@NonNull OutputStream stream, int blockSize) {
+        this(stream, blockSize, null);
     }
 
-
     /**
      * Creates a new stream with the underlying outputstream.
-     * It will writeAlt to files of max block_size to avoid having to large
-     * chunks in memory.
+     * It will write to a file in blocks of at most block size, to avoid having too large
+     * chunks in memory. The buffer of a block grows while it is written, so a short stream
+     * does not take a whole block of memory.
      *
-     * @param stream    The underlying outputstream.
-     * @param blockSize The block size.
+     * @param stream        The underlying outputstream.
+     * @param blockSize     The block size.
+     * @param tempDirectory The directory for the temporary file, or null for the temporary directory of the system.
      */
-    public CachedReversingStream(@NonNull OutputStream stream, int blockSize) {
+    public CachedReversingStream(@NonNull OutputStream stream, int blockSize, File tempDirectory) {
         if (blockSize <= 0) {
             throw new IllegalArgumentException("Block size cannot by zero or negative");
         }
         this.stream = stream;
         this.blockSize = blockSize;
-        this.counter = 0;
-        this.fileList = new LinkedList<>();
+        this.tempDirectory = tempDirectory;
+        this.buffer = new byte[Math.min(blockSize, INITIAL_BUFFER_SIZE)];
     }
 
     /**
@@ -68,34 +82,65 @@ public class CachedReversingStream extends OutputStream {
      */
     @Override
     public void write(int b) throws IOException {
-        if (this.counter == blockSize || reversingStream == null) {
-            this.newReversingStream();
-            this.counter = 0;
+        if (counter == blockSize) {
+            spill();
         }
-
-        reversingStream.write(b);
-
-        this.counter++;
+        ensureCapacity(counter + 1);
+        buffer[counter++] = (byte) b;
     }
 
-
-    private void newReversingStream() throws IOException {
-        if (reversingStream != null) {
-            reversingStream.close();
+    /**
+     * @inheritDocs
+     */
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        int written = 0;
+        while (written < len) {
+            if (counter == blockSize) {
+                spill();
+            }
+            final int length = Math.min(len - written, blockSize - counter);
+            ensureCapacity(counter + length);
+            System.arraycopy(b, off + written, buffer, counter, length);
+            counter += length;
+            written += length;
         }
+    }
 
-        String folder = "temp";
-        String fileName = "stream" + fileList.size() + ".tmp";
-        File root = new File(folder);
-        File file = new File(root, fileName);
-        file.deleteOnExit();
+    private void ensureCapacity(int capacity) {
+        if (capacity > buffer.length) {
+            buffer = Arrays.copyOf(buffer, (int) Math.min(blockSize, Math.max(capacity, 2L * buffer.length)));
+        }
+    }
 
-        if (!root.mkdir() || !file.createNewFile()) {
-            MultiLogger.get().println("!w Could not create file, maybe the file already exists?");
+    /**
+     * Reverses the full block in place and appends it to the temporary file.
+     *
+     * @throws IOException if the file could not be written.
+     */
+    private void spill() throws IOException {
+        if (channel == null) {
+            file = File.createTempFile("reverse", ".tmp", tempDirectory);
+            file.deleteOnExit();
+            channel = FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+        }
+        reverse();
+        final ByteBuffer block = ByteBuffer.wrap(buffer, 0, counter);
+        while (block.hasRemaining()) {
+            channel.write(block, channel.size());
         }
+        counter = 0;
+    }
 
-        fileList.addFirst(file);
-        reversingStream = new ReversingStream(new FileOutputStream(file), this.blockSize);
+    /**
+     * Reverses the block in memory in place, turning the brackets around.
+     */
+    private void reverse() {
+        for (int i = 0, j = counter - 1; i <= j; i++, j--) {
+            final byte first = ReversingStream.reverseBracket(buffer[i]);
+            buffer[i] = ReversingStream.reverseBracket(buffer[j]);
+            buffer[j] = first;
+        }
     }
 
     /**
@@ -103,46 +148,56 @@ public class CachedReversingStream extends OutputStream {
      */
     @Override
     public void close() throws IOException {
-        flush();
-        reversingStream.close();
-        stream.close();
+        try {
+            flush();
+        } finally {
+            deleteFile();
+            stream.close();
+        }
     }
 
-
     /**
      * @inheritDocs
      */
     @Override
     public void flush() throws IOException {
-        reversingStream.flush();
-        writeFromFiles();
-        deleteFiles();
+        reverse();
+        stream.write(buffer, 0, counter);
+        counter = 0;
+        if (channel != null) {
+            try {
+                writeFromFile();
+            } finally {
+                deleteFile();
+            }
+        }
         stream.flush();
     }
 
-    private void deleteFiles() {
-        for (File file : fileList) {
-            if (!file.delete()) {
-                MultiLogger.get().println("!w Could not delete file:" + file.getAbsolutePath());
+    /**
+     * Copies the blocks of the temporary file to the stream, from the last to the first.
+     *
+     * @throws IOException if the file could not be read or the stream could not be written.
+     */
+    private void writeFromFile() throws IOException {
+        final WritableByteChannel destination = Channels.newChannel(stream);
+        for (long start = channel.size() - blockSize; start >= 0; start -= blockSize) {
+            long transferred = 0;
+            while (transferred < blockSize) {
+                transferred += channel.transferTo(start + transferred, blockSize - transferred, destination);
             }
         }
     }
 
-    private void writeFromFiles() throws IOException {
-        for (File file : fileList) {
-            FileInputStream fileInputStream = new FileInputStream(file);
-            try {
-                int read = fileInputStream.read();
-                while (read != -1) {
-                    stream.write(read);
-                    read = fileInputStream.read();
-                }
-            } catch (IOException e) {
-                fileInputStream.close();
-                throw e;
-            }
-
-            fileInputStream.close();
+    private void deleteFile() throws IOException {
+        if (channel == null) {
+            return;
+        }
+        channel.close();
+        channel = null;
+        if (!file.delete()) {
+            MultiLogger.get().println("!w Could not delete file:" + file.getAbsolutePath());
         }
+        file = null;
     }
 }
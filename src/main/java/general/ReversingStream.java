@@ -32,7 +32,14 @@ public class ReversingStream extends OutputStream {
         this.buffer = new byte[size];
     }
 
-    private byte reverseBracket(byte b) {
+    /**
+     * Turns a bracket around, as the brackets around a heterozygous or inserted part are swapped when
+     * the sequence is reversed.
+     *
+     * @param b the byte.
+     * @return the opposite bracket, or the byte itself if it is not a bracket.
+     */
+    public static byte reverseBracket(byte b) {
         switch (b) {
             case (byte) '(':
                 b = ')';
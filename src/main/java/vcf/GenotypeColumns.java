@@ -0,0 +1,62 @@
+package vcf;
+
+import htsjdk.variant.variantcontext.GenotypesContext;
+import htsjdk.variant.variantcontext.LazyGenotypesContext;
+import htsjdk.variant.variantcontext.VariantContext;
+
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * The start of every sample column in the raw genotype data of records.
+ * A record is indexed once, by one thread, after which readers of single samples on any thread
+ * find the column of their sample directly instead of scanning all the columns before it.
+ * Genotypes that are not raw VCF text are decoded while indexing, so they are not decoded concurrently later.
+ */
+public final class GenotypeColumns {
+    private final Map<VariantContext, int[]> starts = new IdentityHashMap<>();
+
+    /**
+     * Indexes the sample columns of a record.
+     *
+     * @param record the record.
+     */
+    public void index(VariantContext record) {
+        final GenotypesContext genotypes = record.getGenotypes();
+        if (!(genotypes instanceof LazyGenotypesContext)) {
+            return;
+        }
+        final Object data = ((LazyGenotypesContext) genotypes).getUnparsedGenotypeData();
+        if (!(data instanceof String)) {
+            ((LazyGenotypesContext) genotypes).decode();
+            return;
+        }
+        final String raw = (String) data;
+        int[] columns = new int[genotypes.size()];
+        int count = 0;
+        int tab = raw.indexOf('\t');
+        while (tab != -1 && count < columns.length) {
+            columns[count++] = tab + 1;
+            tab = raw.indexOf('\t', tab + 1);
+        }
+        starts.put(record, count == columns.length ? columns : Arrays.copyOf(columns, count));
+    }
+
+    /**
+     * Get the column starts of an indexed record.
+     *
+     * @param record the record.
+     * @return the index in the raw genotype data of every sample column, or null if the record is not indexed.
+     */
+    int[] getStarts(VariantContext record) {
+        return starts.get(record);
+    }
+
+    /**
+     * Forgets all indexed records.
+     */
+    public void clear() {
+        starts.clear();
+    }
+}
@@ -0,0 +1,436 @@
+package vcf;
+
+import htsjdk.variant.variantcontext.Allele;
+import htsjdk.variant.variantcontext.Genotype;
+import htsjdk.variant.variantcontext.GenotypesContext;
+import htsjdk.variant.variantcontext.LazyGenotypesContext;
+import htsjdk.variant.variantcontext.VariantContext;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Reads the integer values of one FORMAT key for one sample of a record.
+ * For records read from a VCF file the genotypes are not decoded by htsjdk until they are used,
+ * this reader scans the raw genotype columns instead, so only the requested field of the
+ * requested sample is parsed and no {@link Genotype} objects are created.
+ * Records of which the genotypes are already decoded, or that come from BCF, are read through
+ * the decoded genotype instead.
+ * The GT field can also be read as the dosage of every allele, see {@link #readDosages(VariantContext, int[])},
+ * or as the allele of every haplotype, see {@link #readGenotype(VariantContext, int)}.
+ */
+public final class GenotypeFieldReader {
+    /**
+     * The value read for a missing value, written as '.', which keeps its place among the other values.
+     */
+    public static final int MISSING = Integer.MIN_VALUE;
+
+    private final String key;
+    private final GenotypeColumns columns;
+    private String lastFormat;
+    private int lastKeyIndex;
+    private int[] values = new int[4];
+    private int size;
+    private boolean phased;
+
+    /**
+     * Creates a reader for a FORMAT key.
+     *
+     * @param key the FORMAT key, like GQ, DP or AD.
+     */
+    public GenotypeFieldReader(String key) {
+        this(key, null);
+    }
+
+    /**
+     * Creates a reader for a FORMAT key that finds sample columns through a shared index.
+     *
+     * @param key     the FORMAT key, like GQ, DP or AD.
+     * @param columns the index of the sample columns, or null to scan the columns.
+     */
+    public GenotypeFieldReader(String key, GenotypeColumns columns) {
+        this.key = key;
+        this.columns = columns;
+    }
+
+    /**
+     * Reads the values of the key for a sample.
+     * A missing value, written as '.', is read as {@link #MISSING}, so the values of a field like AD stay
+     * at the index of their allele. A field of only missing values is read as missing.
+     *
+     * @param record the record.
+     * @param sample the index of the sample in the genotype columns.
+     * @return the amount of values read, 0 if the field is missing.
+     */
+    public int read(VariantContext record, int sample) {
+        size = 0;
+        final GenotypesContext genotypes = record.getGenotypes();
+        if (genotypes instanceof LazyGenotypesContext) {
+            final Object data = ((LazyGenotypesContext) genotypes).getUnparsedGenotypeData();
+            if (data instanceof String) {
+                readRaw(record, (String) data, sample);
+                return presentSize();
+            }
+        }
+        if (sample < genotypes.size()) {
+            readDecoded(genotypes.get(sample));
+        }
+        return presentSize();
+    }
+
+    /**
+     * Get the amount of values read, unless all of them are missing.
+     *
+     * @return the amount of values, or 0 if no value is present.
+     */
+    private int presentSize() {
+        for (int i = 0; i < size; i++) {
+            if (values[i] != MISSING) {
+                return size;
+            }
+        }
+        size = 0;
+        return size;
+    }
+
+    /**
+     * Get a value read by the last call of {@link #read(VariantContext, int)}.
+     *
+     * @param i the index of the value.
+     * @return the value.
+     */
+    public int getValue(int i) {
+        return values[i];
+    }
+
+    /**
+     * Counts the alleles in the GT field of every sample, which gives the dosage of each allele.
+     * For a tetraploid 0/1/1/2 the dosages of the alleles 0, 1 and 2 are 1, 2 and 1.
+     * Missing alleles, written as '.', and allele indices beyond the array are not counted.
+     * This reader must be created with the key GT.
+     *
+     * @param record  the record.
+     * @param dosages the dosage per allele index, counted from the values in the array.
+     * @return the total amount of counted alleles.
+     */
+    public int readDosages(VariantContext record, int[] dosages) {
+        final GenotypesContext genotypes = record.getGenotypes();
+        if (genotypes instanceof LazyGenotypesContext) {
+            final Object data = ((LazyGenotypesContext) genotypes).getUnparsedGenotypeData();
+            if (data instanceof String) {
+                return readRawDosages((String) data, dosages);
+            }
+        }
+        int total = 0;
+        for (int i = 0; i < genotypes.size(); i++) {
+            for (Allele allele : genotypes.get(i).getAlleles()) {
+                final int index = allele.isCalled() ? record.getAlleleIndex(allele) : -1;
+                if (index >= 0 && index < dosages.length) {
+                    dosages[index]++;
+                    total++;
+                }
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Counts the alleles in the GT field of one sample, see {@link #readDosages(VariantContext, int[])}.
+     *
+     * @param record  the record.
+     * @param sample  the index of the sample in the genotype columns.
+     * @param dosages the dosage per allele index, counted from the values in the array.
+     * @return the amount of counted alleles.
+     */
+    public int readDosages(VariantContext record, int sample, int[] dosages) {
+        final GenotypesContext genotypes = record.getGenotypes();
+        if (genotypes instanceof LazyGenotypesContext) {
+            final Object data = ((LazyGenotypesContext) genotypes).getUnparsedGenotypeData();
+            if (data instanceof String) {
+                final String raw = (String) data;
+                final int formatEnd = raw.indexOf('\t');
+                final int keyIndex = formatEnd == -1 ? -1 : keyIndex(raw, formatEnd);
+                final int fieldStart = keyIndex == -1 ? -1
+                        : fieldStart(raw, columnStart(record, raw, formatEnd, sample), keyIndex);
+                return fieldStart == -1 ? 0 : countAlleles(raw, fieldStart, dosages);
+            }
+        }
+        int total = 0;
+        if (sample < genotypes.size()) {
+            for (Allele allele : genotypes.get(sample).getAlleles()) {
+                final int index = allele.isCalled() ? record.getAlleleIndex(allele) : -1;
+                total += count(index, dosages);
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Reads the allele indices in the GT field of a sample, in the order of the haplotypes.
+     * For the phased genotype 0|1|1|0 the values are 0, 1, 1 and 0. A missing allele, written as '.', is read as -1.
+     * The values are read with {@link #getValue(int)} and whether the genotype is phased with {@link #isPhased()}.
+     * This reader must be created with the key GT.
+     *
+     * @param record the record.
+     * @param sample the index of the sample in the genotype columns.
+     * @return the amount of alleles read, the ploidy, 0 if the field is missing.
+     */
+    public int readGenotype(VariantContext record, int sample) {
+        size = 0;
+        phased = true;
+        final GenotypesContext genotypes = record.getGenotypes();
+        if (genotypes instanceof LazyGenotypesContext) {
+            final Object data = ((LazyGenotypesContext) genotypes).getUnparsedGenotypeData();
+            if (data instanceof String) {
+                final String raw = (String) data;
+                final int formatEnd = raw.indexOf('\t');
+                final int keyIndex = formatEnd == -1 ? -1 : keyIndex(raw, formatEnd);
+                final int fieldStart = keyIndex == -1 ? -1
+                        : fieldStart(raw, columnStart(record, raw, formatEnd, sample), keyIndex);
+                if (fieldStart != -1) {
+                    parseGenotype(raw, fieldStart);
+                }
+                return size;
+            }
+        }
+        if (sample < genotypes.size()) {
+            final Genotype genotype = genotypes.get(sample);
+            for (Allele allele : genotype.getAlleles()) {
+                add(allele.isCalled() ? record.getAlleleIndex(allele) : -1);
+            }
+            phased = genotype.isPhased() || size < 2;
+        }
+        return size;
+    }
+
+    /**
+     * Checks whether the genotype read by the last call of {@link #readGenotype(VariantContext, int)} is phased.
+     * A genotype with a single allele is phased.
+     *
+     * @return false if any of the alleles is separated by '/'.
+     */
+    public boolean isPhased() {
+        return phased;
+    }
+
+    /**
+     * Parses the alleles of one genotype, in the form "0|1|.".
+     *
+     * @param data the raw genotype columns.
+     * @param from the start of the genotype.
+     */
+    private void parseGenotype(String data, int from) {
+        int index = -1;
+        for (int i = from; i <= data.length(); i++) {
+            final char c = i == data.length() ? '\t' : data.charAt(i);
+            if (c >= '0' && c <= '9') {
+                index = (index == -1 ? 0 : index * 10) + c - '0';
+            } else if (c == '/' || c == '|') {
+                add(index);
+                index = -1;
+                phased &= c == '|';
+            } else if (c != '.') {
+                // the end of the field or the column
+                add(index);
+                return;
+            }
+        }
+    }
+
+    private int readRawDosages(String data, int[] dosages) {
+        final int formatEnd = data.indexOf('\t');
+        final int keyIndex = formatEnd == -1 ? -1 : keyIndex(data, formatEnd);
+        if (keyIndex == -1) {
+            return 0;
+        }
+        int total = 0;
+        int columnStart = formatEnd + 1;
+        while (columnStart > 0) {
+            final int fieldStart = fieldStart(data, columnStart, keyIndex);
+            if (fieldStart != -1) {
+                total += countAlleles(data, fieldStart, dosages);
+            }
+            columnStart = data.indexOf('\t', columnStart) + 1;
+        }
+        return total;
+    }
+
+    /**
+     * Counts the alleles of one genotype, in the form "0/1|2".
+     *
+     * @param data    the raw genotype columns.
+     * @param from    the start of the genotype.
+     * @param dosages the dosage per allele index.
+     * @return the amount of counted alleles.
+     */
+    private static int countAlleles(String data, int from, int[] dosages) {
+        int counted = 0;
+        int index = -1;
+        for (int i = from; i <= data.length(); i++) {
+            final char c = i == data.length() ? '\t' : data.charAt(i);
+            if (c >= '0' && c <= '9') {
+                index = (index == -1 ? 0 : index * 10) + c - '0';
+            } else if (c == '/' || c == '|' || c == '.') {
+                counted += count(index, dosages);
+                index = -1;
+            } else {
+                // the end of the field or the column
+                return counted + count(index, dosages);
+            }
+        }
+        return counted;
+    }
+
+    private static int count(int index, int[] dosages) {
+        if (index >= 0 && index < dosages.length) {
+            dosages[index]++;
+            return 1;
+        }
+        return 0;
+    }
+
+    /**
+     * Scans the FORMAT column and the sample columns, in the form "GT:DP:AD\t0/1:12:5,7\t...".
+     *
+     * @param record the record.
+     * @param data   the raw genotype columns.
+     * @param sample the index of the sample.
+     */
+    private void readRaw(VariantContext record, String data, int sample) {
+        int formatEnd = data.indexOf('\t');
+        if (formatEnd == -1) {
+            return;
+        }
+        final int keyIndex = keyIndex(data, formatEnd);
+        if (keyIndex == -1) {
+            return;
+        }
+        final int fieldStart = fieldStart(data, columnStart(record, data, formatEnd, sample), keyIndex);
+        if (fieldStart == -1) {
+            return;
+        }
+        final int fieldEnd = indexOf(data, ':', fieldStart);
+        final int end = fieldEnd == -1 ? columnEnd(data, fieldStart) : fieldEnd;
+        parseValues(data, fieldStart, end);
+    }
+
+    /**
+     * Finds the column of a sample, through the shared index if the record is indexed.
+     *
+     * @param record    the record.
+     * @param data      the raw genotype columns.
+     * @param formatEnd the end of the FORMAT column.
+     * @param sample    the index of the sample.
+     * @return the start of the column, or -1 if there is no such sample.
+     */
+    private int columnStart(VariantContext record, String data, int formatEnd, int sample) {
+        final int[] starts = columns == null ? null : columns.getStarts(record);
+        if (starts != null) {
+            return sample < starts.length ? starts[sample] : -1;
+        }
+        int columnStart = formatEnd + 1;
+        for (int i = 0; i < sample; i++) {
+            columnStart = data.indexOf('\t', columnStart) + 1;
+            if (columnStart == 0) {
+                return -1;
+            }
+        }
+        return columnStart;
+    }
+
+    /**
+     * Finds a field in a sample column.
+     *
+     * @param data        the raw genotype columns.
+     * @param columnStart the start of the column, or -1.
+     * @param keyIndex    the index of the field.
+     * @return the start of the field, or -1 if the field is left out of the column.
+     */
+    private static int fieldStart(String data, int columnStart, int keyIndex) {
+        int fieldStart = columnStart;
+        for (int i = 0; i < keyIndex && fieldStart != -1; i++) {
+            final int colon = indexOf(data, ':', fieldStart);
+            // trailing fields may be left out of a sample column
+            fieldStart = colon == -1 ? -1 : colon + 1;
+        }
+        return fieldStart;
+    }
+
+    /**
+     * Finds the index of the key in the FORMAT column, reusing the last result when the column is the same.
+     *
+     * @param data      the raw genotype columns.
+     * @param formatEnd the end of the FORMAT column.
+     * @return the index of the key, or -1 if the key is not in the column.
+     */
+    private int keyIndex(String data, int formatEnd) {
+        if (lastFormat != null && lastFormat.length() == formatEnd && data.startsWith(lastFormat)) {
+            return lastKeyIndex;
+        }
+        lastFormat = data.substring(0, formatEnd);
+        lastKeyIndex = Arrays.asList(lastFormat.split(":")).indexOf(key);
+        return lastKeyIndex;
+    }
+
+    private void parseValues(String data, int from, int to) {
+        int start = from;
+        while (start <= to) {
+            int comma = data.indexOf(',', start);
+            int valueEnd = comma == -1 || comma > to ? to : comma;
+            int value = MISSING;
+            if (valueEnd > start && !(valueEnd - start == 1 && data.charAt(start) == '.')) {
+                try {
+                    value = RecordView.parseInt(data, start, valueEnd);
+                } catch (NumberFormatException ignore) {
+                    // not an integer, handled as missing
+                }
+            }
+            add(value);
+            start = valueEnd + 1;
+        }
+    }
+
+    private void readDecoded(Genotype genotype) {
+        if ("GQ".equals(key) && genotype.hasGQ()) {
+            add(genotype.getGQ());
+        } else if ("DP".equals(key) && genotype.hasDP()) {
+            add(genotype.getDP());
+        } else if ("AD".equals(key) && genotype.hasAD()) {
+            for (int value : genotype.getAD()) {
+                add(value);
+            }
+        } else if (genotype.hasExtendedAttribute(key)) {
+            readObject(genotype.getExtendedAttribute(key));
+        }
+    }
+
+    private void readObject(Object value) {
+        if (value instanceof Number) {
+            add(((Number) value).intValue());
+        } else if (value instanceof String) {
+            parseValues((String) value, 0, ((String) value).length());
+        } else if (value instanceof List) {
+            for (Object element : (List<?>) value) {
+                readObject(element);
+            }
+        }
+    }
+
+    private void add(int value) {
+        if (size == values.length) {
+            values = Arrays.copyOf(values, size * 2);
+        }
+        values[size++] = value;
+    }
+
+    private static int indexOf(String data, char c, int from) {
+        final int end = columnEnd(data, from);
+        final int index = data.indexOf(c, from);
+        return index != -1 && index < end ? index : -1;
+    }
+
+    private static int columnEnd(String data, int from) {
+        final int tab = data.indexOf('\t', from);
+        return tab == -1 ? data.length() : tab;
+    }
+}
@@ -0,0 +1,261 @@
+package vcf;
+
+import htsjdk.variant.variantcontext.VariantContext;
+
+import java.util.List;
+
+/**
+ * A typed view on the INFO fields of a single record.
+ * Every key is parsed at most once per record into primitive fields,
+ * so filters and samplers that look at the same key share the work.
+ * The view of the current thread is reused for every record, so
+ * nothing is allocated in steady state.
+ * Use {@link #of(VariantContext)} to get the view of a record.
+ */
+public final class RecordView {
+    private static final ThreadLocal<RecordView> CURRENT = ThreadLocal.withInitial(RecordView::new);
+
+    private static final int DEPTH = 1;
+    private static final int ALLELE_COUNT = 1 << 1;
+    private static final int ALLELE_FREQUENCY = 1 << 2;
+
+    private VariantContext record;
+    private int parsed;
+
+    private boolean hasDepth;
+    private int depth;
+
+    private int alleleCountSize;
+    private int[] alleleCounts = new int[4];
+
+    private int alleleFrequencySize;
+    private double[] alleleFrequencies = new double[4];
+
+    /**
+     * Private constructor, use {@link #of(VariantContext)}.
+     */
+    private RecordView() {
+    }
+
+    /**
+     * Gets the view of a record.
+     * The returned view is only valid until the next call of this method on the same thread.
+     *
+     * @param record the record.
+     * @return the view of that record.
+     */
+    public static RecordView of(VariantContext record) {
+        RecordView view = CURRENT.get();
+        if (view.record != record) {
+            view.record = record;
+            view.parsed = 0;
+        }
+        return view;
+    }
+
+    /**
+     * Get the record this view currently shows.
+     *
+     * @return the record.
+     */
+    public VariantContext getRecord() {
+        return record;
+    }
+
+    /**
+     * Check if the record has a DP attribute.
+     *
+     * @return true if the record has a depth.
+     */
+    public boolean hasDepth() {
+        parseDepth();
+        return hasDepth;
+    }
+
+    /**
+     * Get the DP attribute, only valid if {@link #hasDepth()} is true.
+     *
+     * @return the depth.
+     */
+    public int getDepth() {
+        parseDepth();
+        return depth;
+    }
+
+    /**
+     * Get the amount of values in the AC attribute, 0 if it is absent.
+     *
+     * @return the amount of allele counts.
+     */
+    public int getAlleleCountSize() {
+        parseAlleleCount();
+        return alleleCountSize;
+    }
+
+    /**
+     * Get a value of the AC attribute.
+     *
+     * @param i the index of the value, smaller than {@link #getAlleleCountSize()}.
+     * @return the allele count.
+     */
+    public int getAlleleCount(int i) {
+        parseAlleleCount();
+        return alleleCounts[i];
+    }
+
+    /**
+     * Get the amount of values in the AF attribute, 0 if it is absent.
+     *
+     * @return the amount of allele frequencies.
+     */
+    public int getAlleleFrequencySize() {
+        parseAlleleFrequency();
+        return alleleFrequencySize;
+    }
+
+    /**
+     * Get a value of the AF attribute.
+     *
+     * @param i the index of the value, smaller than {@link #getAlleleFrequencySize()}.
+     * @return the allele frequency.
+     */
+    public double getAlleleFrequency(int i) {
+        parseAlleleFrequency();
+        return alleleFrequencies[i];
+    }
+
+    private void parseDepth() {
+        if ((parsed & DEPTH) != 0) {
+            return;
+        }
+        Object dp = record.getAttribute("DP");
+        hasDepth = dp instanceof String || dp instanceof Number;
+        if (dp instanceof String) {
+            depth = parseInt((String) dp, 0, ((String) dp).length());
+        } else if (dp instanceof Number) {
+            depth = ((Number) dp).intValue();
+        }
+        // only marked as parsed when it succeeded, so a malformed value fails on every access.
+        parsed |= DEPTH;
+    }
+
+    private void parseAlleleCount() {
+        if ((parsed & ALLELE_COUNT) != 0) {
+            return;
+        }
+        alleleCountSize = 0;
+        Object ac = record.getAttribute("AC");
+        if (ac instanceof List) {
+            for (Object value : (List<?>) ac) {
+                addAlleleCount(value);
+            }
+        } else if (ac != null) {
+            addAlleleCount(ac);
+        }
+        parsed |= ALLELE_COUNT;
+    }
+
+    private void addAlleleCount(Object value) {
+        if (value instanceof Number) {
+            appendAlleleCount(((Number) value).intValue());
+            return;
+        }
+        String s = value.toString();
+        int from = 0;
+        for (int i = 0; i <= s.length(); i++) {
+            if (i == s.length() || s.charAt(i) == ',') {
+                appendAlleleCount(parseInt(s, from, i));
+                from = i + 1;
+            }
+        }
+    }
+
+    private void appendAlleleCount(int count) {
+        if (alleleCountSize == alleleCounts.length) {
+            int[] grown = new int[alleleCounts.length * 2];
+            System.arraycopy(alleleCounts, 0, grown, 0, alleleCountSize);
+            alleleCounts = grown;
+        }
+        alleleCounts[alleleCountSize++] = count;
+    }
+
+    private void parseAlleleFrequency() {
+        if ((parsed & ALLELE_FREQUENCY) != 0) {
+            return;
+        }
+        alleleFrequencySize = 0;
+        Object af = record.getAttribute("AF");
+        if (af instanceof List) {
+            for (Object value : (List<?>) af) {
+                addAlleleFrequency(value);
+            }
+        } else if (af != null) {
+            addAlleleFrequency(af);
+        }
+        parsed |= ALLELE_FREQUENCY;
+    }
+
+    private void addAlleleFrequency(Object value) {
+        if (value instanceof Number) {
+            appendAlleleFrequency(((Number) value).doubleValue());
+            return;
+        }
+        String s = value.toString();
+        if (s.indexOf(',') == -1) {
+            appendAlleleFrequency(Double.parseDouble(s));
+            return;
+        }
+        int from = 0;
+        for (int i = 0; i <= s.length(); i++) {
+            if (i == s.length() || s.charAt(i) == ',') {
+                appendAlleleFrequency(Double.parseDouble(s.substring(from, i)));
+                from = i + 1;
+            }
+        }
+    }
+
+    private void appendAlleleFrequency(double frequency) {
+        if (alleleFrequencySize == alleleFrequencies.length) {
+            double[] grown = new double[alleleFrequencies.length * 2];
+            System.arraycopy(alleleFrequencies, 0, grown, 0, alleleFrequencySize);
+            alleleFrequencies = grown;
+        }
+        alleleFrequencies[alleleFrequencySize++] = frequency;
+    }
+
+    /**
+     * Parse a decimal integer from a part of a string without creating a substring.
+     *
+     * @param s    the string.
+     * @param from the start index, inclusive.
+     * @param to   the end index, exclusive.
+     * @return the parsed integer.
+     * @throws NumberFormatException if the part is not an integer.
+     */
+    static int parseInt(String s, int from, int to) {
+        if (from >= to) {
+            throw new NumberFormatException("For input string: \"\"");
+        }
+        boolean negative = s.charAt(from) == '-';
+        int i = negative || s.charAt(from) == '+' ? from + 1 : from;
+        if (i == to) {
+            throw new NumberFormatException("For input string: \"" + s.substring(from, to) + "\"");
+        }
+        long result = 0;
+        for (; i < to; i++) {
+            int digit = s.charAt(i) - '0';
+            if (digit < 0 || digit > 9) {
+                throw new NumberFormatException("For input string: \"" + s.substring(from, to) + "\"");
+            }
+            result = result * 10 + digit;
+            if (result > (long) Integer.MAX_VALUE + 1) {
+                throw new NumberFormatException("For input string: \"" + s.substring(from, to) + "\"");
+            }
+        }
+        result = negative ? -result : result;
+        if (result > Integer.MAX_VALUE) {
+            throw new NumberFormatException("For input string: \"" + s.substring(from, to) + "\"");
+        }
+        return (int) result;
+    }
+}
@@ -4,10 +4,10 @@ import htsjdk.samtools.util.CloseableIterator;
 import htsjdk.tribble.index.IndexFactory;
 import htsjdk.tribble.index.tabix.TabixFormat;
 import htsjdk.variant.variantcontext.VariantContext;
-import htsjdk.variant.vcf.VCFCodec;
 import htsjdk.variant.vcf.VCFFileReader;
 import lombok.Getter;
 import lombok.NonNull;
+import vcf.iterator.IupacVCFCodec;
 
 import java.io.File;
 import java.io.IOException;
@@ -139,16 +139,30 @@ public class VCF implements AutoCloseable {
         if (indexFile.exists() && !overwrite) {
             return indexFile;
         }
-        if (!indexFile.exists() && !indexFile.createNewFile()) {
-            throw new IOException("Could not create the file: " + file.getAbsolutePath());
-        }
-        IndexFactory.createTabixIndex(file, new VCFCodec(),
+        // the index is made before its file is created, so a file that can not be indexed leaves no empty index
+        IndexFactory.createTabixIndex(file, new IupacVCFCodec(false),
                 TabixFormat.VCF,
                 new VCFFileReader(file, false).getFileHeader().getSequenceDictionary()).write(indexFile);
 
         return indexFile;
     }
 
+    /**
+     * Finds the index next to a VCF file, with the name {@link #createIndex(File)} gives it.
+     * An index that is older than the VCF file may hold the offsets of an older version of the file,
+     * so it is not used.
+     *
+     * @param file The vcf file. Not the index file!
+     * @return The index file, or null if there is no index that is up to date.
+     */
+    public static File findIndex(@NonNull File file) {
+        File indexFile = new File(file.getAbsolutePath() + EXTENSION);
+        if (!file.isFile() || !indexFile.isFile() || indexFile.lastModified() < file.lastModified()) {
+            return null;
+        }
+        return indexFile;
+    }
+
     /**
      * Close the  VCFFileReader.
      *
@@ -0,0 +1,357 @@
+package vcf;
+
+import general.GZip;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Makes sure a VCF file is sorted on position within every contig, which the consensus generator relies on.
+ * Files are usually checked while they are read, see {@link vcf.iterator.VCFIteratorBuilder#checkOrder()}, and only
+ * sorted after a record turned out to be out of order. When that is too late, a file is streamed once up front
+ * to check the order, only reading the CHROM and POS columns.
+ * An unsorted file is sorted with an external merge sort: sorted runs of at most a given amount
+ * of memory are written to temporary files, which are then merged into one sorted temporary VCF file.
+ * BCF files and files with a tabix index are sorted by definition and are not checked.
+ */
+public class VCFSorter {
+    /**
+     * Default amount of memory used for one run, 256 MB.
+     */
+    public static final long DEFAULT_MEMORY = 256L << 20;
+
+    /**
+     * Estimated memory used by a record besides its characters.
+     */
+    private static final int RECORD_OVERHEAD = 64;
+
+    private static final byte[] BCF_MAGIC = {'B', 'C', 'F'};
+
+    private final File tempDirectory;
+    private final long memoryLimit;
+    private final Map<String, Integer> contigRanks = new HashMap<>();
+
+    /**
+     * Creates a sorter.
+     *
+     * @param tempDirectory the directory for temporary files, or null for the default temporary directory.
+     * @param memoryLimit   the amount of memory, in bytes, to keep records in before writing a run.
+     */
+    public VCFSorter(File tempDirectory, long memoryLimit) {
+        this.tempDirectory = tempDirectory;
+        this.memoryLimit = memoryLimit;
+    }
+
+    /**
+     * Get a sorted version of a VCF file.
+     *
+     * @param vcf the VCF file, optionally gzipped.
+     * @return the file itself if it is sorted, otherwise a sorted temporary file that is deleted on exit.
+     * @throws IOException if reading or writing failed.
+     */
+    public File sortIfNeeded(File vcf) throws IOException {
+        if (new File(vcf.getPath() + ".tbi").isFile() || isSorted(vcf)) {
+            return vcf;
+        }
+        return sort(vcf);
+    }
+
+    /**
+     * Checks whether every contig is in one block, sorted on position.
+     *
+     * @param vcf the VCF file.
+     * @return true if the file is sorted or not a text VCF file.
+     * @throws IOException if reading failed.
+     */
+    boolean isSorted(File vcf) throws IOException {
+        try (BufferedReader reader = openReader(vcf)) {
+            if (reader == null) {
+                return true;
+            }
+            Set<String> finished = new HashSet<>();
+            String lastContig = null;
+            int lastPosition = 0;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isEmpty() || line.charAt(0) == '#') {
+                    continue;
+                }
+                final int tab = line.indexOf('\t');
+                final int position = parsePosition(line, tab);
+                final String contig = line.substring(0, tab);
+                if (contig.equals(lastContig)) {
+                    if (position < lastPosition) {
+                        return false;
+                    }
+                } else {
+                    if (lastContig != null) {
+                        finished.add(lastContig);
+                    }
+                    if (finished.contains(contig)) {
+                        return false;
+                    }
+                    lastContig = contig;
+                }
+                lastPosition = position;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Sorts a VCF file on contig, in order of the header and then of appearance, and on position.
+     * Records on the same position keep their order.
+     *
+     * @param vcf the VCF file.
+     * @return the sorted temporary file, which is deleted on exit.
+     * @throws IOException if reading or writing failed.
+     */
+    File sort(File vcf) throws IOException {
+        List<File> runs = new ArrayList<>();
+        File sorted = File.createTempFile("sorted", ".vcf", tempDirectory);
+        sorted.deleteOnExit();
+        try (BufferedReader reader = openReader(vcf);
+             Writer out = openWriter(sorted)) {
+            List<Record> records = new ArrayList<>();
+            long memory = 0;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isEmpty()) {
+                    continue;
+                }
+                if (line.charAt(0) == '#') {
+                    readHeaderLine(line);
+                    out.write(line);
+                    out.write('\n');
+                    continue;
+                }
+                records.add(toRecord(line));
+                memory += line.length() * 2L + RECORD_OVERHEAD;
+                if (memory >= memoryLimit) {
+                    runs.add(writeRun(records));
+                    records.clear();
+                    memory = 0;
+                }
+            }
+            if (runs.isEmpty()) {
+                records.sort(Record.ORDER);
+                for (Record record : records) {
+                    out.write(record.line);
+                    out.write('\n');
+                }
+            } else {
+                if (!records.isEmpty()) {
+                    runs.add(writeRun(records));
+                }
+                merge(runs, out);
+            }
+        } finally {
+            for (File run : runs) {
+                if (!run.delete()) {
+                    run.deleteOnExit();
+                }
+            }
+        }
+        return sorted;
+    }
+
+    /**
+     * Merges sorted runs with a heap on their first record.
+     *
+     * @param runs the run files.
+     * @param out  the destination.
+     * @throws IOException if reading or writing failed.
+     */
+    private void merge(List<File> runs, Writer out) throws IOException {
+        PriorityQueue<Run> heap = new PriorityQueue<>(runs.size(),
+                Comparator.comparing((Run run) -> run.current, Record.ORDER).thenComparingInt(run -> run.index));
+        List<Run> open = new ArrayList<>();
+        try {
+            for (int i = 0; i < runs.size(); i++) {
+                Run run = new Run(runs.get(i), i);
+                open.add(run);
+                if (run.advance()) {
+                    heap.add(run);
+                }
+            }
+            while (!heap.isEmpty()) {
+                Run run = heap.poll();
+                out.write(run.current.line);
+                out.write('\n');
+                if (run.advance()) {
+                    heap.add(run);
+                }
+            }
+        } finally {
+            for (Run run : open) {
+                run.close();
+            }
+        }
+    }
+
+    private File writeRun(List<Record> records) throws IOException {
+        records.sort(Record.ORDER);
+        File run = File.createTempFile("run", ".vcf", tempDirectory);
+        run.deleteOnExit();
+        try (Writer out = openWriter(run)) {
+            for (Record record : records) {
+                out.write(record.line);
+                out.write('\n');
+            }
+        }
+        return run;
+    }
+
+    private void readHeaderLine(String line) {
+        if (line.startsWith("##contig=<ID=")) {
+            int start = "##contig=<ID=".length();
+            int end = start;
+            while (end < line.length() && line.charAt(end) != ',' && line.charAt(end) != '>') {
+                end++;
+            }
+            rankOf(line.substring(start, end));
+        }
+    }
+
+    private int rankOf(String contig) {
+        Integer rank = contigRanks.get(contig);
+        if (rank == null) {
+            rank = contigRanks.size();
+            contigRanks.put(contig, rank);
+        }
+        return rank;
+    }
+
+    private Record toRecord(String line) {
+        final int tab = line.indexOf('\t');
+        final int position = parsePosition(line, tab);
+        return new Record(rankOf(line.substring(0, tab)), position, line);
+    }
+
+    private static int parsePosition(String line, int tab) {
+        if (tab == -1) {
+            throw new IllegalArgumentException("VCF file malformed, record without POS: " + line);
+        }
+        int end = line.indexOf('\t', tab + 1);
+        try {
+            return RecordView.parseInt(line, tab + 1, end == -1 ? line.length() : end);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("VCF file malformed, invalid POS: " + line);
+        }
+    }
+
+    /**
+     * Opens a VCF file as text.
+     *
+     * @param vcf the VCF file, optionally gzipped.
+     * @return the reader, or null if the file is a BCF file.
+     * @throws IOException if the file could not be opened.
+     */
+    private static BufferedReader openReader(File vcf) throws IOException {
+        InputStream stream = new BufferedInputStream(new FileInputStream(vcf));
+        if (GZip.isGZipInputStream(stream)) {
+            stream = new BufferedInputStream(new GZIPInputStream(stream));
+        }
+        stream.mark(BCF_MAGIC.length);
+        byte[] magic = new byte[BCF_MAGIC.length];
+        int read = stream.read(magic);
+        stream.reset();
+        if (read == magic.length && magic[0] == BCF_MAGIC[0] && magic[1] == BCF_MAGIC[1]
+                && magic[2] == BCF_MAGIC[2]) {
+            stream.close();
+            return null;
+        }
+        return new BufferedReader(new InputStreamReader(stream, StandardCharsets.UTF_8), 1 << 16);
+    }
+
+    private static Writer openWriter(File file) throws IOException {
+        return new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8),
+                1 << 16);
+    }
+
+    /**
+     * A record line with its sort key.
+     */
+    private static final class Record {
+        private static final Comparator<Record> ORDER =
+                Comparator.comparingInt((Record r) -> r.contig).thenComparingInt(r -> r.position);
+
+        private final int contig;
+        private final int position;
+        private final String line;
+
+        /**
+         * Creates a record.
+         *
+         * @param contig   the rank of the contig.
+         * @param position the position.
+         * @param line     the whole line.
+         */
+        private Record(int contig, int position, String line) {
+            this.contig = contig;
+            this.position = position;
+            this.line = line;
+        }
+    }
+
+    /**
+     * A sorted run that is being merged.
+     */
+    private final class Run implements Closeable {
+        private final BufferedReader reader;
+        private final int index;
+        private Record current;
+
+        /**
+         * Opens a run.
+         *
+         * @param file  the run file.
+         * @param index the index of the run, to keep the input order of equal records.
+         * @throws IOException if the file could not be opened.
+         */
+        private Run(File file, int index) throws IOException {
+            this.reader = openReader(file);
+            this.index = index;
+        }
+
+        /**
+         * Reads the next record of the run.
+         *
+         * @return false if the run is finished.
+         * @throws IOException if reading failed.
+         */
+        private boolean advance() throws IOException {
+            String line = reader.readLine();
+            current = line == null ? null : toRecord(line);
+            return current != null;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void close() throws IOException {
+            reader.close();
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package vcf.iterator;
+
+import htsjdk.tribble.readers.LineIterator;
+import htsjdk.variant.variantcontext.VariantContext;
+import htsjdk.variant.vcf.VCFCodec;
+import htsjdk.variant.vcf.VCFHeader;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A VCF codec that reads records of which the alleles contain IUPAC codes, which htsjdk does not accept.
+ * An allele with IUPAC codes is replaced by N's and kept in the INFO field RIU for the reference
+ * or AIU for the alternative alleles, from where the samplers read it.
+ * It can also skip the reference blocks of gVCF files, which are then decoded as null.
+ * As the lines are rewritten before they are decoded, the codec reads the same records from a stream
+ * as from the index queries of a file.
+ * The source of the records names the samples of the header, so the column of a sample is found in records of
+ * several merged files without decoding their genotypes, see {@link #getSampleNames(VariantContext)}.
+ */
+public class IupacVCFCodec extends VCFCodec {
+    private static final String SAMPLES_SOURCE = "samples\t";
+
+    private final boolean skipReferenceBlocks;
+
+    /**
+     * Creates a codec.
+     *
+     * @param skipReferenceBlocks whether the reference blocks of gVCF files are skipped.
+     */
+    public IupacVCFCodec(boolean skipReferenceBlocks) {
+        this.skipReferenceBlocks = skipReferenceBlocks;
+    }
+
+    /**
+     * Reads the header, after which the records get the samples of the header as their source.
+     *
+     * @param reader the lines of the file.
+     * @return the header.
+     */
+    @Override
+    public Object readActualHeader(LineIterator reader) {
+        final Object header = super.readActualHeader(reader);
+        if (header instanceof VCFHeader) {
+            setName(SAMPLES_SOURCE + String.join("\t", ((VCFHeader) header).getGenotypeSamples()));
+        }
+        return header;
+    }
+
+    /**
+     * Get the samples of the file a record was read from, in the order of the columns.
+     *
+     * @param record the record.
+     * @return the names of the samples, or null if the record was not read by this codec.
+     */
+    public static List<String> getSampleNames(VariantContext record) {
+        final String source = record.getSource();
+        if (source == null || !source.startsWith(SAMPLES_SOURCE)) {
+            return null;
+        }
+        return source.length() == SAMPLES_SOURCE.length() ? Collections.emptyList()
+                : Arrays.asList(source.substring(SAMPLES_SOURCE.length()).split("\t"));
+    }
+
+    /**
+     * Decodes a line, after writing the IUPAC codes of its alleles into the INFO field.
+     * The locations of the lines, from which the index of a file is made, are decoded with this as well.
+     *
+     * @param line the line.
+     * @return the record, or null if the line is a header line, empty or a skipped reference block.
+     */
+    @Override
+    public VariantContext decode(String line) {
+        if (line.startsWith(VCFHeader.HEADER_INDICATOR)) {
+            return null;
+        }
+        final String rewritten = rewrite(line);
+        return rewritten == null ? null : super.decode(rewritten);
+    }
+
+    /**
+     * Rewrites the alleles with IUPAC codes of a line.
+     *
+     * @param line the line.
+     * @return the line to decode, or null if it is empty or a skipped reference block.
+     */
+    private String rewrite(String line) {
+        if (line.isEmpty() || skipReferenceBlocks && isReferenceBlock(line)) {
+            return null;
+        }
+        String[] parts = line.split("\t");
+
+        if (parts.length < 8) {
+            throw new IllegalArgumentException("VCF file malformed: found less than 8 columns");
+        }
+
+        //if the ref is IUPAC:
+        if (containsIUPAC(parts[3])) {
+            parts[7] += ";RIU=" + parts[3];
+            char[] chars = new char[parts[3].length()];
+            Arrays.fill(chars, 'N');
+            parts[3] = new String(chars);
+        }
+        //if alt is IUPAC, symbolic alleles and breakends like <DEL> or C[2:321[ are left as they are.
+        if (!isSymbolic(parts[4]) && containsIUPAC(parts[4])) {
+            parts[7] += ";AIU=" + parts[4];
+            parts[4] = "N";
+        }
+        return String.join("\t", parts);
+    }
+
+    /**
+     * Check if a line is a reference block, by comparing the alternative column in place.
+     *
+     * @param line the line.
+     * @return true if the only alternative allele is that of a reference block.
+     */
+    private static boolean isReferenceBlock(String line) {
+        int from = 0;
+        for (int column = 0; column < 4; column++) {
+            from = line.indexOf('\t', from) + 1;
+            if (from == 0) {
+                return false;
+            }
+        }
+        final int to = line.indexOf('\t', from);
+        final int length = (to == -1 ? line.length() : to) - from;
+        for (String allele : VCFIteratorBuilder.REFERENCE_BLOCK_ALLELES) {
+            if (allele.length() == length && line.startsWith(allele, from)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Check if the alternative alleles contain a symbolic allele or a breakend.
+     *
+     * @param s the alternative alleles.
+     * @return true if it contains a symbolic allele or a breakend.
+     */
+    private static boolean isSymbolic(String s) {
+        return s.indexOf('<') != -1 || s.indexOf('[') != -1 || s.indexOf(']') != -1;
+    }
+
+    /**
+     * Check if something contains a IUPAC letter.
+     *
+     * @param s the string to check.
+     * @return true if it contains an IUPAC letter.
+     */
+    private static boolean containsIUPAC(String s) {
+        s = s.toUpperCase();
+        return s.contains("R") || s.contains("Y") || s.contains("S") || s.contains("W")
+                || s.contains("K") || s.contains("M") || s.contains("B") || s.contains("D")
+                || s.contains("H") || s.contains("V");
+    }
+}
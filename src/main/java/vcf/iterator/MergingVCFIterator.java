@@ -0,0 +1,236 @@
+package vcf.iterator;
+
+import htsjdk.samtools.util.AbstractIterator;
+import htsjdk.samtools.util.CloserUtil;
+import htsjdk.variant.variantcontext.VariantContext;
+import htsjdk.variant.vcf.VCFContigHeaderLine;
+import htsjdk.variant.vcf.VCFHeader;
+import htsjdk.variant.vcf.VCFUtils;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.Set;
+
+/**
+ * Merges several sorted VCF iterators into one sorted iterator, in a single streaming pass.
+ * The next record is taken from a heap ordered on contig, position and the index of the file.
+ * Contigs are ordered as in the merged header, contigs that are not in the header in order of appearance.
+ * When files have records on the same contig and position, the {@link Precedence} decides which are kept.
+ * Records on the same position within one file are never dropped.
+ */
+public class MergingVCFIterator extends AbstractIterator<VariantContext> implements VCFIterator {
+    private final List<VCFIterator> sources;
+    private final Precedence precedence;
+    private final VCFHeader header;
+    private final Map<String, Integer> contigRanks = new HashMap<>();
+    private final PriorityQueue<Source> heap;
+    private final Queue<VariantContext> pending = new ArrayDeque<>();
+    private final List<VariantContext> siteRecords = new ArrayList<>();
+    private final List<Source> siteSources = new ArrayList<>();
+
+    /**
+     * Creates a merging iterator.
+     *
+     * @param sources    the sorted iterators, in order of precedence.
+     * @param precedence the rule for records of different files on the same position.
+     * @throws IllegalArgumentException if the headers of the files conflict.
+     */
+    public MergingVCFIterator(List<VCFIterator> sources, Precedence precedence) {
+        this.sources = new ArrayList<>(sources);
+        this.precedence = precedence;
+        this.header = mergeHeaders(sources);
+        for (VCFContigHeaderLine contig : header.getContigLines()) {
+            rankOf(contig.getID());
+        }
+        this.heap = new PriorityQueue<>(Math.max(1, sources.size()),
+                Comparator.comparingInt((Source s) -> s.contig).thenComparingInt(s -> s.start)
+                        .thenComparingInt(s -> s.index));
+        for (int i = 0; i < sources.size(); i++) {
+            enqueue(new Source(sources.get(i), i));
+        }
+    }
+
+    /**
+     * Merges the meta lines and the samples of the headers.
+     *
+     * @param sources the iterators.
+     * @return the merged header.
+     */
+    private static VCFHeader mergeHeaders(List<VCFIterator> sources) {
+        List<VCFHeader> headers = new ArrayList<>();
+        Set<String> samples = new LinkedHashSet<>();
+        for (VCFIterator source : sources) {
+            headers.add(source.getHeader());
+            samples.addAll(source.getHeader().getGenotypeSamples());
+        }
+        try {
+            return new VCFHeader(VCFUtils.smartMergeHeaders(headers, false), samples);
+        } catch (IllegalStateException e) {
+            throw new IllegalArgumentException("Could not merge the headers of the vcf files: " + e.getMessage());
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public VCFHeader getHeader() {
+        return header;
+    }
+
+    /**
+     * Get the next record of the merged files.
+     *
+     * @return the next record, or null if all files are finished.
+     */
+    @Override
+    protected VariantContext advance() {
+        if (!pending.isEmpty()) {
+            return pending.poll();
+        }
+        if (heap.isEmpty()) {
+            return null;
+        }
+        if (precedence == Precedence.ALL) {
+            return poll();
+        }
+        final Source first = heap.peek();
+        final int contig = first.contig;
+        final int start = first.start;
+        siteRecords.clear();
+        siteSources.clear();
+        while (!heap.isEmpty() && heap.peek().contig == contig && heap.peek().start == start) {
+            siteSources.add(heap.peek());
+            siteRecords.add(poll());
+        }
+        final Source winner = chooseWinner();
+        for (int i = 0; i < siteRecords.size(); i++) {
+            if (siteSources.get(i) == winner) {
+                pending.add(siteRecords.get(i));
+            }
+        }
+        return pending.poll();
+    }
+
+    /**
+     * Chooses the file of which the records on the current position are kept.
+     *
+     * @return the winning file.
+     */
+    private Source chooseWinner() {
+        Source winner = siteSources.get(0);
+        if (precedence == Precedence.QUALITY) {
+            double best = quality(siteRecords.get(0));
+            for (int i = 1; i < siteRecords.size(); i++) {
+                final double quality = quality(siteRecords.get(i));
+                if (quality > best) {
+                    best = quality;
+                    winner = siteSources.get(i);
+                }
+            }
+        }
+        return winner;
+    }
+
+    private static double quality(VariantContext record) {
+        return record.hasLog10PError() ? record.getPhredScaledQual() : Double.NEGATIVE_INFINITY;
+    }
+
+    private VariantContext poll() {
+        final Source source = heap.poll();
+        final VariantContext record = source.iterator.next();
+        enqueue(source);
+        return record;
+    }
+
+    private void enqueue(Source source) {
+        if (source.iterator.hasNext()) {
+            final VariantContext next = source.iterator.peek();
+            source.contig = rankOf(next.getContig());
+            source.start = next.getStart();
+            heap.add(source);
+        }
+    }
+
+    private int rankOf(String contig) {
+        Integer rank = contigRanks.get(contig);
+        if (rank == null) {
+            rank = contigRanks.size();
+            contigRanks.put(contig, rank);
+        }
+        return rank;
+    }
+
+    /**
+     * Closes all the files.
+     */
+    @Override
+    public void close() {
+        for (VCFIterator source : sources) {
+            CloserUtil.close(source);
+        }
+    }
+
+    /**
+     * The rule for records of different files on the same contig and position.
+     */
+    public enum Precedence {
+        /**
+         * Keep the records of the file that was given first.
+         */
+        FIRST,
+        /**
+         * Keep the records of the file with the record of the highest quality, the first file on a tie.
+         */
+        QUALITY,
+        /**
+         * Keep all records.
+         */
+        ALL;
+
+        /**
+         * Parses a precedence, ignoring case.
+         *
+         * @param name the name of the precedence.
+         * @return the precedence.
+         * @throws IllegalArgumentException if the name is not a precedence.
+         */
+        public static Precedence parse(String name) {
+            try {
+                return valueOf(name.toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Unknown merge precedence " + name
+                        + ", expected one of first, quality or all.");
+            }
+        }
+    }
+
+    /**
+     * One of the merged files, with the sort key of its next record.
+     */
+    private static final class Source {
+        private final VCFIterator iterator;
+        private final int index;
+        private int contig;
+        private int start;
+
+        /**
+         * Creates a source.
+         *
+         * @param iterator the iterator of the file.
+         * @param index    the index of the file, which breaks ties in the heap.
+         */
+        private Source(VCFIterator iterator, int index) {
+            this.iterator = iterator;
+            this.index = index;
+        }
+    }
+}
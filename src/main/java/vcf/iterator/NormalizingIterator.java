@@ -0,0 +1,331 @@
+package vcf.iterator;
+
+import fasta.Fasta;
+import htsjdk.samtools.util.AbstractIterator;
+import htsjdk.variant.variantcontext.Allele;
+import htsjdk.variant.variantcontext.Genotype;
+import htsjdk.variant.variantcontext.GenotypeBuilder;
+import htsjdk.variant.variantcontext.GenotypesContext;
+import htsjdk.variant.variantcontext.VariantContext;
+import htsjdk.variant.variantcontext.VariantContextBuilder;
+import htsjdk.variant.vcf.VCFCompoundHeaderLine;
+import htsjdk.variant.vcf.VCFHeader;
+import htsjdk.variant.vcf.VCFHeaderLineCount;
+import lombok.Getter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Normalizes the records of an iterator while they are read, like bcftools norm -m- does for a whole file.
+ * A record with several alternative alleles is split into one record per allele, in which the other alternative
+ * alleles of the genotypes become the reference. The per-allele values of the INFO and FORMAT fields,
+ * those with Number=A or Number=R, are split with them, the per-genotype values like PL are dropped.
+ * Indels are trimmed and shifted left as far as the reference repeats, at most {@link #MAX_SHIFT} bases,
+ * so equal indels in repeats are written on the same position and do not overlap the calls next to them.
+ * As records move left, they are kept in a buffer ordered on position until no later record can move before them.
+ * Records with symbolic alleles, or with IUPAC codes in their alleles, are left as they are.
+ */
+public class NormalizingIterator extends AbstractIterator<VariantContext> implements VCFIterator {
+    /**
+     * The greatest amount of bases an indel is shifted to the left.
+     */
+    public static final int MAX_SHIFT = 1000;
+    private static final int REFERENCE_CHUNK = 64;
+    private static final String[] REFERENCE_BLOCK_ALLELES = {"<NON_REF>", "<*>"};
+
+    /**
+     * The records that are normalized.
+     */
+    @Getter
+    private final VCFIterator source;
+    private final Fasta reference;
+    private final String chromosome;
+    private final PriorityQueue<Pending> buffer = new PriorityQueue<>(
+            Comparator.comparingInt((Pending p) -> p.call.getStart()).thenComparingLong(p -> p.order));
+    private long order;
+    private String contig;
+
+    private byte[] chunk = new byte[0];
+    private int chunkStart;
+
+    /**
+     * Creates a normalizing iterator.
+     *
+     * @param source     the records, sorted on position.
+     * @param reference  the reference to shift indels along, or null to only split and trim the records.
+     * @param chromosome the chromosome of the reference, records of other chromosomes are not shifted.
+     */
+    public NormalizingIterator(VCFIterator source, Fasta reference, String chromosome) {
+        this.source = source;
+        this.reference = reference;
+        this.chromosome = chromosome;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public VCFHeader getHeader() {
+        return source.getHeader();
+    }
+
+    /**
+     * Get the next normalized record.
+     * The first record of the buffer is handed out once the next record of the source is too far on,
+     * or on another contig, to be shifted before it.
+     *
+     * @return the next record, or null if the records are finished.
+     */
+    @Override
+    protected VariantContext advance() {
+        while (true) {
+            if (!buffer.isEmpty() && (!source.hasNext() || !source.peek().getContig().equals(contig)
+                    || buffer.peek().call.getStart() < source.peek().getStart() - MAX_SHIFT)) {
+                return buffer.poll().call;
+            }
+            if (!source.hasNext()) {
+                return null;
+            }
+            final VariantContext call = source.next();
+            contig = call.getContig();
+            addNormalized(call);
+        }
+    }
+
+    /**
+     * Splits and normalizes a record into the buffer.
+     *
+     * @param call the record.
+     */
+    private void addNormalized(VariantContext call) {
+        final List<Allele> alternatives = call.getAlternateAlleles();
+        if (alternatives.size() < 2 || hasSymbolic(call)) {
+            buffer.add(new Pending(normalize(call), order++));
+            return;
+        }
+        for (int i = 0; i < alternatives.size(); i++) {
+            if (!isReferenceBlockAllele(alternatives.get(i))) {
+                buffer.add(new Pending(normalize(split(call, i + 1)), order++));
+            }
+        }
+    }
+
+    /**
+     * Makes the biallelic record of one alternative allele of a record.
+     *
+     * @param call   the record.
+     * @param allele the index of the alternative allele.
+     * @return the biallelic record.
+     */
+    private VariantContext split(VariantContext call, int allele) {
+        final Allele ref = call.getReference();
+        final Allele alt = call.getAlternateAllele(allele - 1);
+        final VariantContextBuilder builder = new VariantContextBuilder(call).alleles(Arrays.asList(ref, alt));
+        for (Map.Entry<String, Object> attribute : call.getAttributes().entrySet()) {
+            final VCFHeaderLineCount count = countOf(getHeader().getInfoHeaderLine(attribute.getKey()));
+            if (count == VCFHeaderLineCount.A || count == VCFHeaderLineCount.R) {
+                builder.attribute(attribute.getKey(), subset(attribute.getValue(), count, allele));
+            } else if (count == VCFHeaderLineCount.G) {
+                builder.rmAttribute(attribute.getKey());
+            }
+        }
+        final GenotypesContext genotypes = GenotypesContext.create(call.getNSamples());
+        for (Genotype genotype : call.getGenotypes()) {
+            final List<Allele> alleles = new ArrayList<>(genotype.getPloidy());
+            for (Allele a : genotype.getAlleles()) {
+                alleles.add(a.isNoCall() ? a : a.equals(alt) ? alt : ref);
+            }
+            final GenotypeBuilder genotypeBuilder = new GenotypeBuilder(genotype).alleles(alleles).noPL();
+            if (genotype.hasAD()) {
+                final int[] depths = genotype.getAD();
+                if (allele < depths.length) {
+                    genotypeBuilder.AD(new int[]{depths[0], depths[allele]});
+                } else {
+                    genotypeBuilder.noAD();
+                }
+            }
+            genotypeBuilder.noAttributes();
+            for (Map.Entry<String, Object> attribute : genotype.getExtendedAttributes().entrySet()) {
+                final VCFHeaderLineCount count = countOf(getHeader().getFormatHeaderLine(attribute.getKey()));
+                if (count == VCFHeaderLineCount.A || count == VCFHeaderLineCount.R) {
+                    genotypeBuilder.attribute(attribute.getKey(), subset(attribute.getValue(), count, allele));
+                } else if (count != VCFHeaderLineCount.G) {
+                    genotypeBuilder.attribute(attribute.getKey(), attribute.getValue());
+                }
+            }
+            genotypes.add(genotypeBuilder.make());
+        }
+        return builder.genotypes(genotypes).make();
+    }
+
+    private static VCFHeaderLineCount countOf(VCFCompoundHeaderLine line) {
+        return line == null ? null : line.getCountType();
+    }
+
+    /**
+     * Takes the values of one alternative allele from a per-allele value.
+     *
+     * @param value  the value, a list or a string separated by commas.
+     * @param count  A for a value per alternative allele, R for one per allele including the reference.
+     * @param allele the index of the alternative allele.
+     * @return the value of the allele, preceded by that of the reference for R.
+     */
+    private static Object subset(Object value, VCFHeaderLineCount count, int allele) {
+        final List<?> values = value instanceof List ? (List<?>) value : Arrays.asList(value.toString().split(","));
+        final int index = count == VCFHeaderLineCount.A ? allele - 1 : allele;
+        if (index >= values.size()) {
+            return value;
+        }
+        return count == VCFHeaderLineCount.A ? values.get(index) : Arrays.asList(values.get(0), values.get(index));
+    }
+
+    /**
+     * Trims the bases a biallelic indel shares with the reference and shifts it left along the reference.
+     *
+     * @param call the record.
+     * @return the normalized record, or the record itself if it did not change or can not be normalized.
+     */
+    private VariantContext normalize(VariantContext call) {
+        if (call.getAlternateAlleles().size() != 1 || call.getAlternateAllele(0).isSymbolic()
+                || call.hasAttribute("RIU") || call.hasAttribute("AIU")) {
+            return call;
+        }
+        byte[] ref = call.getReference().getBases();
+        byte[] alt = call.getAlternateAllele(0).getBases();
+        if (ref.length == alt.length) {
+            return call;
+        }
+        int start = call.getStart();
+        int shifted = 0;
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            if (ref.length > 0 && alt.length > 0 && same(ref[ref.length - 1], alt[alt.length - 1])) {
+                ref = Arrays.copyOf(ref, ref.length - 1);
+                alt = Arrays.copyOf(alt, alt.length - 1);
+                changed = true;
+            }
+            if (ref.length == 0 || alt.length == 0) {
+                final byte base = shifted < MAX_SHIFT && start > 1 ? referenceBase(call.getContig(), start - 1) : 0;
+                if (base == 0) {
+                    return call;
+                }
+                ref = prepend(base, ref);
+                alt = prepend(base, alt);
+                start--;
+                shifted++;
+                changed = true;
+            }
+        }
+        int trimmed = 0;
+        while (ref.length - trimmed > 1 && alt.length - trimmed > 1 && same(ref[trimmed], alt[trimmed])) {
+            trimmed++;
+        }
+        ref = Arrays.copyOfRange(ref, trimmed, ref.length);
+        alt = Arrays.copyOfRange(alt, trimmed, alt.length);
+        start += trimmed;
+        if (start == call.getStart() && ref.length == call.getReference().length()) {
+            return call;
+        }
+        return rebuild(call, start, Allele.create(ref, true), Allele.create(alt, false));
+    }
+
+    /**
+     * Creates the record with its new position and alleles, mapping the alleles of the genotypes.
+     *
+     * @param call  the record.
+     * @param start the new start.
+     * @param ref   the new reference allele.
+     * @param alt   the new alternative allele.
+     * @return the new record.
+     */
+    private static VariantContext rebuild(VariantContext call, int start, Allele ref, Allele alt) {
+        final GenotypesContext genotypes = GenotypesContext.create(call.getNSamples());
+        for (Genotype genotype : call.getGenotypes()) {
+            final List<Allele> alleles = new ArrayList<>(genotype.getPloidy());
+            for (Allele a : genotype.getAlleles()) {
+                alleles.add(a.isNoCall() ? a : a.isReference() ? ref : alt);
+            }
+            genotypes.add(new GenotypeBuilder(genotype).alleles(alleles).make());
+        }
+        return new VariantContextBuilder(call).start(start).stop(start + ref.length() - 1)
+                .alleles(Arrays.asList(ref, alt)).genotypes(genotypes).make();
+    }
+
+    /**
+     * Get a base of the reference, reading the reference in chunks that end at the requested base,
+     * as indels are shifted towards the start.
+     *
+     * @param name     the contig of the base.
+     * @param position the position (1-index) of the base.
+     * @return the upper case base, or 0 if it is not known.
+     */
+    private byte referenceBase(String name, int position) {
+        if (reference == null || chromosome != null && !chromosome.equals(name)) {
+            return 0;
+        }
+        final int index = position - 1;
+        if (index < chunkStart || index >= chunkStart + chunk.length) {
+            chunkStart = Math.max(0, index + 1 - REFERENCE_CHUNK);
+            chunk = reference.read(chunkStart, index + 1 - chunkStart);
+            if (chunk == null) {
+                chunk = new byte[0];
+            }
+        }
+        if (index - chunkStart >= chunk.length) {
+            return 0;
+        }
+        final byte base = (byte) Character.toUpperCase(chunk[index - chunkStart]);
+        return base == 'N' ? 0 : base;
+    }
+
+    private static boolean same(byte a, byte b) {
+        return Character.toUpperCase(a) == Character.toUpperCase(b);
+    }
+
+    private static byte[] prepend(byte base, byte[] bases) {
+        final byte[] result = new byte[bases.length + 1];
+        result[0] = base;
+        System.arraycopy(bases, 0, result, 1, bases.length);
+        return result;
+    }
+
+    private static boolean hasSymbolic(VariantContext call) {
+        for (Allele allele : call.getAlternateAlleles()) {
+            if (allele.isSymbolic() && !isReferenceBlockAllele(allele)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isReferenceBlockAllele(Allele allele) {
+        return Arrays.asList(REFERENCE_BLOCK_ALLELES).contains(allele.getDisplayString());
+    }
+
+    /**
+     * Close the source.
+     */
+    @Override
+    public void close() {
+        source.close();
+    }
+
+    /**
+     * A record in the buffer, with the order in which it was added, to keep records on the same position in order.
+     */
+    private static final class Pending {
+        private final VariantContext call;
+        private final long order;
+
+        private Pending(VariantContext call, long order) {
+            this.call = call;
+            this.order = order;
+        }
+    }
+}
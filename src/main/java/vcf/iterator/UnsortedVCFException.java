@@ -0,0 +1,18 @@
+package vcf.iterator;
+
+/**
+ * Thrown by an iterator that checks the order of a VCF file when a record comes before the record read before it,
+ * so a reader that relies on the order can sort the file and start again.
+ */
+public class UnsortedVCFException extends IllegalArgumentException {
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Creates the exception.
+     *
+     * @param message the record that is out of order.
+     */
+    public UnsortedVCFException(String message) {
+        super(message);
+    }
+}
@@ -41,7 +41,11 @@ import htsjdk.variant.vcf.VCFHeader;
 import lombok.Getter;
 
 import java.io.*;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 import java.util.zip.GZIPInputStream;
 
 /**
@@ -65,9 +69,38 @@ public class VCFIteratorBuilder {
      * sizeof a BCF header (+ min/max version). Used when trying to detect when a streams starts with a bcf header
      */
     private static final int SIZEOF_BCF_HEADER = BCFVersion.MAGIC_HEADER_START.length + 2 * Byte.BYTES;
+    /**
+     * The alternative alleles of the reference blocks of gVCF files.
+     */
+    static final String[] REFERENCE_BLOCK_ALLELES = {"<NON_REF>", "<*>"};
 
+    private boolean skipReferenceBlocks;
+    private boolean checkOrder;
 
+    /**
+     * Skips the reference blocks of gVCF files, the records of which the only alternative allele is
+     * &lt;NON_REF&gt; or &lt;*&gt;. Such a block only says that the sample has the reference until its END,
+     * so a reader that fills the positions without records with the reference does not need it.
+     * The lines of the blocks in a VCF file are recognized before they are split or decoded.
+     *
+     * @return this builder.
+     */
+    public VCFIteratorBuilder skipReferenceBlocks() {
+        this.skipReferenceBlocks = true;
+        return this;
+    }
 
+    /**
+     * Checks that the records of VCF files are sorted on position within every contig, while they are read.
+     * A record out of order gives an {@link UnsortedVCFException}, so sorted files, which are the most common,
+     * are read once instead of being checked up front. BCF files are sorted by definition and are not checked.
+     *
+     * @return this builder.
+     */
+    public VCFIteratorBuilder checkOrder() {
+        this.checkOrder = true;
+        return this;
+    }
 
     /**
      * Creates a VCF iterator from an input stream.
@@ -96,11 +129,11 @@ public class VCFIteratorBuilder {
 
         if (bcfVersion != null) {
             //this is BCF
-            return new BCFInputStreamIterator(bufferedInput);
+            return new BCFInputStreamIterator(bufferedInput, skipReferenceBlocks);
         } else {
             //this is VCF
             try {
-                return new VCFReaderIterator(bufferedInput);
+                return new VCFReaderIterator(bufferedInput, skipReferenceBlocks, checkOrder);
             } catch (TribbleException e) {
                 throw new IllegalArgumentException("VCF file malformed: " + e.getMessage());
             }
@@ -133,6 +166,31 @@ public class VCFIteratorBuilder {
         return this.open(new FileInputStream(new File(file)));
     }
 
+    /**
+     * Open several files as one iterator, merging them on position.
+     *
+     * @param files      the files to open, in order of precedence.
+     * @param precedence the rule for records of different files on the same position.
+     * @return the VCFIterator, the iterator of the file itself if there is only one file.
+     * @throws IOException an exception if a file could not be opened.
+     */
+    public VCFIterator open(final List<String> files, final MergingVCFIterator.Precedence precedence)
+            throws IOException {
+        if (files.size() == 1) {
+            return this.open(files.get(0));
+        }
+        List<VCFIterator> iterators = new ArrayList<>();
+        try {
+            for (String file : files) {
+                iterators.add(this.open(file));
+            }
+            return new MergingVCFIterator(iterators, precedence);
+        } catch (IOException | RuntimeException e) {
+            iterators.forEach(CloserUtil::close);
+            throw e;
+        }
+    }
+
     /**
      * implementation of VCFIterator, reading VCF.
      */
@@ -146,7 +204,7 @@ public class VCFIteratorBuilder {
         /**
          * VCF codec.
          */
-        private final VCFCodec codec = new VCFCodec();
+        private final VCFCodec codec;
         /**
          * VCF header.
          */
@@ -166,14 +224,25 @@ public class VCFIteratorBuilder {
          */
         @Getter
         private final LineIterator lineIterator;
+        /**
+         * The contigs of which all records are read, or null if the order is not checked.
+         */
+        private final Set<String> finishedContigs;
+        private String lastContig;
+        private int lastStart;
 
         /**
          * Constructor.
          *
-         * @param bufferedStream the input.
+         * @param bufferedStream      the input.
+         * @param skipReferenceBlocks whether the reference blocks of gVCF files are skipped.
+         * @param checkOrder          whether a record out of order gives an {@link UnsortedVCFException}.
          */
-        VCFReaderIterator(final InputStream bufferedStream) {
+        VCFReaderIterator(final InputStream bufferedStream, final boolean skipReferenceBlocks,
+                          final boolean checkOrder) {
             this.inputStream = bufferedStream;
+            this.finishedContigs = checkOrder ? new HashSet<>() : null;
+            this.codec = new IupacVCFCodec(skipReferenceBlocks);
             this.lineIterator = this.codec.makeSourceFromStream(this.inputStream);
             this.vcfHeader = (VCFHeader) this.codec.readActualHeader(this.lineIterator);
         }
@@ -203,55 +272,47 @@ public class VCFIteratorBuilder {
                 lastReturnedLine = lastDecodedLine;
                 next = decodeNext();
                 if (next != null) {
+                    if (finishedContigs != null) {
+                        checkOrder(next);
+                    }
                     return next;
                 }
             } while (true);
         }
 
+        /**
+         * Checks that every contig is in one block, sorted on position.
+         *
+         * @param record the next record.
+         * @throws UnsortedVCFException if the record comes before the last record.
+         */
+        private void checkOrder(VariantContext record) {
+            final String contig = record.getContig();
+            if (contig.equals(lastContig)) {
+                if (record.getStart() < lastStart) {
+                    throw new UnsortedVCFException("VCF file not sorted: " + contig + ":" + record.getStart()
+                            + " comes after " + contig + ":" + lastStart);
+                }
+            } else {
+                if (lastContig != null) {
+                    finishedContigs.add(lastContig);
+                }
+                if (finishedContigs.contains(contig)) {
+                    throw new UnsortedVCFException("VCF file not sorted: contig " + contig
+                            + " is split by contig " + lastContig);
+                }
+                lastContig = contig;
+            }
+            lastStart = record.getStart();
+        }
+
         private VariantContext decodeNext() {
-            //change IUPAC to the shitty things they want:
-            //first get the thing after the 4th tab
             String line = this.lineIterator.next();
             this.lastDecodedLine = line;
-            if (line.isEmpty()) {
-                return null;
+            if (line.startsWith(VCFHeader.METADATA_INDICATOR)) {
+                throw new IllegalArgumentException("VCF file malformed: found a header line among the records");
             }
-
-            String[] parts = line.split("\t");
-
-            if (parts.length < 8) {
-                throw new IllegalArgumentException("VCF file malformed: found less than 8 columns");
-            }
-
-            //if the ref is IUPAC:
-            if (containsIUPAC(parts[3])) {
-                parts[7] += ";RIU=" + parts[3];
-                char[] chars = new char[parts[3].length()];
-                Arrays.fill(chars, 'N');
-                parts[3] = new String(chars);
-            }
-            //if alt is IUPAC.
-            if (containsIUPAC(parts[4])) {
-                parts[7] += ";AIU=" + parts[4];
-                char[] chars = new char[parts[4].length()];
-                Arrays.fill(chars, 'N');
-                parts[4] = "N";
-            }
-
-            return this.codec.decode(String.join("\t", parts));
-        }
-
-        /**
-         * Check if something contains a IUPAC letter.
-         *
-         * @param s the string to check.
-         * @return true if it contains an IUPAC letter.
-         */
-        private boolean containsIUPAC(String s) {
-            s = s.toUpperCase();
-            return s.contains("R") || s.contains("Y") || s.contains("S") || s.contains("W")
-                    || s.contains("K") || s.contains("M") || s.contains("B") || s.contains("D")
-                    || s.contains("H") || s.contains("V");
+            return this.codec.decode(line);
         }
 
         /**
@@ -282,14 +343,20 @@ public class VCFIteratorBuilder {
          * the VCF header.
          */
         private final VCFHeader vcfHeader;
+        /**
+         * Whether reference blocks are skipped.
+         */
+        private final boolean skipReferenceBlocks;
 
         /**
          * Constructor.
          *
-         * @param inputStream the input stream.
+         * @param inputStream         the input stream.
+         * @param skipReferenceBlocks whether the reference blocks of gVCF files are skipped.
          */
-        BCFInputStreamIterator(final InputStream inputStream) {
+        BCFInputStreamIterator(final InputStream inputStream, final boolean skipReferenceBlocks) {
             this.inputStream = this.codec.makeSourceFromStream(inputStream);
+            this.skipReferenceBlocks = skipReferenceBlocks;
             this.vcfHeader = (VCFHeader) this.codec.readHeader(this.inputStream).getHeaderValue();
         }
 
@@ -310,8 +377,26 @@ public class VCFIteratorBuilder {
          */
         @Override
         protected VariantContext advance() {
-            return this.codec.isDone(this.inputStream)
-                    ? null : this.codec.decode(this.inputStream);
+            while (!this.codec.isDone(this.inputStream)) {
+                final VariantContext next = this.codec.decode(this.inputStream);
+                if (!skipReferenceBlocks || !isReferenceBlock(next)) {
+                    return next;
+                }
+            }
+            return null;
+        }
+
+        /**
+         * Check if a record is a reference block. The genotypes of BCF records are decoded lazily,
+         * so only the site is decoded.
+         *
+         * @param context the record.
+         * @return true if the only alternative allele is that of a reference block.
+         */
+        private boolean isReferenceBlock(VariantContext context) {
+            return context.getAlternateAlleles().size() == 1
+                    && Arrays.asList(REFERENCE_BLOCK_ALLELES)
+                    .contains(context.getAlternateAllele(0).getDisplayString());
         }
 
         /**
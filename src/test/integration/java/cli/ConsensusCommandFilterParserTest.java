@@ -5,8 +5,12 @@ import htsjdk.variant.variantcontext.filter.VariantContextFilter;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.io.IOException;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.fail;
@@ -44,8 +48,10 @@ public class ConsensusCommandFilterParserTest {
         when(cmd.hasOption(any())).thenReturn(true);
         when(cmd.hasOption(eq("keep-filtered"))).thenReturn(false);
         when(cmd.hasOption(eq("remove-filtered"))).thenReturn(false);
+        when(cmd.getOptionValues(eq("sites"))).thenReturn(new String[]{"./src/test/resources/cli/sites.vcf"});
+        when(cmd.getOptionValues(eq("exclude-sites"))).thenReturn(new String[]{"./src/test/resources/cli/mask.bed"});
         List<VariantContextFilter> filter = parser.createFilters(cmd);
-        assertEquals(11, filter.size());
+        assertEquals(18, filter.size());
     }
 
     /**
@@ -445,6 +451,102 @@ public class ConsensusCommandFilterParserTest {
         assertEquals(1, filters.size());
     }
 
+    /**
+     * Happy path position filter with a BED file and a region.
+     *
+     * @throws IOException if the BED file could not be read.
+     */
+    @Test
+    public void testPositionsBed() throws IOException {
+        when(cmd.hasOption(eq("exclude-positions"))).thenReturn(true);
+        when(cmd.getOptionValues("exclude-positions")).thenReturn(
+                new String[]{"./src/test/resources/cli/mask.bed", "7"});
+        List<VariantContextFilter> filters = parser.createFilters(cmd);
+        Map<String, IntervalIndex> contigs = new BedParser().parseBeds(
+                Collections.singletonList("./src/test/resources/cli/mask.bed.gz"));
+        VariantContextFilter expected = new FilterInverse(new PositionFilter(
+                Collections.singletonList(new CommandRegion(7, 7)), contigs, false));
+        assertEquals(expected, filters.get(0));
+        assertEquals(1, filters.size());
+    }
+
+    /**
+     * A value that is neither a region nor a file gives an exception.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testPositionsMissingBed() {
+        when(cmd.hasOption(eq("positions"))).thenReturn(true);
+        when(cmd.getOptionValues("positions")).thenReturn(new String[]{"./src/test/resources/cli/none.bed"});
+        parser.createFilters(cmd);
+    }
+
+    /**
+     * Happy path site filter test.
+     */
+    @Test
+    public void testSites() {
+        when(cmd.hasOption(eq("sites"))).thenReturn(true);
+        when(cmd.getOptionValues("sites")).thenReturn(new String[]{"./src/test/resources/cli/sites.vcf"});
+        List<VariantContextFilter> filters = parser.createFilters(cmd);
+        Map<String, SiteBitmap> sites = new HashMap<>();
+        sites.put("genome", new SiteBitmap().add(70000).add(5));
+        sites.put("other", new SiteBitmap().add(12));
+        assertEquals(new SiteFilter(sites), filters.get(0));
+        assertEquals(1, filters.size());
+    }
+
+    /**
+     * A site list that does not exist gives an exception.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testSitesMissingFile() {
+        when(cmd.hasOption(eq("exclude-sites"))).thenReturn(true);
+        when(cmd.getOptionValues("exclude-sites")).thenReturn(new String[]{"./src/test/resources/cli/none.vcf"});
+        parser.createFilters(cmd);
+    }
+
+    /**
+     * Happy path expression filter test.
+     */
+    @Test
+    public void testExpressions() {
+        when(cmd.hasOption(eq("include-expression"))).thenReturn(true);
+        when(cmd.hasOption(eq("exclude-expression"))).thenReturn(true);
+        when(cmd.getOptionValue("include-expression")).thenReturn("QUAL>30 && DP>10");
+        when(cmd.getOptionValue("exclude-expression")).thenReturn("TYPE==\"indel\"");
+        List<VariantContextFilter> filters = parser.createFilters(cmd);
+        assertEquals(ExpressionFilter.compile("QUAL>30 && DP>10"), filters.get(0));
+        assertEquals(new FilterInverse(ExpressionFilter.compile("TYPE==\"indel\"")), filters.get(1));
+        assertEquals(2, filters.size());
+    }
+
+    /**
+     * An invalid expression gives an exception.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidExpression() {
+        when(cmd.hasOption(eq("include-expression"))).thenReturn(true);
+        when(cmd.getOptionValue("include-expression")).thenReturn("QUAL>");
+        parser.createFilters(cmd);
+    }
+
+    /**
+     * Happy path FORMAT filter test.
+     */
+    @Test
+    public void testFormatFilters() {
+        when(cmd.hasOption(eq("format-sample"))).thenReturn(true);
+        when(cmd.hasOption(eq("min-gq"))).thenReturn(true);
+        when(cmd.hasOption(eq("max-sample-dp"))).thenReturn(true);
+        when(cmd.getOptionValue("format-sample")).thenReturn("first");
+        when(cmd.getOptionValue("min-gq")).thenReturn("20");
+        when(cmd.getOptionValue("max-sample-dp")).thenReturn("50");
+        List<VariantContextFilter> filters = parser.createFilters(cmd);
+        assertEquals(new FormatFilter("first", "GQ", 20, Integer.MAX_VALUE), filters.get(0));
+        assertEquals(new FormatFilter("first", "DP", 0, 50), filters.get(1));
+        assertEquals(2, filters.size());
+    }
+
     /**
      * Happy path remove filtered test.
      */
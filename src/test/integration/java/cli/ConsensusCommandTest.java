@@ -4,12 +4,18 @@ import consensus.ConsensusGenerator;
 import junitparams.JUnitParamsRunner;
 import junitparams.Parameters;
 import org.junit.After;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.junit.runner.RunWith;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.util.List;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.Mockito.*;
@@ -27,6 +33,9 @@ public class ConsensusCommandTest {
     private static final String WRITE_FILE = "src/test/resources/ConsensusGenerator/write.fasta";
     private static final String GFF_FILE = "src/test/resources/annotations/sampleAnnotations.gff3";
 
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
     /**
      * Expect consensus to terminate unsuccessfully when no required options provided.
      */
@@ -235,6 +244,241 @@ public class ConsensusCommandTest {
         assertThat(out.exists()).isFalse();
     }
 
+    /**
+     * Test that an unsorted vcf file gives the same consensus as the sorted file.
+     *
+     * @throws IOException if the output could not be read.
+     */
+    @Test
+    public void unsortedCalls() throws IOException {
+        String unsortedFile = "src/test/resources/ConsensusGenerator/unsorted.vcf";
+        assertThat(new ConsensusCommand("-f " + FASTA_FILE + " -c " + VCF_FILE + " -o " + WRITE_FILE
+                + " -r 1-60").execute()).isEqualTo(0);
+        List<String> expected = Files.readAllLines(new File(WRITE_FILE).toPath());
+        assertThat(new ConsensusCommand("-f " + FASTA_FILE + " -c " + unsortedFile + " -o " + WRITE_FILE
+                + " -r 1-60").execute()).isEqualTo(0);
+        assertThat(Files.readAllLines(new File(WRITE_FILE).toPath())).isEqualTo(expected);
+    }
+
+    /**
+     * Test that vcf files merged on the fly give the same consensus as the combined file.
+     *
+     * @throws IOException if the output could not be read.
+     */
+    @Test
+    public void mergedCalls() throws IOException {
+        String folder = "src/test/resources/ConsensusGenerator/";
+        assertThat(new ConsensusCommand("-f " + FASTA_FILE + " -c " + VCF_FILE + " -o " + WRITE_FILE
+                + " -r 1-60").execute()).isEqualTo(0);
+        List<String> expected = Files.readAllLines(new File(WRITE_FILE).toPath());
+        assertThat(new ConsensusCommand("-f " + FASTA_FILE + " -c " + folder + "split1.vcf -c " + folder
+                + "split2.vcf --merge-precedence quality -o " + WRITE_FILE + " -r 1-60").execute()).isEqualTo(0);
+        assertThat(Files.readAllLines(new File(WRITE_FILE).toPath())).isEqualTo(expected);
+    }
+
+    /**
+     * The consensus of a sample written in one pass with the other samples
+     * equals the consensus of the dosage encoder on that sample alone.
+     *
+     * @throws IOException if the files could not be read.
+     */
+    @Test
+    public void samplesInOnePass() throws IOException {
+        assertThat(new ConsensusCommand("-f " + FASTA_FILE + " -c " + VCF_FILE + " -ed -o " + WRITE_FILE
+                + " -r 1-60 30-40").execute()).isEqualTo(0);
+        List<String> expected = Files.readAllLines(new File(WRITE_FILE).toPath());
+        File directory = folder.newFolder();
+        assertThat(new ConsensusCommand("-f " + FASTA_FILE + " -c " + VCF_FILE + " --samples all -t 2 -o "
+                + directory + " -r 1-60 30-40").execute()).isEqualTo(0);
+        assertThat(Files.readAllLines(new File(directory, "SAMPLE.fasta").toPath())).isEqualTo(expected);
+    }
+
+    /**
+     * The statistics of the samples written in one pass are written like those of a single consensus.
+     *
+     * @throws IOException if the files could not be read.
+     */
+    @Test
+    public void samplesStatistics() throws IOException {
+        String expected = statistics("-f " + FASTA_FILE + " -c " + VCF_FILE + " -ed -o " + WRITE_FILE
+                + " -r 1-60 30-40 --stats-to-err");
+        assertThat(expected).contains("Consensus Generation Statistics:");
+        assertThat(statistics("-f " + FASTA_FILE + " -c " + VCF_FILE + " --samples all -t 2 -o "
+                + folder.newFolder() + " -r 1-60 30-40 --stats-to-err")).isEqualTo(expected);
+    }
+
+    private static String statistics(String command) throws IOException {
+        PrintStream stderr = System.err;
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        System.setErr(new PrintStream(stream, true, "UTF-8"));
+        try {
+            assertThat(new ConsensusCommand(command).execute()).isEqualTo(0);
+        } finally {
+            System.setErr(stderr);
+        }
+        return stream.toString("UTF-8");
+    }
+
+    /**
+     * Every sample of a multi-sample file is written to its own file.
+     *
+     * @throws IOException if the files could not be read.
+     */
+    @Test
+    public void everySample() throws IOException {
+        File directory = folder.newFolder();
+        assertThat(new ConsensusCommand("-c src/test/resources/VCF/polyploid.vcf --samples first,second -t 2 -o "
+                + directory + " -r 1-50").execute()).isEqualTo(0);
+        assertThat(Files.readAllLines(new File(directory, "first.fasta").toPath()).get(1))
+                .isEqualTo(".........V.........A.........C.........M.........M");
+        assertThat(Files.readAllLines(new File(directory, "second.fasta").toPath()).get(1))
+                .isEqualTo(".........C.........M.........C.........M.........M");
+    }
+
+    /**
+     * The consensus of every file of a cohort equals the consensus of that file alone.
+     *
+     * @throws IOException if the files could not be read.
+     */
+    @Test
+    public void cohort() throws IOException {
+        String calls = "src/test/resources/ConsensusGenerator/";
+        File directory = folder.newFolder();
+        assertThat(new ConsensusCommand("-f " + FASTA_FILE + " -c " + calls + "split1.vcf -c " + calls
+                + "split2.vcf --cohort -t 2 -o " + directory + " -r 1-60 20-30").execute()).isEqualTo(0);
+        for (String name : new String[]{"split1", "split2"}) {
+            assertThat(new ConsensusCommand("-f " + FASTA_FILE + " -c " + calls + name + ".vcf -o " + WRITE_FILE
+                    + " -r 1-60 20-30").execute()).isEqualTo(0);
+            assertThat(Files.readAllLines(new File(directory, name + ".fasta").toPath()))
+                    .isEqualTo(Files.readAllLines(new File(WRITE_FILE).toPath()));
+        }
+    }
+
+    /**
+     * Every haplotype of a phased sample is written to its own file.
+     *
+     * @throws IOException if the files could not be read.
+     */
+    @Test
+    public void haplotypes() throws IOException {
+        File directory = folder.newFolder();
+        assertThat(new ConsensusCommand("-c src/test/resources/VCF/phased.vcf --haplotypes 4 -t 3 -o "
+                + directory + " -r 1-55").execute()).isEqualTo(0);
+        assertThat(Files.readAllLines(new File(directory, "plant_1.fasta").toPath()).get(1))
+                .isEqualTo(".........A.........G.........AC........M.........C.....");
+        assertThat(Files.readAllLines(new File(directory, "plant_2.fasta").toPath()).get(1))
+                .isEqualTo(".........C.........T.........AC........M.........M.....");
+        assertThat(Files.readAllLines(new File(directory, "plant_3.fasta").toPath()).get(1))
+                .isEqualTo(".........C.........A.........A........M.........A.....");
+        assertThat(Files.readAllLines(new File(directory, "plant_4.fasta").toPath()).get(1))
+                .isEqualTo(".........A.........G.........A........M.........C.....");
+    }
+
+    /**
+     * Symbolic deletions delete the bases until their END, symbolic insertions insert their SVINSSEQ
+     * and other symbolic alleles keep the reference.
+     *
+     * @throws IOException if the file could not be read.
+     */
+    @Test
+    public void structuralVariants() throws IOException {
+        assertThat(new ConsensusCommand("-c src/test/resources/VCF/structural.vcf -ed -o " + WRITE_FILE
+                + " -r 1-40").execute()).isEqualTo(0);
+        assertThat(Files.readAllLines(new File(WRITE_FILE).toPath()).get(1))
+                .isEqualTo("....A....CGGGG....T[NN]..G..........");
+    }
+
+    /**
+     * Expect the reference blocks of a gVCF file to be written as the reference, only the variants are written.
+     *
+     * @throws IOException if the file could not be read.
+     */
+    @Test
+    public void referenceBlocks() throws IOException {
+        assertThat(new ConsensusCommand("-c src/test/resources/VCF/gvcf.vcf -ed -o " + WRITE_FILE
+                + " -r 1-40").execute()).isEqualTo(0);
+        assertThat(Files.readAllLines(new File(WRITE_FILE).toPath()).get(1))
+                .isEqualTo("....T...............K...................");
+    }
+
+    /**
+     * Expect split and left-aligned calls to be written like their normalized records.
+     * The deletion in the repeat of C is moved onto the SNP at the start of the repeat, the insertion and the deletion
+     * of a G are moved to the start of their repeat and the calls with two alternative alleles are split.
+     *
+     * @throws IOException if the file could not be read.
+     */
+    @Test
+    public void normalize() throws IOException {
+        assertThat(new ConsensusCommand("-c src/test/resources/VCF/normalize.vcf -f " + FASTA_FILE
+                + " --normalize -o " + WRITE_FILE + " -r 1-25").execute()).isEqualTo(0);
+        assertThat(Files.readAllLines(new File(WRITE_FILE).toPath()).get(1))
+                .isEqualTo("TTGACCGATGA[Y]CCC(G[)G]GTTHAGGCT");
+    }
+
+    /**
+     * Expect a region written in small tiles on several threads to be the same as the region written in one piece,
+     * with the lines wrapped across the seams of the tiles.
+     *
+     * @throws IOException if the file could not be read.
+     */
+    @Test
+    public void tiles() throws IOException {
+        String command = "-f " + FASTA_FILE + " -c " + VCF_FILE + " -o " + WRITE_FILE + " -r 1-200";
+        assertThat(new ConsensusCommand(command).execute()).isEqualTo(0);
+        List<String> whole = Files.readAllLines(new File(WRITE_FILE).toPath());
+        assertThat(new ConsensusCommand(command + " --tile-size 3 -t 3").execute()).isEqualTo(0);
+        assertThat(Files.readAllLines(new File(WRITE_FILE).toPath())).isEqualTo(whole).hasSize(4);
+    }
+
+    /**
+     * Expect a region written in tiles, and the reverse of a region, to leave no index next to the calls file,
+     * while the tiles still read the calls through an index made in the temporary directory.
+     *
+     * @throws IOException if the files could not be copied or read.
+     */
+    @Test
+    public void tilesLeaveCallsFile() throws IOException {
+        File calls = new File(folder.newFolder(), "calls.vcf");
+        Files.copy(new File(VCF_FILE).toPath(), calls.toPath());
+        File temp = folder.newFolder();
+        String command = "-f " + FASTA_FILE + " -c " + calls + " -o " + WRITE_FILE + " -r 1-200 --temp-dir " + temp;
+        assertThat(new ConsensusCommand(command).execute()).isEqualTo(0);
+        List<String> whole = Files.readAllLines(new File(WRITE_FILE).toPath());
+        assertThat(new ConsensusCommand(command + " --tile-size 3 -t 3").execute()).isEqualTo(0);
+        assertThat(Files.readAllLines(new File(WRITE_FILE).toPath())).isEqualTo(whole);
+        assertThat(new ConsensusCommand("-f src/test/resources/reverse/sample.fasta -c " + calls
+                + " -a src/test/resources/reverse/sample.gff3 superOperonRev -o " + WRITE_FILE).execute()).isEqualTo(0);
+        assertThat(calls.getParentFile().list()).containsExactly("calls.vcf");
+        assertThat(temp.list()).isEmpty();
+    }
+
+    /**
+     * Expect the command to fail on a sample that is not in the calls file.
+     */
+    @Test
+    public void unknownSample() throws IOException {
+        assertThat(new ConsensusCommand("-c src/test/resources/VCF/polyploid.vcf --samples third -o "
+                + folder.newFolder()).execute()).isEqualTo(1);
+    }
+
+    /**
+     * Expect the command to fail on an encoder that the consensus per sample or haplotype would ignore.
+     *
+     * @throws IOException if the out directory could not be created.
+     */
+    @Test
+    public void samplesWithEncoder() throws IOException {
+        assertThat(new ConsensusCommand("-c src/test/resources/VCF/polyploid.vcf --samples all -ea 0.1-0.9 -o "
+                + folder.newFolder()).execute()).isEqualTo(1);
+        assertThat(new ConsensusCommand("-c src/test/resources/VCF/polyploid.vcf --samples all -es -o "
+                + folder.newFolder()).execute()).isEqualTo(1);
+        assertThat(new ConsensusCommand("-c src/test/resources/VCF/phased.vcf --haplotypes 2 -ed -o "
+                + folder.newFolder()).execute()).isEqualTo(1);
+        assertThat(new ConsensusCommand("-c src/test/resources/VCF/polyploid.vcf --samples all -ed 0.5 -o "
+                + folder.newFolder() + " -r 1-50").execute()).isEqualTo(0);
+    }
+
     /**
      * Removes the files created by these tests.
      *
@@ -1,6 +1,12 @@
 package cli;
 
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
 
 import static org.assertj.core.api.Java6Assertions.assertThat;
 
@@ -11,6 +17,9 @@ public class CoverageCommandTest {
 
     private static final String BAM_FILE = "src/test/resources/P2_TB_SRR833154_H37Rv_BR.bam";
 
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
     /**
      * Test a basic working example.
      */
@@ -20,4 +29,27 @@ public class CoverageCommandTest {
                 new String[]{"-b", BAM_FILE, "-c", "gi|561108321|ref|NC_018143.2|", "-r", "100-10000", "-fy", "-A"});
         assertThat(command.execute()).isEqualTo(0);
     }
+
+    /**
+     * Test a table of several regions.
+     */
+    @Test
+    public void testTable() {
+        CoverageCommand command = new CoverageCommand(
+                new String[]{"-b", "src/test/resources/coverage/depth.sam", "-c", "chr1", "-r", "5-20", "10-12", "30-"});
+        assertThat(command.execute()).isEqualTo(0);
+    }
+
+    /**
+     * Test writing a bedGraph.
+     * @throws IOException if the file could not be made.
+     */
+    @Test
+    public void testBedGraph() throws IOException {
+        File bedGraph = folder.newFile("depth.bedgraph");
+        CoverageCommand command = new CoverageCommand(new String[]{"-b", "src/test/resources/coverage/depth.sam",
+                "-c", "chr1", "-r", "5-20", "--bedgraph", bedGraph.getPath()});
+        assertThat(command.execute()).isEqualTo(0);
+        assertThat(new String(Files.readAllBytes(bedGraph.toPath()))).startsWith("chr1\t4\t7\t1\n");
+    }
 }
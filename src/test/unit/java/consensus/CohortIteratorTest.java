@@ -0,0 +1,43 @@
+package consensus;
+
+import htsjdk.variant.variantcontext.Allele;
+import htsjdk.variant.variantcontext.VariantContext;
+import htsjdk.variant.variantcontext.VariantContextBuilder;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Tests for merging the calls of a cohort.
+ */
+public class CohortIteratorTest {
+
+    /**
+     * Test that the calls are merged on position, with the file of every call, the first file first on a tie.
+     */
+    @Test
+    public void testMerge() {
+        CohortIterator iterator = new CohortIterator(Arrays.asList(
+                calls(5, 20, 20), calls(), calls(1, 20, 30)));
+        List<String> merged = new ArrayList<>();
+        while (iterator.hasNext()) {
+            merged.add(iterator.next().getStart() + ":" + iterator.getSource());
+        }
+        assertThat(merged).containsExactly("1:2", "5:0", "20:0", "20:0", "20:2", "30:2");
+    }
+
+    private static Iterator<VariantContext> calls(int... starts) {
+        List<VariantContext> calls = new ArrayList<>();
+        for (int start : starts) {
+            calls.add(new VariantContextBuilder("test", "chr", start, start,
+                    Collections.singletonList(Allele.create("A", true))).make());
+        }
+        return calls.iterator();
+    }
+}
@@ -0,0 +1,68 @@
+package consensus;
+
+import consensus.encoders.IupacEncoder;
+import consensus.samplers.SimpleSampler;
+import htsjdk.variant.variantcontext.Allele;
+import htsjdk.variant.variantcontext.GenotypeBuilder;
+import htsjdk.variant.variantcontext.VariantContext;
+import htsjdk.variant.variantcontext.VariantContextBuilder;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Tests for grouping and writing the calls of one consensus stream.
+ */
+public class ConsensusStreamTest {
+    private static final int CHAIN = 100000;
+
+    private static VariantContext call(int start, String ref, String alt) {
+        Allele refAllele = Allele.create(ref, true);
+        Allele altAllele = Allele.create(alt);
+        return new VariantContextBuilder("test", "1", start, start + ref.length() - 1,
+                Arrays.asList(refAllele, altAllele))
+                .genotypes(new GenotypeBuilder("sample",
+                        Arrays.asList(altAllele, altAllele)).make())
+                .make();
+    }
+
+    private static ConsensusStream stream(ByteArrayOutputStream out, int end) {
+        return new ConsensusStream(out, null, new IupacEncoder(), new SimpleSampler(), 1, end,
+                new ConsensusGenerator.ConsensusStatistics());
+    }
+
+    /**
+     * Test that a chain of overlapping calls longer than a group may hold is split and written like one group.
+     */
+    @Test
+    public void testLongChain() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ConsensusStream stream = stream(out, CHAIN + 3);
+        for (int i = 1; i <= CHAIN; i++) {
+            stream.add(call(i, "AC", "A"), true);
+        }
+        stream.add(call(CHAIN + 2, "G", "T"), true);
+        stream.finish();
+        assertThat(out.toString("UTF-8")).isEqualTo("AT.");
+    }
+
+    /**
+     * Test that a call is related to the group while it starts before the greatest end of the group,
+     * not only the end of the last call.
+     */
+    @Test
+    public void testRunningEnd() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ConsensusStream stream = stream(out, 8);
+        stream.add(call(1, "AAAAA", "A"), true);
+        stream.add(call(2, "C", "G"), true);
+        stream.add(call(5, "A", "T"), true);
+        stream.add(call(7, "C", "G"), true);
+        stream.finish();
+        assertThat(out.toString("UTF-8")).isEqualTo("A.G.");
+    }
+}
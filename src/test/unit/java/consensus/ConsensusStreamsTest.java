@@ -0,0 +1,101 @@
+package consensus;
+
+import consensus.encoders.IupacEncoder;
+import consensus.samplers.SimpleSampler;
+import fasta.Fasta;
+import htsjdk.variant.variantcontext.Allele;
+import htsjdk.variant.variantcontext.GenotypeBuilder;
+import htsjdk.variant.variantcontext.VariantContext;
+import htsjdk.variant.variantcontext.VariantContextBuilder;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Tests for writing several consensus streams in one pass.
+ */
+public class ConsensusStreamsTest {
+    private static final int LENGTH = 20 << 20;
+
+    /**
+     * Test that a file of a cohort without calls does not hold the reference window at its start, so the window
+     * stays small however far apart the calls of the other file are, and both streams are written completely.
+     */
+    @Test
+    public void testWindowBoundedByStreamWithoutCalls() throws IOException {
+        ReferenceWindow window = new ReferenceWindow(new RepeatedFasta(), new IupacEncoder());
+        ConsensusStreams streams = new ConsensusStreams(window, null, 1, LENGTH);
+        CountingStream withCalls = new CountingStream();
+        CountingStream withoutCalls = new CountingStream();
+        streams.add(withCalls, new IupacEncoder(), new SimpleSampler());
+        streams.add(withoutCalls, new IupacEncoder(), new SimpleSampler());
+        CohortIterator cohort = new CohortIterator(Arrays.asList(
+                calls(1, 5 << 20, 10 << 20, 15 << 20), calls()));
+        streams.write(cohort, cohort, null, 2);
+        assertThat(window.capacity()).isLessThanOrEqualTo(4 << 20);
+        assertThat(withCalls.count).isEqualTo(LENGTH);
+        assertThat(withoutCalls.count).isEqualTo(LENGTH);
+    }
+
+    private static Iterator<VariantContext> calls(int... starts) {
+        List<VariantContext> calls = new ArrayList<>();
+        for (int start : starts) {
+            Allele ref = Allele.create("A", true);
+            Allele alt = Allele.create("T");
+            calls.add(new VariantContextBuilder("test", "chr", start, start, Arrays.asList(ref, alt))
+                    .genotypes(new GenotypeBuilder("sample", Arrays.asList(alt, alt)).make())
+                    .make());
+        }
+        return calls.iterator();
+    }
+
+    /**
+     * A reference of only adenines.
+     */
+    private static final class RepeatedFasta extends Fasta {
+        @Override
+        public byte[] readBlockId(int blockId) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public byte[] readNext(int length) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public byte[] read(int startIndex, int length) {
+            byte[] bases = new byte[Math.max(0, Math.min(length, LENGTH - startIndex))];
+            Arrays.fill(bases, (byte) 'A');
+            return bases;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    /**
+     * Counts the bytes written, instead of keeping them.
+     */
+    private static final class CountingStream extends OutputStream {
+        private long count;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package consensus;
+
+import consensus.encoders.InversionEncoder;
+import consensus.encoders.IupacEncoder;
+import consensus.samplers.Sampler;
+import consensus.samplers.SimpleSampler;
+import fasta.FastaSequence;
+import general.ReversingStream;
+import htsjdk.variant.variantcontext.VariantContext;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import vcf.VCF;
+import vcf.iterator.VCFIterator;
+import vcf.iterator.VCFIteratorBuilder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Tests for cutting a region into tiles and writing them.
+ */
+public class ConsensusTilesTest {
+    private static final String VCF_FILE = "src/test/resources/ConsensusGenerator/sample.vcf";
+    private static final String REVERSE_FILE = "src/test/resources/VCF/reverse.vcf";
+    private static final String FASTA_FILE = "src/test/resources/ConsensusGenerator/sample.fasta";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private ConsensusTiles tiles() throws IOException {
+        return new ConsensusTiles(VCF_FILE, index(VCF_FILE), "sampleGen|", null, new IupacEncoder(),
+                SimpleSampler::new, call -> true, true);
+    }
+
+    private File index(String vcfFile) throws IOException {
+        return VCF.createIndex(new File(vcfFile), new File(folder.getRoot(), "calls.tbi").getPath(), true);
+    }
+
+    /**
+     * Test that no call starts before a cut and ends on or after it.
+     */
+    @Test
+    public void testCutBetweenGroups() throws IOException {
+        List<Integer> starts = tiles().cut(1, 200, 2);
+        assertThat(starts).hasSizeGreaterThan(10).isSorted().doesNotHaveDuplicates().startsWith(1);
+        try (VCFIterator calls = new VCFIteratorBuilder().open(VCF_FILE)) {
+            while (calls.hasNext()) {
+                VariantContext call = calls.next();
+                for (int start : starts) {
+                    assertThat(call.getStart() < start && Sampler.getEnd(call) >= start).isFalse();
+                }
+            }
+        }
+    }
+
+    /**
+     * Test that tiles of no bases are refused.
+     */
+    @Test
+    public void testEmptyTiles() {
+        assertThatThrownBy(() -> tiles().cut(1, 200, 0)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    /**
+     * Test that the tiles written from the end of a region to its start give the reverse of the region,
+     * with the brackets turned and the IUPAC codes of the calls kept.
+     */
+    @Test
+    public void testWriteReversed() throws IOException {
+        FastaSequence fasta = new FastaSequence(FASTA_FILE);
+        ConsensusTiles tiles = new ConsensusTiles(REVERSE_FILE, index(REVERSE_FILE), "sampleGen|", fasta,
+                new InversionEncoder(new IupacEncoder()), SimpleSampler::new, call -> true, true);
+        ByteArrayOutputStream forward = new ByteArrayOutputStream();
+        ReversingStream reversing = new ReversingStream(forward, 100);
+        tiles.write(reversing, 1, 25, 100, 1, new ConsensusGenerator.ConsensusStatistics());
+        reversing.flush();
+        ByteArrayOutputStream reversed = new ByteArrayOutputStream();
+        tiles.writeReversed(reversed, 1, 25, 2, 2, new ConsensusGenerator.ConsensusStatistics());
+        assertThat(reversed.toString("UTF-8")).isEqualTo(forward.toString("UTF-8")).isEqualTo("ACTGDACMGG(AT)GGCATCGSTCAA");
+    }
+}
@@ -0,0 +1,177 @@
+package consensus;
+
+import consensus.filters.CostedFilter;
+import consensus.filters.ExpressionFilter;
+import htsjdk.variant.variantcontext.Allele;
+import htsjdk.variant.variantcontext.VariantContext;
+import htsjdk.variant.variantcontext.VariantContextBuilder;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Tests for the compiled filter expressions.
+ */
+public class ExpressionFilterTest {
+
+    private static VariantContextBuilder builder(String ref, String alt) {
+        return new VariantContextBuilder("test", "genome", 10, 10 + ref.length() - 1,
+                Arrays.asList(Allele.create(ref, true), Allele.create(alt, false)));
+    }
+
+    private static boolean test(String expression, VariantContext context) {
+        return ExpressionFilter.compile(expression).test(context);
+    }
+
+    /**
+     * Test numeric comparisons on QUAL, POS and INFO fields.
+     */
+    @Test
+    public void testComparisons() {
+        VariantContext context = builder("A", "C").log10PError(-4).attribute("DP", "12")
+                .attribute("AF", "0.25").attribute("MQ", "60.5").make();
+        assertThat(test("QUAL>30", context)).isTrue();
+        assertThat(test("QUAL>=40 && QUAL<=40", context)).isTrue();
+        assertThat(test("INFO/DP>10", context)).isTrue();
+        assertThat(test("DP=12", context)).isTrue();
+        assertThat(test("DP!=12", context)).isFalse();
+        assertThat(test("AF<0.2", context)).isFalse();
+        assertThat(test("INFO/MQ>60", context)).isTrue();
+        assertThat(test("POS==10", context)).isTrue();
+        assertThat(test("N_ALT==1", context)).isTrue();
+    }
+
+    /**
+     * Test arithmetic and operator precedence.
+     */
+    @Test
+    public void testArithmetic() {
+        VariantContext context = builder("A", "C").attribute("DP", "12").make();
+        assertThat(test("DP/2+1==7", context)).isTrue();
+        assertThat(test("-DP*2<-20", context)).isTrue();
+        assertThat(test("2*(DP-2)==20", context)).isTrue();
+        assertThat(test("1e1<DP", context)).isTrue();
+    }
+
+    /**
+     * Test the boolean operators, including short circuiting on a missing field.
+     */
+    @Test
+    public void testBooleans() {
+        VariantContext context = builder("A", "C").log10PError(-4).attribute("DP", "12").make();
+        assertThat(test("QUAL>30 && DP>10", context)).isTrue();
+        assertThat(test("QUAL>50 && DP>10", context)).isFalse();
+        assertThat(test("QUAL>50 || DP>10", context)).isTrue();
+        assertThat(test("QUAL>50 | DP>100", context)).isFalse();
+        assertThat(test("!(QUAL>50)", context)).isTrue();
+        assertThat(test("QUAL>30 && (AF>0.2 || DP>10)", context)).isTrue();
+        assertThat(test("AF>0.2 || AF<=0.2", context)).isFalse();
+        assertThat(test("QUAL>30 && DP", context)).isTrue();
+    }
+
+    /**
+     * Test that a comparison with a field of several values is true if it is true for any value.
+     */
+    @Test
+    public void testVectors() {
+        VariantContext context = new VariantContextBuilder("test", "genome", 10, 10, Arrays.asList(
+                Allele.create("A", true), Allele.create("C", false), Allele.create("G", false)))
+                .attribute("AF", "0.1,0.6").attribute("AC", Arrays.asList("1", "6"))
+                .attribute("MQ", "20,.").make();
+        assertThat(test("AF>0.5", context)).isTrue();
+        assertThat(test("AF<0.05", context)).isFalse();
+        assertThat(test("AC==6", context)).isTrue();
+        assertThat(test("AC*10>=60 && AC<2", context)).isTrue();
+        assertThat(test("AF*10==AC", context)).isTrue();
+        assertThat(test("INFO/MQ==20", context)).isTrue();
+        assertThat(test("INFO/MQ!=20", context)).isTrue();
+        assertThat(test("MQ>30", context)).isFalse();
+    }
+
+    /**
+     * Test that one filter can be used by several threads at once.
+     *
+     * @throws Exception if a thread failed.
+     */
+    @Test
+    public void testThreads() throws Exception {
+        ExpressionFilter filter = ExpressionFilter.compile("(DP+1)*2>(QUAL-1)*2 && AF>0.5");
+        VariantContext pass = builder("A", "C").log10PError(-1).attribute("DP", "12").attribute("AF", "0.1,0.6")
+                .make();
+        VariantContext fail = builder("A", "C").log10PError(-4).attribute("DP", "12").attribute("AF", "0.6")
+                .make();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<Boolean>> results = new ArrayList<>();
+            for (int thread = 0; thread < 4; thread++) {
+                final VariantContext context = thread % 2 == 0 ? pass : fail;
+                results.add(executor.submit(() -> {
+                    for (int i = 0; i < 100000; i++) {
+                        if (filter.test(context) != (context == pass)) {
+                            return false;
+                        }
+                    }
+                    return true;
+                }));
+            }
+            for (Future<Boolean> result : results) {
+                assertThat(result.get()).isTrue();
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Test string comparisons on TYPE, FILTER and INFO fields.
+     */
+    @Test
+    public void testStrings() {
+        VariantContext snp = builder("A", "C").attribute("SVTYPE", "DEL").make();
+        VariantContext indel = builder("AC", "A").filters(Collections.singleton("LowCov")).make();
+        assertThat(test("TYPE==\"snp\"", snp)).isTrue();
+        assertThat(test("TYPE=='indel'", snp)).isFalse();
+        assertThat(test("TYPE!=\"snp\"", indel)).isTrue();
+        assertThat(test("FILTER==\"PASS\"", snp)).isTrue();
+        assertThat(test("FILTER==\"lowcov\"", indel)).isTrue();
+        assertThat(test("FILTER!=\"PASS\"", indel)).isTrue();
+        assertThat(test("INFO/SVTYPE==\"DEL\"", snp)).isTrue();
+        assertThat(test("SVTYPE==\"INS\"", snp)).isFalse();
+    }
+
+    /**
+     * Test that invalid expressions give a message pointing at the problem.
+     */
+    @Test
+    public void testInvalid() {
+        assertThatThrownBy(() -> ExpressionFilter.compile("QUAL>")).isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("unexpected end");
+        assertThatThrownBy(() -> ExpressionFilter.compile("(QUAL>1")).hasMessageContaining("expected ')'");
+        assertThatThrownBy(() -> ExpressionFilter.compile("TYPE>1")).hasMessageContaining("TYPE");
+        assertThatThrownBy(() -> ExpressionFilter.compile("TYPE==\"foo\"")).hasMessageContaining("unknown TYPE");
+        assertThatThrownBy(() -> ExpressionFilter.compile("QUAL>\"a\"")).hasMessageContaining("string");
+        assertThatThrownBy(() -> ExpressionFilter.compile("QUAL>1 DP")).hasMessageContaining("position 8");
+        assertThatThrownBy(() -> ExpressionFilter.compile("QUAL # 1")).hasMessageContaining("'#'");
+    }
+
+    /**
+     * Test that the cost depends on the fields that are used.
+     */
+    @Test
+    public void testCost() {
+        assertThat(ExpressionFilter.compile("QUAL>1").getCost()).isEqualTo(CostedFilter.COST_DECODED);
+        assertThat(ExpressionFilter.compile("QUAL>1 && TYPE==\"snp\"").getCost())
+                .isEqualTo(CostedFilter.COST_LOOKUP);
+        assertThat(ExpressionFilter.compile("QUAL>1 && DP>1").getCost()).isEqualTo(CostedFilter.COST_PARSE);
+        assertThat(ExpressionFilter.compile("DP>1")).isEqualTo(ExpressionFilter.compile("DP>1"));
+    }
+}
@@ -0,0 +1,116 @@
+package consensus;
+
+import cli.CommandRegion;
+import consensus.filters.*;
+import htsjdk.variant.variantcontext.VariantContext;
+import htsjdk.variant.variantcontext.filter.CompoundFilter;
+import htsjdk.variant.variantcontext.filter.FilteringIterator;
+import htsjdk.variant.variantcontext.filter.VariantContextFilter;
+import org.junit.Test;
+import vcf.VCF;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for the compiled filter chain.
+ */
+public class FilterChainTest {
+
+    /**
+     * Test that cheap filters are placed before expensive ones.
+     */
+    @Test
+    public void testOrderedOnCost() {
+        PositionFilter position = new PositionFilter(Collections.singletonList(new CommandRegion(1, 10)), false);
+        DepthFilter depth = new DepthFilter(1, 10);
+        FilterQuality quality = new FilterQuality(10);
+        FilterChain chain = new FilterChain(Arrays.asList(position, depth, quality), false);
+        assertThat(chain.getFilter(0)).isEqualTo(quality);
+        assertThat(chain.getFilter(1)).isEqualTo(depth);
+        assertThat(chain.getFilter(2)).isEqualTo(position);
+    }
+
+    /**
+     * Test that testing stops at the first rejecting filter.
+     */
+    @Test
+    public void testShortCircuit() {
+        VariantContextFilter expensive = mock(VariantContextFilter.class);
+        VariantContext context = mock(VariantContext.class);
+        when(context.getPhredScaledQual()).thenReturn(1.0);
+        FilterChain chain = new FilterChain(Arrays.asList(expensive, new FilterQuality(10)), false);
+        assertThat(chain.test(context)).isFalse();
+        verify(expensive, never()).test(any());
+        assertThat(chain.getRejected(0)).isEqualTo(1);
+    }
+
+    /**
+     * Test that inverted filters are unwrapped and still inverted.
+     */
+    @Test
+    public void testInverse() {
+        VariantContext context = mock(VariantContext.class);
+        when(context.getPhredScaledQual()).thenReturn(1.0);
+        FilterChain chain = new FilterChain(
+                Collections.singletonList(new FilterInverse(new FilterQuality(10))), false);
+        assertThat(chain.getFilter(0)).isInstanceOf(FilterQuality.class);
+        assertThat(chain.test(context)).isTrue();
+    }
+
+    /**
+     * Test that an empty chain passes everything.
+     */
+    @Test
+    public void testEmpty() {
+        FilterChain chain = new FilterChain(Collections.emptyList(), true);
+        assertThat(chain.test(mock(VariantContext.class))).isTrue();
+        assertThat(chain.statisticsReport()).isEmpty();
+    }
+
+    /**
+     * Test that the chain gives the same results as the separate filters on a real file.
+     *
+     * @throws IOException if the file could not be read.
+     */
+    @Test
+    public void testSameResult() throws IOException {
+        VCF vcf = new VCF("./src/test/resources/ConsensusGenerator/filtersample.vcf");
+        CompoundFilter filters = new CompoundFilter(true);
+        filters.add(new DepthFilter(2, 12));
+        filters.add(new FilterInverse(new FilterInclude(Collections.singletonList("LowCov"), false)));
+        FilterChain chain = new FilterChain(filters, true);
+        int expected = FilterTest.countElements(
+                new FilteringIterator(vcf.query("genome", 1, Integer.MAX_VALUE), filters));
+        int count = FilterTest.countElements(
+                new FilteringIterator(vcf.query("genome", 1, Integer.MAX_VALUE), chain));
+        vcf.close();
+        assertThat(count).isEqualTo(expected).isLessThan(19);
+        assertThat(chain.statisticsReport()).contains("DepthFilter").contains("not FilterInclude");
+    }
+
+    /**
+     * Test that an adaptive chain moves the filter that rejects everything to the front.
+     */
+    @Test
+    public void testAdaptiveReorder() {
+        VariantContext context = mock(VariantContext.class);
+        when(context.getPhredScaledQual()).thenReturn(100.0);
+        when(context.getContig()).thenReturn("other");
+        ChromosomeFilter chromosome = new ChromosomeFilter("genome");
+        FilterChain chain = new FilterChain(Arrays.asList(new FilterQuality(10), chromosome), true);
+        assertThat(chain.getFilter(1)).isEqualTo(chromosome);
+        for (int i = 0; i < 10000; i++) {
+            assertThat(chain.test(context)).isFalse();
+        }
+        assertThat(chain.getFilter(0)).isEqualTo(chromosome);
+    }
+}
@@ -4,12 +4,16 @@ import cli.CommandRegion;
 import cli.Region;
 import consensus.filters.*;
 import htsjdk.variant.variantcontext.Allele;
+import htsjdk.variant.variantcontext.GenotypesContext;
 import htsjdk.variant.variantcontext.VariantContext;
 import htsjdk.variant.variantcontext.filter.FilteringIterator;
 import htsjdk.variant.variantcontext.filter.VariantContextFilter;
 import org.junit.Before;
 import org.junit.Test;
 import vcf.VCF;
+import vcf.iterator.MergingVCFIterator;
+import vcf.iterator.VCFIterator;
+import vcf.iterator.VCFIteratorBuilder;
 
 import java.io.IOException;
 import java.util.ArrayList;
@@ -285,4 +289,66 @@ public class FilterTest {
         FilteringIterator iterator = newIterator(filter);
         assertThat(countElements(iterator)).isEqualTo(17);
     }
+
+    /**
+     * Test the FORMAT filters on the first and on a named sample.
+     *
+     * @throws IOException if the file could not be read.
+     */
+    @Test
+    public void testFormatFilter() throws IOException {
+        List<VariantContext> records = new ArrayList<>();
+        try (VCFIterator iterator = new VCFIteratorBuilder().open("src/test/resources/VCF/formatfields.vcf")) {
+            while (iterator.hasNext()) {
+                records.add(iterator.next());
+            }
+        }
+        FormatFilter genotypeQuality = new FormatFilter(null, "GQ", 20, Integer.MAX_VALUE);
+        assertThat(genotypeQuality.test(records.get(0))).isTrue();
+        assertThat(genotypeQuality.test(records.get(1))).isFalse();
+        FormatFilter altDepth = new FormatFilter("second", "AD", 5, Integer.MAX_VALUE);
+        assertThat(altDepth.test(records.get(0))).isTrue();
+        assertThat(altDepth.test(records.get(1))).isFalse();
+        FormatFilter depth = new FormatFilter("first", "DP", 0, 10);
+        assertThat(depth.test(records.get(0))).isFalse();
+        assertThat(depth.test(records.get(1))).isTrue();
+        FormatFilter missingReference = new FormatFilter("first", "AD", 7, 7);
+        assertThat(missingReference.test(records.get(0))).isTrue();
+        assertThat(missingReference.test(records.get(3))).isTrue();
+        assertThat(missingReference.test(records.get(4))).isTrue();
+        assertThat(new FormatFilter("second", "AD", 0, Integer.MAX_VALUE).test(records.get(3))).isFalse();
+    }
+
+    /**
+     * Test that a FORMAT filter reads the column of its sample in the records of every merged file,
+     * of which the samples are in a different order.
+     *
+     * @throws IOException if the files could not be read.
+     */
+    @Test
+    public void testFormatFilterMergedFiles() throws IOException {
+        FormatFilter quality = new FormatFilter("first", "GQ", 20, Integer.MAX_VALUE);
+        List<Integer> passed = new ArrayList<>();
+        List<String> files = Arrays.asList("src/test/resources/VCF/formatfields.vcf",
+                "src/test/resources/VCF/formatfields_swapped.vcf");
+        try (VCFIterator iterator = new VCFIteratorBuilder().open(files, MergingVCFIterator.Precedence.ALL)) {
+            while (iterator.hasNext()) {
+                VariantContext record = iterator.next();
+                if (quality.test(record)) {
+                    passed.add(record.getStart());
+                }
+            }
+        }
+        assertThat(passed).containsExactly(10, 15);
+    }
+
+    /**
+     * Test that a FORMAT filter on a sample that is not in the file gives an exception.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testFormatFilterUnknownSample() {
+        VariantContext context = mock(VariantContext.class);
+        when(context.getGenotypes()).thenReturn(GenotypesContext.NO_GENOTYPES);
+        new FormatFilter("third", "GQ", 0, 1).test(context);
+    }
 }
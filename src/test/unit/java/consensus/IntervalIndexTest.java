@@ -0,0 +1,114 @@
+package consensus;
+
+import cli.CommandRegion;
+import cli.Region;
+import consensus.filters.IntervalIndex;
+import consensus.filters.PositionFilter;
+import htsjdk.variant.variantcontext.Allele;
+import htsjdk.variant.variantcontext.VariantContext;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for the interval index behind the position filters.
+ */
+public class IntervalIndexTest {
+
+    /**
+     * Test overlap queries, including a long interval that starts before shorter ones.
+     */
+    @Test
+    public void testOverlaps() {
+        IntervalIndex index = IntervalIndex.of(Arrays.asList(
+                new CommandRegion(10, 100), new CommandRegion(20, 25), new CommandRegion(200, 210)));
+        assertThat(index.overlaps(1, 9)).isFalse();
+        assertThat(index.overlaps(5, 10)).isTrue();
+        assertThat(index.overlaps(99, 150)).isTrue();
+        assertThat(index.overlaps(101, 199)).isFalse();
+        assertThat(index.overlaps(210, 300)).isTrue();
+        assertThat(index.overlaps(211, 300)).isFalse();
+    }
+
+    /**
+     * Test containment queries.
+     */
+    @Test
+    public void testContains() {
+        IntervalIndex index = IntervalIndex.of(Arrays.asList(
+                new CommandRegion(10, 100), new CommandRegion(20, 25), new CommandRegion(90, 120)));
+        assertThat(index.contains(10, 100)).isTrue();
+        assertThat(index.contains(95, 110)).isTrue();
+        assertThat(index.contains(50, 110)).isFalse();
+        assertThat(index.contains(9, 12)).isFalse();
+    }
+
+    /**
+     * Test that regions without an end are open ended.
+     */
+    @Test
+    public void testOpenEnded() {
+        IntervalIndex index = IntervalIndex.of(Collections.singletonList(new CommandRegion(50, -1)));
+        assertThat(index.contains(50, Integer.MAX_VALUE)).isTrue();
+        assertThat(index.overlaps(1, 49)).isFalse();
+    }
+
+    /**
+     * Test that duplicate regions are merged and the order of input does not matter.
+     */
+    @Test
+    public void testEquality() {
+        IntervalIndex first = IntervalIndex.of(Arrays.asList(
+                new CommandRegion(3, 5), new CommandRegion(1, 2), new CommandRegion(3, 5)));
+        IntervalIndex second = new IntervalIndex.Builder().add(1, 2).add(3, 5).build();
+        assertThat(first).isEqualTo(second);
+        assertThat(first.hashCode()).isEqualTo(second.hashCode());
+        assertThat(first.size()).isEqualTo(2);
+    }
+
+    /**
+     * Test that the indexed position filter agrees with testing every region on random input.
+     */
+    @Test
+    public void testRandomAgainstLinearScan() {
+        Random random = new Random(42);
+        List<Region> regions = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            int start = random.nextInt(10000);
+            regions.add(new CommandRegion(start, start + random.nextInt(300)));
+        }
+        PositionFilter contained = new PositionFilter(regions, false);
+        PositionFilter overlapping = new PositionFilter(regions, true);
+        for (int i = 0; i < 2000; i++) {
+            int start = random.nextInt(11000);
+            int length = 1 + random.nextInt(20);
+            VariantContext context = mockContext(start, length);
+            boolean contains = false;
+            boolean overlaps = false;
+            for (Region region : regions) {
+                contains |= start >= region.getStart() && start + length - 1 <= region.getEnd();
+                overlaps |= start + length - 1 >= region.getStart() && start <= region.getEnd();
+            }
+            assertThat(contained.test(context)).isEqualTo(contains);
+            assertThat(overlapping.test(context)).isEqualTo(overlaps);
+        }
+    }
+
+    private static VariantContext mockContext(int start, int length) {
+        VariantContext context = mock(VariantContext.class);
+        char[] bases = new char[length];
+        Arrays.fill(bases, 'A');
+        when(context.getStart()).thenReturn(start);
+        when(context.getReference()).thenReturn(Allele.create(new String(bases), true));
+        when(context.getContig()).thenReturn("genome");
+        return context;
+    }
+}
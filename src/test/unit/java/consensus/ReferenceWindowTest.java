@@ -0,0 +1,82 @@
+package consensus;
+
+import consensus.encoders.IupacEncoder;
+import fasta.FastaSequence;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Tests for the reference window shared by the sample streams.
+ */
+public class ReferenceWindowTest {
+    private static final String FASTA_FILE = "src/test/resources/ConsensusGenerator/sample.fasta";
+
+    private FastaSequence fasta;
+    private ReferenceWindow window;
+
+    /**
+     * Opens the fasta file.
+     *
+     * @throws IOException if the file could not be opened.
+     */
+    @Before
+    public void setUp() throws IOException {
+        fasta = new FastaSequence(FASTA_FILE);
+        window = new ReferenceWindow(fasta, new IupacEncoder());
+    }
+
+    /**
+     * Closes the fasta file.
+     *
+     * @throws IOException if the file could not be closed.
+     */
+    @After
+    public void tearDown() throws IOException {
+        fasta.close();
+    }
+
+    /**
+     * Test that the window reads the bases until the last position and keeps them after moving.
+     */
+    @Test
+    public void testMove() throws IOException {
+        window.move(1, 10);
+        assertThat(read(0, 10)).isEqualTo("TTGACCGATG");
+        window.move(5, 75);
+        assertThat(read(4, 6)).isEqualTo("CCGATG");
+        assertThat(read(68, 7)).isEqualTo("CCCTAAG");
+    }
+
+    /**
+     * Test that reading past the window returns only the bases in it.
+     */
+    @Test
+    public void testReadPastEnd() throws IOException {
+        window.move(1, 4);
+        assertThat(read(2, 5)).isEqualTo("GA");
+        assertThat(read(10, 5)).isEmpty();
+    }
+
+    /**
+     * Test that dropped bases can not be read.
+     */
+    @Test
+    public void testReadDropped() {
+        window.move(1, 10);
+        window.move(6, 20);
+        assertThatThrownBy(() -> read(4, 1)).isInstanceOf(IllegalStateException.class);
+    }
+
+    private String read(int startIndex, int amount) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertThat(window.write(out, startIndex, amount)).isEqualTo(out.size());
+        return out.toString("UTF-8");
+    }
+}
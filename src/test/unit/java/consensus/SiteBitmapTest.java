@@ -0,0 +1,116 @@
+package consensus;
+
+import consensus.filters.SiteBitmap;
+import consensus.filters.SiteFilter;
+import htsjdk.variant.variantcontext.VariantContext;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for the compressed site bitmap and the site filter.
+ */
+public class SiteBitmapTest {
+
+    /**
+     * Test membership of sparse sites, added out of order.
+     */
+    @Test
+    public void testSparse() {
+        SiteBitmap bitmap = new SiteBitmap().add(70000).add(5).add(65535).add(5);
+        assertThat(bitmap.contains(5)).isTrue();
+        assertThat(bitmap.contains(65535)).isTrue();
+        assertThat(bitmap.contains(70000)).isTrue();
+        assertThat(bitmap.contains(6)).isFalse();
+        assertThat(bitmap.contains(65536)).isFalse();
+        assertThat(bitmap.contains(Integer.MAX_VALUE)).isFalse();
+        assertThat(bitmap.getCardinality()).isEqualTo(3);
+    }
+
+    /**
+     * Test that a dense chunk, which is stored as a bitmap, keeps all sites.
+     */
+    @Test
+    public void testDense() {
+        SiteBitmap bitmap = new SiteBitmap().addRange(100, 10099);
+        assertThat(bitmap.getCardinality()).isEqualTo(10000);
+        assertThat(bitmap.contains(99)).isFalse();
+        assertThat(bitmap.contains(100)).isTrue();
+        assertThat(bitmap.contains(10099)).isTrue();
+        assertThat(bitmap.contains(10100)).isFalse();
+        bitmap.add(100);
+        assertThat(bitmap.getCardinality()).isEqualTo(10000);
+    }
+
+    /**
+     * Test the bitmap against a hash set on random sites.
+     */
+    @Test
+    public void testRandomAgainstSet() {
+        Random random = new Random(7);
+        Set<Integer> expected = new HashSet<>();
+        SiteBitmap bitmap = new SiteBitmap();
+        for (int i = 0; i < 20000; i++) {
+            int site = random.nextInt(300000);
+            expected.add(site);
+            bitmap.add(site);
+        }
+        assertThat(bitmap.getCardinality()).isEqualTo(expected.size());
+        for (int i = 0; i < 300000; i++) {
+            assertThat(bitmap.contains(i)).isEqualTo(expected.contains(i));
+        }
+    }
+
+    /**
+     * Test that negative sites are rejected.
+     */
+    @Test
+    public void testNegative() {
+        assertThatThrownBy(() -> new SiteBitmap().add(-1)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    /**
+     * Test that the site filter looks at the contig and start of the record.
+     */
+    @Test
+    public void testFilter() {
+        SiteFilter filter = new SiteFilter(Collections.singletonMap("genome", new SiteBitmap().add(12)));
+        assertThat(filter.test(mockContext("genome", 12))).isTrue();
+        assertThat(filter.test(mockContext("genome", 13))).isFalse();
+        assertThat(filter.test(mockContext("other", 12))).isFalse();
+        assertThat(filter.test(mockContext("genome", 12))).isTrue();
+    }
+
+    /**
+     * Test that sets with the same positions are equal, whatever the order and the containers grew in.
+     */
+    @Test
+    public void testEquals() {
+        SiteBitmap dense = new SiteBitmap().addRange(1, 5000).add(200000);
+        SiteBitmap reversed = new SiteBitmap().add(200000);
+        for (int position = 5000; position >= 1; position--) {
+            reversed.add(position);
+        }
+        assertThat(reversed).isEqualTo(dense);
+        assertThat(reversed.hashCode()).isEqualTo(dense.hashCode());
+        assertThat(new SiteBitmap().add(3).add(70000)).isEqualTo(new SiteBitmap().add(70000).add(3))
+                .isNotEqualTo(new SiteBitmap().add(3).add(70001));
+        assertThat(new SiteFilter(Collections.singletonMap("genome", new SiteBitmap().add(12))))
+                .isEqualTo(new SiteFilter(Collections.singletonMap("genome", new SiteBitmap().add(12))));
+    }
+
+    private static VariantContext mockContext(String contig, int start) {
+        VariantContext context = mock(VariantContext.class);
+        when(context.getContig()).thenReturn(contig);
+        when(context.getStart()).thenReturn(start);
+        return context;
+    }
+}
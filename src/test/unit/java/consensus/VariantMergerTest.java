@@ -0,0 +1,93 @@
+package consensus;
+
+import consensus.samplers.SampleBuffer;
+import consensus.samplers.Sampler;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Iterator;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Tests for merging the samples of a group of calls.
+ */
+public class VariantMergerTest {
+    private static final int LENGTH = 2000000;
+
+    /**
+     * Test that a long deletion is a span of deleted positions, merged with one reused consensus.
+     */
+    @Test
+    public void testLongDeletion() {
+        SampleBuffer samples = new SampleBuffer();
+        samples.add(new byte[]{'A'}, Sampler.SampleType.ALTERNATIVE, Sampler.VariantType.SIMPLE_DEL, 1, LENGTH);
+        ConsensusGenerator.ConsensusStatistics stats = new ConsensusGenerator.ConsensusStatistics();
+        Iterator<VariantMerger.Consensus> merged = new VariantMerger(samples).mergeVariants(1, LENGTH, stats);
+        VariantMerger.Consensus first = merged.next();
+        assertThat(first.isDeleted()).isFalse();
+        assertThat(first.getConsensus()).containsExactly((byte) 'A');
+        int deleted = 0;
+        while (merged.hasNext()) {
+            VariantMerger.Consensus consensus = merged.next();
+            if (consensus == first && consensus.isDeleted() && consensus.getHeteroLevel() == 0) {
+                deleted++;
+            }
+        }
+        assertThat(deleted).isEqualTo(LENGTH - 1);
+    }
+
+    /**
+     * Test that the bases of a long insertion follow the reference base, with their relative position.
+     */
+    @Test
+    public void testLongInsertion() {
+        byte[] allele = new byte[LENGTH];
+        Arrays.fill(allele, (byte) 'G');
+        allele[0] = 'C';
+        SampleBuffer samples = new SampleBuffer();
+        samples.add(allele, Sampler.SampleType.HETERO, Sampler.VariantType.INSERTION, 5, 5);
+        samples.add(new byte[]{'C'}, Sampler.SampleType.HETERO, Sampler.VariantType.NO_CHANGE, 5, 5);
+        ConsensusGenerator.ConsensusStatistics stats = new ConsensusGenerator.ConsensusStatistics();
+        Iterator<VariantMerger.Consensus> merged = new VariantMerger(samples).mergeVariants(5, 5, stats);
+        VariantMerger.Consensus anchor = merged.next();
+        assertThat(anchor.getRelativePosition()).isEqualTo(0);
+        assertThat(anchor.getConsensus()).containsExactly((byte) 'C', (byte) 'C');
+        int inserted = 0;
+        while (merged.hasNext()) {
+            VariantMerger.Consensus consensus = merged.next();
+            if (consensus.getRelativePosition() == inserted + 1 && consensus.getHeteroLevel() == 2
+                    && consensus.getConsensus().size() == 1) {
+                inserted++;
+            }
+        }
+        assertThat(inserted).isEqualTo(LENGTH - 1);
+    }
+
+    /**
+     * Test that a reused merger grows for a larger group and adds the samples in order of start,
+     * whatever their order in the buffer.
+     */
+    @Test
+    public void testReusedMerger() {
+        SampleBuffer samples = new SampleBuffer();
+        VariantMerger merger = new VariantMerger(samples);
+        ConsensusGenerator.ConsensusStatistics stats = new ConsensusGenerator.ConsensusStatistics();
+        samples.add(new byte[]{'A'}, Sampler.SampleType.ALTERNATIVE, Sampler.VariantType.SNP, 1, 1);
+        assertThat(merger.mergeVariants(1, 1, stats).next().getConsensus()).containsExactly((byte) 'A');
+        samples.clear();
+        final int size = 100;
+        for (int sample = 0; sample < size; sample++) {
+            samples.add(new byte[]{'C'}, Sampler.SampleType.ALTERNATIVE, Sampler.VariantType.SNP,
+                    size - sample, size - sample);
+        }
+        Iterator<VariantMerger.Consensus> merged = merger.mergeVariants(1, size, stats);
+        int positions = 0;
+        while (merged.hasNext()) {
+            VariantMerger.Consensus consensus = merged.next();
+            assertThat(consensus.getRefPosition()).isEqualTo(++positions);
+            assertThat(consensus.getConsensus()).containsExactly((byte) 'C');
+        }
+        assertThat(positions).isEqualTo(size);
+    }
+}
@@ -0,0 +1,83 @@
+package consensus.samplers;
+
+import htsjdk.variant.variantcontext.VariantContext;
+import org.junit.Before;
+import org.junit.Test;
+import vcf.iterator.VCFIterator;
+import vcf.iterator.VCFIteratorBuilder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Tests for the sampler based on the dosage of the alleles.
+ */
+public class DosageSamplerTest {
+    private List<VariantContext> records;
+
+    /**
+     * Reads the records of the test file.
+     *
+     * @throws IOException if the file could not be read.
+     */
+    @Before
+    public void setUp() throws IOException {
+        records = new ArrayList<>();
+        try (VCFIterator iterator = new VCFIteratorBuilder().open("src/test/resources/VCF/polyploid.vcf")) {
+            while (iterator.hasNext()) {
+                records.add(iterator.next());
+            }
+        }
+    }
+
+    private static List<String> alleles(List<Sampler.Sample> samples) {
+        return samples.stream().map(s -> new String(s.getAllele(), StandardCharsets.UTF_8)
+                + ":" + s.getSampleType()).collect(Collectors.toList());
+    }
+
+    /**
+     * Test that every allele in the genotypes is used without a minimum fraction.
+     */
+    @Test
+    public void testAllAlleles() {
+        DosageSampler sampler = new DosageSampler();
+        assertThat(alleles(sampler.sample(records.get(0)))).containsExactly("C:HETERO", "G:HETERO", "A:HETERO");
+        assertThat(alleles(sampler.sample(records.get(1)))).containsExactly("A:REFERENCE");
+        assertThat(alleles(sampler.sample(records.get(2)))).containsExactly("C:ALTERNATIVE");
+        assertThat(alleles(sampler.sample(records.get(3)))).containsExactly("C:HETERO", "A:HETERO");
+    }
+
+    /**
+     * Test that alleles with a low dosage are left out.
+     */
+    @Test
+    public void testMinimumFraction() {
+        DosageSampler sampler = new DosageSampler(0.2);
+        assertThat(alleles(sampler.sample(records.get(0)))).containsExactly("C:ALTERNATIVE");
+        assertThat(alleles(new DosageSampler(1).sample(records.get(3)))).containsExactly("C:HETERO", "A:HETERO");
+    }
+
+    /**
+     * Test that calls without genotypes are heterozygous and filtered calls the reference.
+     */
+    @Test
+    public void testMissingAndFailed() {
+        DosageSampler sampler = new DosageSampler();
+        assertThat(alleles(sampler.sample(records.get(4)))).containsExactly("C:HETERO", "A:HETERO");
+        assertThat(alleles(sampler.sample(records.get(0), false))).containsExactly("A:REFERENCE");
+    }
+
+    /**
+     * Test that the fraction is validated.
+     */
+    @Test
+    public void testInvalidFraction() {
+        assertThatThrownBy(() -> new DosageSampler(1.5)).isInstanceOf(IllegalArgumentException.class);
+    }
+}
@@ -0,0 +1,79 @@
+package consensus.samplers;
+
+import htsjdk.variant.variantcontext.VariantContext;
+import org.junit.Before;
+import org.junit.Test;
+import vcf.iterator.VCFIterator;
+import vcf.iterator.VCFIteratorBuilder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Tests for the sampler of one haplotype of a phased genotype.
+ */
+public class HaplotypeSamplerTest {
+    private List<VariantContext> records;
+
+    /**
+     * Reads the records of the test file.
+     *
+     * @throws IOException if the file could not be read.
+     */
+    @Before
+    public void setUp() throws IOException {
+        records = new ArrayList<>();
+        try (VCFIterator iterator = new VCFIteratorBuilder().open("src/test/resources/VCF/phased.vcf")) {
+            while (iterator.hasNext()) {
+                records.add(iterator.next());
+            }
+        }
+    }
+
+    private static List<String> alleles(List<Sampler.Sample> samples) {
+        return samples.stream().map(s -> new String(s.getAllele(), StandardCharsets.UTF_8))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Test that every haplotype of a phased genotype gets its own allele.
+     */
+    @Test
+    public void testPhased() {
+        List<String> haplotypes = new ArrayList<>();
+        for (int haplotype = 0; haplotype < 4; haplotype++) {
+            List<Sampler.Sample> samples = new HaplotypeSampler(0, haplotype, null).sample(records.get(1));
+            assertThat(samples).hasSize(1);
+            haplotypes.addAll(alleles(samples));
+        }
+        assertThat(haplotypes).containsExactly("G", "T", "A", "G");
+        assertThat(new HaplotypeSampler(0, 0, null).sample(records.get(0)).get(0).getSampleType())
+                .isEqualTo(Sampler.SampleType.REFERENCE);
+        assertThat(new HaplotypeSampler(0, 1, null).sample(records.get(0)).get(0).getSampleType())
+                .isEqualTo(Sampler.SampleType.ALTERNATIVE);
+    }
+
+    /**
+     * Test that an unphased genotype, a missing allele and a haplotype beyond the ploidy are heterozygous.
+     */
+    @Test
+    public void testNotResolved() {
+        assertThat(alleles(new HaplotypeSampler(0, 0, null).sample(records.get(3)))).containsExactly("C", "A");
+        assertThat(alleles(new HaplotypeSampler(0, 1, null).sample(records.get(4)))).containsExactly("C", "A");
+        assertThat(alleles(new HaplotypeSampler(0, 4, null).sample(records.get(0)))).containsExactly("C", "A");
+    }
+
+    /**
+     * Test that a negative haplotype is rejected.
+     */
+    @Test
+    public void testNegativeHaplotype() {
+        assertThatThrownBy(() -> new HaplotypeSampler(0, -1, null)).isInstanceOf(IllegalArgumentException.class);
+    }
+}
@@ -0,0 +1,68 @@
+package consensus.samplers;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Tests for the reusable sample buffer.
+ */
+public class SampleBufferTest {
+
+    /**
+     * Test that samples are kept past the initial capacity and are copied into sample objects.
+     */
+    @Test
+    public void testAddAndGrow() {
+        SampleBuffer buffer = new SampleBuffer();
+        for (int i = 0; i < 100; i++) {
+            buffer.add(("ACGT" + i).getBytes(StandardCharsets.UTF_8), Sampler.SampleType.HETERO,
+                    Sampler.VariantType.INSERTION, i, i + 1);
+        }
+        assertThat(buffer.size()).isEqualTo(100);
+        assertThat(buffer.getStart(70)).isEqualTo(70);
+        assertThat(buffer.getEnd(70)).isEqualTo(71);
+        assertThat(buffer.getAlleleLength(70)).isEqualTo(6);
+        assertThat((char) buffer.getAlleleBase(70, 5)).isEqualTo('0');
+        List<Sampler.Sample> samples = buffer.toSamples();
+        assertThat(new String(samples.get(99).getAllele(), StandardCharsets.UTF_8)).isEqualTo("ACGT99");
+        assertThat(samples.get(99).getVariantType()).isEqualTo(Sampler.VariantType.INSERTION);
+    }
+
+    /**
+     * Test that a cleared buffer is reused from the start.
+     */
+    @Test
+    public void testClear() {
+        SampleBuffer buffer = new SampleBuffer();
+        buffer.add(new byte[]{'A', 'C'}, Sampler.SampleType.ALTERNATIVE, Sampler.VariantType.MNP, 1, 2);
+        buffer.clear();
+        assertThat(buffer.size()).isEqualTo(0);
+        buffer.add(new byte[]{'G'}, Sampler.SampleType.REFERENCE, Sampler.VariantType.NO_CHANGE, 5, 5);
+        assertThat(buffer.size()).isEqualTo(1);
+        assertThat(buffer.getAlleleBase(0, 0)).isEqualTo((byte) 'G');
+        assertThat(buffer.getSampleType(0)).isEqualTo(Sampler.SampleType.REFERENCE);
+    }
+
+    /**
+     * Test that the samples reaching a position are kept in order with their alleles.
+     */
+    @Test
+    public void testRetainEndingFrom() {
+        SampleBuffer buffer = new SampleBuffer();
+        buffer.add(new byte[]{'A', 'C'}, Sampler.SampleType.ALTERNATIVE, Sampler.VariantType.MNP, 1, 2);
+        buffer.add(new byte[]{'G'}, Sampler.SampleType.HETERO, Sampler.VariantType.SIMPLE_DEL, 2, 9);
+        buffer.add(new byte[]{'T'}, Sampler.SampleType.REFERENCE, Sampler.VariantType.NO_CHANGE, 3, 3);
+        buffer.add(new byte[]{'C', 'A'}, Sampler.SampleType.ALTERNATIVE, Sampler.VariantType.INSERTION, 4, 4);
+        buffer.retainEndingFrom(4);
+        assertThat(buffer.size()).isEqualTo(2);
+        assertThat(buffer.getStart(0)).isEqualTo(2);
+        assertThat(buffer.getAlleleBase(0, 0)).isEqualTo((byte) 'G');
+        assertThat(buffer.getVariantType(1)).isEqualTo(Sampler.VariantType.INSERTION);
+        assertThat(buffer.getAlleleLength(1)).isEqualTo(2);
+        assertThat(buffer.getAlleleBase(1, 1)).isEqualTo((byte) 'A');
+    }
+}
@@ -1,9 +1,27 @@
 package coverage;
 
+import htsjdk.samtools.SAMFileHeader;
+import htsjdk.samtools.SAMFileWriter;
+import htsjdk.samtools.SAMFileWriterFactory;
+import htsjdk.samtools.SAMRecord;
+import htsjdk.samtools.SAMSequenceRecord;
+import htsjdk.samtools.SamReader;
+import htsjdk.samtools.SamReaderFactory;
+import htsjdk.samtools.ValidationStringency;
+import htsjdk.samtools.util.Interval;
+import htsjdk.samtools.util.IntervalList;
+import htsjdk.samtools.util.SamLocusIterator;
+import htsjdk.samtools.util.StringUtil;
 import org.junit.Ignore;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
+import java.io.File;
 import java.io.IOException;
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.List;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
@@ -12,6 +30,10 @@ import static org.assertj.core.api.Assertions.assertThat;
  */
 public class CoverageGeneratorTest {
     private static final String BAM_PATH = "./src/test/resources/P2_TB_SRR833154_H37Rv_BR.bam";
+    private static final String SAM_PATH = "./src/test/resources/coverage/depth.sam";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
 
 
     /**
@@ -41,4 +63,152 @@ public class CoverageGeneratorTest {
                 1, BAM_PATH, "gi|561108321|ref|NC_018143.2|", 1000, 10000);
         assertThat(coverage.getTotalCovered()).isEqualTo(coverage1.getTotalCovered());
     }
+
+    /**
+     * Test that the depths follow the aligned blocks of the reads that pass the default filters,
+     * without the deleted, skipped, clipped and inserted bases.
+     * @throws IOException if something crashed.
+     */
+    @Test
+    public void testDepths() throws IOException {
+        CoverageArray coverage = new CoverageGenerator().bamFileArrayCoverage(SAM_PATH, "chr1", 5, 20);
+        int[] expected = {1, 1, 1, 2, 2, 3, 3, 4, 3, 3, 2, 2, 2, 1, 0, 0};
+        for (int i = 0; i < expected.length; i++) {
+            assertThat(coverage.coverageAtBase(i)).as("depth at %d", 5 + i).isEqualTo(expected[i]);
+        }
+        assertThat(coverage.getTotalDepth()).isEqualTo(30);
+    }
+
+    /**
+     * Test that the depths are the same as those of the locus iterator, with and without filters.
+     * @throws IOException if something crashed.
+     */
+    @Test
+    public void testDepthsLikeLocusIterator() throws IOException {
+        for (CoverageGenerator generator : new CoverageGenerator[]{
+                new CoverageGenerator(), new CoverageGenerator(0, 0, false, false, false)}) {
+            CoverageArray coverage = generator.bamFileArrayCoverage(SAM_PATH, "chr1", 1, 50);
+            try (SamReader reader = SamReaderFactory.makeDefault()
+                    .validationStringency(ValidationStringency.LENIENT).open(new File(SAM_PATH))) {
+                IntervalList intervals = new IntervalList(reader.getFileHeader());
+                intervals.add(new Interval("chr1", 1, 50));
+                SamLocusIterator loci = new SamLocusIterator(reader, intervals, false);
+                loci.setSamFilters(generator.getFilterList());
+                for (SamLocusIterator.LocusInfo locus : loci) {
+                    assertThat(coverage.coverageAtBase(locus.getPosition() - 1)).as("depth at %d", locus.getPosition())
+                            .isEqualTo(locus.getRecordAndPositions().size());
+                }
+                loci.close();
+            }
+        }
+    }
+
+    /**
+     * Test that the partitions cover the interval and end on the windows of the index.
+     */
+    @Test
+    public void testPartitions() {
+        List<int[]> partitions = CoverageGenerator.partitions(100, 100000, 4);
+        assertThat(partitions.get(0)).containsExactly(100, 2 * CoverageGenerator.INDEX_WINDOW);
+        int next = 100;
+        for (int[] partition : partitions) {
+            assertThat(partition[0]).isEqualTo(next);
+            if (partition[1] != 100000) {
+                assertThat(partition[1] % CoverageGenerator.INDEX_WINDOW).isZero();
+            }
+            next = partition[1] + 1;
+        }
+        assertThat(next).isEqualTo(100001);
+        assertThat(CoverageGenerator.partitions(5, 20, 8)).hasSize(1);
+        assertThat(CoverageGenerator.partitions(5, 4, 8)).isEmpty();
+    }
+
+    /**
+     * Test that the coverage of an indexed file on several threads is the same as that of one pass.
+     * @throws IOException if something crashed.
+     */
+    @Test
+    public void testThreadsOnIndexedFile() throws IOException {
+        SAMFileHeader header = new SAMFileHeader();
+        header.addSequence(new SAMSequenceRecord("chr1", 100000));
+        header.setSortOrder(SAMFileHeader.SortOrder.coordinate);
+        File bam = folder.newFile("threads.bam");
+        File sam = folder.newFile("threads.sam");
+        try (SAMFileWriter bamWriter = new SAMFileWriterFactory().setCreateIndex(true)
+                .makeBAMWriter(header, true, bam);
+             SAMFileWriter samWriter = new SAMFileWriterFactory().makeSAMWriter(header, true, sam)) {
+            for (int start = 1; start < 100000; start += 97) {
+                SAMRecord record = new SAMRecord(header);
+                record.setReadName("r" + start);
+                record.setReferenceName("chr1");
+                record.setAlignmentStart(start);
+                record.setCigarString(start % 3 == 0 ? "60M20D90M" : "150M");
+                record.setMappingQuality(start % 5 == 0 ? 0 : 60);
+                record.setReadString(StringUtil.repeatCharNTimes('A', 150));
+                record.setBaseQualityString("*");
+                bamWriter.addAlignment(record);
+                samWriter.addAlignment(record);
+            }
+        }
+        CoverageGenerator generator = new CoverageGenerator();
+        CoverageArray expected = generator.bamFileArrayCoverage(sam.getPath(), "chr1", 300, 120000);
+        CoverageArray array = generator.bamFileArrayCoverageThreads(3, bam.getPath(), "chr1", 300, 120000);
+        Coverage basic = generator.bamFileBasicCoverageThreads(3, bam.getPath(), "chr1", 300, 120000);
+        assertThat(array.getEndPos()).isEqualTo(100000);
+        assertThat(array.getTotalDepth()).isEqualTo(expected.getTotalDepth()).isGreaterThan(0);
+        assertThat(array.getTotalCovered()).isEqualTo(expected.getTotalCovered());
+        assertThat(basic.getTotalDepth()).isEqualTo(expected.getTotalDepth());
+        assertThat(basic.getTotalCovered()).isEqualTo(expected.getTotalCovered());
+        for (int i = 0; i <= 100000 - 300; i++) {
+            assertThat(array.coverageAtBase(i)).as("depth at %d", 300 + i).isEqualTo(expected.coverageAtBase(i));
+        }
+    }
+
+    /**
+     * Test that the coverage of several overlapping and separate regions is that of each region on its own,
+     * with the percentiles of the sorted depths.
+     * @throws IOException if something crashed.
+     */
+    @Test
+    public void testRegionsCoverage() throws IOException {
+        CoverageGenerator generator = new CoverageGenerator();
+        List<int[]> regions = Arrays.asList(new int[]{30, 40}, new int[]{5, 20}, new int[]{10, 12},
+                new int[]{21, 25}, new int[]{1, -1}, new int[]{45, 100});
+        List<RegionCoverage> coverages = generator.bamFileRegionsCoverage(SAM_PATH, "chr1", regions);
+        assertThat(coverages).hasSize(regions.size());
+        assertThat(coverages.get(4).getEndPos()).isEqualTo(50);
+        assertThat(coverages.get(5).getEndPos()).isEqualTo(50);
+        for (RegionCoverage coverage : coverages) {
+            CoverageArray expected = generator.bamFileArrayCoverage(
+                    SAM_PATH, "chr1", coverage.getStartPos(), coverage.getEndPos());
+            assertThat(coverage.getTotalDepth()).isEqualTo(expected.getTotalDepth());
+            assertThat(coverage.getTotalCovered()).isEqualTo(expected.getTotalCovered());
+            int[] sorted = new int[expected.getTotalBases()];
+            for (int i = 0; i < sorted.length; i++) {
+                sorted[i] = expected.coverageAtBase(i);
+            }
+            Arrays.sort(sorted);
+            for (int p = 0; p < RegionCoverage.PERCENTILES.length; p++) {
+                int rank = (int) Math.ceil(RegionCoverage.PERCENTILES[p] / 100.0 * sorted.length);
+                assertThat(coverage.getPercentileDepth(p)).isEqualTo(sorted[Math.max(rank, 1) - 1]);
+            }
+        }
+        assertThat(coverages.get(1).getPercentileDepth(2)).isEqualTo(2);
+    }
+
+    /**
+     * Test that the bedGraph of an array coverage has a line per run of equal depths, starting at 0.
+     * @throws IOException if something crashed.
+     */
+    @Test
+    public void testBedGraph() throws IOException {
+        CoverageArray coverage = new CoverageGenerator().bamFileArrayCoverage(SAM_PATH, "chr1", 5, 20);
+        StringWriter writer = new StringWriter();
+        coverage.writeBedGraph(writer);
+        assertThat(writer.toString()).isEqualTo("chr1\t4\t7\t1\nchr1\t7\t9\t2\nchr1\t9\t11\t3\n"
+                + "chr1\t11\t12\t4\nchr1\t12\t14\t3\nchr1\t14\t17\t2\nchr1\t17\t18\t1\nchr1\t18\t20\t0\n");
+        assertThat(coverage.totalBasesWithMinimalCoverage(2)).isEqualTo(10);
+        assertThat(coverage.lowestCoverage()).isEqualTo(0);
+        assertThat(coverage.highestCoverage()).isEqualTo(4);
+    }
 }
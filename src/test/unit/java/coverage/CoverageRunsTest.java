@@ -0,0 +1,85 @@
+package coverage;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Test the run-length coverage depths.
+ */
+public class CoverageRunsTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Test that equal neighbouring depths become one run, also over the arrays that are added.
+     * @throws IOException if something crashed.
+     */
+    @Test
+    public void testRuns() throws IOException {
+        CoverageRuns.Builder builder = new CoverageRuns.Builder(null);
+        builder.add(new int[]{0, 0, 3, 3, 3});
+        builder.add(new int[]{3, 1});
+        builder.add(new int[0]);
+        builder.add(new int[]{1, 7});
+        CoverageRuns runs = builder.build();
+        assertThat(runs.runs()).isEqualTo(4);
+        assertThat(runs.length()).isEqualTo(9);
+        assertThat(runs.start(1)).isEqualTo(2);
+        assertThat(runs.end(1)).isEqualTo(6);
+        assertThat(runs.depth(1)).isEqualTo(3);
+        assertThat(runs.depthAt(5)).isEqualTo(3);
+        assertThat(runs.depthAt(6)).isEqualTo(1);
+        assertThat(runs.lowest()).isEqualTo(0);
+        assertThat(runs.highest()).isEqualTo(7);
+    }
+
+    /**
+     * Test that runs spilled to a mapped file give the same depths as those in memory, past several samples,
+     * and that the file is removed once it is mapped.
+     * @throws IOException if something crashed.
+     */
+    @Test
+    public void testSpilledRuns() throws IOException {
+        Random random = new Random(7);
+        int[] depths = new int[5 << CoverageRuns.SAMPLE_SHIFT];
+        for (int i = 0; i < depths.length; i++) {
+            depths[i] = i > 0 && random.nextInt(4) != 0 ? depths[i - 1] : random.nextInt(5);
+        }
+        File directory = folder.newFolder();
+        CoverageRuns.Builder memoryBuilder = new CoverageRuns.Builder(null);
+        CoverageRuns.Builder fileBuilder = new CoverageRuns.Builder(directory, 100);
+        for (int from = 0; from < depths.length; from += 1000) {
+            int[] part = Arrays.copyOfRange(depths, from, Math.min(depths.length, from + 1000));
+            memoryBuilder.add(part);
+            fileBuilder.add(part);
+        }
+        CoverageRuns memory = memoryBuilder.build();
+        CoverageRuns file = fileBuilder.build();
+        assertThat(directory.list()).isEmpty();
+        assertThat(file.runs()).isEqualTo(memory.runs()).isGreaterThan(100);
+        for (int i = 0; i < depths.length; i++) {
+            assertThat(memory.depthAt(i)).as("depth at %d", i).isEqualTo(depths[i]);
+            assertThat(file.depthAt(i)).as("depth at %d", i).isEqualTo(depths[i]);
+        }
+    }
+
+    /**
+     * Test that no depths give no runs.
+     * @throws IOException if something crashed.
+     */
+    @Test
+    public void testEmpty() throws IOException {
+        CoverageRuns runs = new CoverageRuns.Builder(null).build();
+        assertThat(runs.runs()).isZero();
+        assertThat(runs.length()).isZero();
+        assertThat(runs.highest()).isZero();
+    }
+}
@@ -1,9 +1,12 @@
 package general;
 
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
 import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.IOException;
 
 import static org.assertj.core.api.Assertions.assertThat;
@@ -15,6 +18,8 @@ import static org.assertj.core.api.Fail.fail;
  */
 @SuppressFBWarnings("DM_DEFAULT_ENCODING")
 public class CachedReversingStreamTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
 
     /**
      * Blocksize must be at least 1.
@@ -134,4 +139,34 @@ public class CachedReversingStreamTest {
         }
     }
 
+    /**
+     * Test that the blocks are spilled to the given directory, are written back in reverse order
+     * and that the file is removed once the stream is flushed.
+     */
+    @Test
+    public void spillToDirectory() throws IOException {
+        File directory = folder.newFolder();
+        ByteArrayOutputStream byteStream = new ByteArrayOutputStream();
+        CachedReversingStream reversingStream = new CachedReversingStream(byteStream, 4, directory);
+        reversingStream.write("abcdefghij".getBytes());
+        reversingStream.write('k');
+        assertThat(directory.listFiles()).hasSize(1);
+        reversingStream.flush();
+        assertThat(directory.listFiles()).isEmpty();
+        reversingStream.write("lmn".getBytes());
+        reversingStream.close();
+        assertThat(new String(byteStream.toByteArray())).isEqualTo("kjihgfedcbanml");
+    }
+
+    /**
+     * Test that the brackets are turned around, also across blocks.
+     */
+    @Test
+    public void turnBrackets() throws IOException {
+        ByteArrayOutputStream byteStream = new ByteArrayOutputStream();
+        CachedReversingStream reversingStream = new CachedReversingStream(byteStream, 3, folder.getRoot());
+        reversingStream.write("A[C]G(TT)".getBytes());
+        reversingStream.close();
+        assertThat(new String(byteStream.toByteArray())).isEqualTo("(TT)G[C]A");
+    }
 }
@@ -0,0 +1,195 @@
+package vcf;
+
+import htsjdk.variant.variantcontext.Allele;
+import htsjdk.variant.variantcontext.GenotypeBuilder;
+import htsjdk.variant.variantcontext.VariantContext;
+import htsjdk.variant.variantcontext.VariantContextBuilder;
+import org.junit.Before;
+import org.junit.Test;
+import vcf.iterator.VCFIterator;
+import vcf.iterator.VCFIteratorBuilder;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Tests for the lazy FORMAT field reader.
+ */
+public class GenotypeFieldReaderTest {
+    private List<VariantContext> records;
+
+    /**
+     * Reads the records of the test file.
+     *
+     * @throws IOException if the file could not be read.
+     */
+    @Before
+    public void setUp() throws IOException {
+        records = new ArrayList<>();
+        try (VCFIterator iterator = new VCFIteratorBuilder().open("src/test/resources/VCF/formatfields.vcf")) {
+            while (iterator.hasNext()) {
+                records.add(iterator.next());
+            }
+        }
+    }
+
+    /**
+     * Test reading single values of both samples.
+     */
+    @Test
+    public void testSingleValues() {
+        GenotypeFieldReader reader = new GenotypeFieldReader("GQ");
+        assertThat(reader.read(records.get(0), 0)).isEqualTo(1);
+        assertThat(reader.getValue(0)).isEqualTo(30);
+        assertThat(reader.read(records.get(0), 1)).isEqualTo(1);
+        assertThat(reader.getValue(0)).isEqualTo(99);
+    }
+
+    /**
+     * Test reading a field with several values.
+     */
+    @Test
+    public void testMultipleValues() {
+        GenotypeFieldReader reader = new GenotypeFieldReader("AD");
+        assertThat(reader.read(records.get(1), 0)).isEqualTo(3);
+        assertThat(reader.getValue(1)).isEqualTo(3);
+        assertThat(reader.getValue(2)).isEqualTo(4);
+        assertThat(reader.read(records.get(0), 1)).isEqualTo(2);
+        assertThat(reader.getValue(1)).isEqualTo(20);
+    }
+
+    /**
+     * Test that missing keys, values, trailing fields and samples read as missing.
+     */
+    @Test
+    public void testMissing() {
+        assertThat(new GenotypeFieldReader("GQ").read(records.get(1), 0)).isEqualTo(0);
+        assertThat(new GenotypeFieldReader("DP").read(records.get(1), 1)).isEqualTo(0);
+        assertThat(new GenotypeFieldReader("DP").read(records.get(2), 0)).isEqualTo(0);
+        assertThat(new GenotypeFieldReader("GQ").read(records.get(2), 1)).isEqualTo(0);
+        assertThat(new GenotypeFieldReader("GQ").read(records.get(0), 2)).isEqualTo(0);
+    }
+
+    /**
+     * Test that missing values keep their place among the values of a field.
+     */
+    @Test
+    public void testMissingValues() {
+        GenotypeFieldReader reader = new GenotypeFieldReader("AD");
+        assertThat(reader.read(records.get(3), 0)).isEqualTo(2);
+        assertThat(reader.getValue(0)).isEqualTo(GenotypeFieldReader.MISSING);
+        assertThat(reader.getValue(1)).isEqualTo(7);
+        assertThat(reader.read(records.get(4), 0)).isEqualTo(3);
+        assertThat(reader.getValue(2)).isEqualTo(4);
+        assertThat(reader.read(records.get(4), 1)).isEqualTo(0);
+    }
+
+    /**
+     * Test that the genotypes are not decoded by reading a field.
+     */
+    @Test
+    public void testLazy() {
+        VariantContext record = records.get(0);
+        new GenotypeFieldReader("DP").read(record, 1);
+        assertThat(record.getGenotypes().isLazyWithData()).isTrue();
+    }
+
+    /**
+     * Test that decoded genotypes are read as well.
+     */
+    @Test
+    public void testDecoded() {
+        List<Allele> alleles = Arrays.asList(Allele.create("A", true), Allele.create("C"));
+        VariantContext record = new VariantContextBuilder("test", "genome", 1, 1, alleles)
+                .genotypes(new GenotypeBuilder("first", alleles).GQ(40).DP(3).AD(new int[]{1, 2}).make()).make();
+        GenotypeFieldReader reader = new GenotypeFieldReader("AD");
+        assertThat(reader.read(record, 0)).isEqualTo(2);
+        assertThat(reader.getValue(1)).isEqualTo(2);
+        assertThat(new GenotypeFieldReader("GQ").read(record, 0)).isEqualTo(1);
+    }
+
+    /**
+     * Test counting the dosage of the alleles of polyploid genotypes.
+     *
+     * @throws IOException if the file could not be read.
+     */
+    @Test
+    public void testDosages() throws IOException {
+        List<VariantContext> polyploid = new ArrayList<>();
+        try (VCFIterator iterator = new VCFIteratorBuilder().open("src/test/resources/VCF/polyploid.vcf")) {
+            while (iterator.hasNext()) {
+                polyploid.add(iterator.next());
+            }
+        }
+        GenotypeFieldReader reader = new GenotypeFieldReader("GT");
+        int[] dosages = new int[3];
+        assertThat(reader.readDosages(polyploid.get(0), dosages)).isEqualTo(12);
+        assertThat(dosages).containsExactly(2, 9, 1);
+        dosages = new int[2];
+        assertThat(reader.readDosages(polyploid.get(1), dosages)).isEqualTo(6);
+        assertThat(dosages).containsExactly(6, 0);
+        dosages = new int[2];
+        assertThat(reader.readDosages(polyploid.get(3), dosages)).isEqualTo(2);
+        assertThat(dosages).containsExactly(1, 1);
+        assertThat(reader.readDosages(polyploid.get(4), new int[2])).isEqualTo(0);
+        assertThat(polyploid.get(0).getGenotypes().isLazyWithData()).isTrue();
+    }
+
+    /**
+     * Test reading the alleles of phased and unphased genotypes.
+     *
+     * @throws IOException if the file could not be read.
+     */
+    @Test
+    public void testGenotype() throws IOException {
+        List<VariantContext> phased = new ArrayList<>();
+        try (VCFIterator iterator = new VCFIteratorBuilder().open("src/test/resources/VCF/phased.vcf")) {
+            while (iterator.hasNext()) {
+                phased.add(iterator.next());
+            }
+        }
+        GenotypeFieldReader reader = new GenotypeFieldReader("GT");
+        assertThat(reader.readGenotype(phased.get(1), 0)).isEqualTo(4);
+        assertThat(reader.isPhased()).isTrue();
+        assertThat(new int[]{reader.getValue(0), reader.getValue(1), reader.getValue(2), reader.getValue(3)})
+                .containsExactly(1, 2, 0, 1);
+        assertThat(reader.readGenotype(phased.get(3), 0)).isEqualTo(4);
+        assertThat(reader.isPhased()).isFalse();
+        assertThat(reader.readGenotype(phased.get(4), 0)).isEqualTo(4);
+        assertThat(reader.getValue(1)).isEqualTo(-1);
+        assertThat(reader.readGenotype(phased.get(4), 1)).isEqualTo(0);
+    }
+
+    /**
+     * Test reading the alleles of a decoded phased genotype.
+     */
+    @Test
+    public void testDecodedGenotype() {
+        List<Allele> alleles = Arrays.asList(Allele.create("A", true), Allele.create("C"));
+        List<Allele> genotype = Arrays.asList(alleles.get(1), Allele.NO_CALL, alleles.get(0));
+        VariantContext record = new VariantContextBuilder("test", "genome", 1, 1, alleles)
+                .genotypes(new GenotypeBuilder("first", genotype).phased(true).make()).make();
+        GenotypeFieldReader reader = new GenotypeFieldReader("GT");
+        assertThat(reader.readGenotype(record, 0)).isEqualTo(3);
+        assertThat(reader.isPhased()).isTrue();
+        assertThat(new int[]{reader.getValue(0), reader.getValue(1), reader.getValue(2)}).containsExactly(1, -1, 0);
+    }
+
+    /**
+     * Test counting the dosage of decoded genotypes.
+     */
+    @Test
+    public void testDecodedDosages() {
+        List<Allele> alleles = Arrays.asList(Allele.create("A", true), Allele.create("C"));
+        List<Allele> genotype = Arrays.asList(alleles.get(0), alleles.get(1), alleles.get(1), Allele.NO_CALL);
+        VariantContext record = new VariantContextBuilder("test", "genome", 1, 1, alleles)
+                .genotypes(new GenotypeBuilder("first", genotype).make()).make();
+        int[] dosages = new int[2];
+        assertThat(new GenotypeFieldReader("GT").readDosages(record, dosages)).isEqualTo(3);
+        assertThat(dosages).containsExactly(1, 2);
+    }
+}
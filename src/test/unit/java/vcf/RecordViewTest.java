@@ -0,0 +1,135 @@
+package vcf;
+
+import htsjdk.variant.variantcontext.VariantContext;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for the typed record view.
+ */
+public class RecordViewTest {
+
+    /**
+     * Test that string attributes are parsed.
+     */
+    @Test
+    public void testStringAttributes() {
+        VariantContext context = mock(VariantContext.class);
+        when(context.getAttribute("DP")).thenReturn("12");
+        when(context.getAttribute("AC")).thenReturn("3");
+        when(context.getAttribute("AF")).thenReturn("0.25");
+        RecordView view = RecordView.of(context);
+        assertThat(view.hasDepth()).isTrue();
+        assertThat(view.getDepth()).isEqualTo(12);
+        assertThat(view.getAlleleCountSize()).isEqualTo(1);
+        assertThat(view.getAlleleCount(0)).isEqualTo(3);
+        assertThat(view.getAlleleFrequencySize()).isEqualTo(1);
+        assertThat(view.getAlleleFrequency(0)).isEqualTo(0.25);
+    }
+
+    /**
+     * Test that multi valued attributes are parsed, both as list and as comma separated string.
+     */
+    @Test
+    public void testMultiValuedAttributes() {
+        VariantContext context = mock(VariantContext.class);
+        when(context.getAttribute("AC")).thenReturn(Arrays.asList("1", "2", "3", "4", "5"));
+        when(context.getAttribute("AF")).thenReturn("0.1,0.9");
+        RecordView view = RecordView.of(context);
+        assertThat(view.getAlleleCountSize()).isEqualTo(5);
+        assertThat(view.getAlleleCount(4)).isEqualTo(5);
+        assertThat(view.getAlleleFrequencySize()).isEqualTo(2);
+        assertThat(view.getAlleleFrequency(1)).isEqualTo(0.9);
+    }
+
+    /**
+     * Test that numeric attributes, as decoded from BCF, are used as is.
+     */
+    @Test
+    public void testNumericAttributes() {
+        VariantContext context = mock(VariantContext.class);
+        when(context.getAttribute("DP")).thenReturn(7);
+        when(context.getAttribute("AF")).thenReturn(0.5);
+        RecordView view = RecordView.of(context);
+        assertThat(view.getDepth()).isEqualTo(7);
+        assertThat(view.getAlleleFrequency(0)).isEqualTo(0.5);
+    }
+
+    /**
+     * Test that missing attributes are reported as absent.
+     */
+    @Test
+    public void testMissingAttributes() {
+        VariantContext context = mock(VariantContext.class);
+        RecordView view = RecordView.of(context);
+        assertThat(view.hasDepth()).isFalse();
+        assertThat(view.getAlleleCountSize()).isEqualTo(0);
+        assertThat(view.getAlleleFrequencySize()).isEqualTo(0);
+    }
+
+    /**
+     * Test that an attribute is only looked up once per record.
+     */
+    @Test
+    public void testParsedOnce() {
+        VariantContext context = mock(VariantContext.class);
+        when(context.getAttribute("DP")).thenReturn("12");
+        RecordView.of(context).getDepth();
+        RecordView.of(context).getDepth();
+        RecordView.of(context).hasDepth();
+        verify(context, times(1)).getAttribute("DP");
+    }
+
+    /**
+     * Test that the view is refreshed for a new record.
+     */
+    @Test
+    public void testNewRecord() {
+        VariantContext first = mock(VariantContext.class);
+        VariantContext second = mock(VariantContext.class);
+        when(first.getAttribute("DP")).thenReturn("1");
+        when(second.getAttribute("DP")).thenReturn("2");
+        assertThat(RecordView.of(first).getDepth()).isEqualTo(1);
+        assertThat(RecordView.of(second).getDepth()).isEqualTo(2);
+    }
+
+    /**
+     * Test that a malformed attribute fails on every access, instead of leaving the values parsed before it.
+     */
+    @Test
+    public void testMalformedAttributesFailAgain() {
+        VariantContext context = mock(VariantContext.class);
+        when(context.getAttribute("DP")).thenReturn("1x");
+        when(context.getAttribute("AC")).thenReturn("3,.");
+        when(context.getAttribute("AF")).thenReturn("0.3,.");
+        RecordView view = RecordView.of(context);
+        for (int i = 0; i < 2; i++) {
+            assertThatThrownBy(view::getDepth).isInstanceOf(NumberFormatException.class);
+            assertThatThrownBy(view::getAlleleCountSize).isInstanceOf(NumberFormatException.class);
+            assertThatThrownBy(view::getAlleleFrequencySize).isInstanceOf(NumberFormatException.class);
+            assertThatThrownBy(() -> view.getAlleleFrequency(0)).isInstanceOf(NumberFormatException.class);
+        }
+    }
+
+    /**
+     * Test the substring free integer parser.
+     */
+    @Test
+    public void testParseInt() {
+        assertThat(RecordView.parseInt("12,-34", 0, 2)).isEqualTo(12);
+        assertThat(RecordView.parseInt("12,-34", 3, 6)).isEqualTo(-34);
+        assertThat(RecordView.parseInt("2147483647", 0, 10)).isEqualTo(Integer.MAX_VALUE);
+        assertThatThrownBy(() -> RecordView.parseInt("1.5", 0, 3)).isInstanceOf(NumberFormatException.class);
+        assertThatThrownBy(() -> RecordView.parseInt("2147483648", 0, 10))
+                .isInstanceOf(NumberFormatException.class);
+        assertThatThrownBy(() -> RecordView.parseInt("", 0, 0)).isInstanceOf(NumberFormatException.class);
+    }
+}
@@ -0,0 +1,103 @@
+package vcf;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Tests for the external VCF sorter.
+ */
+public class VCFSorterTest {
+    private static final String HEADER = "##fileformat=VCFv4.2\n##contig=<ID=b,length=100>\n##contig=<ID=a>\n"
+            + "#CHROM\tPOS\tID\tREF\tALT\tQUAL\tFILTER\tINFO\n";
+
+    /**
+     * Temporary folder for the files.
+     */
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File write(String... records) throws IOException {
+        File file = folder.newFile();
+        String body = Arrays.stream(records).map(r -> r + "\n").collect(Collectors.joining());
+        Files.write(file.toPath(), (HEADER + body).getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    private static List<String> positions(File file) throws IOException {
+        return Files.readAllLines(file.toPath()).stream().filter(l -> !l.startsWith("#"))
+                .map(l -> l.split("\t")[0] + ":" + l.split("\t")[1] + ":" + l.split("\t")[2])
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Test the detection of sorted and unsorted files.
+     *
+     * @throws IOException if a file could not be written.
+     */
+    @Test
+    public void testIsSorted() throws IOException {
+        VCFSorter sorter = new VCFSorter(folder.getRoot(), VCFSorter.DEFAULT_MEMORY);
+        assertThat(sorter.isSorted(write("a\t1\t.\tA\tC\t.\t.\t.", "a\t1\t.\tA\tG\t.\t.\t.",
+                "b\t5\t.\tA\tC\t.\t.\t."))).isTrue();
+        assertThat(sorter.isSorted(write("a\t2\t.\tA\tC\t.\t.\t.", "a\t1\t.\tA\tG\t.\t.\t."))).isFalse();
+        assertThat(sorter.isSorted(write("a\t1\t.\tA\tC\t.\t.\t.", "b\t1\t.\tA\tG\t.\t.\t.",
+                "a\t5\t.\tA\tC\t.\t.\t."))).isFalse();
+    }
+
+    /**
+     * Test that a sorted file is used as is.
+     *
+     * @throws IOException if a file could not be written.
+     */
+    @Test
+    public void testSortedUnchanged() throws IOException {
+        File file = write("a\t1\t.\tA\tC\t.\t.\t.", "a\t3\t.\tA\tG\t.\t.\t.");
+        assertThat(new VCFSorter(folder.getRoot(), VCFSorter.DEFAULT_MEMORY).sortIfNeeded(file)).isEqualTo(file);
+    }
+
+    /**
+     * Test sorting in memory and with many runs on disk, keeping equal positions in input order.
+     *
+     * @throws IOException if a file could not be written.
+     */
+    @Test
+    public void testSort() throws IOException {
+        File file = write("a\t20\tx\tA\tC\t.\t.\t.", "b\t7\t.\tA\tC\t.\t.\t.", "a\t3\t.\tA\tC\t.\t.\t.",
+                "a\t20\ty\tA\tC\t.\t.\t.", "c\t1\t.\tA\tC\t.\t.\t.", "b\t2\t.\tA\tC\t.\t.\t.");
+        List<String> expected = Arrays.asList("b:2:.", "b:7:.", "a:3:.", "a:20:x", "a:20:y", "c:1:.");
+        File inMemory = new VCFSorter(folder.getRoot(), VCFSorter.DEFAULT_MEMORY).sortIfNeeded(file);
+        assertThat(positions(inMemory)).isEqualTo(expected);
+        File onDisk = new VCFSorter(folder.getRoot(), 1).sortIfNeeded(file);
+        assertThat(positions(onDisk)).isEqualTo(expected);
+        assertThat(Files.readAllLines(onDisk.toPath()).get(0)).isEqualTo("##fileformat=VCFv4.2");
+        assertThat(folder.getRoot().list((dir, name) -> name.startsWith("run"))).isEmpty();
+    }
+
+    /**
+     * Test that a record without columns is reported as a malformed file, while checking and while sorting.
+     *
+     * @throws IOException if a file could not be written.
+     */
+    @Test
+    public void testMalformedLine() throws IOException {
+        VCFSorter sorter = new VCFSorter(folder.getRoot(), VCFSorter.DEFAULT_MEMORY);
+        File unsorted = write("a\t2\t.\tA\tC\t.\t.\t.", "a\t1\t.\tA\tG\t.\t.\t.", "no columns");
+        assertThatThrownBy(() -> sorter.sortIfNeeded(unsorted))
+                .isInstanceOf(IllegalArgumentException.class).hasMessageContaining("VCF file malformed");
+        File sorted = write("a\t1\t.\tA\tC\t.\t.\t.", "no columns");
+        assertThatThrownBy(() -> sorter.isSorted(sorted))
+                .isInstanceOf(IllegalArgumentException.class).hasMessageContaining("VCF file malformed");
+    }
+}
@@ -6,6 +6,7 @@ import org.junit.Test;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
 
 import static org.assertj.core.api.Assertions.*;
 
@@ -30,6 +31,30 @@ public class VCFTest {
         }
     }
 
+    /**
+     * Test that an index next to the file is only found while it is not older than the file.
+     *
+     * @throws IOException if the files could not be copied.
+     */
+    @Test
+    public void findIndex() throws IOException {
+        File folder = Files.createTempDirectory("index").toFile();
+        File vcf = new File(folder, "file1.vcf");
+        File index = new File(folder, "file1.vcf.tbi");
+        try {
+            Files.copy(new File(FOLDER + "file1.vcf").toPath(), vcf.toPath());
+            assertThat(VCF.findIndex(vcf)).isNull();
+            Files.copy(new File(FOLDER + "file1.vcf.tbi").toPath(), index.toPath());
+            assertThat(index.setLastModified(vcf.lastModified())).isTrue();
+            assertThat(VCF.findIndex(vcf)).isEqualTo(index.getAbsoluteFile());
+            assertThat(index.setLastModified(vcf.lastModified() - 60000)).isTrue();
+            assertThat(VCF.findIndex(vcf)).isNull();
+        } finally {
+            assertThat(!index.exists() || index.delete()).isTrue();
+            assertThat(vcf.delete() && folder.delete()).isTrue();
+        }
+    }
+
     /**
      * Test create index if file does not exists.
      */
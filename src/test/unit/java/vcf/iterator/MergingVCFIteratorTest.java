@@ -0,0 +1,107 @@
+package vcf.iterator;
+
+import htsjdk.variant.variantcontext.VariantContext;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Tests for merging several vcf files into one iterator.
+ */
+public class MergingVCFIteratorTest {
+    private static final String HEADER = "##fileformat=VCFv4.2\n##contig=<ID=a>\n##contig=<ID=b>\n"
+            + "#CHROM\tPOS\tID\tREF\tALT\tQUAL\tFILTER\tINFO\n";
+
+    /**
+     * Temporary folder for the files.
+     */
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private String write(String... records) throws IOException {
+        File file = folder.newFile();
+        String body = Arrays.stream(records).map(r -> r + "\n").collect(Collectors.joining());
+        Files.write(file.toPath(), (HEADER + body).getBytes(StandardCharsets.UTF_8));
+        return file.getPath();
+    }
+
+    private List<String> merge(MergingVCFIterator.Precedence precedence, String... files) throws IOException {
+        List<String> ids = new ArrayList<>();
+        try (VCFIterator iterator = new VCFIteratorBuilder().open(Arrays.asList(files), precedence)) {
+            while (iterator.hasNext()) {
+                VariantContext record = iterator.next();
+                ids.add(record.getContig() + ":" + record.getStart() + ":" + record.getID());
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * Test that the records of the files are merged on contig and position.
+     *
+     * @throws IOException if a file could not be written.
+     */
+    @Test
+    public void testMergeOrder() throws IOException {
+        String snps = write("a\t2\ts1\tA\tC\t.\t.\t.", "b\t1\ts2\tA\tC\t.\t.\t.");
+        String indels = write("a\t1\ti1\tA\tAC\t.\t.\t.", "a\t5\ti2\tAC\tA\t.\t.\t.", "b\t3\ti3\tA\tAC\t.\t.\t.");
+        assertThat(merge(MergingVCFIterator.Precedence.FIRST, snps, indels))
+                .containsExactly("a:1:i1", "a:2:s1", "a:5:i2", "b:1:s2", "b:3:i3");
+    }
+
+    /**
+     * Test the precedence rules for records of different files on the same position.
+     *
+     * @throws IOException if a file could not be written.
+     */
+    @Test
+    public void testPrecedence() throws IOException {
+        String first = write("a\t2\tf1\tA\tC\t10\t.\t.", "a\t2\tf2\tA\tG\t10\t.\t.", "a\t4\tf3\tA\tC\t50\t.\t.");
+        String second = write("a\t2\tg1\tA\tT\t20\t.\t.", "a\t4\tg2\tA\tT\t30\t.\t.");
+        assertThat(merge(MergingVCFIterator.Precedence.FIRST, first, second))
+                .containsExactly("a:2:f1", "a:2:f2", "a:4:f3");
+        assertThat(merge(MergingVCFIterator.Precedence.QUALITY, first, second))
+                .containsExactly("a:2:g1", "a:4:f3");
+        assertThat(merge(MergingVCFIterator.Precedence.ALL, first, second))
+                .containsExactly("a:2:f1", "a:2:f2", "a:2:g1", "a:4:f3", "a:4:g2");
+    }
+
+    /**
+     * Test that the headers are merged.
+     *
+     * @throws IOException if a file could not be written.
+     */
+    @Test
+    public void testMergedHeader() throws IOException {
+        File other = folder.newFile();
+        Files.write(other.toPath(), ("##fileformat=VCFv4.2\n##contig=<ID=c>\n"
+                + "#CHROM\tPOS\tID\tREF\tALT\tQUAL\tFILTER\tINFO\n").getBytes(StandardCharsets.UTF_8));
+        try (VCFIterator iterator = new VCFIteratorBuilder().open(
+                Arrays.asList(write(), other.getPath()), MergingVCFIterator.Precedence.FIRST)) {
+            assertThat(iterator.getHeader().getContigLines()).hasSize(3);
+            assertThat(iterator.hasNext()).isFalse();
+        }
+    }
+
+    /**
+     * Test parsing a precedence.
+     */
+    @Test
+    public void testParsePrecedence() {
+        assertThat(MergingVCFIterator.Precedence.parse("Quality")).isEqualTo(MergingVCFIterator.Precedence.QUALITY);
+        assertThatThrownBy(() -> MergingVCFIterator.Precedence.parse("last"))
+                .isInstanceOf(IllegalArgumentException.class).hasMessageContaining("first, quality or all");
+    }
+}
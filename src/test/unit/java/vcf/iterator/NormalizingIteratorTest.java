@@ -0,0 +1,102 @@
+package vcf.iterator;
+
+import fasta.FastaSequence;
+import htsjdk.variant.variantcontext.Genotype;
+import htsjdk.variant.variantcontext.VariantContext;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Tests for splitting and left-aligning records while they are read.
+ */
+public class NormalizingIteratorTest {
+    private static final String VCF_FILE = "src/test/resources/VCF/normalize.vcf";
+    private static final String FASTA_FILE = "src/test/resources/ConsensusGenerator/sample.fasta";
+
+    private FastaSequence fasta;
+
+    /**
+     * Opens the fasta file.
+     *
+     * @throws IOException if the file could not be opened.
+     */
+    @Before
+    public void setUp() throws IOException {
+        fasta = new FastaSequence(FASTA_FILE);
+    }
+
+    /**
+     * Closes the fasta file.
+     *
+     * @throws IOException if the file could not be closed.
+     */
+    @After
+    public void tearDown() throws IOException {
+        fasta.close();
+    }
+
+    private List<VariantContext> read(FastaSequence reference) throws IOException {
+        List<VariantContext> records = new ArrayList<>();
+        try (VCFIterator iterator = new NormalizingIterator(new VCFIteratorBuilder().open(VCF_FILE),
+                reference, null)) {
+            while (iterator.hasNext()) {
+                records.add(iterator.next());
+            }
+        }
+        return records;
+    }
+
+    private static String describe(VariantContext record) {
+        return record.getStart() + ":" + record.getReference().getBaseString() + ">"
+                + record.getAlternateAllele(0).getBaseString();
+    }
+
+    /**
+     * Test that indels are shifted to the start of their repeat and that the records stay sorted.
+     */
+    @Test
+    public void testLeftAlign() throws IOException {
+        List<String> records = new ArrayList<>();
+        for (VariantContext record : read(fasta)) {
+            records.add(describe(record));
+        }
+        assertThat(records).containsExactly("11:AC>A", "12:C>T", "15:CG>C", "15:C>CG", "20:C>A", "20:C>T");
+    }
+
+    /**
+     * Test that a record is split per alternative allele, with its genotypes and per-allele values.
+     */
+    @Test
+    public void testSplit() throws IOException {
+        List<VariantContext> records = read(fasta);
+        Genotype first = records.get(4).getGenotype(0);
+        assertThat(first.getAllele(0).getBaseString()).isEqualTo("A");
+        assertThat(first.getAllele(1).isReference()).isTrue();
+        assertThat(first.getAD()).containsExactly(1, 2);
+        assertThat(records.get(4).getAttribute("AF")).isEqualTo("0.4");
+        Genotype second = records.get(5).getGenotype(0);
+        assertThat(second.getAllele(0).isReference()).isTrue();
+        assertThat(second.getAllele(1).getBaseString()).isEqualTo("T");
+        assertThat(second.getAD()).containsExactly(1, 3);
+        assertThat(records.get(5).getAttribute("AF")).isEqualTo("0.6");
+    }
+
+    /**
+     * Test that without a reference indels are only trimmed, not shifted.
+     */
+    @Test
+    public void testWithoutReference() throws IOException {
+        List<String> records = new ArrayList<>();
+        for (VariantContext record : read(null)) {
+            records.add(describe(record));
+        }
+        assertThat(records).containsExactly("12:C>T", "14:CC>C", "16:GG>G", "16:GG>GGG", "20:C>A", "20:C>T");
+    }
+}
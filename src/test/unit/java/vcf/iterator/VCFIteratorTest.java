@@ -64,6 +64,20 @@ public class VCFIteratorTest {
     }
 
 
+    /**
+     * Test that the reference blocks of a gVCF file are only skipped when asked.
+     * @throws IOException if file IO failed.
+     */
+    @Test
+    public void testSkipReferenceBlocks() throws IOException {
+        assertThat(countVariants(makeIterator("gvcf.vcf"))).isEqualTo(5);
+        try (VCFIterator iterator = new VCFIteratorBuilder().skipReferenceBlocks().open(FOLDER + "gvcf.vcf")) {
+            assertThat(iterator.next().getStart()).isEqualTo(5);
+            assertThat(iterator.next().getStart()).isEqualTo(21);
+            assertThat(iterator.hasNext()).isFalse();
+        }
+    }
+
     /**
      * Test amount of variants in file1.vcf.
      * @throws IOException if file IO failed.
@@ -169,4 +183,20 @@ public class VCFIteratorTest {
         VCFIterator iterator = makeIterator("file7.vcf");
         assertThat(countVariants(iterator)).isEqualTo(6);
     }
-}
\ No newline at end of file
+
+    /**
+     * Test that checking the order accepts a sorted file and stops at the first record out of order.
+     * @throws IOException if file IO failed.
+     */
+    @Test
+    public void testCheckOrder() throws IOException {
+        try (VCFIterator iterator = new VCFIteratorBuilder().checkOrder().open(FOLDER + "file7.vcf")) {
+            assertThat(countVariants(iterator)).isEqualTo(6);
+        }
+        try (VCFIterator iterator = new VCFIteratorBuilder().checkOrder()
+                .open("src/test/resources/ConsensusGenerator/unsorted.vcf")) {
+            assertThatThrownBy(() -> countVariants(iterator)).isInstanceOf(UnsortedVCFException.class)
+                    .hasMessageContaining("sampleGen|:9");
+        }
+    }
+}